@@ -0,0 +1,84 @@
+package org.interledger.ilp.ledger.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import javax.money.MonetaryAmount;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.impl.AtomicLedgerAccount;
+import org.interledger.ilp.ledger.impl.SimpleLedgerAccount;
+import org.javamoney.moneta.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SimpleLedgerAccount#credit} and {@link SimpleLedgerAccount#debit},
+ * compared with the minor units of a shared {@link AtomicLedgerAccount}.
+ *
+ * @author mrmx
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AccountBenchmark {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+
+    // One account per thread: SimpleLedgerAccount isn't thread safe
+    SimpleLedgerAccount account;
+    MonetaryAmount amount;
+
+    @Setup
+    public void setUp() {
+        account = new SimpleLedgerAccount("benchmark", CURRENCY.code()).setBalance(1000000);
+        amount = Money.of(1, CURRENCY.code());
+    }
+
+    /**
+     * An account shared by all the threads.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedAccount {
+
+        AtomicLedgerAccount account;
+
+        @Setup
+        public void setUp() {
+            account = new AtomicLedgerAccount("shared", LedgerInfoFactory.from(CURRENCY));
+            account.setBalanceInMinorUnits(Long.MAX_VALUE / 2);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LedgerAccount creditDebitSingleThreaded() {
+        account.credit(amount);
+        return account.debit(amount);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public LedgerAccount creditDebitMultiThreaded() {
+        account.credit(amount);
+        return account.debit(amount);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean creditDebitSharedMinorUnits(SharedAccount shared) {
+        shared.account.creditMinorUnits(100);
+        return shared.account.tryDebitMinorUnits(100);
+    }
+}
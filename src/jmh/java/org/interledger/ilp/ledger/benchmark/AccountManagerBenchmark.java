@@ -0,0 +1,88 @@
+package org.interledger.ilp.ledger.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.LedgerAccountManager;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.interledger.ilp.ledger.impl.SimpleLedgerAccountManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SimpleLedgerAccountManager#getAccountByName} of random accounts.
+ *
+ * @author mrmx
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AccountManagerBenchmark {
+
+    @Param({"16", "1024", "65536", "1048576"})
+    int accounts;
+
+    LedgerAccountManager accountManager;
+
+    @Setup
+    public void setUp() {
+        SimpleLedger ledger = new SimpleLedger(Currencies.EURO, "benchmark");
+        accountManager = ledger.getLedgerAccountManager();
+        for (int i = 0; i < accounts; i++) {
+            accountManager.addAccount(ledger.createAccount("account" + i));
+        }
+    }
+
+    /**
+     * The names looked up by a thread, built beforehand.
+     */
+    @State(Scope.Thread)
+    public static class Names {
+
+        static final int SIZE = 4096;
+
+        String[] names;
+        int next;
+
+        @Setup
+        public void setUp(AccountManagerBenchmark benchmark) {
+            Random random = new Random(Thread.currentThread().getId());
+            names = new String[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                names[i] = "account" + random.nextInt(benchmark.accounts);
+            }
+        }
+
+        String next() {
+            String name = names[next];
+            next = (next + 1) & (SIZE - 1);
+            return name;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LedgerAccount getAccountByNameSingleThreaded(Names names) {
+        return accountManager.getAccountByName(names.next());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public LedgerAccount getAccountByNameMultiThreaded(Names names) {
+        return accountManager.getAccountByName(names.next());
+    }
+}
@@ -0,0 +1,92 @@
+package org.interledger.ilp.ledger.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.interledger.ilp.ledger.impl.CachingLedgerAddressParser;
+import org.interledger.ilp.ledger.impl.LedgerAddress;
+import org.interledger.ilp.ledger.impl.LedgerAddressParser;
+import org.interledger.ilp.ledger.impl.SimpleLedgerAddressParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SimpleLedgerAddressParser#parse}, alone and behind a
+ * {@link CachingLedgerAddressParser}.
+ *
+ * @author mrmx
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AddressParserBenchmark {
+
+    /**
+     * The number of distinct destinations.
+     */
+    @Param({"16", "1024", "65536"})
+    int accounts;
+
+    @Param({"false", "true"})
+    boolean cached;
+
+    LedgerAddressParser parser;
+
+    @Setup
+    public void setUp() {
+        parser = cached
+                ? new CachingLedgerAddressParser(SimpleLedgerAddressParser.getDefault())
+                : SimpleLedgerAddressParser.getDefault();
+    }
+
+    /**
+     * The addresses parsed by a thread, built beforehand.
+     */
+    @State(Scope.Thread)
+    public static class Addresses {
+
+        static final int SIZE = 4096;
+
+        String[] addresses;
+        int next;
+
+        @Setup
+        public void setUp(AddressParserBenchmark benchmark) {
+            Random random = new Random(Thread.currentThread().getId());
+            addresses = new String[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                addresses[i] = "account" + random.nextInt(benchmark.accounts) + "@ledger";
+            }
+        }
+
+        String next() {
+            String address = addresses[next];
+            next = (next + 1) & (SIZE - 1);
+            return address;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LedgerAddress parseSingleThreaded(Addresses addresses) {
+        return parser.parse(addresses.next());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public LedgerAddress parseMultiThreaded(Addresses addresses) {
+        return parser.parse(addresses.next());
+    }
+}
@@ -0,0 +1,171 @@
+package org.interledger.ilp.ledger.benchmark;
+
+import com.google.common.eventbus.EventBus;
+import java.util.concurrent.TimeUnit;
+import org.interledger.ilp.core.InterledgerPacketHeader;
+import org.interledger.ilp.core.events.LedgerConnectedEvent;
+import org.interledger.ilp.core.events.LedgerDirectTransferEvent;
+import org.interledger.ilp.core.events.LedgerDisonnectedEvent;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerTransferExecutedEvent;
+import org.interledger.ilp.core.events.LedgerTransferPreparedEvent;
+import org.interledger.ilp.core.events.LedgerTransferRejectedEvent;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.events.AbstractEventBusLedgerEventHandler;
+import org.interledger.ilp.ledger.events.AbstractLedgerEventHandler;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatch of an executed transfer event through
+ * {@link AbstractLedgerEventHandler} and
+ * {@link AbstractEventBusLedgerEventHandler}.
+ *
+ * @author mrmx
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EventDispatchBenchmark {
+
+    LedgerEvent event;
+    CountingHandler handler;
+    CountingEventBusHandler eventBusHandler;
+
+    @Setup
+    public void setUp() {
+        SimpleLedger ledger = new SimpleLedger(Currencies.EURO, "benchmark");
+        event = new LedgerTransferExecutedEvent(ledger, new InterledgerPacketHeader("bob@benchmark", "10", null, null),
+                "alice", "bob", "10");
+        handler = new CountingHandler();
+        eventBusHandler = new CountingEventBusHandler();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long dispatchSingleThreaded() {
+        handler.onLedgerEvent(event);
+        return handler.count;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long dispatchMultiThreaded() {
+        handler.onLedgerEvent(event);
+        return handler.count;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long dispatchEventBusSingleThreaded() {
+        eventBusHandler.onLedgerEvent(event);
+        return eventBusHandler.count;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long dispatchEventBusMultiThreaded() {
+        eventBusHandler.onLedgerEvent(event);
+        return eventBusHandler.count;
+    }
+
+    // The counts race between threads: they only keep the handlers from doing nothing
+    static class CountingHandler extends AbstractLedgerEventHandler {
+
+        long count;
+
+        @Override
+        protected boolean handleEvent(LedgerConnectedEvent ledgerConnectedEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerDisonnectedEvent ledgerDisonnectedEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferPreparedEvent ledgerTransferPreparedEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferExecutedEvent ledgerTransferExecutedEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerDirectTransferEvent ledgerDirectTransferEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferRejectedEvent ledgerTransferRejectedEvent) {
+            count++;
+            return true;
+        }
+    }
+
+    static class CountingEventBusHandler extends AbstractEventBusLedgerEventHandler {
+
+        long count;
+
+        CountingEventBusHandler() {
+            super(new EventBus());
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerConnectedEvent ledgerConnectedEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerDisonnectedEvent ledgerDisonnectedEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferPreparedEvent ledgerTransferPreparedEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferExecutedEvent ledgerTransferExecutedEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerDirectTransferEvent ledgerDirectTransferEvent) {
+            count++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferRejectedEvent ledgerTransferRejectedEvent) {
+            count++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.interledger.ilp.ledger.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.impl.BalanceEngine;
+import org.interledger.ilp.ledger.impl.ConcurrencyMode;
+import org.interledger.ilp.ledger.impl.LedgerTransferBuilder;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.javamoney.moneta.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SimpleLedger#send} between random accounts.
+ *
+ * @author mrmx
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SendBenchmark {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+    static final int INITIAL_BALANCE = 1000000;
+
+    @Param({"16", "1024", "65536"})
+    int accounts;
+
+    @Param({"MONEY", "FIXED_POINT", "ATOMIC"})
+    BalanceEngine balanceEngine;
+
+    @Param({"STRIPED_LOCKS", "LOCK_FREE", "SHARDED"})
+    ConcurrencyMode concurrencyMode;
+
+    SimpleLedger ledger;
+
+    @Setup
+    public void setUp() {
+        ledger = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "benchmark", balanceEngine, concurrencyMode);
+        for (int i = 0; i < accounts; i++) {
+            ledger.getLedgerAccountManager().addAccount(
+                    ledger.createAccount(accountName(i)).setBalance(INITIAL_BALANCE));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ledger.close();
+    }
+
+    static String accountName(int index) {
+        return "account" + index;
+    }
+
+    /**
+     * The transfers sent by a thread, built beforehand.
+     */
+    @State(Scope.Thread)
+    public static class Transfers {
+
+        static final int SIZE = 4096;
+
+        LedgerTransfer[] transfers;
+        int next;
+
+        @Setup
+        public void setUp(SendBenchmark benchmark) {
+            Random random = new Random(Thread.currentThread().getId());
+            transfers = new LedgerTransfer[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                int from = random.nextInt(benchmark.accounts);
+                int to = (from + 1 + random.nextInt(benchmark.accounts - 1)) % benchmark.accounts;
+                transfers[i] = LedgerTransferBuilder.instance()
+                        .from(accountName(from))
+                        .to(accountName(to))
+                        .amount(Money.of(1, CURRENCY.code()))
+                        .build();
+            }
+        }
+
+        LedgerTransfer next() {
+            LedgerTransfer transfer = transfers[next];
+            next = (next + 1) & (SIZE - 1);
+            return transfer;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void sendSingleThreaded(Transfers transfers) {
+        send(transfers.next());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void sendMultiThreaded(Transfers transfers) {
+        send(transfers.next());
+    }
+
+    private void send(LedgerTransfer transfer) {
+        try {
+            ledger.send(transfer);
+        } catch (InsufficientAmountException ex) {
+            // An account drained by the random walk: rare, and still a send
+        }
+    }
+}
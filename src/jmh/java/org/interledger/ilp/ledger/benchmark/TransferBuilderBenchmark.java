@@ -0,0 +1,81 @@
+package org.interledger.ilp.ledger.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import javax.money.MonetaryAmount;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.impl.LedgerTransferBuilder;
+import org.javamoney.moneta.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link LedgerTransferBuilder#build}, with the destination account given or
+ * parsed from the destination address.
+ *
+ * @author mrmx
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TransferBuilderBenchmark {
+
+    MonetaryAmount amount;
+
+    @Setup
+    public void setUp() {
+        amount = Money.of(10, Currencies.EURO.code());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LedgerTransfer buildSingleThreaded() {
+        return build();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public LedgerTransfer buildMultiThreaded() {
+        return build();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public LedgerTransfer buildToDestinationSingleThreaded() {
+        return buildToDestination();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public LedgerTransfer buildToDestinationMultiThreaded() {
+        return buildToDestination();
+    }
+
+    private LedgerTransfer build() {
+        return LedgerTransferBuilder.instance()
+                .from("alice")
+                .to("bob")
+                .amount(amount)
+                .build();
+    }
+
+    private LedgerTransfer buildToDestination() {
+        return LedgerTransferBuilder.instance()
+                .from("alice")
+                .destination("bob@ledger")
+                .amount(amount)
+                .build();
+    }
+}
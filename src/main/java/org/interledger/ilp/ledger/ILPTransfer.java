@@ -1,11 +1,13 @@
 package org.interledger.ilp.ledger;
 
 
+import com.google.common.base.Preconditions;
 import java.util.Date;
 import org.interledger.cryptoconditions.Condition;
 import org.interledger.cryptoconditions.Fulfillment;
 import org.interledger.ilp.core.LedgerTransferStatus;
 import org.interledger.ilp.core.exceptions.LedgerTransferException;
+import org.interledger.ilp.ledger.clock.LedgerClock;
 
 /*
  * ILPTransfer entities are created for ILP aware transfer.
@@ -15,21 +17,34 @@ import org.interledger.ilp.core.exceptions.LedgerTransferException;
  */
 public class ILPTransfer {
 
+    // Any epoch millis, 0 included, is a valid time
+    private static final long UNSET = Long.MIN_VALUE;
+
     private final String id;                           
     private final String ledger;    
     private final Condition condition; // When the fulfillment arrives compare with Condition
     private final Date expirationAt;
-    private final Date proposedAt;
+    private final LedgerClock clock;
+    // Times are kept as epoch millis, UNSET until set
+    private final long proposedAt;
 
     private String extraInfo;
     private LedgerTransferStatus status;
     private Fulfillment executionFulfillment;
     private Fulfillment cancelationFulfillment;
-    private Date preparedAt;
-    private Date executedAt;
-    private Date rejectedAt;
+    private long preparedAt = UNSET;
+    private long executedAt = UNSET;
+    private long rejectedAt = UNSET;
+
+    public ILPTransfer(String id, String ledger, Condition condition, Date expirationAt) {
+        this(id, ledger, condition, expirationAt, LedgerTimeProvider.getInstance().getClock());
+    }
 
-    ILPTransfer(String id, String ledger, Condition condition, Date expirationAt) {
+    /**
+     * @param clock the clock of the ledger, which times the status changes
+     */
+    public ILPTransfer(String id, String ledger, Condition condition, Date expirationAt, LedgerClock clock) {
+        Preconditions.checkNotNull(clock);
         if (id == null || ledger == null || condition == null || expirationAt == null) {
             throw new LedgerTransferException(getClass().getSimpleName() + " constructor params can't be null");
         }
@@ -37,7 +52,9 @@ public class ILPTransfer {
         this.ledger = ledger;
         this.condition = condition;
         this.expirationAt = expirationAt;
-        this.proposedAt = LedgerTimeProvider.getInstance().getTime();
+        this.clock = clock;
+        this.proposedAt = getCurrentTime();
+        this.status = LedgerTransferStatus.PROPOSED;
     }
 
     public String getId() {
@@ -54,15 +71,15 @@ public class ILPTransfer {
     }
 
     public Date getProposedAt() {
-        return proposedAt;
+        return toDate(proposedAt);
     }
 
     public Date getPreparedAt() {
-        return preparedAt;
+        return toDate(preparedAt);
     }
 
     public Date getExecutedAt() {
-        return executedAt;
+        return toDate(executedAt);
     }
 
     public Date getExpirationAt() {
@@ -70,7 +87,7 @@ public class ILPTransfer {
     }
 
     public Date getRejectedAt() {
-        return rejectedAt;
+        return toDate(rejectedAt);
     }
 
     public void setExtraInfo(String extraInfo) {
@@ -130,8 +147,12 @@ public class ILPTransfer {
         this.cancelationFulfillment = cancelationFulfillment;
     }
 
-    private Date getCurrentTime() {
-        return LedgerTimeProvider.getInstance().getTime();
+    private long getCurrentTime() {
+        return clock.currentTimeMillis();
+    }
+
+    private static Date toDate(long time) {
+        return time == UNSET ? null : new Date(time);
     }
 
 }
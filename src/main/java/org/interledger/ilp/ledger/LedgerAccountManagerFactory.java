@@ -1,23 +1,27 @@
 package org.interledger.ilp.ledger;
 
 import org.interledger.ilp.ledger.account.LedgerAccountManager;
-import org.interledger.ilp.ledger.impl.SimpleLedgerAccountManager;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
 
 /**
  * Ledger factory.
  * 
  * @author mrmx
+ * @deprecated every {@code SimpleLedger} has its own account manager: use
+ * {@link SimpleLedger#getLedgerAccountManager()}
  */
+@Deprecated
 public class LedgerAccountManagerFactory {
-	private static SimpleLedgerAccountManager singleton;
 
+	/**
+	 * Unlike the standalone manager it used to create, the account manager is
+	 * the one of the ledger of the {@link LedgerFactory}, so
+	 * {@link LedgerFactory#initialize} must be called first.
+	 *
+	 * @return the account manager of the ledger of the {@link LedgerFactory}
+	 * @throws RuntimeException if the {@link LedgerFactory} isn't initialized
+	 */
 	public static LedgerAccountManager getAccountManagerSingleton() {
-		if (singleton!=null) return singleton;
-		singleton = new SimpleLedgerAccountManager();
-		return singleton;
+		return ((SimpleLedger) LedgerFactory.getLedger()).getLedgerAccountManager();
 	}
 }
-    
-    
-    
-
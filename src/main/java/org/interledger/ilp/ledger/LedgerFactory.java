@@ -6,15 +6,19 @@ import org.interledger.ilp.ledger.impl.SimpleLedger;
 
 /**
  * Ledger factory.
+ * <p>
+ * Keeps the {@link LedgerRegistry} of the process, and the default ledger
+ * among them.
  * 
  * @author mrmx
  */
 public class LedgerFactory {
-    private static SimpleLedger simpleLedgerSingleton;
+    private static final LedgerRegistry registry = new LedgerRegistry();
+    private static volatile SimpleLedger simpleLedgerSingleton;
 
-    public static void initialize(LedgerInfo ledgerInfo,String ledgerName) {
+    public static synchronized void initialize(LedgerInfo ledgerInfo,String ledgerName) {
     	if (simpleLedgerSingleton!=null) return;
-    	simpleLedgerSingleton = new SimpleLedger(ledgerInfo,ledgerName);
+    	simpleLedgerSingleton = registry.register(new SimpleLedger(ledgerInfo,ledgerName));
     }
     
     public static Ledger getLedger() {
@@ -24,8 +28,25 @@ public class LedgerFactory {
     	}
     	return simpleLedgerSingleton;
 	}
-}
-    
-    
-    
 
+    /**
+     * @throws LedgerNotFoundException if no ledger has the name
+     */
+    public static SimpleLedger getLedger(String ledgerName) {
+        return registry.getLedger(ledgerName);
+    }
+
+    public static LedgerRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Closes and forgets the default ledger, for tests.
+     */
+    static synchronized void reset() {
+        if (simpleLedgerSingleton != null) {
+            registry.remove(simpleLedgerSingleton.getName());
+            simpleLedgerSingleton = null;
+        }
+    }
+}
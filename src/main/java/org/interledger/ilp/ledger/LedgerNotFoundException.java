@@ -0,0 +1,29 @@
+package org.interledger.ilp.ledger;
+
+import org.interledger.ilp.core.exceptions.InterledgerException;
+
+/**
+ *
+ * @author mrmx
+ */
+public class LedgerNotFoundException extends InterledgerException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new instance of {@code LedgerNotFoundException} without
+     * detail message.
+     */
+    public LedgerNotFoundException() {
+    }
+
+    /**
+     * Constructs an instance of {@code LedgerNotFoundException} with the
+     * specified detail message.
+     *
+     * @param msg the detail message.
+     */
+    public LedgerNotFoundException(String msg) {
+        super(msg);
+    }
+}
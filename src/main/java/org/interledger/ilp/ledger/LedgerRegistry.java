@@ -0,0 +1,106 @@
+package org.interledger.ilp.ledger;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.interledger.ilp.core.Ledger;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.interledger.ilp.ledger.routing.LedgerRouter;
+
+/**
+ * The ledgers of a process, by name.
+ * <p>
+ * Ledgers share nothing: each has its own accounts, event handlers and
+ * threads, so a busy ledger doesn't slow down the others. The registry also
+ * keeps the routes from ILP address prefixes to its ledgers.
+ *
+ * @author mrmx
+ */
+public class LedgerRegistry {
+
+    private final ConcurrentMap<String, SimpleLedger> ledgers = new ConcurrentHashMap<String, SimpleLedger>();
+    private final LedgerRouter router = new LedgerRouter();
+
+    /**
+     * Adds a ledger.
+     *
+     * @param prefixes the ILP address prefixes routed to the ledger
+     * @throws IllegalArgumentException if a ledger with the same name is
+     * registered
+     */
+    public SimpleLedger register(SimpleLedger ledger, String... prefixes) {
+        Preconditions.checkNotNull(ledger);
+        Preconditions.checkNotNull(ledger.getName());
+        if (ledgers.putIfAbsent(ledger.getName(), ledger) != null) {
+            throw new IllegalArgumentException("Ledger already registered: " + ledger.getName());
+        }
+        for (String prefix : prefixes) {
+            router.addRoute(prefix, ledger);
+        }
+        return ledger;
+    }
+
+    /**
+     * @throws LedgerNotFoundException if no ledger has the name
+     */
+    public SimpleLedger getLedger(String name) throws LedgerNotFoundException {
+        SimpleLedger ledger = ledgers.get(name);
+        if (ledger == null) {
+            throw new LedgerNotFoundException(name);
+        }
+        return ledger;
+    }
+
+    public boolean contains(String name) {
+        return ledgers.containsKey(name);
+    }
+
+    public Collection<SimpleLedger> getLedgers() {
+        return Collections.unmodifiableCollection(ledgers.values());
+    }
+
+    public int size() {
+        return ledgers.size();
+    }
+
+    /**
+     * @return the routes from ILP addresses to the ledgers
+     */
+    public LedgerRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * Removes a ledger and its routes, and closes it.
+     *
+     * @return the ledger, or {@code null} if none had the name
+     */
+    public SimpleLedger remove(String name) {
+        SimpleLedger ledger = ledgers.remove(name);
+        if (ledger == null) {
+            return null;
+        }
+        synchronized (router) {
+            for (Map.Entry<String, Ledger> route : router.getRoutingTable().getRoutes().entrySet()) {
+                if (route.getValue() == ledger) {
+                    router.removeRoute(route.getKey());
+                }
+            }
+        }
+        ledger.close();
+        return ledger;
+    }
+
+    /**
+     * Removes and closes every ledger.
+     */
+    public void close() {
+        for (String name : new ArrayList<String>(ledgers.keySet())) {
+            remove(name);
+        }
+    }
+}
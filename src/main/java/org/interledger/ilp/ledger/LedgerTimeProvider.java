@@ -1,27 +1,46 @@
 package org.interledger.ilp.ledger;
 
-import java.util.Calendar;
+import com.google.common.base.Preconditions;
 import java.util.Date;
-import java.util.TimeZone;
+import org.interledger.ilp.ledger.clock.LedgerClock;
 
 /**
  * Encapsulates time adquisition.
- * 
+ * <p>
+ * Time is read from a pluggable {@link LedgerClock}, the system one by
+ * default.
+ *
  * @author mrmx
  */
 public class LedgerTimeProvider {
     private static final LedgerTimeProvider instance = new LedgerTimeProvider();
-    private Calendar calendar;
+    private volatile LedgerClock clock = LedgerClock.system();
 
     protected LedgerTimeProvider() {
-        calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-    }    
+    }
 
     public static LedgerTimeProvider getInstance() {
         return instance;
     }
-        
+
+    public LedgerClock getClock() {
+        return clock;
+    }
+
+    public void setClock(LedgerClock clock) {
+        Preconditions.checkNotNull(clock);
+        this.clock = clock;
+    }
+
     public Date getTime() {
-        return calendar.getTime();
-    }    
+        return new Date(clock.currentTimeMillis());
+    }
+
+    /**
+     * @return the current time in milliseconds since the epoch, without
+     * allocating
+     */
+    public long getTimeMillis() {
+        return clock.currentTimeMillis();
+    }
 }
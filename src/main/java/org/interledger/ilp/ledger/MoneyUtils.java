@@ -2,6 +2,7 @@ package org.interledger.ilp.ledger;
 
 import java.math.BigDecimal;
 import javax.money.MonetaryAmount;
+import javax.money.NumberValue;
 import org.javamoney.moneta.Money;
 
 /**
@@ -10,11 +11,162 @@ import org.javamoney.moneta.Money;
  */
 public class MoneyUtils {
 
+    /**
+     * Largest scale that still leaves room for a meaningful integer part in a
+     * {@code long} amount of minor units.
+     */
+    public static final int MAX_MINOR_UNITS_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_MINOR_UNITS_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
     private MoneyUtils() {
     }
-    
+
     public static MonetaryAmount toMonetaryAmount(String amount,String currencyCode) {
         return Money.of(new BigDecimal(amount),currencyCode);
     }
-     
+
+    public static MonetaryAmount toMonetaryAmount(long minorUnits, int scale, String currencyCode) {
+        return Money.of(toBigDecimal(minorUnits, scale), currencyCode);
+    }
+
+    public static BigDecimal toBigDecimal(long minorUnits, int scale) {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    /**
+     * Parses a plain decimal amount (eg: {@code "-12.50"}) into minor units of
+     * the given scale without going through {@link BigDecimal}.
+     *
+     * @param amount the decimal amount
+     * @param scale number of fraction digits of a minor unit
+     * @return the amount expressed in minor units
+     * @throws NumberFormatException if the amount is not a plain decimal number
+     * @throws ArithmeticException if the amount has more significant fraction
+     * digits than {@code scale} or does not fit in a {@code long}
+     */
+    public static long toMinorUnits(String amount, int scale) {
+        checkScale(scale);
+        if (amount == null || amount.length() == 0) {
+            throw new NumberFormatException("empty amount");
+        }
+        int length = amount.length();
+        int index = 0;
+        boolean negative = false;
+        char first = amount.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            index++;
+        }
+        // Accumulate negatively so that Long.MIN_VALUE can be represented
+        long result = 0;
+        int fractionDigits = -1;
+        int digits = 0;
+        for (; index < length; index++) {
+            char c = amount.charAt(index);
+            if (c == '.') {
+                if (fractionDigits >= 0) {
+                    throw new NumberFormatException(amount);
+                }
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException(amount);
+            }
+            digits++;
+            if (fractionDigits >= 0) {
+                if (fractionDigits == scale) {
+                    if (c != '0') {
+                        throw new ArithmeticException("amount " + amount + " exceeds scale " + scale);
+                    }
+                    continue;
+                }
+                fractionDigits++;
+            }
+            result = subtractExact(multiplyExact(result, 10), c - '0');
+        }
+        if (digits == 0) {
+            throw new NumberFormatException(amount);
+        }
+        if (fractionDigits < 0) {
+            fractionDigits = 0;
+        }
+        result = multiplyExact(result, POWERS_OF_TEN[scale - fractionDigits]);
+        return negative ? result : negateExact(result);
+    }
+
+    /**
+     * Converts a number into minor units of the given scale.
+     *
+     * @throws ArithmeticException if the number has more significant fraction
+     * digits than {@code scale} or does not fit in a {@code long}
+     */
+    public static long toMinorUnits(Number amount, int scale) {
+        checkScale(scale);
+        if (amount instanceof Long || amount instanceof Integer
+                || amount instanceof Short || amount instanceof Byte) {
+            return multiplyExact(amount.longValue(), POWERS_OF_TEN[scale]);
+        }
+        return toBigDecimal(amount).movePointRight(scale).longValueExact();
+    }
+
+    public static long toMinorUnits(MonetaryAmount amount, int scale) {
+        return toMinorUnits(amount.getNumber(), scale);
+    }
+
+    public static long addExact(long a, long b) {
+        long result = a + b;
+        if (((a ^ result) & (b ^ result)) < 0) {
+            throw new ArithmeticException("long overflow");
+        }
+        return result;
+    }
+
+    public static long subtractExact(long a, long b) {
+        long result = a - b;
+        if (((a ^ b) & (a ^ result)) < 0) {
+            throw new ArithmeticException("long overflow");
+        }
+        return result;
+    }
+
+    private static long multiplyExact(long a, long b) {
+        long result = a * b;
+        if (a != 0 && (result / a != b || (a == -1 && b == Long.MIN_VALUE))) {
+            throw new ArithmeticException("long overflow");
+        }
+        return result;
+    }
+
+    private static long negateExact(long a) {
+        if (a == Long.MIN_VALUE) {
+            throw new ArithmeticException("long overflow");
+        }
+        return -a;
+    }
+
+    private static BigDecimal toBigDecimal(Number amount) {
+        if (amount instanceof BigDecimal) {
+            return (BigDecimal) amount;
+        }
+        if (amount instanceof NumberValue) {
+            return ((NumberValue) amount).numberValue(BigDecimal.class);
+        }
+        return new BigDecimal(amount.toString());
+    }
+
+    private static void checkScale(int scale) {
+        if (scale < 0 || scale > MAX_MINOR_UNITS_SCALE) {
+            throw new IllegalArgumentException("unsupported scale " + scale);
+        }
+    }
+
 }
@@ -0,0 +1,63 @@
+package org.interledger.ilp.ledger;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@code long} sum updated by many threads without contention, for
+ * targets without {@code java.util.concurrent.atomic.LongAdder}.
+ * <p>
+ * The sum is split into cells, each on its own cache line. A thread adds to
+ * the cell picked by its id, so threads mostly update different cells.
+ * Reading the sum adds up all the cells: it's exact once updates stop, and
+ * not an atomic snapshot while they run.
+ *
+ * @author mrmx
+ */
+public final class StripedCounter {
+
+    // Longs per cache line, so two cells never share one
+    private static final int PADDING = 8;
+    private static final int MAX_CELLS = 64;
+    private static final int CELLS;
+
+    static {
+        int cells = 1;
+        while (cells < MAX_CELLS && cells < Runtime.getRuntime().availableProcessors() * 2) {
+            cells <<= 1;
+        }
+        CELLS = cells;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+
+    public void add(long value) {
+        cells.getAndAdd(cellOfCurrentThread(), value);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            sum += cells.get(cell * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the sum to zero. Not atomic with respect to concurrent updates.
+     */
+    public void reset() {
+        for (int cell = 0; cell < CELLS; cell++) {
+            cells.set(cell * PADDING, 0);
+        }
+    }
+
+    private static int cellOfCurrentThread() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & (CELLS - 1)) * PADDING;
+    }
+}
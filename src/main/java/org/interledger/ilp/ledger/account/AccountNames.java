@@ -0,0 +1,43 @@
+package org.interledger.ilp.ledger.account;
+
+/**
+ * Canonical form of account names, which are case-insensitive.
+ * <p>
+ * Two names are the canonical name of each other exactly when
+ * {@link String#equalsIgnoreCase(String)} finds them equal, so accounts can
+ * be keyed, hashed and compared by their canonical name. Names already
+ * canonical, eg: in lower case, are returned as is, so looking one up
+ * doesn't allocate.
+ *
+ * @author mrmx
+ */
+public final class AccountNames {
+
+    private AccountNames() {
+    }
+
+    /**
+     * @return the name with each character folded as by
+     * {@link String#equalsIgnoreCase(String)}
+     */
+    public static String canonical(String name) {
+        int length = name.length();
+        int first = 0;
+        while (first < length && fold(name.charAt(first)) == name.charAt(first)) {
+            first++;
+        }
+        if (first == length) {
+            return name;
+        }
+        char[] folded = name.toCharArray();
+        for (int i = first; i < length; i++) {
+            folded[i] = fold(folded[i]);
+        }
+        return new String(folded);
+    }
+
+    private static char fold(char c) {
+        // equalsIgnoreCase compares the upper then the lower case of each character
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -16,9 +16,39 @@ public interface LedgerAccountManager {
 
     void addAccount(LedgerAccount account);
 
+    /**
+     * Atomically adds the account unless another one is already registered
+     * under the same name.
+     *
+     * @param account the account to add
+     * @return the account already registered, or {@code null} if
+     * {@code account} was added
+     */
+    LedgerAccount addAccountIfAbsent(LedgerAccount account);
+
     LedgerAccount getAccountByName(String name) throws AccountNotFoundException;
 
+    /**
+     * Gets a page of accounts sorted by name.
+     * <p>
+     * Costs proportional to {@code page * pageSize}; prefer
+     * {@link #getAccounts(String, int)} to walk through many accounts.
+     *
+     * @param page page number, starting at 1
+     * @param pageSize maximum number of accounts per page
+     * @return the accounts of the page, empty past the last page
+     */
     Collection<LedgerAccount> getAccounts(int page, int pageSize);
+
+    /**
+     * Gets the page of accounts, sorted by name, following a cursor.
+     *
+     * @param cursor {@link LedgerAccountPage#getNextCursor()} of the previous
+     * page, or {@code null} for the first page
+     * @param pageSize maximum number of accounts per page
+     * @return the page
+     */
+    LedgerAccountPage getAccounts(String cursor, int pageSize);
     
     
 }
@@ -0,0 +1,40 @@
+package org.interledger.ilp.ledger.account;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of accounts, sorted by name, plus the cursor to fetch the next one.
+ * <p>
+ * Cursors are opaque: pass {@link #getNextCursor()} back to
+ * {@link LedgerAccountManager#getAccounts(String, int)}. They stay valid while
+ * accounts are being added.
+ *
+ * @author mrmx
+ */
+public class LedgerAccountPage {
+
+    private final List<LedgerAccount> accounts;
+    private final String nextCursor;
+
+    public LedgerAccountPage(List<LedgerAccount> accounts, String nextCursor) {
+        this.accounts = Collections.unmodifiableList(accounts);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<LedgerAccount> getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * @return the cursor of the next page, or {@code null} if this is the
+     * last one
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,19 @@
+package org.interledger.ilp.ledger.account;
+
+/**
+ * A {@link MinorUnitsLedgerAccount} that can be credited and debited
+ * concurrently without external locking.
+ *
+ * @author mrmx
+ */
+public interface LockFreeLedgerAccount extends MinorUnitsLedgerAccount {
+
+    /**
+     * Debits the account only if its balance covers the amount. The check
+     * and the update are a single atomic step.
+     *
+     * @param amount minor units to debit
+     * @return {@code true} if the account was debited
+     */
+    boolean tryDebitMinorUnits(long amount);
+}
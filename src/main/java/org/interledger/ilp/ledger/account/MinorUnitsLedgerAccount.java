@@ -0,0 +1,23 @@
+package org.interledger.ilp.ledger.account;
+
+/**
+ * A {@link LedgerAccount} whose balance is a {@code long} amount of minor
+ * units (eg: cents for a scale of 2).
+ *
+ * @author mrmx
+ */
+public interface MinorUnitsLedgerAccount extends LedgerAccount {
+
+    /**
+     * @return the number of fraction digits of a minor unit
+     */
+    int getScale();
+
+    long getBalanceInMinorUnits();
+
+    MinorUnitsLedgerAccount setBalanceInMinorUnits(long balance);
+
+    MinorUnitsLedgerAccount creditMinorUnits(long amount);
+
+    MinorUnitsLedgerAccount debitMinorUnits(long amount);
+}
@@ -0,0 +1,80 @@
+package org.interledger.ilp.ledger.clock;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link LedgerClock} returning the time cached by a background thread, for
+ * hot paths where reading the system clock is too costly. The time is up to
+ * a resolution behind, and never goes backwards.
+ *
+ * @author mrmx
+ */
+public class CoarseLedgerClock extends LedgerClock implements Closeable, Runnable {
+
+    public static final long DEFAULT_RESOLUTION_MILLIS = 1;
+
+    private final long resolutionNanos;
+    private final Thread ticker;
+    private volatile long currentTimeMillis;
+    private volatile long nanoTime;
+    private volatile boolean closed;
+
+    public CoarseLedgerClock() {
+        this(DEFAULT_RESOLUTION_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts the ticker thread.
+     *
+     * @param resolution how often the time is updated
+     */
+    public CoarseLedgerClock(long resolution, TimeUnit unit) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("resolution must be positive");
+        }
+        this.resolutionNanos = unit.toNanos(resolution);
+        this.currentTimeMillis = System.currentTimeMillis();
+        this.nanoTime = System.nanoTime();
+        this.ticker = new Thread(this, "ledger-clock");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    public long getResolutionNanos() {
+        return resolutionNanos;
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            LockSupport.parkNanos(this, resolutionNanos);
+            // Only this thread writes, so the time can't go back
+            long now = System.currentTimeMillis();
+            if (now > currentTimeMillis) {
+                currentTimeMillis = now;
+            }
+            nanoTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stops the ticker thread. The time is frozen from then on.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+    }
+}
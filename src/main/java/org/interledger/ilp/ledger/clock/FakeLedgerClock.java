@@ -0,0 +1,54 @@
+package org.interledger.ilp.ledger.clock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LedgerClock} that only moves when told to, for tests.
+ *
+ * @author mrmx
+ */
+public class FakeLedgerClock extends LedgerClock {
+
+    private final AtomicLong nanos;
+    private final long epochOffsetNanos;
+
+    /**
+     * Starts at the current system time.
+     */
+    public FakeLedgerClock() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * @param currentTimeMillis the initial time, in milliseconds since the
+     * epoch
+     */
+    public FakeLedgerClock(long currentTimeMillis) {
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(currentTimeMillis);
+        this.nanos = new AtomicLong();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(epochOffsetNanos + nanos.get());
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanos.get();
+    }
+
+    /**
+     * Moves the time forward.
+     *
+     * @return this clock
+     */
+    public FakeLedgerClock advance(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("the time can't go back");
+        }
+        nanos.addAndGet(unit.toNanos(duration));
+        return this;
+    }
+}
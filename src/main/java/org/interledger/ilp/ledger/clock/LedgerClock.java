@@ -0,0 +1,28 @@
+package org.interledger.ilp.ledger.clock;
+
+/**
+ * Source of time of a ledger. Implementations are thread-safe and don't
+ * allocate.
+ *
+ * @author mrmx
+ */
+public abstract class LedgerClock {
+
+    /**
+     * @return the clock reading the system time on each call
+     */
+    public static LedgerClock system() {
+        return SystemLedgerClock.INSTANCE;
+    }
+
+    /**
+     * @return the current time, in milliseconds since the epoch
+     */
+    public abstract long currentTimeMillis();
+
+    /**
+     * @return a monotonic time in nanoseconds, only meaningful to measure
+     * elapsed time
+     */
+    public abstract long nanoTime();
+}
@@ -0,0 +1,25 @@
+package org.interledger.ilp.ledger.clock;
+
+/**
+ * {@link LedgerClock} reading {@link System#currentTimeMillis()} and
+ * {@link System#nanoTime()}.
+ *
+ * @author mrmx
+ */
+public final class SystemLedgerClock extends LedgerClock {
+
+    static final SystemLedgerClock INSTANCE = new SystemLedgerClock();
+
+    private SystemLedgerClock() {
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
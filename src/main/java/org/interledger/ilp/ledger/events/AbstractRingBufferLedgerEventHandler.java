@@ -0,0 +1,330 @@
+package org.interledger.ilp.ledger.events;
+
+import com.google.common.base.Preconditions;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerEventHandler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An extension of {@link AbstractLedgerEventHandler} that hands all ILP ledger events over to a consumer thread
+ * through a preallocated ring buffer, instead of Guava's {@link com.google.common.eventbus.EventBus}.
+ * <p>
+ * Publishing claims the next sequence of the ring, stores the event in its slot and makes it visible to the consumer:
+ * no lock is taken and nothing is allocated. The consumer handles every event published since its last pass in a
+ * single batch, in sequence order, then calls {@link #onEndOfBatch()}. When the ring is full publishers wait for the
+ * consumer to free a slot.
+ * <p>
+ * Use {@link ProducerType#SINGLE} only when events are always published from the same thread, eg: behind an
+ * {@link AsyncLedgerEventHandler}. {@link org.interledger.ilp.ledger.impl.SimpleLedger} publishes from every thread
+ * sending transfers, which requires {@link ProducerType#MULTI}.
+ * <p>
+ * Exceptions thrown while handling an event are logged and do not stop the consumer thread.
+ *
+ * @author mrmx
+ */
+public abstract class AbstractRingBufferLedgerEventHandler extends AbstractLedgerEventHandler
+        implements LedgerEventHandler<LedgerEvent> {
+
+    /**
+     * Threads publishing into the ring.
+     */
+    public enum ProducerType {
+        /**
+         * A single thread publishes: claiming a sequence is a plain increment.
+         */
+        SINGLE,
+        /**
+         * Any thread publishes: sequences are claimed atomically and each slot records when it was published.
+         */
+        MULTI
+    }
+
+    /**
+     * What the consumer does while no event is available.
+     */
+    public enum WaitStrategy {
+        /**
+         * Spins on the sequence: lowest latency, keeps a core busy.
+         */
+        BUSY_SPIN,
+        /**
+         * Spins for a while, then yields the processor between checks.
+         */
+        YIELD,
+        /**
+         * Parks until an event is published: highest latency, no CPU used while idle.
+         */
+        BLOCKING
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int SPIN_TRIES = 100;
+    private static final long BLOCKING_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    protected Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final LedgerEvent[] slots;
+    private final int mask;
+    private final int indexShift;
+    private final ProducerType producerType;
+    private final WaitStrategy waitStrategy;
+
+    // Highest claimed sequence, for a single producer: only the publishing thread reads and writes it
+    private long claimed = -1;
+    // Highest published sequence, for a single producer
+    private final AtomicLong cursor = new AtomicLong(-1);
+    // Highest claimed sequence, for multiple producers
+    private final AtomicLong claimedSequence = new AtomicLong(-1);
+    // Lap of the ring of the last sequence published in each slot, for multiple producers
+    private final AtomicIntegerArray published;
+    // Highest sequence handled by the consumer
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition eventsAvailable = lock.newCondition();
+    private final AtomicBoolean signalNeeded = new AtomicBoolean();
+
+    private final Thread consumer;
+    private volatile boolean closed;
+
+    /**
+     * No-args Constructor. Provides a ring of {@link #DEFAULT_CAPACITY} events, for any publishing thread, with a
+     * blocking consumer.
+     */
+    public AbstractRingBufferLedgerEventHandler() {
+        this(DEFAULT_CAPACITY, ProducerType.MULTI, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * Required-args Constructor.
+     *
+     * @param capacity     The number of slots of the ring, rounded up to a power of two.
+     * @param producerType Whether events are published from one or several threads.
+     * @param waitStrategy What the consumer does while no event is available.
+     */
+    public AbstractRingBufferLedgerEventHandler(final int capacity, final ProducerType producerType,
+                                                final WaitStrategy waitStrategy) {
+        Preconditions.checkNotNull(producerType);
+        Preconditions.checkNotNull(waitStrategy);
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new LedgerEvent[size];
+        this.mask = size - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(size);
+        this.producerType = producerType;
+        this.waitStrategy = waitStrategy;
+        this.published = new AtomicIntegerArray(producerType == ProducerType.MULTI ? size : 0);
+        for (int i = 0; i < published.length(); i++) {
+            published.set(i, -1);
+        }
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "ledger-ring-" + this.getClass().getSimpleName());
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public ProducerType getProducerType() {
+        return producerType;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * @return the number of events published and not yet handled
+     */
+    public long getBacklog() {
+        return highestClaimed() - consumed.get();
+    }
+
+    /**
+     * Publishes a {@link LedgerEvent} into the ring. It will be handled in a type-safe fashion on the consumer thread.
+     *
+     * @param ledgerEvent An instance of {@link LedgerEvent}.
+     */
+    @Override
+    protected final void handleInternal(final LedgerEvent ledgerEvent) {
+        Preconditions.checkNotNull(ledgerEvent);
+        if (closed) {
+            throw new IllegalStateException("Event handler closed");
+        }
+        long sequence = producerType == ProducerType.SINGLE ? ++claimed : claimedSequence.incrementAndGet();
+        awaitFreeSlot(sequence);
+        int index = (int) sequence & mask;
+        slots[index] = ledgerEvent;
+        if (waitStrategy != WaitStrategy.BLOCKING) {
+            if (producerType == ProducerType.SINGLE) {
+                cursor.lazySet(sequence);
+            } else {
+                published.lazySet(index, (int) (sequence >>> indexShift));
+            }
+            return;
+        }
+        // A full store, so reading the flag next can't miss a consumer that didn't see the event
+        if (producerType == ProducerType.SINGLE) {
+            cursor.set(sequence);
+        } else {
+            published.set(index, (int) (sequence >>> indexShift));
+        }
+        // The flag is only written while a consumer waits: reading it keeps its line shared
+        if (signalNeeded.get() && signalNeeded.compareAndSet(true, false)) {
+            lock.lock();
+            try {
+                eventsAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Called on the consumer thread after handling a batch of events, eg: to flush an audit trail. Does nothing by
+     * default.
+     */
+    protected void onEndOfBatch() {
+    }
+
+    /**
+     * Stops accepting events and waits until the published ones have been handled.
+     */
+    public void close() {
+        closed = true;
+        lock.lock();
+        try {
+            eventsAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            consumer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void awaitFreeSlot(long sequence) {
+        long wrapPoint = sequence - slots.length;
+        int tries = 0;
+        while (wrapPoint > consumed.get()) {
+            if (waitStrategy == WaitStrategy.BUSY_SPIN) {
+                continue;
+            }
+            if (waitStrategy == WaitStrategy.YIELD && ++tries < SPIN_TRIES) {
+                continue;
+            }
+            if (waitStrategy == WaitStrategy.YIELD) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(1);
+            }
+        }
+    }
+
+    private long highestClaimed() {
+        return producerType == ProducerType.SINGLE ? cursor.get() : claimedSequence.get();
+    }
+
+    // Highest sequence from which every event up to the given one has been published
+    private long highestPublished(long next) {
+        if (producerType == ProducerType.SINGLE) {
+            return cursor.get();
+        }
+        long limit = claimedSequence.get();
+        long sequence = next;
+        while (sequence <= limit && published.get((int) sequence & mask) == (int) (sequence >>> indexShift)) {
+            sequence++;
+        }
+        return sequence - 1;
+    }
+
+    private void consume() {
+        long next = 0;
+        int tries = 0;
+        while (true) {
+            long available = highestPublished(next);
+            if (available < next) {
+                if (closed && highestClaimed() < next) {
+                    return;
+                }
+                tries = idle(next, tries);
+                continue;
+            }
+            tries = 0;
+            for (long sequence = next; sequence <= available; sequence++) {
+                int index = (int) sequence & mask;
+                LedgerEvent ledgerEvent = slots[index];
+                slots[index] = null;
+                dispatch(ledgerEvent);
+            }
+            consumed.lazySet(available);
+            try {
+                onEndOfBatch();
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "End of batch failed", ex);
+            }
+            next = available + 1;
+        }
+    }
+
+    private int idle(long next, int tries) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                return tries;
+            case YIELD:
+                if (tries < SPIN_TRIES) {
+                    return tries + 1;
+                }
+                Thread.yield();
+                return tries;
+            default:
+                lock.lock();
+                try {
+                    signalNeeded.set(true);
+                    if (highestPublished(next) < next && !closed) {
+                        eventsAvailable.awaitNanos(BLOCKING_TIMEOUT_NANOS);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+                return tries;
+        }
+    }
+
+    private void dispatch(final LedgerEvent ledgerEvent) {
+        try {
+            super.handleInternal(ledgerEvent);
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Failed handling " + ledgerEvent, ex);
+        }
+    }
+}
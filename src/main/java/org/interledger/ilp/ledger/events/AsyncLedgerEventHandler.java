@@ -0,0 +1,242 @@
+package org.interledger.ilp.ledger.events;
+
+import com.google.common.base.Preconditions;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerEventHandler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link LedgerEventHandler} that hands events over to another one on a
+ * dedicated consumer thread, so the publishing thread (eg: the one sending a
+ * transfer) doesn't wait for the handler to run.
+ * <p>
+ * Events are kept in a bounded queue, what happens when it is full depends on
+ * the {@link EventBackpressure}. Each instance has its own queue and thread:
+ * events reach the wrapped handler in the order they were published, and a slow
+ * handler doesn't delay the others. Events queued together are passed at once
+ * to a wrapped {@link BatchLedgerEventHandler}.
+ * <p>
+ * Exceptions thrown by the wrapped handler are logged and do not stop the
+ * consumer thread.
+ *
+ * @param <T> the type of {@link LedgerEvent} handled
+ * @author mrmx
+ */
+public class AsyncLedgerEventHandler<T extends LedgerEvent> implements BatchLedgerEventHandler<T> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final long POLL_MILLIS = 100;
+
+    protected Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final LedgerEventHandler<T> handler;
+    private final EventBackpressure backpressure;
+    private final BlockingQueue<T> queue;
+    // Guarded by itself. Once not empty, new events go to its tail until the consumer moves it back into the queue
+    private final ArrayDeque<T> spill = new ArrayDeque<T>();
+    private volatile int spillSize;
+    private final AtomicLong dropped = new AtomicLong();
+    // Publishers past the closed check: the consumer only stops once closed and none is left
+    private final AtomicInteger publishing = new AtomicInteger();
+    private final Thread consumer;
+    private volatile boolean closed;
+
+    /**
+     * Wraps the handler with a queue of {@link #DEFAULT_CAPACITY} events that
+     * blocks publishers when full.
+     */
+    public AsyncLedgerEventHandler(LedgerEventHandler<T> handler) {
+        this(handler, DEFAULT_CAPACITY, EventBackpressure.BLOCK);
+    }
+
+    /**
+     * @param handler the handler run on the consumer thread
+     * @param capacity the number of events queued before applying backpressure
+     * @param backpressure what to do with an event when the queue is full
+     */
+    public AsyncLedgerEventHandler(LedgerEventHandler<T> handler, int capacity, EventBackpressure backpressure) {
+        Preconditions.checkNotNull(handler);
+        Preconditions.checkNotNull(backpressure);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.handler = handler;
+        this.backpressure = backpressure;
+        this.queue = new ArrayBlockingQueue<T>(capacity);
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "ledger-events-" + handler.getClass().getSimpleName());
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public LedgerEventHandler<T> getHandler() {
+        return handler;
+    }
+
+    public EventBackpressure getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * @return the number of events discarded because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of events waiting in the overflow list
+     */
+    public int getSpilledCount() {
+        return spillSize;
+    }
+
+    @Override
+    public void onLedgerEvent(T ledgerEvent) {
+        publish(ledgerEvent);
+    }
+
+    @Override
+    public void onLedgerEvents(List<T> ledgerEvents) {
+        for (T ledgerEvent : ledgerEvents) {
+            publish(ledgerEvent);
+        }
+    }
+
+    /**
+     * Stops accepting events and waits until the queued ones have been
+     * handled. An event published concurrently is either rejected or
+     * handled, never lost.
+     */
+    public void close() {
+        closed = true;
+        try {
+            consumer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void publish(T ledgerEvent) {
+        Preconditions.checkNotNull(ledgerEvent);
+        publishing.incrementAndGet();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Event handler closed");
+            }
+            enqueue(ledgerEvent);
+        } finally {
+            publishing.decrementAndGet();
+        }
+    }
+
+    private void enqueue(T ledgerEvent) {
+        switch (backpressure) {
+            case BLOCK:
+                try {
+                    queue.put(ledgerEvent);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted publishing " + ledgerEvent, ex);
+                }
+                break;
+            case DROP:
+                if (!queue.offer(ledgerEvent)) {
+                    dropped.incrementAndGet();
+                }
+                break;
+            case SPILL:
+                if (spillSize == 0 && queue.offer(ledgerEvent)) {
+                    break;
+                }
+                synchronized (spill) {
+                    if (spill.isEmpty() && queue.offer(ledgerEvent)) {
+                        break;
+                    }
+                    spill.addLast(ledgerEvent);
+                    spillSize = spill.size();
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown backpressure " + backpressure);
+        }
+    }
+
+    private void consume() {
+        List<T> batch = new ArrayList<T>(MAX_BATCH_SIZE);
+        while (true) {
+            T first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                first = null;
+            }
+            if (first == null) {
+                // Publishers check closed after counting themselves, so once closed is seen
+                // with none counted, every event accepted is already queued or spilled
+                if (closed && publishing.get() == 0 && queue.isEmpty() && spillSize == 0) {
+                    return;
+                }
+                if (spillSize > 0) {
+                    unspill();
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            if (spillSize > 0) {
+                unspill();
+            }
+            deliver(batch);
+            batch.clear();
+        }
+    }
+
+    // Moves spilled events back into the queue, oldest first
+    private void unspill() {
+        synchronized (spill) {
+            while (!spill.isEmpty() && queue.offer(spill.peekFirst())) {
+                spill.pollFirst();
+            }
+            spillSize = spill.size();
+        }
+    }
+
+    private void deliver(List<T> batch) {
+        if (batch.size() > 1 && handler instanceof BatchLedgerEventHandler) {
+            try {
+                ((BatchLedgerEventHandler<T>) handler).onLedgerEvents(new ArrayList<T>(batch));
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Event handler " + handler + " failed", ex);
+            }
+            return;
+        }
+        for (T ledgerEvent : batch) {
+            try {
+                handler.onLedgerEvent(ledgerEvent);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Event handler " + handler + " failed on " + ledgerEvent, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.interledger.ilp.ledger.events;
+
+import java.util.List;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerEventHandler;
+
+/**
+ * A {@link LedgerEventHandler} able to receive several events at once, eg: all
+ * the transfers executed by a batch.
+ *
+ * @param <T> the type of {@link LedgerEvent} handled
+ */
+public interface BatchLedgerEventHandler<T extends LedgerEvent> extends LedgerEventHandler<T> {
+
+    /**
+     * Handles a list of events, in the order they happened.
+     *
+     * @param ledgerEvents the events, never empty
+     */
+    void onLedgerEvents(List<T> ledgerEvents);
+}
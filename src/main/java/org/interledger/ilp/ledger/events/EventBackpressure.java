@@ -0,0 +1,24 @@
+package org.interledger.ilp.ledger.events;
+
+/**
+ * What an {@link AsyncLedgerEventHandler} does with a new event when its queue
+ * is full.
+ *
+ * @author mrmx
+ */
+public enum EventBackpressure {
+    /**
+     * The publishing thread waits until there is room in the queue.
+     */
+    BLOCK,
+    /**
+     * The event is discarded and counted (see
+     * {@link AsyncLedgerEventHandler#getDroppedCount()}).
+     */
+    DROP,
+    /**
+     * The event is kept in an unbounded overflow list that is moved back into
+     * the queue, in order, as the consumer catches up.
+     */
+    SPILL
+}
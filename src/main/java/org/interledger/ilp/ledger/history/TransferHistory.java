@@ -0,0 +1,361 @@
+package org.interledger.ilp.ledger.history;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerTransferExecutedEvent;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.AccountNames;
+import org.interledger.ilp.ledger.clock.LedgerClock;
+import org.interledger.ilp.ledger.events.BatchLedgerEventHandler;
+
+/**
+ * In-memory history of the transfers executed by a ledger, recorded from its
+ * {@link LedgerTransferExecutedEvent}s.
+ * <p>
+ * Transfers are appended to columns (timestamps, accounts, amounts) split in
+ * chunks of {@value #CHUNK_SIZE}, and numbered by their offset in the
+ * history. Each account has a posting list, the offsets of its transfers in a
+ * {@code long} array. Timestamps never go back, so both the history and the
+ * posting lists are sorted by time: queries find their first transfer by
+ * binary search then only read the transfers they return.
+ * <p>
+ * Account names are case-insensitive, as in the ledger: the transfers of
+ * {@code alice} and {@code Alice} share one posting list, and records name
+ * the account as it was first seen.
+ * <p>
+ * Transfers older than the retention period, or beyond the maximum number of
+ * transfers, are dropped as new ones are appended. Their memory is released a
+ * chunk at a time.
+ * <p>
+ * Register it on the ledger to record its transfers, or wrap it in an
+ * {@link org.interledger.ilp.ledger.events.AsyncLedgerEventHandler} to record
+ * them off the sending threads. Thread-safe: queries run concurrently with
+ * each other.
+ *
+ * @author mrmx
+ */
+public class TransferHistory implements BatchLedgerEventHandler<LedgerEvent> {
+
+    static final int CHUNK_SIZE = 4096;
+
+    private final int scale;
+    private final LedgerClock clock;
+    private final long retentionMillis;
+    private final int maximumSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by the lock
+    private final List<Chunk> chunks = new ArrayList<Chunk>();
+    private long chunksOffset;
+    private long firstOffset;
+    private long nextOffset;
+    private long lastTimestamp = Long.MIN_VALUE;
+    // By canonical name
+    private final Map<String, Integer> accountIds = new HashMap<String, Integer>();
+    private final List<String> accountNames = new ArrayList<String>();
+    // By account id, null once the account has no transfer left
+    private final List<PostingList> postings = new ArrayList<PostingList>();
+    private final List<Integer> freeAccountIds = new ArrayList<Integer>();
+
+    /**
+     * @param scale the scale of the amounts of the ledger
+     * @param clock timestamps the transfers, and ages them out
+     * @param retentionMillis how long transfers are kept
+     * @param maximumSize the maximum number of transfers kept
+     */
+    public TransferHistory(int scale, LedgerClock clock, long retentionMillis, int maximumSize) {
+        Preconditions.checkNotNull(clock);
+        Preconditions.checkArgument(retentionMillis > 0, "retentionMillis must be positive");
+        Preconditions.checkArgument(maximumSize > 0, "maximumSize must be positive");
+        this.scale = scale;
+        this.clock = clock;
+        this.retentionMillis = retentionMillis;
+        this.maximumSize = maximumSize;
+    }
+
+    @Override
+    public void onLedgerEvent(LedgerEvent ledgerEvent) {
+        onLedgerEvents(Collections.singletonList(ledgerEvent));
+    }
+
+    @Override
+    public void onLedgerEvents(List<LedgerEvent> ledgerEvents) {
+        long now = clock.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            for (LedgerEvent ledgerEvent : ledgerEvents) {
+                if (ledgerEvent instanceof LedgerTransferExecutedEvent) {
+                    LedgerTransferExecutedEvent executed = (LedgerTransferExecutedEvent) ledgerEvent;
+                    append(now, accountId(executed.getFromAccount()), accountId(executed.getToAccount()),
+                            MoneyUtils.toMinorUnits(executed.getAmount(), scale));
+                }
+            }
+            expire(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a transfer executed at the given time, or at the time of the
+     * last transfer if later.
+     */
+    public void append(long timestamp, String fromAccount, String toAccount, long amount) {
+        lock.writeLock().lock();
+        try {
+            append(timestamp, accountId(fromAccount), accountId(toAccount), amount);
+            expire(timestamp);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(long timestamp, int from, int to, long amount) {
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        long offset = nextOffset++;
+        int index = (int) (offset - chunksOffset);
+        if (index == chunks.size() * CHUNK_SIZE) {
+            chunks.add(new Chunk());
+        }
+        Chunk chunk = chunks.get(index / CHUNK_SIZE);
+        int i = index % CHUNK_SIZE;
+        chunk.timestamps[i] = lastTimestamp;
+        chunk.from[i] = from;
+        chunk.to[i] = to;
+        chunk.amounts[i] = amount;
+        postings.get(from).add(offset, firstOffset);
+        postings.get(to).add(offset, firstOffset);
+    }
+
+    private int accountId(String accountName) {
+        String key = AccountNames.canonical(accountName);
+        Integer id = accountIds.get(key);
+        if (id == null) {
+            if (freeAccountIds.isEmpty()) {
+                id = accountNames.size();
+                accountNames.add(accountName);
+                postings.add(new PostingList());
+            } else {
+                id = freeAccountIds.remove(freeAccountIds.size() - 1);
+                accountNames.set(id, accountName);
+                postings.set(id, new PostingList());
+            }
+            accountIds.put(key, id);
+        }
+        return id;
+    }
+
+    // Moves the first offset past the transfers to drop, then releases their chunks
+    private void expire(long now) {
+        firstOffset = Math.max(firstOffset, nextOffset - maximumSize);
+        long oldest = now - retentionMillis;
+        while (firstOffset < nextOffset && timestampAt(firstOffset) < oldest) {
+            firstOffset++;
+        }
+        while (firstOffset - chunksOffset >= CHUNK_SIZE) {
+            release(chunks.remove(0));
+            chunksOffset += CHUNK_SIZE;
+        }
+    }
+
+    // Trims the posting lists of the accounts of the chunk, and forgets the accounts left without transfers
+    private void release(Chunk chunk) {
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            trim(chunk.from[i]);
+            trim(chunk.to[i]);
+        }
+    }
+
+    private void trim(int accountId) {
+        PostingList posting = postings.get(accountId);
+        if (posting == null) {
+            return;
+        }
+        posting.trim(firstOffset);
+        if (posting.start == posting.size) {
+            accountIds.remove(AccountNames.canonical(accountNames.get(accountId)));
+            accountNames.set(accountId, null);
+            postings.set(accountId, null);
+            freeAccountIds.add(accountId);
+        }
+    }
+
+    /**
+     * @return the number of transfers kept
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return (int) (nextOffset - firstOffset);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the last transfers of the account, the most recent first
+     */
+    public List<TransferRecord> getLastTransfers(String accountName, int limit) {
+        Preconditions.checkNotNull(accountName);
+        Preconditions.checkArgument(limit >= 0, "limit must not be negative");
+        lock.readLock().lock();
+        try {
+            PostingList posting = postingOf(accountName);
+            if (posting == null) {
+                return Collections.emptyList();
+            }
+            List<TransferRecord> records = new ArrayList<TransferRecord>(Math.min(limit, posting.size));
+            for (int i = posting.size - 1; i >= posting.start && records.size() < limit; i--) {
+                long offset = posting.offsets[i];
+                if (offset < firstOffset) {
+                    break;
+                }
+                records.add(recordAt(offset));
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the transfers of the account executed from {@code fromMillis}
+     * included to {@code toMillis} excluded, the oldest first
+     */
+    public List<TransferRecord> getTransfers(String accountName, long fromMillis, long toMillis) {
+        Preconditions.checkNotNull(accountName);
+        lock.readLock().lock();
+        try {
+            PostingList posting = postingOf(accountName);
+            if (posting == null) {
+                return Collections.emptyList();
+            }
+            // First posting of a retained transfer executed from fromMillis
+            int low = posting.start;
+            int high = posting.size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                long offset = posting.offsets[middle];
+                if (offset < firstOffset || timestampAt(offset) < fromMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            List<TransferRecord> records = new ArrayList<TransferRecord>();
+            for (int i = low; i < posting.size; i++) {
+                long offset = posting.offsets[i];
+                if (timestampAt(offset) >= toMillis) {
+                    break;
+                }
+                records.add(recordAt(offset));
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the transfers executed from {@code fromMillis} included to
+     * {@code toMillis} excluded, the oldest first
+     */
+    public List<TransferRecord> getTransfers(long fromMillis, long toMillis) {
+        lock.readLock().lock();
+        try {
+            long low = firstOffset;
+            long high = nextOffset;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (timestampAt(middle) < fromMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            List<TransferRecord> records = new ArrayList<TransferRecord>();
+            for (long offset = low; offset < nextOffset && timestampAt(offset) < toMillis; offset++) {
+                records.add(recordAt(offset));
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private PostingList postingOf(String accountName) {
+        Integer id = accountIds.get(AccountNames.canonical(accountName));
+        if (id == null) {
+            return null;
+        }
+        return postings.get(id);
+    }
+
+    private long timestampAt(long offset) {
+        int index = (int) (offset - chunksOffset);
+        return chunks.get(index / CHUNK_SIZE).timestamps[index % CHUNK_SIZE];
+    }
+
+    private TransferRecord recordAt(long offset) {
+        int index = (int) (offset - chunksOffset);
+        Chunk chunk = chunks.get(index / CHUNK_SIZE);
+        int i = index % CHUNK_SIZE;
+        return new TransferRecord(offset, chunk.timestamps[i], accountNames.get(chunk.from[i]),
+                accountNames.get(chunk.to[i]), chunk.amounts[i], scale);
+    }
+
+    /**
+     * {@value #CHUNK_SIZE} transfers, by column.
+     */
+    private static final class Chunk {
+
+        private final long[] timestamps = new long[CHUNK_SIZE];
+        private final int[] from = new int[CHUNK_SIZE];
+        private final int[] to = new int[CHUNK_SIZE];
+        private final long[] amounts = new long[CHUNK_SIZE];
+    }
+
+    /**
+     * The offsets of the transfers of an account, in order.
+     */
+    private static final class PostingList {
+
+        private long[] offsets = new long[8];
+        // Offsets before start were dropped
+        private int start;
+        private int size;
+
+        void add(long offset, long firstOffset) {
+            if (size == offsets.length) {
+                trim(firstOffset);
+                grow();
+            }
+            offsets[size++] = offset;
+        }
+
+        void trim(long firstOffset) {
+            while (start < size && offsets[start] < firstOffset) {
+                start++;
+            }
+        }
+
+        private void grow() {
+            int retained = size - start;
+            if (retained <= offsets.length / 2) {
+                // Room is made by dropping the offsets skipped so far
+                System.arraycopy(offsets, start, offsets, 0, retained);
+            } else {
+                long[] grown = new long[offsets.length * 2];
+                System.arraycopy(offsets, start, grown, 0, retained);
+                offsets = grown;
+            }
+            size = retained;
+            start = 0;
+        }
+    }
+}
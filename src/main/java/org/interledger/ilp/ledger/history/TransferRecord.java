@@ -0,0 +1,69 @@
+package org.interledger.ilp.ledger.history;
+
+import java.math.BigDecimal;
+
+/**
+ * A transfer executed by a ledger, as kept by its {@link TransferHistory}.
+ *
+ * @author mrmx
+ */
+public final class TransferRecord {
+
+    private final long offset;
+    private final long timestamp;
+    private final String fromAccount;
+    private final String toAccount;
+    private final long amount;
+    private final int scale;
+
+    TransferRecord(long offset, long timestamp, String fromAccount, String toAccount, long amount, int scale) {
+        this.offset = offset;
+        this.timestamp = timestamp;
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.scale = scale;
+    }
+
+    /**
+     * @return the position of the transfer in the history, from 0
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return when the transfer was executed, in milliseconds since the
+     * epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getFromAccount() {
+        return fromAccount;
+    }
+
+    public String getToAccount() {
+        return toAccount;
+    }
+
+    public BigDecimal getAmount() {
+        return BigDecimal.valueOf(amount, scale);
+    }
+
+    public long getAmountInMinorUnits() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferRecord["
+                + "offset:" + offset
+                + " timestamp:" + timestamp
+                + " from:" + fromAccount
+                + " to:" + toAccount
+                + " amount:" + getAmount().toPlainString()
+                + "]";
+    }
+}
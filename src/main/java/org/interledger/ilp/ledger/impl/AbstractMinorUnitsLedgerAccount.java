@@ -0,0 +1,153 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.math.BigDecimal;
+import javax.money.MonetaryAmount;
+import org.apache.commons.lang.StringUtils;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.AccountNames;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+
+/**
+ * Base class of the accounts keeping their balance as {@code long} minor
+ * units. Subclasses only decide how the balance is stored and updated.
+ * <p>
+ * A {@link MonetaryAmount} is only materialized when {@link #getBalance()} is
+ * called, and reused while the balance does not change.
+ *
+ * @author mrmx
+ */
+public abstract class AbstractMinorUnitsLedgerAccount implements MinorUnitsLedgerAccount {
+
+    private final String name;
+    // Accounts are equal when their canonical names are
+    private final String canonicalName;
+    private final String currencyCode;
+    private final int scale;
+    private volatile MaterializedBalance materializedBalance;
+
+    protected AbstractMinorUnitsLedgerAccount(String name, String currencyCode, int scale) {
+        if (StringUtils.isEmpty(name)) {
+            throw new IllegalArgumentException("empty account name");
+        }
+        if (scale < 0 || scale > MoneyUtils.MAX_MINOR_UNITS_SCALE) {
+            throw new IllegalArgumentException("unsupported scale " + scale);
+        }
+        this.name = name;
+        this.canonicalName = AccountNames.canonical(name);
+        this.currencyCode = currencyCode;
+        this.scale = scale;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    @Override
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public MinorUnitsLedgerAccount setBalance(Number balance) {
+        return setBalanceInMinorUnits(MoneyUtils.toMinorUnits(balance, scale));
+    }
+
+    @Override
+    public MinorUnitsLedgerAccount setBalance(MonetaryAmount balance) {
+        return setBalanceInMinorUnits(MoneyUtils.toMinorUnits(balance, scale));
+    }
+
+    @Override
+    public MonetaryAmount getBalance() {
+        long current = getBalanceInMinorUnits();
+        MaterializedBalance materialized = materializedBalance;
+        if (materialized == null || materialized.minorUnits != current) {
+            materialized = new MaterializedBalance(current,
+                    MoneyUtils.toMonetaryAmount(current, scale, currencyCode));
+            materializedBalance = materialized;
+        }
+        return materialized.amount;
+    }
+
+    @Override
+    public String getBalanceAsString() {
+        return getBalanceAsNumber().toPlainString();
+    }
+
+    @Override
+    public BigDecimal getBalanceAsNumber() {
+        return MoneyUtils.toBigDecimal(getBalanceInMinorUnits(), scale);
+    }
+
+    public MinorUnitsLedgerAccount credit(String amount) {
+        return creditMinorUnits(MoneyUtils.toMinorUnits(amount, scale));
+    }
+
+    @Override
+    public MinorUnitsLedgerAccount credit(Number amount) {
+        return creditMinorUnits(MoneyUtils.toMinorUnits(amount, scale));
+    }
+
+    @Override
+    public MinorUnitsLedgerAccount credit(MonetaryAmount amount) {
+        return creditMinorUnits(MoneyUtils.toMinorUnits(amount, scale));
+    }
+
+    public MinorUnitsLedgerAccount debit(String amount) {
+        return debitMinorUnits(MoneyUtils.toMinorUnits(amount, scale));
+    }
+
+    @Override
+    public MinorUnitsLedgerAccount debit(Number amount) {
+        return debitMinorUnits(MoneyUtils.toMinorUnits(amount, scale));
+    }
+
+    @Override
+    public MinorUnitsLedgerAccount debit(MonetaryAmount amount) {
+        return debitMinorUnits(MoneyUtils.toMinorUnits(amount, scale));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !(obj instanceof AbstractMinorUnitsLedgerAccount)) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        return canonicalName.equals(((AbstractMinorUnitsLedgerAccount) obj).canonicalName);
+    }
+
+    @Override
+    public int hashCode() {
+        return canonicalName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Account["
+                + "name:" + name
+                + " balance:" + getBalanceAsString()
+                + "]";
+    }
+
+    /**
+     * Last balance handed out by {@link #getBalance()}.
+     */
+    private static final class MaterializedBalance {
+
+        private final long minorUnits;
+        private final MonetaryAmount amount;
+
+        MaterializedBalance(long minorUnits, MonetaryAmount amount) {
+            this.minorUnits = minorUnits;
+            this.amount = amount;
+        }
+    }
+}
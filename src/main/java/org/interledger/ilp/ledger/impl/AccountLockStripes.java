@@ -0,0 +1,125 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed table of locks indexed by account name.
+ * <p>
+ * Several accounts may share a stripe. When more than one account has to be
+ * locked, stripes are always acquired in ascending index order so two
+ * transfers touching the same accounts can never deadlock.
+ *
+ * @author mrmx
+ */
+public class AccountLockStripes {
+
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public AccountLockStripes() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes requested number of stripes, rounded up to a power of two
+     */
+    public AccountLockStripes(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    public int getStripes() {
+        return locks.length;
+    }
+
+    public int stripeOf(String accountName) {
+        int h = accountName.hashCode();
+        // Spread the high bits, same as java.util.HashMap
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & mask;
+    }
+
+    public void lock(String accountName) {
+        locks[stripeOf(accountName)].lock();
+    }
+
+    public void unlock(String accountName) {
+        locks[stripeOf(accountName)].unlock();
+    }
+
+    /**
+     * Locks the stripes of both accounts in ascending stripe order.
+     */
+    public void lock(String first, String second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        if (a == b) {
+            locks[a].lock();
+        } else if (a < b) {
+            locks[a].lock();
+            locks[b].lock();
+        } else {
+            locks[b].lock();
+            locks[a].lock();
+        }
+    }
+
+    public void unlock(String first, String second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        locks[a].unlock();
+        if (a != b) {
+            locks[b].unlock();
+        }
+    }
+
+    /**
+     * @return the sorted, distinct stripes of the given accounts
+     */
+    public int[] stripesOf(Collection<String> accountNames) {
+        int[] stripes = new int[accountNames.size()];
+        int count = 0;
+        for (String accountName : accountNames) {
+            stripes[count++] = stripeOf(accountName);
+        }
+        Arrays.sort(stripes);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || stripes[distinct - 1] != stripes[i]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+        return Arrays.copyOf(stripes, distinct);
+    }
+
+    /**
+     * Locks the given stripes, which must be sorted and distinct (see
+     * {@link #stripesOf(Collection)}).
+     */
+    public void lockAll(int[] stripes) {
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+    }
+
+    public void unlockAll(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import org.interledger.ilp.core.LedgerInfo;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.LockFreeLedgerAccount;
+
+/**
+ * Thread-safe ledger account whose {@code long} minor units balance is
+ * updated with compare-and-set, so it never needs a lock.
+ *
+ * @author mrmx
+ */
+public class AtomicLedgerAccount extends AbstractMinorUnitsLedgerAccount implements LockFreeLedgerAccount {
+
+    private static final AtomicLongFieldUpdater<AtomicLedgerAccount> BALANCE_UPDATER
+            = AtomicLongFieldUpdater.newUpdater(AtomicLedgerAccount.class, "balance");
+
+    private volatile long balance;
+
+    public AtomicLedgerAccount(String name, LedgerInfo info) {
+        this(name, info.getCurrencyCode(), info.getScale());
+    }
+
+    public AtomicLedgerAccount(String name, String currencyCode, int scale) {
+        super(name, currencyCode, scale);
+    }
+
+    @Override
+    public AtomicLedgerAccount setBalanceInMinorUnits(long balance) {
+        this.balance = balance;
+        return this;
+    }
+
+    @Override
+    public long getBalanceInMinorUnits() {
+        return balance;
+    }
+
+    @Override
+    public AtomicLedgerAccount creditMinorUnits(long amount) {
+        long current;
+        do {
+            current = balance;
+        } while (!BALANCE_UPDATER.compareAndSet(this, current, MoneyUtils.addExact(current, amount)));
+        return this;
+    }
+
+    @Override
+    public AtomicLedgerAccount debitMinorUnits(long amount) {
+        long current;
+        do {
+            current = balance;
+        } while (!BALANCE_UPDATER.compareAndSet(this, current, MoneyUtils.subtractExact(current, amount)));
+        return this;
+    }
+
+    @Override
+    public boolean tryDebitMinorUnits(long amount) {
+        long current;
+        do {
+            current = balance;
+            if (current < amount) {
+                return false;
+            }
+        } while (!BALANCE_UPDATER.compareAndSet(this, current, MoneyUtils.subtractExact(current, amount)));
+        return true;
+    }
+}
@@ -0,0 +1,44 @@
+package org.interledger.ilp.ledger.impl;
+
+import org.interledger.ilp.core.LedgerInfo;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+
+/**
+ * Balance representations available for the accounts of a {@link SimpleLedger}.
+ *
+ * @author mrmx
+ */
+public enum BalanceEngine {
+
+    /**
+     * {@link SimpleLedgerAccount}: balances are {@code Money} amounts.
+     */
+    MONEY {
+        @Override
+        public LedgerAccount createAccount(String name, LedgerInfo info) {
+            return new SimpleLedgerAccount(name, info.getCurrencyCode());
+        }
+    },
+    /**
+     * {@link FixedPointLedgerAccount}: balances are {@code long} minor units
+     * scaled by {@link LedgerInfo#getScale()}.
+     */
+    FIXED_POINT {
+        @Override
+        public LedgerAccount createAccount(String name, LedgerInfo info) {
+            return new FixedPointLedgerAccount(name, info);
+        }
+    },
+    /**
+     * {@link AtomicLedgerAccount}: thread-safe {@code long} minor units
+     * balances updated with compare-and-set.
+     */
+    ATOMIC {
+        @Override
+        public LedgerAccount createAccount(String name, LedgerInfo info) {
+            return new AtomicLedgerAccount(name, info);
+        }
+    };
+
+    public abstract LedgerAccount createAccount(String name, LedgerInfo info);
+}
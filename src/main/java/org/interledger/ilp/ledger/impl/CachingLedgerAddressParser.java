@@ -0,0 +1,57 @@
+package org.interledger.ilp.ledger.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers the last addresses parsed by another parser.
+ * <p>
+ * Worth it when the same destinations are used over and over: a repeated
+ * address costs a lookup instead of a parse. The least recently used
+ * addresses are evicted past the maximum size. Malformed addresses are not
+ * cached.
+ *
+ * @author mrmx
+ */
+public class CachingLedgerAddressParser implements LedgerAddressParser {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final LedgerAddressParser parser;
+    private final Cache<String, LedgerAddress> addresses;
+
+    public CachingLedgerAddressParser(LedgerAddressParser parser) {
+        this(parser, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public CachingLedgerAddressParser(LedgerAddressParser parser, int maximumSize) {
+        Preconditions.checkNotNull(parser);
+        Preconditions.checkArgument(maximumSize > 0, "maximum size must be positive");
+        this.parser = parser;
+        this.addresses = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .build();
+    }
+
+    @Override
+    public LedgerAddress parse(String address) throws LedgerAddressParserException {
+        if (address == null) {
+            return parser.parse(address);
+        }
+        LedgerAddress parsed = addresses.getIfPresent(address);
+        if (parsed == null) {
+            parsed = parser.parse(address);
+            addresses.put(address, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * @return the number of cached addresses
+     */
+    public long size() {
+        return addresses.size();
+    }
+}
@@ -0,0 +1,37 @@
+package org.interledger.ilp.ledger.impl;
+
+/**
+ * How {@link SimpleLedger} protects account balances while committing a
+ * transfer.
+ *
+ * @author mrmx
+ */
+public enum ConcurrencyMode {
+
+    /**
+     * No synchronization: callers must serialize transfers themselves. Once
+     * a conditional transfer is prepared, expiries and fulfillments update
+     * balances from the ledger's own threads, so from then on the accounts
+     * are locked as with {@link #STRIPED_LOCKS}.
+     */
+    UNSYNCHRONIZED,
+    /**
+     * Only the stripes of the two accounts involved are locked, so transfers
+     * between disjoint accounts run in parallel.
+     */
+    STRIPED_LOCKS,
+    /**
+     * Transfers between two {@link org.interledger.ilp.ledger.account.LockFreeLedgerAccount}s
+     * commit without any lock: the source is debited with an atomic
+     * check-and-debit and the destination credited afterwards. Any other
+     * transfer falls back to {@link #STRIPED_LOCKS}.
+     */
+    LOCK_FREE,
+    /**
+     * Accounts are split into shards, each with a single thread applying the
+     * transfers of its accounts without locks (see
+     * {@link ShardedTransferExecutor}). Only unconditional transfers sent one
+     * at a time are supported, without a journal.
+     */
+    SHARDED
+}
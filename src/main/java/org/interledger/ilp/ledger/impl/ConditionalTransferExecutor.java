@@ -0,0 +1,383 @@
+package org.interledger.ilp.ledger.impl;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import javax.money.MonetaryAmount;
+import org.interledger.cryptoconditions.Condition;
+import org.interledger.cryptoconditions.Fulfillment;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.LedgerTransferRejectedReason;
+import org.interledger.ilp.core.LedgerTransferStatus;
+import org.interledger.ilp.core.events.LedgerTransferExecutedEvent;
+import org.interledger.ilp.core.events.LedgerTransferPreparedEvent;
+import org.interledger.ilp.core.events.LedgerTransferRejectedEvent;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.core.exceptions.LedgerTransferException;
+import org.interledger.ilp.ledger.ILPTransfer;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.LockFreeLedgerAccount;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+import org.interledger.ilp.ledger.journal.LedgerJournal;
+
+/**
+ * Runs the two phases of the conditional transfers of a {@link SimpleLedger}.
+ * <p>
+ * Preparing a transfer takes the amount from the source account into its held
+ * balance. A matching fulfillment then credits the held funds to the
+ * destination, while a rejection gives them back to the source. Fulfillments
+ * go through a {@link FulfillmentPipeline}.
+ * <p>
+ * Holds past their expiry are rejected by a {@link TransferExpiryScheduler},
+ * and can't be executed even if it hasn't got to them yet.
+ * <p>
+ * Holds are kept in memory only. The journal records a conditional transfer
+ * when it is executed, so after a restart the funds of the holds still
+ * pending are back on their source account, as if they had been rejected.
+ *
+ * @author mrmx
+ */
+final class ConditionalTransferExecutor {
+
+    private static final byte[] EMPTY_MESSAGE = new byte[0];
+
+    private final SimpleLedger ledger;
+    private final TransferHoldStore holds;
+    private final TransferExpiryScheduler expiryScheduler;
+    private final FulfillmentPipeline fulfillmentPipeline;
+    private final int scale;
+    private final String currencyCode;
+
+    ConditionalTransferExecutor(SimpleLedger ledger, TransferHoldStore holds) {
+        this.ledger = ledger;
+        this.holds = holds;
+        this.expiryScheduler = new TransferExpiryScheduler(this, TransferExpiryScheduler.DEFAULT_TICK_MILLIS);
+        this.fulfillmentPipeline = new FulfillmentPipeline(ledger, this);
+        this.scale = ledger.getInfo().getScale();
+        this.currencyCode = ledger.getInfo().getCurrencyCode();
+    }
+
+    /**
+     * @param entry completed with the success of the transfer as soon as
+     * it's prepared, if not {@code null}
+     */
+    void prepare(LedgerTransfer transfer, TransferDedupIndex.Entry entry) {
+        String transferId = idOf(transfer);
+        LedgerAccount from = ledger.getLedgerAccountManager().getAccountByName(transfer.getFromAccount());
+        LedgerAccount to = ledger.getLedgerAccountManager().getAccountByName(transfer.getToAccount());
+        if (to.equals(from)) {
+            throw new RuntimeException("accounts are the same");
+        }
+        Condition condition = transfer.getHeader().getCondition();
+        ILPTransfer ilpTransfer = new ILPTransfer(transferId, ledger.getName(), condition,
+                transfer.getHeader().getExpiry(), ledger.getClock());
+        TransferHold hold = new TransferHold(ilpTransfer, transfer, from, to,
+                MoneyUtils.toMinorUnits(transfer.getAmount(), scale));
+        if (hold.getExpirationMillis() <= currentTimeMillis()) {
+            throw new LedgerTransferException("Transfer " + transferId + " has already expired");
+        }
+        // Expiries and fulfillments update balances from other threads from now on
+        ledger.enableLocking();
+        Lock gate = ledger.getCommitGate();
+        if (gate != null) {
+            gate.lock();
+        }
+        try {
+            AccountLockStripes stripes = lock(from);
+            try {
+                ledger.captureForSnapshot(from, to);
+                debit(from, hold.getAmount());
+                ilpTransfer.setStatus(LedgerTransferStatus.PREPARED);
+                if (!holds.add(hold)) {
+                    credit(from, hold.getAmount());
+                    throw new LedgerTransferException("Transfer " + transferId + " already exists");
+                }
+            } finally {
+                unlock(stripes, from);
+            }
+        } finally {
+            if (gate != null) {
+                gate.unlock();
+            }
+        }
+        if (entry != null) {
+            entry.complete(null);
+        }
+        // Once the hold is visible: its expiry is harmless if it's completed meanwhile
+        hold.setExpiryTimeout(expiryScheduler.schedule(hold));
+        ledger.notifyEventHandlers(new LedgerTransferPreparedEvent(ledger, transfer.getHeader(),
+                transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount()));
+    }
+
+    /**
+     * Executes the transfers prepared with the condition of the fulfillment,
+     * once it has been verified by the {@link FulfillmentPipeline}.
+     *
+     * @param transferId the only transfer to execute, or {@code null} for all
+     * the transfers waiting for the condition
+     * @return completed once the transfers are executed, or with the reason
+     * none could be
+     */
+    ListenableFuture<Void> fulfill(String transferId, Fulfillment fulfillment) {
+        return fulfillmentPipeline.submit(transferId, fulfillment);
+    }
+
+    /**
+     * Checks the fulfillment and finds the transfers it executes. Nothing is
+     * changed, so it runs on any thread ahead of {@link #commit}.
+     *
+     * @see #fulfill(String, Fulfillment)
+     */
+    List<TransferHold> verify(String transferId, Fulfillment fulfillment) {
+        Condition condition = fulfillment.generateCondition();
+        if (!fulfillment.validate(EMPTY_MESSAGE)) {
+            throw new LedgerTransferException("Invalid fulfillment");
+        }
+        byte[] fingerprint = condition.getFingerprint();
+        if (transferId == null) {
+            List<TransferHold> fulfilled = holds.getByCondition(fingerprint);
+            if (fulfilled.isEmpty()) {
+                throw new LedgerTransferException("No transfer prepared for the fulfillment");
+            }
+            return fulfilled;
+        }
+        TransferHold hold = getHold(transferId);
+        if (!Arrays.equals(fingerprint, hold.getILPTransfer().getCondition().getFingerprint())) {
+            throw new LedgerTransferException("Fulfillment doesn't match the condition of transfer " + transferId);
+        }
+        return Collections.singletonList(hold);
+    }
+
+    void reject(String transferId, LedgerTransferRejectedReason reason) {
+        TransferHold hold = getHold(transferId);
+        if (!holds.claim(hold)) {
+            throw new LedgerTransferException("Transfer " + transferId + " is no longer prepared");
+        }
+        cancelExpiry(hold);
+        release(hold, reason);
+    }
+
+    /**
+     * Rejects the hold as timed out, unless it's already completed.
+     */
+    void expire(TransferHold hold) {
+        if (holds.claim(hold)) {
+            release(hold, LedgerTransferRejectedReason.TIMED_OUT);
+        }
+    }
+
+    /**
+     * Stops expiring holds and accepting fulfillments.
+     */
+    void close() {
+        expiryScheduler.close();
+        fulfillmentPipeline.close();
+    }
+
+    /**
+     * @return whether the commit thread of the fulfillments is running
+     */
+    boolean isFulfillmentCommitterRunning() {
+        return fulfillmentPipeline.isCommitterRunning();
+    }
+
+    /**
+     * @return the number of holds waiting to expire
+     */
+    int getScheduledExpiries() {
+        return expiryScheduler.size();
+    }
+
+    // Gives the funds of a claimed hold back to its source account
+    private void release(TransferHold hold, LedgerTransferRejectedReason reason) {
+        LedgerAccount from = hold.getFrom();
+        Lock gate = ledger.getCommitGate();
+        if (gate != null) {
+            gate.lock();
+        }
+        try {
+            AccountLockStripes stripes = lock(from);
+            try {
+                ledger.captureForSnapshot(from, hold.getTo());
+                credit(from, hold.getAmount());
+                holds.release(hold);
+            } finally {
+                unlock(stripes, from);
+            }
+        } finally {
+            if (gate != null) {
+                gate.unlock();
+            }
+        }
+        hold.getILPTransfer().setStatus(LedgerTransferStatus.REJECTED);
+        LedgerTransfer transfer = hold.getTransfer();
+        ledger.notifyEventHandlers(new LedgerTransferRejectedEvent(ledger, transfer.getHeader(),
+                transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount(), reason));
+    }
+
+    /**
+     * Executes a verified hold and appends it to the journal.
+     *
+     * @return the journal position to wait for before completing the
+     * execution, 0 without journal
+     */
+    long commit(TransferHold hold) {
+        LedgerJournal journal = ledger.getJournal();
+        if (journal != null) {
+            journal.checkWritable();
+        }
+        if (hold.getExpirationMillis() <= currentTimeMillis()) {
+            expire(hold);
+            throw new LedgerTransferException("Transfer " + hold.getId() + " has expired");
+        }
+        if (!holds.claim(hold)) {
+            throw new LedgerTransferException("Transfer " + hold.getId() + " is no longer prepared");
+        }
+        LedgerAccount from = hold.getFrom();
+        LedgerAccount to = hold.getTo();
+        long journalPosition = 0;
+        Lock gate = ledger.getCommitGate();
+        if (gate != null) {
+            gate.lock();
+        }
+        try {
+            // Runs on the committer thread: locked even if the caller's transfers aren't
+            AccountLockStripes stripes = lock(from, to);
+            try {
+                ledger.captureForSnapshot(from, to);
+                try {
+                    credit(to, hold.getAmount());
+                } catch (ArithmeticException ex) {
+                    // Destination overflow: the transfer stays prepared
+                    holds.restore(hold);
+                    throw ex;
+                }
+                holds.release(hold);
+                if (journal != null) {
+                    journalPosition = journal.appendTransfer(from.getName(), to.getName(), hold.getAmount());
+                }
+            } finally {
+                unlock(stripes, from, to);
+            }
+        } finally {
+            if (gate != null) {
+                gate.unlock();
+            }
+        }
+        cancelExpiry(hold);
+        return journalPosition;
+    }
+
+    /**
+     * Marks a committed hold as executed, once durable, and notifies it.
+     */
+    void completeExecution(TransferHold hold, Fulfillment fulfillment) {
+        ILPTransfer ilpTransfer = hold.getILPTransfer();
+        ilpTransfer.setExecutionFulfillment(fulfillment);
+        ilpTransfer.setStatus(LedgerTransferStatus.EXECUTED);
+        LedgerTransfer transfer = hold.getTransfer();
+        ledger.notifyEventHandlers(new LedgerTransferExecutedEvent(ledger, transfer.getHeader(),
+                transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount()));
+    }
+
+    long currentTimeMillis() {
+        return ledger.getClock().currentTimeMillis();
+    }
+
+    private void cancelExpiry(TransferHold hold) {
+        TimingWheel.Timeout<TransferHold> timeout = hold.getExpiryTimeout();
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private TransferHold getHold(String transferId) {
+        TransferHold hold = holds.get(transferId);
+        if (hold == null) {
+            throw new LedgerTransferException("No prepared transfer " + transferId);
+        }
+        return hold;
+    }
+
+    static String idOf(LedgerTransfer transfer) {
+        String transferId = transfer instanceof LedgerTransferBuilder.LedgerTransferImpl
+                ? ((LedgerTransferBuilder.LedgerTransferImpl) transfer).getId() : null;
+        if (transferId == null) {
+            throw new IllegalArgumentException("Transfer without id: " + transfer);
+        }
+        return transferId;
+    }
+
+    private void debit(LedgerAccount account, long amount) {
+        boolean debited;
+        if (isNative(account)) {
+            MinorUnitsLedgerAccount minorUnitsAccount = (MinorUnitsLedgerAccount) account;
+            if (account instanceof LockFreeLedgerAccount) {
+                // May be debited concurrently outside of any lock
+                debited = ((LockFreeLedgerAccount) account).tryDebitMinorUnits(amount);
+            } else {
+                debited = minorUnitsAccount.getBalanceInMinorUnits() >= amount;
+                if (debited) {
+                    minorUnitsAccount.debitMinorUnits(amount);
+                }
+            }
+        } else {
+            MonetaryAmount monetaryAmount = toMonetaryAmount(amount);
+            debited = account.getBalance().isGreaterThanOrEqualTo(monetaryAmount);
+            if (debited) {
+                account.debit(monetaryAmount);
+            }
+        }
+        if (!debited) {
+            throw new InsufficientAmountException(toMonetaryAmount(amount).toString());
+        }
+    }
+
+    private void credit(LedgerAccount account, long amount) {
+        if (isNative(account)) {
+            ((MinorUnitsLedgerAccount) account).creditMinorUnits(amount);
+        } else {
+            account.credit(toMonetaryAmount(amount));
+        }
+    }
+
+    private boolean isNative(LedgerAccount account) {
+        return account instanceof MinorUnitsLedgerAccount && ((MinorUnitsLedgerAccount) account).getScale() == scale;
+    }
+
+    private MonetaryAmount toMonetaryAmount(long amount) {
+        return MoneyUtils.toMonetaryAmount(amount, scale, currencyCode);
+    }
+
+    // Returns the locks taken, to be released even if locking was enabled meanwhile
+    private AccountLockStripes lock(LedgerAccount account) {
+        AccountLockStripes stripes = ledger.getLockStripes();
+        if (stripes != null) {
+            stripes.lock(account.getName());
+        }
+        return stripes;
+    }
+
+    private static void unlock(AccountLockStripes stripes, LedgerAccount account) {
+        if (stripes != null) {
+            stripes.unlock(account.getName());
+        }
+    }
+
+    private AccountLockStripes lock(LedgerAccount from, LedgerAccount to) {
+        AccountLockStripes stripes = ledger.getLockStripes();
+        if (stripes != null) {
+            stripes.lock(from.getName(), to.getName());
+        }
+        return stripes;
+    }
+
+    private static void unlock(AccountLockStripes stripes, LedgerAccount from, LedgerAccount to) {
+        if (stripes != null) {
+            stripes.unlock(from.getName(), to.getName());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.interledger.ilp.ledger.impl;
+
+import org.interledger.ilp.core.LedgerInfo;
+import org.interledger.ilp.ledger.MoneyUtils;
+
+/**
+ * Ledger account keeping its balance as a {@code long} amount of minor units
+ * (eg: cents for a scale of 2).
+ * <p>
+ * Arithmetic is overflow-checked. Like {@link SimpleLedgerAccount} this class
+ * is not thread-safe.
+ *
+ * @author mrmx
+ */
+public class FixedPointLedgerAccount extends AbstractMinorUnitsLedgerAccount {
+
+    private long balance;
+
+    public FixedPointLedgerAccount(String name, LedgerInfo info) {
+        this(name, info.getCurrencyCode(), info.getScale());
+    }
+
+    public FixedPointLedgerAccount(String name, String currencyCode, int scale) {
+        super(name, currencyCode, scale);
+    }
+
+    @Override
+    public FixedPointLedgerAccount setBalanceInMinorUnits(long balance) {
+        this.balance = balance;
+        return this;
+    }
+
+    @Override
+    public long getBalanceInMinorUnits() {
+        return balance;
+    }
+
+    @Override
+    public FixedPointLedgerAccount creditMinorUnits(long minorUnits) {
+        balance = MoneyUtils.addExact(balance, minorUnits);
+        return this;
+    }
+
+    @Override
+    public FixedPointLedgerAccount debitMinorUnits(long minorUnits) {
+        balance = MoneyUtils.subtractExact(balance, minorUnits);
+        return this;
+    }
+}
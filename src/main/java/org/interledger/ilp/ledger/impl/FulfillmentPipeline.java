@@ -0,0 +1,281 @@
+package org.interledger.ilp.ledger.impl;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.interledger.cryptoconditions.Fulfillment;
+import org.interledger.ilp.core.exceptions.LedgerTransferException;
+import org.interledger.ilp.ledger.journal.LedgerJournal;
+
+/**
+ * Executes the fulfillments of a ledger in two stages.
+ * <p>
+ * Verifying a fulfillment (hashes, signatures) is the expensive part, and
+ * doesn't change anything: it runs on a pool with a thread per core. The
+ * verified fulfillments then go, in the order they were submitted, to a
+ * single commit thread that executes their transfers. The commit thread
+ * takes every fulfillment ready at once and waits for the journal once for
+ * all of them. It's started by the first fulfillment and stops once it has
+ * been idle for {@value #KEEP_ALIVE_MILLIS} ms, or right away once closed.
+ *
+ * @author mrmx
+ */
+final class FulfillmentPipeline implements Runnable {
+
+    static final int CAPACITY = 16384;
+    static final int MAX_BATCH = 256;
+    static final long KEEP_ALIVE_MILLIS = 60000;
+    // Queued by close to wake up the commit thread
+    private static final PendingFulfillment WAKE_UP = new PendingFulfillment(null, null);
+
+    private final SimpleLedger ledger;
+    private final ConditionalTransferExecutor executor;
+    private final ThreadPoolExecutor verifiers;
+    private final BlockingQueue<PendingFulfillment> pending = new ArrayBlockingQueue<PendingFulfillment>(CAPACITY);
+    // A slot of the queue is reserved before taking the monitor, so a full queue doesn't block close
+    private final Semaphore slots = new Semaphore(CAPACITY);
+    private volatile Thread committer;
+    private volatile boolean closed;
+
+    FulfillmentPipeline(SimpleLedger ledger, ConditionalTransferExecutor executor) {
+        this.ledger = ledger;
+        this.executor = executor;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.verifiers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("ledger-fulfillment-verifier-"));
+        // Idle ledgers keep no threads
+        this.verifiers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a fulfillment. Blocks, without holding the pipeline monitor,
+     * while {@value #CAPACITY} fulfillments are waiting to be committed.
+     *
+     * @see ConditionalTransferExecutor#fulfill(String, Fulfillment)
+     */
+    ListenableFuture<Void> submit(final String transferId, final Fulfillment fulfillment) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LedgerTransferException("Interrupted", ex);
+        }
+        PendingFulfillment fulfillmentPending = null;
+        try {
+            // The queue order is the commit order
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("Ledger closed");
+                }
+                Future<List<TransferHold>> verification = verifiers.submit(new Callable<List<TransferHold>>() {
+                    @Override
+                    public List<TransferHold> call() {
+                        return executor.verify(transferId, fulfillment);
+                    }
+                });
+                fulfillmentPending = new PendingFulfillment(fulfillment, verification);
+                pending.add(fulfillmentPending);
+                startCommitter();
+            }
+        } finally {
+            if (fulfillmentPending == null) {
+                slots.release();
+            }
+        }
+        return fulfillmentPending.result;
+    }
+
+    /**
+     * Stops accepting fulfillments. The ones already submitted are still
+     * committed.
+     */
+    synchronized void close() {
+        closed = true;
+        verifiers.shutdown();
+        // Without a free slot, the commit thread is busy and sees it's closed once done
+        if (committer != null && slots.tryAcquire()) {
+            pending.add(WAKE_UP);
+        }
+    }
+
+    boolean isCommitterRunning() {
+        return committer != null;
+    }
+
+    private void startCommitter() {
+        if (committer == null) {
+            Thread started = new Thread(this, "ledger-fulfillment-committer");
+            started.setDaemon(true);
+            committer = started;
+            started.start();
+        }
+    }
+
+    @Override
+    public void run() {
+        List<PendingFulfillment> batch = new ArrayList<PendingFulfillment>(MAX_BATCH);
+        while (true) {
+            PendingFulfillment first;
+            try {
+                first = closed ? pending.poll() : pending.poll(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            if (first == null) {
+                // Submitters queue and start the commit thread under the monitor
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        committer = null;
+                        return;
+                    }
+                }
+                continue;
+            }
+            batch.add(first);
+            pending.drainTo(batch, MAX_BATCH - 1);
+            slots.release(batch.size());
+            batch.remove(WAKE_UP);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<PendingFulfillment> batch) {
+        long journalPosition = 0;
+        for (PendingFulfillment fulfillmentPending : batch) {
+            List<TransferHold> fulfilled;
+            try {
+                fulfilled = awaitVerification(fulfillmentPending.verification);
+            } catch (RuntimeException ex) {
+                fulfillmentPending.failure = ex;
+                continue;
+            }
+            RuntimeException failure = null;
+            for (TransferHold hold : fulfilled) {
+                try {
+                    journalPosition = Math.max(journalPosition, executor.commit(hold));
+                    fulfillmentPending.executed.add(hold);
+                } catch (RuntimeException ex) {
+                    // Expired, or completed meanwhile
+                    failure = ex;
+                }
+            }
+            if (fulfillmentPending.executed.isEmpty()) {
+                fulfillmentPending.failure = failure;
+            }
+        }
+        RuntimeException journalFailure = null;
+        LedgerJournal journal = ledger.getJournal();
+        if (journal != null && journalPosition > 0) {
+            try {
+                journal.awaitDurable(journalPosition);
+            } catch (RuntimeException ex) {
+                journalFailure = ex;
+            }
+        }
+        for (PendingFulfillment fulfillmentPending : batch) {
+            if (fulfillmentPending.failure != null) {
+                fulfillmentPending.result.setException(fulfillmentPending.failure);
+            } else if (journalFailure != null) {
+                fulfillmentPending.result.setException(journalFailure);
+            } else {
+                try {
+                    for (TransferHold hold : fulfillmentPending.executed) {
+                        executor.completeExecution(hold, fulfillmentPending.fulfillment);
+                    }
+                    fulfillmentPending.result.set(null);
+                } catch (RuntimeException ex) {
+                    fulfillmentPending.result.setException(ex);
+                }
+            }
+        }
+    }
+
+    private static List<TransferHold> awaitVerification(Future<List<TransferHold>> verification) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return verification.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    }
+                    throw new LedgerTransferException("Can't verify fulfillment", ex.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for a fulfillment submitted to the pipeline.
+     *
+     * @throws RuntimeException the reason no transfer was executed
+     */
+    static void await(Future<Void> result) {
+        try {
+            result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LedgerTransferException("Interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new LedgerTransferException("Fulfillment failed", ex.getCause());
+        }
+    }
+
+    /**
+     * A fulfillment on its way through the pipeline.
+     */
+    private static final class PendingFulfillment {
+
+        private final Fulfillment fulfillment;
+        private final Future<List<TransferHold>> verification;
+        private final SettableFuture<Void> result = SettableFuture.create();
+        // Only used by the commit thread
+        private final List<TransferHold> executed = new ArrayList<TransferHold>(1);
+        private RuntimeException failure;
+
+        PendingFulfillment(Fulfillment fulfillment, Future<List<TransferHold>> verification) {
+            this.fulfillment = fulfillment;
+            this.verification = verification;
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.interledger.ilp.ledger.impl;
+
+/**
+ * An address parsed into account and ledger.
+ *
+ * @author mrmx
+ */
+public final class LedgerAddress {
+
+    private final String accountName;
+    private final String ledgerName;
+
+    public LedgerAddress(String accountName, String ledgerName) {
+        if (accountName == null || ledgerName == null) {
+            throw new IllegalArgumentException("null account or ledger name");
+        }
+        this.accountName = accountName;
+        this.ledgerName = ledgerName;
+    }
+
+    public String getAccountName() {
+        return accountName;
+    }
+
+    public String getLedgerName() {
+        return ledgerName;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LedgerAddress)) {
+            return false;
+        }
+        LedgerAddress other = (LedgerAddress) obj;
+        return accountName.equals(other.accountName) && ledgerName.equals(other.ledgerName);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * accountName.hashCode() + ledgerName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "LedgerAddress[account:" + accountName + " ledger:" + ledgerName + "]";
+    }
+}
@@ -1,12 +1,17 @@
 package org.interledger.ilp.ledger.impl;
 
 /**
- * Parses addresses into account and ledger
- * 
+ * Parses addresses into account and ledger.
+ * <p>
+ * Implementations are thread safe, so one parser may be shared.
+ *
  * @author mrmx
  */
-interface LedgerAddressParser {
-   void parse(String address) throws LedgerAddressParserException;
-   String getAccountName();
-   String getLedgerName();
+public interface LedgerAddressParser {
+
+    /**
+     * @return the account and ledger of the address
+     * @throws LedgerAddressParserException if the address is malformed
+     */
+    LedgerAddress parse(String address) throws LedgerAddressParserException;
 }
@@ -0,0 +1,58 @@
+package org.interledger.ilp.ledger.impl;
+
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.LedgerAccountManager;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+import org.interledger.ilp.ledger.journal.LedgerJournalListener;
+
+/**
+ * Rebuilds the accounts of a {@link SimpleLedger} from its journal.
+ *
+ * @author mrmx
+ */
+class LedgerJournalReplayer implements LedgerJournalListener {
+
+    private final SimpleLedger ledger;
+    private final LedgerAccountManager accountManager;
+    private final int scale;
+    private final String currencyCode;
+
+    LedgerJournalReplayer(SimpleLedger ledger, LedgerAccountManager accountManager) {
+        this.ledger = ledger;
+        this.accountManager = accountManager;
+        this.scale = ledger.getInfo().getScale();
+        this.currencyCode = ledger.getInfo().getCurrencyCode();
+    }
+
+    @Override
+    public void onAccountCreated(String accountName, long balance) {
+        LedgerAccount account = ledger.createAccount(accountName);
+        if (isNative(account)) {
+            ((MinorUnitsLedgerAccount) account).setBalanceInMinorUnits(balance);
+        } else {
+            account.setBalance(MoneyUtils.toMonetaryAmount(balance, scale, currencyCode));
+        }
+        accountManager.addAccount(account);
+    }
+
+    @Override
+    public void onTransfer(String fromAccount, String toAccount, long amount) {
+        LedgerAccount from = accountManager.getAccountByName(fromAccount);
+        LedgerAccount to = accountManager.getAccountByName(toAccount);
+        if (isNative(from)) {
+            ((MinorUnitsLedgerAccount) from).debitMinorUnits(amount);
+        } else {
+            from.debit(MoneyUtils.toMonetaryAmount(amount, scale, currencyCode));
+        }
+        if (isNative(to)) {
+            ((MinorUnitsLedgerAccount) to).creditMinorUnits(amount);
+        } else {
+            to.credit(MoneyUtils.toMonetaryAmount(amount, scale, currencyCode));
+        }
+    }
+
+    private boolean isNative(LedgerAccount account) {
+        return account instanceof MinorUnitsLedgerAccount && ((MinorUnitsLedgerAccount) account).getScale() == scale;
+    }
+}
@@ -1,6 +1,7 @@
 package org.interledger.ilp.ledger.impl;
 
 import java.util.Date;
+import java.util.UUID;
 import javax.money.MonetaryAmount;
 import org.apache.commons.lang.StringUtils;
 import org.interledger.cryptoconditions.Condition;
@@ -17,6 +18,7 @@ import org.interledger.ilp.ledger.account.LedgerAccount;
 public class LedgerTransferBuilder {
     
     private LedgerAddressParser ledgerAddressParser;
+    private String id;
     private String destinationAddress;
     private String from, to;
     private MonetaryAmount amount;
@@ -29,7 +31,7 @@ public class LedgerTransferBuilder {
     }
 
     public static LedgerTransferBuilder instance() {
-        return new LedgerTransferBuilder().withLedgerAddressParser(new SimpleLedgerAddressParser());
+        return new LedgerTransferBuilder().withLedgerAddressParser(SimpleLedgerAddressParser.getDefault());
     }
 
     public LedgerTransferBuilder withLedgerAddressParser(LedgerAddressParser ledgerAddressParser) {
@@ -37,6 +39,15 @@ public class LedgerTransferBuilder {
         return this;
     }
 
+    /**
+     * Identifies the transfer. Conditional transfers without one get a random
+     * UUID.
+     */
+    public LedgerTransferBuilder id(String id) {
+        this.id = id;
+        return this;
+    }
+
     public LedgerTransferBuilder destination(String destinationAddress) {
         this.destinationAddress = destinationAddress;
         return this;
@@ -95,11 +106,11 @@ public class LedgerTransferBuilder {
             throw new InsufficientAmountException(amount.toString());
         }        
         LedgerTransferImpl ledgerTransfer = new LedgerTransferImpl();
+        ledgerTransfer.id = id == null && condition != null ? UUID.randomUUID().toString() : id;
         ledgerTransfer.destinationAddress = destinationAddress;
         ledgerTransfer.from = from;
         if(StringUtils.isEmpty(to)) {
-            ledgerAddressParser.parse(destinationAddress);
-            to = ledgerAddressParser.getAccountName();
+            to = ledgerAddressParser.parse(destinationAddress).getAccountName();
         }
         ledgerTransfer.to = to;
         ledgerTransfer.amount = amount.getNumber().toString();
@@ -113,6 +124,7 @@ public class LedgerTransferBuilder {
     public static final class LedgerTransferImpl implements LedgerTransfer {
 
         private InterledgerPacketHeader packetHeader;
+        private String id;
         private String destinationAddress;
         private String from, to;
         private String amount;
@@ -128,6 +140,14 @@ public class LedgerTransferBuilder {
             return packetHeader;
         }
 
+        /**
+         * @return the transfer id, or {@code null} for an unconditional
+         * transfer built without one
+         */
+        public String getId() {
+            return id;
+        }
+
         public String getFromAccount() {
             return from;
         }
@@ -151,7 +171,8 @@ public class LedgerTransferBuilder {
         @Override
         public String toString() {
             return "LedgerTransfer["
-                    + "destination:" + destinationAddress
+                    + "id:" + id
+                    + " destination:" + destinationAddress
                     + " from:" + from
                     + " to:" + to
                     + " amount:" + amount
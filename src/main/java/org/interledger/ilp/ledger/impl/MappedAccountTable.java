@@ -0,0 +1,368 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import org.interledger.ilp.ledger.journal.LedgerJournalException;
+
+/**
+ * {@link OffHeapAccountTable} whose buffers are mapped from the files of a
+ * directory, so the accounts survive a restart without being loaded.
+ * <p>
+ * {@value #ACCOUNTS_FILE} starts with a header of {@value #HEADER_SIZE}
+ * bytes, followed by records of {@value #MAPPED_RECORD_SIZE} bytes:
+ * <pre>
+ * long balance 0 | long address of the name | long balance 1 | long epoch
+ * </pre>
+ * Names go to {@value #NAMES_FILE} and the index to {@value #INDEX_FILE},
+ * which is replaced when it grows.
+ * <p>
+ * Updates are made crash-consistent by epochs. A checkpoint forces the files
+ * and commits the current epoch in the header. A record holds two balances:
+ * the one of its epoch, and the one committed before. Its first update of an
+ * epoch saves its committed balance in the slot of the committed epoch, then
+ * only writes the other slot. Opening the table after a crash then rolls
+ * every record back to the last checkpoint in a single pass, and drops the
+ * accounts added since. Readers never wait: they read the slot of the epoch
+ * of the record.
+ * <p>
+ * Balances must not be updated during a checkpoint, see
+ * {@link MappedLedgerAccountManager#checkpoint()}.
+ *
+ * @author mrmx
+ */
+final class MappedAccountTable extends OffHeapAccountTable {
+
+    static final String ACCOUNTS_FILE = "accounts.dat";
+    static final String NAMES_FILE = "names.dat";
+    static final String INDEX_FILE = "index.dat";
+    static final int HEADER_SIZE = 4096;
+    static final int MAPPED_RECORD_SIZE = 32;
+
+    private static final int MAGIC = 0x494c504d; // "ILPM"
+    private static final int VERSION = 1;
+    private static final int MAX_CURRENCY_LENGTH = 64;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // Header layout
+    private static final int MAGIC_POSITION = 0;
+    private static final int VERSION_POSITION = 4;
+    private static final int SCALE_POSITION = 8;
+    private static final int SIZE_POSITION = 12;
+    private static final int NAMES_END_POSITION = 16;
+    private static final int INDEX_CAPACITY_POSITION = 24;
+    private static final int CLEAN_POSITION = 28;
+    private static final int EPOCH_POSITION = 32;
+    private static final int CURRENCY_POSITION = 40;
+    // Record layout, the address of the name is where the base table expects it
+    private static final int EPOCH_OFFSET = 24;
+    private static final int SECOND_BALANCE_OFFSET = 16;
+
+    private final File directory;
+    private final FileChannel accounts;
+    private final FileChannel names;
+    private final MappedByteBuffer header;
+    // Changed only by checkpoints, while balances aren't updated
+    private volatile long committedEpoch;
+    private volatile long epoch;
+
+    private MappedAccountTable(File directory, FileChannel accounts, FileChannel names, MappedByteBuffer header,
+            ByteBuffer[] records, ByteBuffer[] nameChunks, ByteBuffer index, int indexCapacity, int size,
+            long namesEnd, long committedEpoch) {
+        super(MAPPED_RECORD_SIZE, records, nameChunks, index, indexCapacity, size, namesEnd);
+        this.directory = directory;
+        this.accounts = accounts;
+        this.names = names;
+        this.header = header;
+        this.committedEpoch = committedEpoch;
+        this.epoch = committedEpoch + 1;
+    }
+
+    /**
+     * Opens the table of a directory, or creates it. After a crash, the
+     * table is rolled back to its last checkpoint.
+     *
+     * @param expectedSize the number of accounts a new index is sized for
+     * @throws IllegalArgumentException if the table has another currency or
+     * scale
+     * @throws LedgerJournalException if the files can't be read or written
+     */
+    static MappedAccountTable open(File directory, String currencyCode, int scale, int expectedSize) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new LedgerJournalException("Can't create directory " + directory);
+        }
+        FileChannel accounts = null;
+        FileChannel names = null;
+        try {
+            accounts = new RandomAccessFile(new File(directory, ACCOUNTS_FILE), "rw").getChannel();
+            names = new RandomAccessFile(new File(directory, NAMES_FILE), "rw").getChannel();
+            boolean created = accounts.size() == 0;
+            MappedByteBuffer header = accounts.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (created) {
+                writeHeader(header, currencyCode, scale, indexCapacityFor(expectedSize));
+            }
+            checkHeader(header, directory, currencyCode, scale);
+            int size = header.getInt(SIZE_POSITION);
+            long namesEnd = header.getLong(NAMES_END_POSITION);
+            int indexCapacity = header.getInt(INDEX_CAPACITY_POSITION);
+            boolean clean = header.getInt(CLEAN_POSITION) != 0;
+            ByteBuffer[] records = new ByteBuffer[(size + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT];
+            for (int segment = 0; segment < records.length; segment++) {
+                records[segment] = mapSegment(accounts, segment);
+            }
+            ByteBuffer[] nameChunks = new ByteBuffer[(int) ((namesEnd + NAMES_CHUNK_SIZE - 1) / NAMES_CHUNK_SIZE)];
+            for (int chunk = 0; chunk < nameChunks.length; chunk++) {
+                nameChunks[chunk] = mapNamesChunk(names, chunk);
+            }
+            ByteBuffer index = clean && !created ? mapIndex(directory, indexCapacity) : null;
+            MappedAccountTable table = new MappedAccountTable(directory, accounts, names, header, records,
+                    nameChunks, index, indexCapacity, size, namesEnd, header.getLong(EPOCH_POSITION));
+            if (index == null) {
+                table.recover();
+            }
+            // Until closed, a crash must be recovered from
+            header.putInt(CLEAN_POSITION, 0);
+            header.force();
+            return table;
+        } catch (IOException ex) {
+            closeQuietly(accounts);
+            closeQuietly(names);
+            throw new LedgerJournalException("Can't open accounts " + directory, ex);
+        } catch (RuntimeException ex) {
+            closeQuietly(accounts);
+            closeQuietly(names);
+            throw ex;
+        }
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    ByteBuffer newRecordSegment(int segment) {
+        try {
+            return mapSegment(accounts, segment);
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't grow accounts " + directory, ex);
+        }
+    }
+
+    @Override
+    ByteBuffer newNamesChunk(int chunk) {
+        try {
+            return mapNamesChunk(names, chunk);
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't grow account names " + directory, ex);
+        }
+    }
+
+    /**
+     * Maps a new, empty, index file in place of the current one. The index
+     * is rebuilt after a crash, so it needn't be consistent with the records
+     * until the next checkpoint.
+     */
+    @Override
+    ByteBuffer newIndex(int capacity) {
+        File file = new File(directory, INDEX_FILE + ".tmp");
+        try {
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Can't delete " + file);
+            }
+            RandomAccessFile created = new RandomAccessFile(file, "rw");
+            MappedByteBuffer index;
+            try {
+                // The mapping stays valid once the file is closed
+                index = created.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * SLOT_SIZE);
+            } finally {
+                created.close();
+            }
+            if (!file.renameTo(new File(directory, INDEX_FILE))) {
+                throw new IOException("Can't rename " + file);
+            }
+            return index;
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't create account index " + directory, ex);
+        }
+    }
+
+    @Override
+    void initBalance(ByteBuffer segment, int position, long balance) {
+        segment.putLong(position, balance);
+        segment.putLong(position + SECOND_BALANCE_OFFSET, balance);
+        segment.putLong(position + EPOCH_OFFSET, epoch);
+    }
+
+    @Override
+    long getBalance(int account) {
+        ByteBuffer segment = segmentOf(account);
+        int position = positionOf(account);
+        return segment.getLong(slot(position, segment.getLong(position + EPOCH_OFFSET)));
+    }
+
+    @Override
+    void setBalance(int account, long balance) {
+        ByteBuffer segment = segmentOf(account);
+        int position = positionOf(account);
+        long current = epoch;
+        long recordEpoch = segment.getLong(position + EPOCH_OFFSET);
+        if (recordEpoch != current) {
+            // First update since the checkpoint: its balance is the committed one
+            long committed = committedEpoch;
+            if (((recordEpoch ^ committed) & 1) != 0) {
+                segment.putLong(slot(position, committed), segment.getLong(slot(position, recordEpoch)));
+            }
+            segment.putLong(position + EPOCH_OFFSET, current);
+        }
+        segment.putLong(slot(position, current), balance);
+    }
+
+    /**
+     * Forces the accounts to disk and commits the current epoch. Balances
+     * must not be updated meanwhile; accounts may be added, they are
+     * committed by the next checkpoint.
+     */
+    void checkpoint() {
+        int committedSize;
+        long committedNamesEnd;
+        int committedIndexCapacity;
+        synchronized (this) {
+            committedSize = size();
+            committedNamesEnd = getNamesEnd();
+            committedIndexCapacity = getIndexCapacity();
+            for (ByteBuffer segment : getRecordSegments()) {
+                ((MappedByteBuffer) segment).force();
+            }
+            for (ByteBuffer chunk : getNamesChunks()) {
+                ((MappedByteBuffer) chunk).force();
+            }
+            ((MappedByteBuffer) getIndex()).force();
+            header.putInt(SIZE_POSITION, committedSize);
+            header.putLong(NAMES_END_POSITION, committedNamesEnd);
+            header.putInt(INDEX_CAPACITY_POSITION, committedIndexCapacity);
+            header.putLong(EPOCH_POSITION, epoch);
+            header.force();
+            committedEpoch = epoch;
+            epoch = committedEpoch + 1;
+        }
+    }
+
+    /**
+     * Checkpoints the table, flags it as cleanly closed, and closes its
+     * files. Buffers stay mapped until collected, so the table must not be
+     * used anymore.
+     */
+    void close() {
+        checkpoint();
+        header.putInt(CLEAN_POSITION, 1);
+        header.force();
+        try {
+            accounts.close();
+            names.close();
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't close accounts " + directory, ex);
+        }
+    }
+
+    /**
+     * Rolls back the balances updated since the last checkpoint, then
+     * rebuilds the index of the committed accounts.
+     */
+    private void recover() {
+        long committed = committedEpoch;
+        for (int account = 0; account < size(); account++) {
+            ByteBuffer segment = segmentOf(account);
+            int position = positionOf(account);
+            if (segment.getLong(position + EPOCH_OFFSET) > committed) {
+                segment.putLong(position + EPOCH_OFFSET, committed);
+            }
+        }
+        for (ByteBuffer segment : getRecordSegments()) {
+            ((MappedByteBuffer) segment).force();
+        }
+        rebuildIndex();
+        ((MappedByteBuffer) getIndex()).force();
+    }
+
+    private static int slot(int position, long epoch) {
+        return (epoch & 1) == 0 ? position : position + SECOND_BALANCE_OFFSET;
+    }
+
+    private static MappedByteBuffer mapSegment(FileChannel accounts, int segment) throws IOException {
+        long length = (long) RECORDS_PER_SEGMENT * MAPPED_RECORD_SIZE;
+        return accounts.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + segment * length, length);
+    }
+
+    private static MappedByteBuffer mapNamesChunk(FileChannel names, int chunk) throws IOException {
+        return names.map(FileChannel.MapMode.READ_WRITE, (long) chunk * NAMES_CHUNK_SIZE, NAMES_CHUNK_SIZE);
+    }
+
+    private static MappedByteBuffer mapIndex(File directory, int capacity) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(new File(directory, INDEX_FILE), "rw");
+        try {
+            if (file.length() != (long) capacity * SLOT_SIZE) {
+                throw new IOException("Account index doesn't match the accounts");
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void writeHeader(MappedByteBuffer header, String currencyCode, int scale, int indexCapacity) {
+        byte[] currency = currencyCode.getBytes(UTF8);
+        if (currency.length > MAX_CURRENCY_LENGTH) {
+            throw new IllegalArgumentException("Currency code too long: " + currencyCode);
+        }
+        header.putInt(MAGIC_POSITION, MAGIC);
+        header.putInt(VERSION_POSITION, VERSION);
+        header.putInt(SCALE_POSITION, scale);
+        header.putInt(SIZE_POSITION, 0);
+        header.putLong(NAMES_END_POSITION, 0);
+        header.putInt(INDEX_CAPACITY_POSITION, indexCapacity);
+        header.putInt(CLEAN_POSITION, 0);
+        header.putLong(EPOCH_POSITION, 0);
+        header.putShort(CURRENCY_POSITION, (short) currency.length);
+        for (int i = 0; i < currency.length; i++) {
+            header.put(CURRENCY_POSITION + 2 + i, currency[i]);
+        }
+        header.force();
+    }
+
+    private static void checkHeader(MappedByteBuffer header, File directory, String currencyCode, int scale)
+            throws IOException {
+        if (header.getInt(MAGIC_POSITION) != MAGIC) {
+            throw new IOException("Not an accounts file: " + new File(directory, ACCOUNTS_FILE));
+        }
+        if (header.getInt(VERSION_POSITION) != VERSION) {
+            throw new IOException("Unsupported accounts version " + header.getInt(VERSION_POSITION));
+        }
+        int length = header.getShort(CURRENCY_POSITION);
+        if (length < 0 || length > MAX_CURRENCY_LENGTH) {
+            throw new IOException("Corrupted accounts header");
+        }
+        byte[] currency = new byte[length];
+        for (int i = 0; i < length; i++) {
+            currency[i] = header.get(CURRENCY_POSITION + 2 + i);
+        }
+        String storedCurrencyCode = new String(currency, UTF8);
+        int storedScale = header.getInt(SCALE_POSITION);
+        if (storedScale != scale || !storedCurrencyCode.equals(currencyCode)) {
+            throw new IllegalArgumentException("Accounts currency " + storedCurrencyCode + " with scale "
+                    + storedScale + " doesn't match the ledger's");
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Already failing
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.interledger.ilp.ledger.impl;
+
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.File;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.interledger.ilp.core.LedgerInfo;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.LedgerAccountManager;
+import org.interledger.ilp.ledger.journal.LedgerJournalException;
+
+/**
+ * {@link OffHeapLedgerAccountManager} whose accounts live in memory-mapped
+ * files, so a ledger restarts with its balances without loading them:
+ * accounts are paged in by the OS as they are used.
+ * <p>
+ * Lookups and balance updates run at the speed of the in-memory manager.
+ * Durability comes from {@link #checkpoint() checkpoints}: after a crash,
+ * the accounts are as of the last one. Closing the manager takes a last
+ * checkpoint.
+ * <p>
+ * Only the balances are persisted: transfers prepared and not executed yet
+ * are lost, with the funds they held, as with a ledger without journal.
+ * <p>
+ * Balances may only be updated by the ledger, which holds the checkpoint
+ * gate of the manager while it does.
+ *
+ * @author mrmx
+ * @see SimpleLedger#setLedgerAccountManager(LedgerAccountManager)
+ */
+public class MappedLedgerAccountManager extends OffHeapLedgerAccountManager implements Closeable {
+
+    // Held for reading by balance updates and for writing by checkpoints
+    private final ReentrantReadWriteLock checkpointGate = new ReentrantReadWriteLock();
+    private final MappedAccountTable table;
+
+    private MappedLedgerAccountManager(LedgerInfo info, MappedAccountTable table) {
+        super(info, table);
+        this.table = table;
+    }
+
+    /**
+     * Opens the accounts kept in a directory, or creates them.
+     *
+     * @param directory the directory of the files, created if missing
+     * @param info currency and scale of the ledger, must match the ones of
+     * existing accounts
+     * @return the accounts, as of the last checkpoint
+     * @throws LedgerJournalException if the files can't be read or written
+     */
+    public static MappedLedgerAccountManager open(File directory, LedgerInfo info) {
+        return open(directory, info, 0);
+    }
+
+    /**
+     * @param expectedAccounts the number of accounts the index of new files
+     * is first sized for
+     * @see #open(File, LedgerInfo)
+     */
+    public static MappedLedgerAccountManager open(File directory, LedgerInfo info, int expectedAccounts) {
+        Preconditions.checkNotNull(directory);
+        checkInfo(info);
+        return new MappedLedgerAccountManager(info,
+                MappedAccountTable.open(directory, info.getCurrencyCode(), info.getScale(), expectedAccounts));
+    }
+
+    public File getDirectory() {
+        return table.getDirectory();
+    }
+
+    @Override
+    public void addAccount(LedgerAccount account) {
+        Lock gate = checkpointGate.readLock();
+        gate.lock();
+        try {
+            super.addAccount(account);
+        } finally {
+            gate.unlock();
+        }
+    }
+
+    @Override
+    public LedgerAccount addAccountIfAbsent(LedgerAccount account) {
+        Lock gate = checkpointGate.readLock();
+        gate.lock();
+        try {
+            return super.addAccountIfAbsent(account);
+        } finally {
+            gate.unlock();
+        }
+    }
+
+    /**
+     * Forces the accounts to disk: they survive a crash from then on. Waits
+     * for the balance updates in progress, and holds the next ones until
+     * the files are forced.
+     *
+     * @throws LedgerJournalException if the files can't be written
+     */
+    public void checkpoint() {
+        checkpointGate.writeLock().lock();
+        try {
+            table.checkpoint();
+        } finally {
+            checkpointGate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a last checkpoint and closes the files. The accounts must not be
+     * used anymore.
+     */
+    @Override
+    public void close() {
+        checkpointGate.writeLock().lock();
+        try {
+            table.close();
+        } finally {
+            checkpointGate.writeLock().unlock();
+        }
+    }
+
+    ReentrantReadWriteLock getCheckpointGate() {
+        return checkpointGate;
+    }
+}
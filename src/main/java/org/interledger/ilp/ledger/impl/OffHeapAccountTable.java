@@ -0,0 +1,470 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Accounts stored outside of the Java heap: a name and a {@code long} balance
+ * each, numbered in the order they were added.
+ * <p>
+ * Three kinds of direct buffers hold them:
+ * <ul>
+ * <li>records: fixed-width slots of {@value #RECORD_SIZE} bytes, the balance
+ * then the address of the name, in segments of {@value #RECORDS_PER_SEGMENT}
+ * records. Records never move, so an account number stays valid. Subclasses
+ * may use larger records, with the address of the name at the same place.</li>
+ * <li>names: the UTF-8 names, each preceded by its length, appended to chunks
+ * of {@value #NAMES_CHUNK_SIZE} bytes.</li>
+ * <li>index: an open-addressing hash table with linear probing, slots of the
+ * hash of a name and its account number plus one, rebuilt twice as large past
+ * a load factor of 3/4. The hash is compared before the name, so lookups
+ * rarely read names but the one they are looking for.</li>
+ * </ul>
+ * Lookups don't lock. Adds are serialized, and published by incrementing the
+ * volatile size once everything else is written: readers read the size first,
+ * so they only follow the account numbers below it. Balances are not
+ * synchronized: like {@link FixedPointLedgerAccount}, accounts are updated
+ * under the ledger's locks.
+ * <p>
+ * Buffers are allocated by overridable methods, so a subclass can keep them
+ * elsewhere, eg: in mapped files.
+ *
+ * @author mrmx
+ */
+class OffHeapAccountTable {
+
+    static final int RECORD_SIZE = 16;
+    static final int RECORDS_PER_SEGMENT = 1 << 20;
+    static final int NAMES_CHUNK_SIZE = 1 << 24;
+    static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    static final int SLOT_SIZE = 8;
+    static final int MAX_INDEX_CAPACITY = 1 << 27;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int recordSize;
+    // Replaced, never changed, as segments and chunks are added
+    private volatile ByteBuffer[] records;
+    private volatile ByteBuffer[] names;
+    private volatile ByteBuffer index;
+    private volatile int size;
+    // Guarded by this
+    private int indexCapacity;
+    private long namesEnd;
+    // Account numbers sorted by name, up to sortedSize
+    private IntBuffer sorted = IntBuffer.allocate(0);
+    private int sortedSize;
+
+    OffHeapAccountTable(int expectedSize) {
+        this(RECORD_SIZE, new ByteBuffer[0], new ByteBuffer[0], null, indexCapacityFor(expectedSize), 0, 0);
+        this.index = newIndex(indexCapacity);
+    }
+
+    /**
+     * Takes over the buffers of a table.
+     *
+     * @param index the index of the accounts, or {@code null} to be set by
+     * the caller
+     */
+    OffHeapAccountTable(int recordSize, ByteBuffer[] records, ByteBuffer[] names, ByteBuffer index,
+            int indexCapacity, int size, long namesEnd) {
+        this.recordSize = recordSize;
+        this.records = records;
+        this.names = names;
+        this.index = index;
+        this.indexCapacity = indexCapacity;
+        this.size = size;
+        this.namesEnd = namesEnd;
+    }
+
+    static int indexCapacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < MAX_INDEX_CAPACITY && capacity / 4 * 3 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    ByteBuffer newRecordSegment(int segment) {
+        return ByteBuffer.allocateDirect(RECORDS_PER_SEGMENT * recordSize);
+    }
+
+    ByteBuffer newNamesChunk(int chunk) {
+        return ByteBuffer.allocateDirect(NAMES_CHUNK_SIZE);
+    }
+
+    ByteBuffer newIndex(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+    }
+
+    /**
+     * Writes the balance of an account being added, before it's published.
+     */
+    void initBalance(ByteBuffer segment, int position, long balance) {
+        segment.putLong(position, balance);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of the account, or -1 if there's none with that name
+     */
+    int find(String name) {
+        int published = size;
+        ByteBuffer currentIndex = index;
+        int mask = currentIndex.capacity() / SLOT_SIZE - 1;
+        int hash = hash(name);
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int entry = currentIndex.getInt(slot * SLOT_SIZE + 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (currentIndex.getInt(slot * SLOT_SIZE) == hash) {
+                int account = entry - 1;
+                if (account >= published) {
+                    // Added meanwhile: only visible past a fresh read of the size
+                    published = size;
+                    if (account >= published) {
+                        return -1;
+                    }
+                }
+                if (nameEquals(account, name)) {
+                    return account;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an account unless there's already one with that name.
+     *
+     * @return the number of the account added, or {@code -(number + 1)} of
+     * the account already there
+     */
+    synchronized int add(String name, long balance) {
+        int existing = find(name);
+        if (existing >= 0) {
+            return -(existing + 1);
+        }
+        int account = size;
+        if (account == Integer.MAX_VALUE - 1) {
+            throw new IllegalStateException("Too many accounts");
+        }
+        ByteBuffer[] currentRecords = records;
+        if (account / RECORDS_PER_SEGMENT == currentRecords.length) {
+            currentRecords = Arrays.copyOf(currentRecords, currentRecords.length + 1);
+            currentRecords[currentRecords.length - 1] = newRecordSegment(currentRecords.length - 1);
+            records = currentRecords;
+        }
+        long nameAddress = appendName(name);
+        ByteBuffer segment = currentRecords[account / RECORDS_PER_SEGMENT];
+        int position = positionOf(account);
+        initBalance(segment, position, balance);
+        segment.putLong(position + 8, nameAddress);
+        if ((account + 1) > indexCapacity / 4 * 3) {
+            resizeIndex();
+        }
+        insert(index, hash(name), account);
+        // Publishes the account
+        size = account + 1;
+        return account;
+    }
+
+    long getBalance(int account) {
+        return segmentOf(account).getLong(positionOf(account));
+    }
+
+    void setBalance(int account, long balance) {
+        segmentOf(account).putLong(positionOf(account), balance);
+    }
+
+    final ByteBuffer segmentOf(int account) {
+        return records[account / RECORDS_PER_SEGMENT];
+    }
+
+    final int positionOf(int account) {
+        return (account % RECORDS_PER_SEGMENT) * recordSize;
+    }
+
+    final ByteBuffer[] getRecordSegments() {
+        return records;
+    }
+
+    final ByteBuffer[] getNamesChunks() {
+        return names;
+    }
+
+    final ByteBuffer getIndex() {
+        return index;
+    }
+
+    final synchronized int getIndexCapacity() {
+        return indexCapacity;
+    }
+
+    final synchronized long getNamesEnd() {
+        return namesEnd;
+    }
+
+    /**
+     * Rebuilds the index from the records, eg: after it was lost.
+     */
+    final synchronized void rebuildIndex() {
+        ByteBuffer rebuilt = newIndex(indexCapacity);
+        for (int account = 0; account < size; account++) {
+            insert(rebuilt, hash(getName(account)), account);
+        }
+        index = rebuilt;
+    }
+
+    String getName(int account) {
+        long address = nameAddress(account);
+        ByteBuffer chunk = names[(int) (address / NAMES_CHUNK_SIZE)];
+        int position = (int) (address % NAMES_CHUNK_SIZE);
+        int length = chunk.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = chunk.get(position + 2 + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * @return the number of the account with the given position in name
+     * order
+     */
+    synchronized int getSorted(int position) {
+        sort();
+        return sorted.get(position);
+    }
+
+    /**
+     * @return the position in name order of the first account whose name is
+     * after the given one
+     */
+    synchronized int sortedPositionAfter(String name) {
+        sort();
+        byte[] bytes = name.getBytes(UTF8);
+        int low = 0;
+        int high = sortedSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareName(sorted.get(middle), bytes) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the number of accounts sorted by name, as of the last sort
+     */
+    synchronized int sortedSize() {
+        sort();
+        return sortedSize;
+    }
+
+    // Sorts the accounts added since the last sort, then merges them with the others
+    private void sort() {
+        int end = size;
+        if (sortedSize == end) {
+            return;
+        }
+        int[] added = new int[end - sortedSize];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = sortedSize + i;
+        }
+        sort(added, 0, added.length);
+        IntBuffer merged = ByteBuffer.allocateDirect(end * 4).asIntBuffer();
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < end; k++) {
+            if (j == added.length || (i < sortedSize && compareNames(sorted.get(i), added[j]) <= 0)) {
+                merged.put(k, sorted.get(i++));
+            } else {
+                merged.put(k, added[j++]);
+            }
+        }
+        sorted = merged;
+        sortedSize = end;
+    }
+
+    // Quicksort by name, in place: the accounts added at once may be many
+    private void sort(int[] accounts, int from, int to) {
+        while (to - from > 16) {
+            int middle = (from + to) >>> 1;
+            // Median of three as the pivot
+            if (compareNames(accounts[middle], accounts[from]) < 0) {
+                swap(accounts, middle, from);
+            }
+            if (compareNames(accounts[to - 1], accounts[from]) < 0) {
+                swap(accounts, to - 1, from);
+            }
+            if (compareNames(accounts[to - 1], accounts[middle]) < 0) {
+                swap(accounts, to - 1, middle);
+            }
+            int pivot = accounts[middle];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (compareNames(accounts[i], pivot) < 0) {
+                    i++;
+                }
+                while (compareNames(accounts[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(accounts, i++, j--);
+                }
+            }
+            // Recurses into the smaller side, loops on the larger one
+            if (j + 1 - from < to - i) {
+                sort(accounts, from, j + 1);
+                from = i;
+            } else {
+                sort(accounts, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int account = accounts[i];
+            int j = i - 1;
+            while (j >= from && compareNames(accounts[j], account) > 0) {
+                accounts[j + 1] = accounts[j];
+                j--;
+            }
+            accounts[j + 1] = account;
+        }
+    }
+
+    private static void swap(int[] accounts, int i, int j) {
+        int account = accounts[i];
+        accounts[i] = accounts[j];
+        accounts[j] = account;
+    }
+
+    private long nameAddress(int account) {
+        return segmentOf(account).getLong(positionOf(account) + 8);
+    }
+
+    private long appendName(String name) {
+        byte[] bytes = name.getBytes(UTF8);
+        if (bytes.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Account name longer than " + MAX_NAME_LENGTH + " bytes");
+        }
+        ByteBuffer[] currentNames = names;
+        // A full chunk ends at the start of the next one, which isn't there yet
+        int position = (int) (namesEnd - (long) Math.max(0, currentNames.length - 1) * NAMES_CHUNK_SIZE);
+        if (currentNames.length == 0 || position + 2 + bytes.length > NAMES_CHUNK_SIZE) {
+            // Names don't span chunks
+            currentNames = Arrays.copyOf(currentNames, currentNames.length + 1);
+            currentNames[currentNames.length - 1] = newNamesChunk(currentNames.length - 1);
+            names = currentNames;
+            namesEnd = (long) (currentNames.length - 1) * NAMES_CHUNK_SIZE;
+            position = 0;
+        }
+        long address = namesEnd;
+        ByteBuffer chunk = currentNames[currentNames.length - 1];
+        chunk.putShort(position, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            chunk.put(position + 2 + i, bytes[i]);
+        }
+        namesEnd += 2 + bytes.length;
+        return address;
+    }
+
+    private boolean nameEquals(int account, String name) {
+        long address = nameAddress(account);
+        ByteBuffer chunk = names[(int) (address / NAMES_CHUNK_SIZE)];
+        int position = (int) (address % NAMES_CHUNK_SIZE);
+        int length = chunk.getShort(position) & 0xFFFF;
+        // A UTF-8 name has at least as many bytes as chars
+        if (length < name.length()) {
+            return false;
+        }
+        if (length == name.length()) {
+            for (int i = 0; i < length; i++) {
+                int b = chunk.get(position + 2 + i);
+                if (b < 0) {
+                    return getName(account).equals(name);
+                }
+                if (b != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return getName(account).equals(name);
+    }
+
+    // Compares UTF-8 bytes, which orders names by code point
+    private int compareNames(int a, int b) {
+        long addressA = nameAddress(a);
+        long addressB = nameAddress(b);
+        ByteBuffer chunkA = names[(int) (addressA / NAMES_CHUNK_SIZE)];
+        ByteBuffer chunkB = names[(int) (addressB / NAMES_CHUNK_SIZE)];
+        int positionA = (int) (addressA % NAMES_CHUNK_SIZE);
+        int positionB = (int) (addressB % NAMES_CHUNK_SIZE);
+        int lengthA = chunkA.getShort(positionA) & 0xFFFF;
+        int lengthB = chunkB.getShort(positionB) & 0xFFFF;
+        for (int i = 0; i < lengthA && i < lengthB; i++) {
+            int diff = (chunkA.get(positionA + 2 + i) & 0xFF) - (chunkB.get(positionB + 2 + i) & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    private int compareName(int account, byte[] name) {
+        long address = nameAddress(account);
+        ByteBuffer chunk = names[(int) (address / NAMES_CHUNK_SIZE)];
+        int position = (int) (address % NAMES_CHUNK_SIZE);
+        int length = chunk.getShort(position) & 0xFFFF;
+        for (int i = 0; i < length && i < name.length; i++) {
+            int diff = (chunk.get(position + 2 + i) & 0xFF) - (name[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - name.length;
+    }
+
+    private void resizeIndex() {
+        if (indexCapacity == MAX_INDEX_CAPACITY) {
+            throw new IllegalStateException("Too many accounts");
+        }
+        int capacity = indexCapacity << 1;
+        ByteBuffer resized = newIndex(capacity);
+        ByteBuffer current = index;
+        for (int slot = 0; slot < indexCapacity; slot++) {
+            int entry = current.getInt(slot * SLOT_SIZE + 4);
+            if (entry != 0) {
+                insert(resized, current.getInt(slot * SLOT_SIZE), entry - 1);
+            }
+        }
+        indexCapacity = capacity;
+        index = resized;
+    }
+
+    private static void insert(ByteBuffer index, int hash, int account) {
+        int mask = index.capacity() / SLOT_SIZE - 1;
+        int slot = hash & mask;
+        while (index.getInt(slot * SLOT_SIZE + 4) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putInt(slot * SLOT_SIZE, hash);
+        index.putInt(slot * SLOT_SIZE + 4, account + 1);
+    }
+
+    private static int hash(String name) {
+        int hash = name.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
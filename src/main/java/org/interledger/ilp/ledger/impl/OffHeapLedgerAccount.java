@@ -0,0 +1,151 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.math.BigDecimal;
+import javax.money.MonetaryAmount;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+
+/**
+ * View of an account of an {@link OffHeapLedgerAccountManager}: reads and
+ * updates its balance in the off-heap table. Views are created on each
+ * lookup and hold nothing but the account number, so any number of them can
+ * be discarded.
+ * <p>
+ * Arithmetic is overflow-checked. Like {@link FixedPointLedgerAccount} this
+ * class is not thread-safe.
+ *
+ * @author mrmx
+ */
+public final class OffHeapLedgerAccount implements MinorUnitsLedgerAccount {
+
+    private final OffHeapLedgerAccountManager manager;
+    private final int account;
+    private String name;
+
+    OffHeapLedgerAccount(OffHeapLedgerAccountManager manager, int account, String name) {
+        this.manager = manager;
+        this.account = account;
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        if (name == null) {
+            name = manager.getTable().getName(account);
+        }
+        return name;
+    }
+
+    @Override
+    public String getCurrencyCode() {
+        return manager.getCurrencyCode();
+    }
+
+    @Override
+    public int getScale() {
+        return manager.getScale();
+    }
+
+    @Override
+    public long getBalanceInMinorUnits() {
+        return manager.getTable().getBalance(account);
+    }
+
+    @Override
+    public OffHeapLedgerAccount setBalanceInMinorUnits(long balance) {
+        manager.getTable().setBalance(account, balance);
+        return this;
+    }
+
+    @Override
+    public OffHeapLedgerAccount creditMinorUnits(long minorUnits) {
+        OffHeapAccountTable table = manager.getTable();
+        table.setBalance(account, MoneyUtils.addExact(table.getBalance(account), minorUnits));
+        return this;
+    }
+
+    @Override
+    public OffHeapLedgerAccount debitMinorUnits(long minorUnits) {
+        OffHeapAccountTable table = manager.getTable();
+        table.setBalance(account, MoneyUtils.subtractExact(table.getBalance(account), minorUnits));
+        return this;
+    }
+
+    @Override
+    public OffHeapLedgerAccount setBalance(Number balance) {
+        return setBalanceInMinorUnits(MoneyUtils.toMinorUnits(balance, getScale()));
+    }
+
+    @Override
+    public OffHeapLedgerAccount setBalance(MonetaryAmount balance) {
+        return setBalanceInMinorUnits(MoneyUtils.toMinorUnits(balance, getScale()));
+    }
+
+    @Override
+    public MonetaryAmount getBalance() {
+        return MoneyUtils.toMonetaryAmount(getBalanceInMinorUnits(), getScale(), getCurrencyCode());
+    }
+
+    @Override
+    public String getBalanceAsString() {
+        return getBalanceAsNumber().toPlainString();
+    }
+
+    @Override
+    public BigDecimal getBalanceAsNumber() {
+        return MoneyUtils.toBigDecimal(getBalanceInMinorUnits(), getScale());
+    }
+
+    @Override
+    public OffHeapLedgerAccount credit(Number amount) {
+        return creditMinorUnits(MoneyUtils.toMinorUnits(amount, getScale()));
+    }
+
+    @Override
+    public OffHeapLedgerAccount credit(MonetaryAmount amount) {
+        return creditMinorUnits(MoneyUtils.toMinorUnits(amount, getScale()));
+    }
+
+    @Override
+    public OffHeapLedgerAccount debit(Number amount) {
+        return debitMinorUnits(MoneyUtils.toMinorUnits(amount, getScale()));
+    }
+
+    @Override
+    public OffHeapLedgerAccount debit(MonetaryAmount amount) {
+        return debitMinorUnits(MoneyUtils.toMinorUnits(amount, getScale()));
+    }
+
+    int getAccount() {
+        return account;
+    }
+
+    OffHeapLedgerAccountManager getManager() {
+        return manager;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof OffHeapLedgerAccount)) {
+            return false;
+        }
+        OffHeapLedgerAccount other = (OffHeapLedgerAccount) obj;
+        return manager == other.manager && account == other.account;
+    }
+
+    @Override
+    public int hashCode() {
+        return account;
+    }
+
+    @Override
+    public String toString() {
+        return "Account["
+                + "name:" + getName()
+                + " balance:" + getBalanceAsString()
+                + "]";
+    }
+}
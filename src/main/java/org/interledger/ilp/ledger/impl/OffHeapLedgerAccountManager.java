@@ -0,0 +1,173 @@
+package org.interledger.ilp.ledger.impl;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.interledger.ilp.core.LedgerInfo;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.AccountNotFoundException;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.LedgerAccountManager;
+import org.interledger.ilp.ledger.account.LedgerAccountPage;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+
+/**
+ * {@code LedgerAccountManager} keeping its accounts off the Java heap, for
+ * ledgers with tens of millions of accounts: an account takes a
+ * {@value OffHeapAccountTable#RECORD_SIZE} bytes record, its UTF-8 name and
+ * an index slot, and no object at all.
+ * <p>
+ * Accounts are returned as {@link OffHeapLedgerAccount} views of the table.
+ * An account added is copied into the table: keep using the view returned by
+ * {@link #getAccountByName(String)}, not the account passed to
+ * {@link #addAccount(LedgerAccount)}. Accounts can't be removed.
+ * <p>
+ * Lookups never block. Listing accounts sorts those added since the last
+ * listing. Balances are {@code long} minor units which, as with
+ * {@link BalanceEngine#FIXED_POINT}, the ledger updates under its locks.
+ *
+ * @author mrmx
+ * @see SimpleLedger#setLedgerAccountManager(LedgerAccountManager)
+ */
+public class OffHeapLedgerAccountManager implements LedgerAccountManager {
+
+    private final LedgerInfo info;
+    private final OffHeapAccountTable table;
+
+    public OffHeapLedgerAccountManager(LedgerInfo info) {
+        this(info, 0);
+    }
+
+    /**
+     * @param expectedAccounts the number of accounts the index is first sized
+     * for
+     */
+    public OffHeapLedgerAccountManager(LedgerInfo info, int expectedAccounts) {
+        this(checkInfo(info), new OffHeapAccountTable(expectedAccounts));
+    }
+
+    OffHeapLedgerAccountManager(LedgerInfo info, OffHeapAccountTable table) {
+        this.info = checkInfo(info);
+        this.table = table;
+    }
+
+    /**
+     * @return a detached account, to be added
+     */
+    @Override
+    public LedgerAccount create(String name) {
+        return new FixedPointLedgerAccount(name, info);
+    }
+
+    @Override
+    public int getTotalAccounts() {
+        return table.size();
+    }
+
+    /**
+     * Adds the account, or sets the balance of the account already there.
+     */
+    @Override
+    public void addAccount(LedgerAccount account) {
+        if (isOwn(account)) {
+            return;
+        }
+        long balance = balanceOf(account);
+        int existing = table.add(account.getName(), balance);
+        if (existing < 0) {
+            table.setBalance(-(existing + 1), balance);
+        }
+    }
+
+    @Override
+    public LedgerAccount addAccountIfAbsent(LedgerAccount account) {
+        if (isOwn(account)) {
+            return account;
+        }
+        int added = table.add(account.getName(), balanceOf(account));
+        return added < 0 ? new OffHeapLedgerAccount(this, -(added + 1), account.getName()) : null;
+    }
+
+    @Override
+    public LedgerAccount getAccountByName(String name) throws AccountNotFoundException {
+        int account = table.find(name);
+        if (account < 0) {
+            throw new AccountNotFoundException(name);
+        }
+        return new OffHeapLedgerAccount(this, account, name);
+    }
+
+    @Override
+    public Collection<LedgerAccount> getAccounts(int page, int pageSize) {
+        if (page < 1) {
+            throw new IllegalArgumentException("page must be positive");
+        }
+        checkPageSize(pageSize);
+        long first = (long) (page - 1) * pageSize;
+        List<LedgerAccount> accounts = new ArrayList<LedgerAccount>();
+        // The order doesn't change while the page is read
+        synchronized (table) {
+            int sortedSize = table.sortedSize();
+            for (long position = first; position < sortedSize && position < first + pageSize; position++) {
+                accounts.add(new OffHeapLedgerAccount(this, table.getSorted((int) position), null));
+            }
+        }
+        return accounts;
+    }
+
+    @Override
+    public LedgerAccountPage getAccounts(String cursor, int pageSize) {
+        checkPageSize(pageSize);
+        // The cursor is the name of the last account of the previous page, as with SimpleLedgerAccountManager
+        List<LedgerAccount> accounts = new ArrayList<LedgerAccount>();
+        boolean hasNext;
+        synchronized (table) {
+            int position = cursor == null ? 0 : table.sortedPositionAfter(cursor);
+            int sortedSize = table.sortedSize();
+            for (; position < sortedSize && accounts.size() < pageSize; position++) {
+                accounts.add(new OffHeapLedgerAccount(this, table.getSorted(position), null));
+            }
+            hasNext = position < sortedSize;
+        }
+        return new LedgerAccountPage(accounts, hasNext ? accounts.get(accounts.size() - 1).getName() : null);
+    }
+
+    String getCurrencyCode() {
+        return info.getCurrencyCode();
+    }
+
+    int getScale() {
+        return info.getScale();
+    }
+
+    OffHeapAccountTable getTable() {
+        return table;
+    }
+
+    private boolean isOwn(LedgerAccount account) {
+        return account instanceof OffHeapLedgerAccount && ((OffHeapLedgerAccount) account).getManager() == this;
+    }
+
+    private long balanceOf(LedgerAccount account) {
+        if (account instanceof MinorUnitsLedgerAccount
+                && ((MinorUnitsLedgerAccount) account).getScale() == info.getScale()) {
+            return ((MinorUnitsLedgerAccount) account).getBalanceInMinorUnits();
+        }
+        return MoneyUtils.toMinorUnits(account.getBalance(), info.getScale());
+    }
+
+    static LedgerInfo checkInfo(LedgerInfo info) {
+        Preconditions.checkNotNull(info);
+        if (info.getScale() < 0 || info.getScale() > MoneyUtils.MAX_MINOR_UNITS_SCALE) {
+            throw new IllegalArgumentException("unsupported scale " + info.getScale());
+        }
+        return info;
+    }
+
+    private static void checkPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package org.interledger.ilp.ledger.impl;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import javax.money.MonetaryAmount;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.events.LedgerTransferExecutedEvent;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+
+/**
+ * Executes the transfers of a {@link ConcurrencyMode#SHARDED} ledger.
+ * <p>
+ * Accounts are split into shards by the hash of their name. Each shard has a
+ * thread, the only one changing the balances of its accounts, which applies
+ * the transfers of its queue one after the other without any lock. A
+ * transfer goes to the shard of its source account, which debits it. When
+ * the destination is in the same shard, it's credited right away. Otherwise
+ * the transfer moves on to the shard of the destination, which credits it,
+ * or sends it back to be refunded if the credit overflows.
+ * <p>
+ * A shard claims each step by moving the transfer to its next stage with a
+ * compare-and-set before applying it, so every step is applied exactly once
+ * even if a transfer were queued twice.
+ *
+ * @author mrmx
+ */
+final class ShardedTransferExecutor {
+
+    private static final int DEBIT = 0;
+    private static final int CREDIT = 1;
+    private static final int REFUND = 2;
+    private static final int DONE = 3;
+
+    private final SimpleLedger ledger;
+    private final Shard[] shards;
+    // Transfers submitted and not completed: shards stop once closed and none is left
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean closed;
+
+    ShardedTransferExecutor(SimpleLedger ledger, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        this.ledger = ledger;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return the shard applying the transfers of the account
+     */
+    int shardOf(String accountName) {
+        int hash = accountName.hashCode() * 0x9E3779B9;
+        return (int) (((hash ^ (hash >>> 16)) & 0xFFFFFFFFL) % shards.length);
+    }
+
+    /**
+     * Queues a transfer to the shard of its source account. Events are
+     * notified from the thread of the shard completing the transfer.
+     *
+     * @param entry completed with the success of the transfer as soon as
+     * it's committed, if not {@code null}
+     * @return completed once the transfer is executed, or with the reason it
+     * wasn't
+     */
+    ListenableFuture<Void> submit(LedgerTransfer transfer, LedgerAccount from, LedgerAccount to,
+            TransferDedupIndex.Entry entry) {
+        inFlight.incrementAndGet();
+        if (closed) {
+            finish();
+            throw new IllegalStateException("Ledger closed");
+        }
+        ShardedTransfer shardedTransfer;
+        if (from instanceof MinorUnitsLedgerAccount && to instanceof MinorUnitsLedgerAccount
+                && ((MinorUnitsLedgerAccount) from).getScale() == ((MinorUnitsLedgerAccount) to).getScale()) {
+            long amount = MoneyUtils.toMinorUnits(transfer.getAmount(), ((MinorUnitsLedgerAccount) from).getScale());
+            shardedTransfer = new ShardedTransfer(transfer, from, to, amount, null, entry);
+        } else {
+            MonetaryAmount amount = MoneyUtils.toMonetaryAmount(transfer.getAmount(), ledger.getInfo().getCurrencyCode());
+            shardedTransfer = new ShardedTransfer(transfer, from, to, 0, amount, entry);
+        }
+        try {
+            shards[shardOf(from.getName())].offer(shardedTransfer);
+        } catch (RuntimeException ex) {
+            finish();
+            throw ex;
+        }
+        return shardedTransfer.result;
+    }
+
+    /**
+     * Stops accepting transfers. The ones already submitted are still
+     * executed.
+     */
+    void close() {
+        closed = true;
+        wakeUpAll();
+    }
+
+    private void finish() {
+        if (inFlight.decrementAndGet() == 0 && closed) {
+            wakeUpAll();
+        }
+    }
+
+    private void wakeUpAll() {
+        for (Shard shard : shards) {
+            shard.wakeUp();
+        }
+    }
+
+    private boolean isStopped() {
+        return closed && inFlight.get() == 0;
+    }
+
+    private void apply(Shard shard, ShardedTransfer transfer) {
+        switch (transfer.stage.get()) {
+            case DEBIT:
+                if (!transfer.stage.compareAndSet(DEBIT, CREDIT)) {
+                    return;
+                }
+                try {
+                    debit(transfer);
+                } catch (RuntimeException ex) {
+                    transfer.stage.set(DONE);
+                    transfer.fail(ex);
+                    finish();
+                    return;
+                }
+                int target = shardOf(transfer.to.getName());
+                if (target == shard.index) {
+                    apply(shard, transfer);
+                } else {
+                    shards[target].offer(transfer);
+                }
+                return;
+            case CREDIT:
+                if (!transfer.stage.compareAndSet(CREDIT, DONE)) {
+                    return;
+                }
+                try {
+                    credit(transfer.to, transfer);
+                } catch (RuntimeException ex) {
+                    // Overflow: the source shard gives the amount back
+                    transfer.failure = ex;
+                    transfer.stage.set(REFUND);
+                    shards[shardOf(transfer.from.getName())].offer(transfer);
+                    return;
+                }
+                complete(transfer);
+                finish();
+                return;
+            case REFUND:
+                if (transfer.stage.compareAndSet(REFUND, DONE)) {
+                    try {
+                        credit(transfer.from, transfer);
+                    } finally {
+                        transfer.fail(transfer.failure);
+                        finish();
+                    }
+                }
+                return;
+            default:
+                // Already applied
+        }
+    }
+
+    // Only the shard of the account calls these, so checking then updating is safe
+    private void debit(ShardedTransfer transfer) {
+        LedgerAccount from = transfer.from;
+        if (transfer.amount == null) {
+            MinorUnitsLedgerAccount minorUnitsFrom = (MinorUnitsLedgerAccount) from;
+            if (minorUnitsFrom.getBalanceInMinorUnits() < transfer.minorUnits) {
+                throw new InsufficientAmountException(ledger.getInfo().getCurrencyCode() + " "
+                        + transfer.transfer.getAmount());
+            }
+            minorUnitsFrom.debitMinorUnits(transfer.minorUnits);
+        } else {
+            if (!from.getBalance().isGreaterThanOrEqualTo(transfer.amount)) {
+                throw new InsufficientAmountException(transfer.amount.toString());
+            }
+            from.debit(transfer.amount);
+        }
+    }
+
+    private static void credit(LedgerAccount account, ShardedTransfer transfer) {
+        if (transfer.amount == null) {
+            ((MinorUnitsLedgerAccount) account).creditMinorUnits(transfer.minorUnits);
+        } else {
+            account.credit(transfer.amount);
+        }
+    }
+
+    private void complete(ShardedTransfer shardedTransfer) {
+        LedgerTransfer transfer = shardedTransfer.transfer;
+        if (shardedTransfer.entry != null) {
+            shardedTransfer.entry.complete(null);
+        }
+        try {
+            ledger.notifyEventHandlers(new LedgerTransferExecutedEvent(ledger, transfer.getHeader(),
+                    transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount()));
+            shardedTransfer.result.set(null);
+        } catch (RuntimeException ex) {
+            shardedTransfer.result.setException(ex);
+        }
+    }
+
+    /**
+     * A transfer on its way through the shards.
+     */
+    private static final class ShardedTransfer {
+
+        private final LedgerTransfer transfer;
+        private final LedgerAccount from;
+        private final LedgerAccount to;
+        // In minor units, when both accounts have them
+        private final long minorUnits;
+        private final MonetaryAmount amount;
+        private final AtomicInteger stage = new AtomicInteger(DEBIT);
+        private final SettableFuture<Void> result = SettableFuture.create();
+        private final TransferDedupIndex.Entry entry;
+        // Set before the transfer is sent back to be refunded
+        private RuntimeException failure;
+
+        ShardedTransfer(LedgerTransfer transfer, LedgerAccount from, LedgerAccount to, long minorUnits,
+                MonetaryAmount amount, TransferDedupIndex.Entry entry) {
+            this.transfer = transfer;
+            this.from = from;
+            this.to = to;
+            this.minorUnits = minorUnits;
+            this.amount = amount;
+            this.entry = entry;
+        }
+
+        void fail(RuntimeException ex) {
+            if (entry != null) {
+                entry.complete(ex);
+            }
+            result.setException(ex);
+        }
+    }
+
+    /**
+     * A thread and its queue. The thread is started with the first transfer,
+     * and parks while the queue is empty.
+     */
+    private final class Shard implements Runnable {
+
+        private final int index;
+        private final Queue<ShardedTransfer> inbound = new ConcurrentLinkedQueue<ShardedTransfer>();
+        private volatile Thread thread;
+        private volatile boolean waiting;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        void offer(ShardedTransfer transfer) {
+            inbound.offer(transfer);
+            if (thread == null) {
+                start();
+            }
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        void wakeUp() {
+            Thread current = thread;
+            if (current != null) {
+                LockSupport.unpark(current);
+            }
+        }
+
+        private synchronized void start() {
+            if (thread == null) {
+                Thread started = new Thread(this, "ledger-shard-" + ledger.getName() + "-" + index);
+                started.setDaemon(true);
+                thread = started;
+                started.start();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ShardedTransfer transfer = inbound.poll();
+                if (transfer != null) {
+                    apply(this, transfer);
+                    continue;
+                }
+                // Credits and refunds may still come from other shards
+                if (isStopped()) {
+                    return;
+                }
+                waiting = true;
+                // Offers after this see waiting, and unpark
+                if (inbound.isEmpty() && !isStopped()) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+        }
+    }
+}
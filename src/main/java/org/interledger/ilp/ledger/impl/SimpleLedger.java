@@ -1,7 +1,12 @@
 package org.interledger.ilp.ledger.impl;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.interledger.cryptoconditions.Fulfillment;
+import org.interledger.ilp.core.InterledgerPacketHeader;
 import org.interledger.ilp.core.Ledger;
 import org.interledger.ilp.core.LedgerInfo;
 import org.interledger.ilp.core.LedgerTransfer;
@@ -10,17 +15,40 @@ import org.interledger.ilp.core.events.LedgerEvent;
 import org.interledger.ilp.core.events.LedgerEventHandler;
 import org.interledger.ilp.core.events.LedgerTransferExecutedEvent;
 import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.core.exceptions.LedgerTransferException;
 import org.interledger.ilp.ledger.Currencies;
-import org.interledger.ilp.ledger.LedgerAccountManagerFactory;
+import org.interledger.ilp.ledger.ILPTransfer;
 import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.LedgerTimeProvider;
 import org.interledger.ilp.ledger.MoneyUtils;
 import org.interledger.ilp.ledger.account.LedgerAccount;
 import org.interledger.ilp.ledger.account.LedgerAccountManager;
 import org.interledger.ilp.ledger.account.LedgerAccountManagerAware;
+import org.interledger.ilp.ledger.account.LedgerAccountPage;
+import org.interledger.ilp.ledger.account.LockFreeLedgerAccount;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+import org.interledger.ilp.ledger.clock.LedgerClock;
+import org.interledger.ilp.ledger.events.AsyncLedgerEventHandler;
+import org.interledger.ilp.ledger.events.BatchLedgerEventHandler;
+import org.interledger.ilp.ledger.events.EventBackpressure;
+import org.interledger.ilp.ledger.history.TransferHistory;
+import org.interledger.ilp.ledger.journal.JournalingLedgerAccountManager;
+import org.interledger.ilp.ledger.journal.LedgerJournal;
+import org.interledger.ilp.ledger.journal.LedgerSnapshot;
+import org.interledger.ilp.ledger.metrics.LedgerMetrics;
+import org.interledger.ilp.ledger.metrics.LedgerOperation;
 
 import javax.money.MonetaryAmount;
-import java.util.LinkedList;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Simple in-memory ledger implementation
@@ -29,11 +57,31 @@ import java.util.List;
  */
 public class SimpleLedger implements Ledger, LedgerAccountManagerAware {
 
-    private List<LedgerEventHandler> ledgerEventHandlers = new LinkedList<LedgerEventHandler>();
+    private static final int SNAPSHOT_PAGE_SIZE = 1024;
+
+    private List<LedgerEventHandler> ledgerEventHandlers = new CopyOnWriteArrayList<LedgerEventHandler>();
 
     private LedgerInfo info;
     private String name;
-//    private LedgerAccountManager accountManager;
+    private BalanceEngine balanceEngine;
+    private ConcurrencyMode concurrencyMode;
+    // Null while UNSYNCHRONIZED, until the ledger updates balances from its own threads, see enableLocking
+    private volatile AccountLockStripes lockStripes;
+    private TransferBatchExecutor batchExecutor;
+    private TransferHoldStore holds = new TransferHoldStore();
+    private ConditionalTransferExecutor conditionalExecutor;
+    private ShardedTransferExecutor shardedExecutor;
+    // Each ledger has its own accounts, so ledgers never contend on them
+    private LedgerAccountManager accountManager = new SimpleLedgerAccountManager(this);
+    private LedgerJournal journal;
+    // Held for reading by commits and for writing while a snapshot starts or accounts are checkpointed
+    private ReentrantReadWriteLock commitGate;
+    private volatile SnapshotEpoch snapshotEpoch;
+    private volatile LedgerClock clock = LedgerTimeProvider.getInstance().getClock();
+    private volatile LedgerMetrics metrics = LedgerMetrics.noop();
+    private volatile TransferDedupIndex dedupIndex = new TransferDedupIndex(this,
+            TransferDedupIndex.DEFAULT_RETENTION_MILLIS, TransferDedupIndex.DEFAULT_MAXIMUM_SIZE);
+    private volatile TransferHistory history;
 
     public SimpleLedger(Currencies currency, String name) {
         this(LedgerInfoFactory.from(currency), name);
@@ -44,8 +92,36 @@ public class SimpleLedger implements Ledger, LedgerAccountManagerAware {
     }
 
     public SimpleLedger(LedgerInfo info, String name) {
+        this(info, name, BalanceEngine.MONEY);
+    }
+
+    public SimpleLedger(LedgerInfo info, String name, BalanceEngine balanceEngine) {
+        this(info, name, balanceEngine, ConcurrencyMode.UNSYNCHRONIZED);
+    }
+
+    public SimpleLedger(LedgerInfo info, String name, BalanceEngine balanceEngine, ConcurrencyMode concurrencyMode) {
+        this(info, name, balanceEngine, concurrencyMode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param shards the number of shards of a {@link ConcurrencyMode#SHARDED}
+     * ledger, ignored otherwise
+     */
+    public SimpleLedger(LedgerInfo info, String name, BalanceEngine balanceEngine, ConcurrencyMode concurrencyMode,
+            int shards) {
+        Preconditions.checkNotNull(balanceEngine);
+        Preconditions.checkNotNull(concurrencyMode);
         this.info = info;
         this.name = name;
+        this.balanceEngine = balanceEngine;
+        this.concurrencyMode = concurrencyMode;
+        if (concurrencyMode == ConcurrencyMode.SHARDED) {
+            this.shardedExecutor = new ShardedTransferExecutor(this, shards);
+        } else if (concurrencyMode != ConcurrencyMode.UNSYNCHRONIZED) {
+            this.lockStripes = new AccountLockStripes();
+        }
+        this.batchExecutor = new TransferBatchExecutor(this);
+        this.conditionalExecutor = new ConditionalTransferExecutor(this, holds);
     }
 
 
@@ -57,19 +133,333 @@ public class SimpleLedger implements Ledger, LedgerAccountManagerAware {
         return name;
     }
 
+    public BalanceEngine getBalanceEngine() {
+        return balanceEngine;
+    }
+
+    public ConcurrencyMode getConcurrencyMode() {
+        return concurrencyMode;
+    }
+
+    public LedgerClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the clock the expiry of prepared transfers is checked against.
+     * Must be called before the first transfer is prepared.
+     */
+    public void setClock(LedgerClock clock) {
+        Preconditions.checkNotNull(clock);
+        this.clock = clock;
+    }
+
+    public LedgerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics the operations of this ledger are recorded to, by
+     * default {@link LedgerMetrics#noop()}.
+     *
+     * @see org.interledger.ilp.ledger.metrics.RecordingLedgerMetrics
+     */
+    public void setMetrics(LedgerMetrics metrics) {
+        Preconditions.checkNotNull(metrics);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets how transfers sent again with the same id are recognized, by
+     * default for 10 minutes and up to 1048576 ids. Must be called before the
+     * first transfer is sent.
+     *
+     * @param retention how long ids are remembered, at least, unless more
+     * than {@code maximumSize} transfers are sent meanwhile
+     * @param maximumSize the maximum number of ids remembered
+     * @see #send(LedgerTransfer)
+     */
+    public void setDeduplication(long retention, TimeUnit unit, int maximumSize) {
+        this.dedupIndex = new TransferDedupIndex(this, unit.toMillis(retention), maximumSize);
+    }
+
+    /**
+     * Records the transfers executed from now on in a history, timestamped
+     * by the clock of this ledger.
+     *
+     * @param retention how long transfers are kept
+     * @param maximumSize the maximum number of transfers kept
+     * @return the history, also registered as an event handler
+     */
+    public synchronized TransferHistory attachHistory(long retention, TimeUnit unit, int maximumSize) {
+        if (history != null) {
+            throw new IllegalStateException("History already attached");
+        }
+        TransferHistory attached = new TransferHistory(info.getScale(), clock, unit.toMillis(retention), maximumSize);
+        registerEventHandler(attached);
+        history = attached;
+        return attached;
+    }
+
+    /**
+     * @return the attached history, or {@code null}
+     */
+    public TransferHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Creates a new (unregistered) account backed by this ledger's {@link BalanceEngine}.
+     */
+    public LedgerAccount createAccount(String accountName) {
+        return balanceEngine.createAccount(accountName, info);
+    }
+
+    /**
+     * Replays the journal into this ledger, then records in it every account
+     * added and every transfer sent. Must be called before the ledger is
+     * used.
+     *
+     * @param journal a journal of this ledger's currency and scale
+     */
+    public void attachJournal(LedgerJournal journal) {
+        attachJournal(journal, null);
+    }
+
+    /**
+     * Loads the accounts of a snapshot and replays the journal records
+     * appended after it, then records in the journal every account added and
+     * every transfer sent. Must be called before the ledger is used.
+     *
+     * @param journal a journal of this ledger's currency and scale
+     * @param snapshot a snapshot taken with this journal, or {@code null} to
+     * replay the whole journal
+     * @see #takeSnapshot(File)
+     */
+    public void attachJournal(LedgerJournal journal, LedgerSnapshot snapshot) {
+        Preconditions.checkNotNull(journal);
+        checkNotSharded("Journals");
+        if (this.journal != null) {
+            throw new IllegalStateException("Journal already attached");
+        }
+        if (accountManager instanceof MappedLedgerAccountManager) {
+            // Replaying the journal would apply its transfers again
+            throw new IllegalStateException("Mapped accounts are already persistent");
+        }
+        if (journal.getScale() != info.getScale() || !journal.getCurrencyCode().equals(info.getCurrencyCode())) {
+            throw new IllegalArgumentException("Journal currency " + journal.getCurrencyCode()
+                    + " with scale " + journal.getScale() + " doesn't match the ledger's");
+        }
+        LedgerJournalReplayer replayer = new LedgerJournalReplayer(this, accountManager);
+        long journalPosition = 0;
+        if (snapshot != null) {
+            if (snapshot.getScale() != info.getScale() || !snapshot.getCurrencyCode().equals(info.getCurrencyCode())) {
+                throw new IllegalArgumentException("Snapshot currency " + snapshot.getCurrencyCode()
+                        + " with scale " + snapshot.getScale() + " doesn't match the ledger's");
+            }
+            for (int i = 0; i < snapshot.size(); i++) {
+                replayer.onAccountCreated(snapshot.getAccountName(i), snapshot.getBalance(i));
+            }
+            journalPosition = snapshot.getJournalPosition();
+        }
+        journal.replay(replayer, journalPosition);
+        this.commitGate = new ReentrantReadWriteLock();
+        this.accountManager = new JournalingLedgerAccountManager(accountManager, journal, commitGate.readLock());
+        this.journal = journal;
+    }
+
+    /**
+     * Writes the balances of all the accounts to a snapshot file, so a
+     * restart only replays the journal records appended after it.
+     * <p>
+     * Transfers keep running meanwhile: they are only held while the
+     * snapshot position is taken. Until the snapshot is written, the first
+     * transfer touching an account saves its balance as of that position
+     * (copy-on-write).
+     *
+     * @param file the snapshot file, replaced atomically
+     * @return the snapshot written
+     */
+    public synchronized LedgerSnapshot takeSnapshot(File file) {
+        Preconditions.checkNotNull(file);
+        if (journal == null) {
+            throw new IllegalStateException("No journal attached");
+        }
+        SnapshotEpoch epoch = new SnapshotEpoch(info.getScale(), holds);
+        long journalPosition;
+        commitGate.writeLock().lock();
+        try {
+            journalPosition = journal.getAppendedPosition();
+            snapshotEpoch = epoch;
+        } finally {
+            commitGate.writeLock().unlock();
+        }
+        try {
+            List<String> accountNames = new ArrayList<String>();
+            long[] balances = new long[Math.max(16, accountManager.getTotalAccounts())];
+            LedgerAccountPage page = accountManager.getAccounts(null, SNAPSHOT_PAGE_SIZE);
+            while (true) {
+                for (LedgerAccount account : page.getAccounts()) {
+                    if (accountNames.size() == balances.length) {
+                        balances = Arrays.copyOf(balances, balances.length * 2);
+                    }
+                    balances[accountNames.size()] = epoch.balanceOf(account);
+                    accountNames.add(account.getName());
+                }
+                if (!page.hasNext()) {
+                    break;
+                }
+                page = accountManager.getAccounts(page.getNextCursor(), SNAPSHOT_PAGE_SIZE);
+            }
+            // The snapshot must not get ahead of the journal
+            journal.awaitDurable(journalPosition);
+            return LedgerSnapshot.write(file, info.getCurrencyCode(), info.getScale(), journalPosition,
+                    accountNames, balances);
+        } finally {
+            snapshotEpoch = null;
+        }
+    }
+
+    /**
+     * @return the attached journal, or {@code null}
+     */
+    public LedgerJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Executes the transfer or, when it has a condition, prepares it: its
+     * amount is then held on the source account until the transfer is
+     * fulfilled or rejected, or expires.
+     * <p>
+     * A transfer built with an {@link LedgerTransferBuilder#id id} is applied
+     * once: sent again with the same id, eg: retried after a timeout, it gets
+     * the outcome of the first one, waiting for it if needed.
+     *
+     * @throws LedgerTransferException if the id was used by another transfer
+     * @see #setDeduplication(long, TimeUnit, int)
+     * @see #fulfillCondition(Fulfillment)
+     * @see #rejectTransfer(LedgerTransfer, LedgerTransferRejectedReason)
+     */
     public void send(LedgerTransfer transfer) {
-    	LedgerAccountManager accountManager = LedgerAccountManagerFactory.getAccountManagerSingleton();
+        InterledgerPacketHeader header = transfer.getHeader();
+        LedgerOperation operation = header != null && header.getCondition() != null
+                ? LedgerOperation.PREPARE : LedgerOperation.SEND;
+        LedgerMetrics metrics = this.metrics;
+        long start = metrics.start();
+        try {
+            execute(transfer);
+        } catch (RuntimeException ex) {
+            metrics.failed(operation, start, ex);
+            throw ex;
+        }
+        metrics.succeeded(operation, start);
+    }
+
+    private void execute(LedgerTransfer transfer) {
+        String transferId = idOf(transfer);
+        if (transferId == null) {
+            apply(transfer, null);
+            return;
+        }
+        TransferDedupIndex.Entry entry = new TransferDedupIndex.Entry(transferId, transfer);
+        TransferDedupIndex.Entry sent = dedupIndex.register(entry);
+        if (sent != null) {
+            FulfillmentPipeline.await(sent.getOutcome());
+            return;
+        }
+        // Errors too, so retries never wait forever. Once committed, the entry
+        // already holds its success, whatever fails afterwards
+        try {
+            apply(transfer, entry);
+        } catch (RuntimeException ex) {
+            entry.complete(ex);
+            throw ex;
+        } catch (Error ex) {
+            entry.complete(ex);
+            throw ex;
+        }
+        entry.complete(null);
+    }
+
+    /**
+     * @param entry completed with the success of the transfer as soon as
+     * it's committed, if not {@code null}
+     */
+    private void apply(LedgerTransfer transfer, TransferDedupIndex.Entry entry) {
+        InterledgerPacketHeader header = transfer.getHeader();
+        if (header != null && header.getCondition() != null) {
+            checkNotSharded("Conditional transfers");
+            conditionalExecutor.prepare(transfer, entry);
+            return;
+        }
         LedgerAccount from = accountManager.getAccountByName(transfer.getFromAccount());
         LedgerAccount to = accountManager.getAccountByName(transfer.getToAccount());
         if (to.equals(from)) {
             throw new RuntimeException("accounts are the same");
         }
-        MonetaryAmount amount = MoneyUtils.toMonetaryAmount(transfer.getAmount(), info.getCurrencyCode());
-        if (from.getBalance().isGreaterThanOrEqualTo(amount)) {
-            from.debit(amount);
-            to.credit(amount);
-        } else {
-            throw new InsufficientAmountException(amount.toString());
+        if (shardedExecutor != null) {
+            FulfillmentPipeline.await(shardedExecutor.submit(transfer, from, to, entry));
+            return;
+        }
+        long journalAmount = 0;
+        long journalPosition = 0;
+        if (journal != null) {
+            journal.checkWritable();
+            journalAmount = MoneyUtils.toMinorUnits(transfer.getAmount(), info.getScale());
+        }
+        // Commits and snapshots or checkpoints are mutually exclusive only while persistent
+        Lock gate = commitGate == null ? null : commitGate.readLock();
+        if (gate != null) {
+            gate.lock();
+        }
+        try {
+            if (from instanceof MinorUnitsLedgerAccount && to instanceof MinorUnitsLedgerAccount
+                    && ((MinorUnitsLedgerAccount) from).getScale() == ((MinorUnitsLedgerAccount) to).getScale()) {
+                // Allocation-free path: the amount is parsed straight into minor units
+                MinorUnitsLedgerAccount minorUnitsFrom = (MinorUnitsLedgerAccount) from;
+                long amount = MoneyUtils.toMinorUnits(transfer.getAmount(), minorUnitsFrom.getScale());
+                if (concurrencyMode == ConcurrencyMode.LOCK_FREE
+                        && from instanceof LockFreeLedgerAccount && to instanceof LockFreeLedgerAccount) {
+                    captureForSnapshot(from, to);
+                    commit(minorUnitsFrom, (MinorUnitsLedgerAccount) to, amount, transfer.getAmount());
+                    journalPosition = journalTransfer(from, to, journalAmount);
+                } else {
+                    AccountLockStripes stripes = lockAccounts(from, to);
+                    try {
+                        captureForSnapshot(from, to);
+                        commit(minorUnitsFrom, (MinorUnitsLedgerAccount) to, amount, transfer.getAmount());
+                        journalPosition = journalTransfer(from, to, journalAmount);
+                    } finally {
+                        unlockAccounts(stripes, from, to);
+                    }
+                }
+            } else {
+                MonetaryAmount amount = MoneyUtils.toMonetaryAmount(transfer.getAmount(), info.getCurrencyCode());
+                AccountLockStripes stripes = lockAccounts(from, to);
+                try {
+                    captureForSnapshot(from, to);
+                    commit(from, to, amount);
+                    journalPosition = journalTransfer(from, to, journalAmount);
+                } finally {
+                    unlockAccounts(stripes, from, to);
+                }
+            }
+        } finally {
+            if (gate != null) {
+                gate.unlock();
+            }
+        }
+        try {
+            if (journal != null) {
+                // Outside of the account locks, so transfers waiting together share one commit
+                journal.awaitDurable(journalPosition);
+            }
+        } finally {
+            // Retries wait until the transfer is durable, or can't be made so
+            if (entry != null) {
+                entry.complete(null);
+            }
         }
 
         // Notify all Event Handlers...
@@ -79,12 +469,354 @@ public class SimpleLedger implements Ledger, LedgerAccountManagerAware {
         this.notifyEventHandlers(ledgerTransferExecutedEvent);
     }
 
+    /**
+     * Sends an unconditional transfer without waiting for it. On a
+     * {@link ConcurrencyMode#SHARDED} ledger the transfer is queued to the
+     * shard of its source account, and events are notified from the thread
+     * of the shard executing it. On any other ledger it's executed before
+     * returning.
+     *
+     * @return completed once the transfer is executed, or with the reason it
+     * wasn't
+     */
+    public Future<Void> sendAsync(LedgerTransfer transfer) {
+        InterledgerPacketHeader header = transfer.getHeader();
+        if (shardedExecutor == null || (header != null && header.getCondition() != null)) {
+            try {
+                send(transfer);
+                return Futures.immediateFuture(null);
+            } catch (RuntimeException ex) {
+                return Futures.immediateFailedFuture(ex);
+            }
+        }
+        LedgerMetrics metrics = this.metrics;
+        long start = metrics.start();
+        String transferId = idOf(transfer);
+        TransferDedupIndex.Entry entry = null;
+        ListenableFuture<Void> result;
+        try {
+            if (transferId != null) {
+                entry = new TransferDedupIndex.Entry(transferId, transfer);
+                TransferDedupIndex.Entry sent = dedupIndex.register(entry);
+                if (sent != null) {
+                    return record(sent.getOutcome(), LedgerOperation.SEND, metrics, start);
+                }
+            }
+            LedgerAccount from = accountManager.getAccountByName(transfer.getFromAccount());
+            LedgerAccount to = accountManager.getAccountByName(transfer.getToAccount());
+            if (to.equals(from)) {
+                throw new RuntimeException("accounts are the same");
+            }
+            result = shardedExecutor.submit(transfer, from, to, entry);
+        } catch (RuntimeException ex) {
+            if (entry != null) {
+                entry.complete(ex);
+            }
+            metrics.failed(LedgerOperation.SEND, start, ex);
+            // As on the other ledgers, every failure goes through the future
+            return Futures.immediateFailedFuture(ex);
+        }
+        return record(result, LedgerOperation.SEND, metrics, start);
+    }
+
+    /**
+     * Sends a batch of transfers, all or nothing.
+     *
+     * @see #sendBatch(List, TransferBatchMode)
+     */
+    public TransferBatchResult sendBatch(List<LedgerTransfer> transfers) {
+        return sendBatch(transfers, TransferBatchMode.ALL_OR_NOTHING);
+    }
+
+    /**
+     * Sends a batch of transfers. Accounts are resolved once for the whole
+     * batch, all the accounts involved are locked together while balances are
+     * checked and updated, and handlers receive the executed transfers at once
+     * (see {@link BatchLedgerEventHandler}). Conditional transfers can't be
+     * batched, nor transfers built with an {@link LedgerTransferBuilder#id id}:
+     * a batch sent again would apply them twice, so they must be sent one by
+     * one with {@link #send}, which applies them once.
+     *
+     * @param transfers the transfers, in the order they must be applied
+     * @param mode whether a failing transfer cancels the whole batch
+     * @return the outcome of each transfer
+     */
+    public TransferBatchResult sendBatch(List<LedgerTransfer> transfers, TransferBatchMode mode) {
+        Preconditions.checkNotNull(transfers);
+        Preconditions.checkNotNull(mode);
+        checkNotSharded("Batches");
+        LedgerMetrics metrics = this.metrics;
+        long start = metrics.start();
+        TransferBatchResult result;
+        try {
+            result = batchExecutor.execute(transfers, mode);
+        } catch (RuntimeException ex) {
+            metrics.failed(LedgerOperation.SEND_BATCH, start, ex);
+            throw ex;
+        }
+        metrics.succeeded(LedgerOperation.SEND_BATCH, start);
+        return result;
+    }
+
+    void notifyTransfersExecuted(List<LedgerTransfer> transfers, boolean[] executed) {
+        List<LedgerEvent> ledgerEvents = new ArrayList<LedgerEvent>();
+        for (int i = 0; i < executed.length; i++) {
+            if (executed[i]) {
+                LedgerTransfer transfer = transfers.get(i);
+                ledgerEvents.add(new LedgerTransferExecutedEvent(
+                        this, transfer.getHeader(), transfer.getFromAccount(), transfer.getToAccount(), transfer.getAmount()
+                ));
+            }
+        }
+        if (!ledgerEvents.isEmpty()) {
+            this.notifyEventHandlers(ledgerEvents);
+        }
+    }
+
+    private void commit(LedgerAccount from, LedgerAccount to, MonetaryAmount amount) {
+        if (from instanceof LockFreeLedgerAccount) {
+            // May be debited concurrently outside of any lock
+            LockFreeLedgerAccount lockFreeFrom = (LockFreeLedgerAccount) from;
+            if (!lockFreeFrom.tryDebitMinorUnits(MoneyUtils.toMinorUnits(amount, lockFreeFrom.getScale()))) {
+                throw new InsufficientAmountException(amount.toString());
+            }
+        } else if (from.getBalance().isGreaterThanOrEqualTo(amount)) {
+            from.debit(amount);
+        } else {
+            throw new InsufficientAmountException(amount.toString());
+        }
+        try {
+            to.credit(amount);
+        } catch (RuntimeException ex) {
+            from.credit(amount);
+            throw ex;
+        }
+    }
+
+    private void commit(MinorUnitsLedgerAccount from, MinorUnitsLedgerAccount to, long amount, String transferAmount) {
+        boolean debited;
+        if (from instanceof LockFreeLedgerAccount) {
+            debited = ((LockFreeLedgerAccount) from).tryDebitMinorUnits(amount);
+        } else {
+            debited = from.getBalanceInMinorUnits() >= amount;
+            if (debited) {
+                from.debitMinorUnits(amount);
+            }
+        }
+        if (!debited) {
+            throw new InsufficientAmountException(info.getCurrencyCode() + " " + transferAmount);
+        }
+        try {
+            to.creditMinorUnits(amount);
+        } catch (ArithmeticException ex) {
+            // Destination overflow: give the amount back
+            from.creditMinorUnits(amount);
+            throw ex;
+        }
+    }
+
+    void captureForSnapshot(LedgerAccount from, LedgerAccount to) {
+        SnapshotEpoch epoch = snapshotEpoch;
+        if (epoch != null) {
+            epoch.capture(from);
+            epoch.capture(to);
+        }
+    }
+
+    Lock getCommitGate() {
+        return commitGate == null ? null : commitGate.readLock();
+    }
+
+    SnapshotEpoch getSnapshotEpoch() {
+        return snapshotEpoch;
+    }
+
+    ConditionalTransferExecutor getConditionalExecutor() {
+        return conditionalExecutor;
+    }
+
+    // Called right after the commit. With the accounts locked, the journal order of the
+    // transfers of each account matches the order they were applied. Lock-free transfers
+    // are journaled without locks and may be replayed in another order: the replay
+    // applies each record without checking the balance, so an intermediate negative
+    // balance is never rejected and the final balances are the same
+    private long journalTransfer(LedgerAccount from, LedgerAccount to, long amount) {
+        return journal == null ? 0 : journal.appendTransfer(from.getName(), to.getName(), amount);
+    }
+
+    /**
+     * Records the operation to the metrics once the future completes, on the
+     * thread completing it.
+     */
+    private static ListenableFuture<Void> record(final ListenableFuture<Void> result,
+            final LedgerOperation operation, final LedgerMetrics metrics, final long start) {
+        if (metrics == LedgerMetrics.noop()) {
+            return result;
+        }
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Uninterruptibles.getUninterruptibly(result);
+                    metrics.succeeded(operation, start);
+                } catch (ExecutionException ex) {
+                    metrics.failed(operation, start, ex.getCause());
+                } catch (RuntimeException ex) {
+                    metrics.failed(operation, start, ex);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * @return the id the transfer was built with, or {@code null}
+     */
+    static String idOf(LedgerTransfer transfer) {
+        return transfer instanceof LedgerTransferBuilder.LedgerTransferImpl
+                ? ((LedgerTransferBuilder.LedgerTransferImpl) transfer).getId() : null;
+    }
+
+    private void checkNotSharded(String feature) {
+        if (shardedExecutor != null) {
+            throw new UnsupportedOperationException(feature + " are not supported by sharded ledgers");
+        }
+    }
+
+    /**
+     * @return the locks of the accounts, or {@code null} if none is needed
+     */
+    AccountLockStripes getLockStripes() {
+        return lockStripes;
+    }
+
+    /**
+     * Locks the accounts of the transfers from now on. An
+     * {@link ConcurrencyMode#UNSYNCHRONIZED} ledger calls it before it
+     * prepares a transfer, since expiries and fulfillments then update
+     * balances from its own threads, concurrently with its callers.
+     */
+    void enableLocking() {
+        if (lockStripes == null) {
+            synchronized (holds) {
+                if (lockStripes == null) {
+                    lockStripes = new AccountLockStripes();
+                }
+            }
+        }
+    }
+
+    // Returns the locks taken, to be released even if locking was enabled meanwhile
+    private AccountLockStripes lockAccounts(LedgerAccount from, LedgerAccount to) {
+        AccountLockStripes stripes = lockStripes;
+        if (stripes != null) {
+            stripes.lock(from.getName(), to.getName());
+        }
+        return stripes;
+    }
+
+    private static void unlockAccounts(AccountLockStripes stripes, LedgerAccount from, LedgerAccount to) {
+        if (stripes != null) {
+            stripes.unlock(from.getName(), to.getName());
+        }
+    }
+
+    /**
+     * Rejects a prepared transfer, giving its held amount back to the source
+     * account.
+     *
+     * @param transfer a transfer built by {@link LedgerTransferBuilder}
+     */
     public void rejectTransfer(LedgerTransfer transfer, LedgerTransferRejectedReason reason) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        rejectTransfer(ConditionalTransferExecutor.idOf(transfer), reason);
     }
 
+    public void rejectTransfer(String transferId, LedgerTransferRejectedReason reason) {
+        Preconditions.checkNotNull(transferId);
+        LedgerMetrics metrics = this.metrics;
+        long start = metrics.start();
+        try {
+            conditionalExecutor.reject(transferId, reason);
+        } catch (RuntimeException ex) {
+            metrics.failed(LedgerOperation.REJECT, start, ex);
+            throw ex;
+        }
+        metrics.succeeded(LedgerOperation.REJECT, start);
+    }
+
+    /**
+     * Executes every transfer prepared with the condition of the fulfillment.
+     *
+     * @see #fulfillConditionAsync(Fulfillment)
+     */
     public void fulfillCondition(Fulfillment fulfillment) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        FulfillmentPipeline.await(fulfillConditionAsync(fulfillment));
+    }
+
+    /**
+     * Executes a prepared transfer if the fulfillment matches its condition.
+     */
+    public void fulfillCondition(String transferId, Fulfillment fulfillment) {
+        Preconditions.checkNotNull(transferId);
+        Preconditions.checkNotNull(fulfillment);
+        FulfillmentPipeline.await(fulfill(transferId, fulfillment));
+    }
+
+    /**
+     * Submits a fulfillment without waiting for it. Fulfillments are verified
+     * in parallel, then their transfers are executed one fulfillment at a
+     * time, in the order they were submitted. Events are notified from the
+     * thread executing them.
+     *
+     * @return completed once the transfers are executed and durable, or with
+     * the reason none could be executed
+     */
+    public Future<Void> fulfillConditionAsync(Fulfillment fulfillment) {
+        Preconditions.checkNotNull(fulfillment);
+        return fulfill(null, fulfillment);
+    }
+
+    private ListenableFuture<Void> fulfill(String transferId, Fulfillment fulfillment) {
+        LedgerMetrics metrics = this.metrics;
+        long start = metrics.start();
+        ListenableFuture<Void> result;
+        try {
+            result = conditionalExecutor.fulfill(transferId, fulfillment);
+        } catch (RuntimeException ex) {
+            metrics.failed(LedgerOperation.FULFILL, start, ex);
+            throw ex;
+        }
+        return record(result, LedgerOperation.FULFILL, metrics, start);
+    }
+
+    /**
+     * Stops rejecting the prepared transfers once they expire, and stops
+     * accepting fulfillments and, on a sharded ledger, transfers. Those
+     * already submitted are still executed.
+     */
+    public void close() {
+        conditionalExecutor.close();
+        if (shardedExecutor != null) {
+            shardedExecutor.close();
+        }
+    }
+
+    /**
+     * @return the transfer, or {@code null} if it isn't prepared
+     */
+    public ILPTransfer getPreparedTransfer(String transferId) {
+        TransferHold hold = holds.get(transferId);
+        return hold == null ? null : hold.getILPTransfer();
+    }
+
+    /**
+     * @return the amount held on the account by its prepared transfers, not
+     * included in its balance
+     */
+    public MonetaryAmount getHeldBalance(String accountName) {
+        LedgerAccount account = accountManager.getAccountByName(accountName);
+        return MoneyUtils.toMonetaryAmount(holds.getHeldBalance(account.getName()), info.getScale(),
+                info.getCurrencyCode());
     }
 
     // TODO: consider returning a boolean to align with java.util.Collection - indicates if the handler already existed?
@@ -94,21 +826,89 @@ public class SimpleLedger implements Ledger, LedgerAccountManagerAware {
         this.ledgerEventHandlers.add(handler);
     }
 
+    /**
+     * Registers a handler that is run on its own thread instead of the one
+     * sending the transfer.
+     *
+     * @param handler the handler to run asynchronously
+     * @param capacity the number of events queued for the handler before
+     * applying backpressure
+     * @param backpressure what to do with an event when the queue is full
+     * @return the registered handler, to be closed when no longer needed
+     * @see AsyncLedgerEventHandler
+     */
+    public <T extends LedgerEvent> AsyncLedgerEventHandler<T> registerAsyncEventHandler(
+            LedgerEventHandler<T> handler, int capacity, EventBackpressure backpressure) {
+        AsyncLedgerEventHandler<T> asyncHandler = new AsyncLedgerEventHandler<T>(handler, capacity, backpressure);
+        registerEventHandler(asyncHandler);
+        return asyncHandler;
+    }
+
     // TODO: Consider modifying LedgerEventHandler#onLedgerEvent to return a boolean to indicate if an event was handled?
-    private void notifyEventHandlers(final LedgerEvent ledgerEvent) {
-        for (final LedgerEventHandler handler : this.ledgerEventHandlers) {
-            //if (handler.isHandled(ledgerEvent)) {
-            handler.onLedgerEvent(ledgerEvent);
-            //}
+    void notifyEventHandlers(final LedgerEvent ledgerEvent) {
+        LedgerMetrics metrics = this.metrics;
+        long start = metrics.start();
+        try {
+            for (final LedgerEventHandler handler : this.ledgerEventHandlers) {
+                //if (handler.isHandled(ledgerEvent)) {
+                handler.onLedgerEvent(ledgerEvent);
+                //}
+            }
+        } catch (RuntimeException ex) {
+            metrics.failed(LedgerOperation.EVENT_DISPATCH, start, ex);
+            throw ex;
         }
+        metrics.succeeded(LedgerOperation.EVENT_DISPATCH, start);
+    }
+
+    private void notifyEventHandlers(final List<LedgerEvent> ledgerEvents) {
+        LedgerMetrics metrics = this.metrics;
+        long start = metrics.start();
+        try {
+            for (final LedgerEventHandler handler : this.ledgerEventHandlers) {
+                if (handler instanceof BatchLedgerEventHandler) {
+                    ((BatchLedgerEventHandler) handler).onLedgerEvents(ledgerEvents);
+                } else {
+                    for (final LedgerEvent ledgerEvent : ledgerEvents) {
+                        handler.onLedgerEvent(ledgerEvent);
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            metrics.failed(LedgerOperation.EVENT_DISPATCH, start, ex);
+            throw ex;
+        }
+        metrics.succeeded(LedgerOperation.EVENT_DISPATCH, start);
     }
 
     // TODO: The Ledger interface should have the ability to unregister an event handler.  Or, alternatively, an abstract
     // class should be created that requires the event-handlers at construction time?
 
+    /**
+     * Replaces the accounts of this ledger, eg: by an
+     * {@link OffHeapLedgerAccountManager} of its currency and scale. Must be
+     * called before the ledger is used, and before a journal is attached.
+     * <p>
+     * A {@link MappedLedgerAccountManager} makes the ledger persistent
+     * without a journal: its checkpoints wait for the transfers in progress.
+     */
+    public void setLedgerAccountManager(LedgerAccountManager accountManager) {
+        Preconditions.checkNotNull(accountManager);
+        if (journal != null) {
+            throw new IllegalStateException("Journal already attached");
+        }
+        if (accountManager instanceof MappedLedgerAccountManager) {
+            checkNotSharded("Mapped accounts");
+            this.commitGate = ((MappedLedgerAccountManager) accountManager).getCheckpointGate();
+        } else {
+            this.commitGate = null;
+        }
+        this.accountManager = accountManager;
+    }
+
     @Override
     public LedgerAccountManager getLedgerAccountManager() {
         // FIXME: Remove getLedgerAccountManager here and in parent interface
-        return LedgerAccountManagerFactory.getAccountManagerSingleton();
+        return accountManager;
     }
 }
@@ -5,6 +5,7 @@ import javax.money.CurrencyUnit;
 import javax.money.MonetaryAmount;
 import org.apache.commons.lang.StringUtils;
 import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.AccountNames;
 import org.interledger.ilp.ledger.account.LedgerAccount;
 import org.javamoney.moneta.Money;
 
@@ -16,6 +17,8 @@ import org.javamoney.moneta.Money;
 public class SimpleLedgerAccount implements LedgerAccount {
 
     private final String name;
+    // Accounts are equal when their canonical names are
+    private final String canonicalName;
     private final String currencyCode;
     private MonetaryAmount balance;
 
@@ -32,6 +35,7 @@ public class SimpleLedgerAccount implements LedgerAccount {
             throw new IllegalArgumentException("empty account name");
         }
         this.name = name;
+        this.canonicalName = AccountNames.canonical(name);
         this.currencyCode = currencyCode;
     }
 
@@ -112,9 +116,14 @@ public class SimpleLedgerAccount implements LedgerAccount {
         if(obj == this) {
             return true;
         }
-        return name.equalsIgnoreCase(((SimpleLedgerAccount)obj).getName());
+        return canonicalName.equals(((SimpleLedgerAccount)obj).canonicalName);
     }
-    
+
+    @Override
+    public int hashCode() {
+        return canonicalName.hashCode();
+    }
+
     @Override
     public String toString() {
         return "Account["
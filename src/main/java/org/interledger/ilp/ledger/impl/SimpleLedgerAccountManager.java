@@ -1,49 +1,144 @@
 package org.interledger.ilp.ledger.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.interledger.ilp.core.Ledger;
 import org.interledger.ilp.ledger.LedgerFactory;
+import org.interledger.ilp.ledger.account.AccountNames;
 import org.interledger.ilp.ledger.account.AccountNotFoundException;
 import org.interledger.ilp.ledger.account.LedgerAccount;
 import org.interledger.ilp.ledger.account.LedgerAccountManager;
+import org.interledger.ilp.ledger.account.LedgerAccountPage;
 
 /**
  * Simple in-memory {@code LedgerAccountManager}.
+ * <p>
+ * Thread-safe: accounts are kept in a {@link ConcurrentHashMap} so lookups
+ * from concurrent transfers never block, and their names in a skip list so
+ * pages can be listed in name order.
+ * <p>
+ * Names are case-insensitive, as account equality: accounts are keyed by
+ * their {@link AccountNames#canonical canonical name}, so {@code alice} and
+ * {@code Alice} are the same account.
+ * <p>
+ * An account manager belongs to one ledger, which gives the currency and
+ * balance engine of the accounts it creates.
  *
  * @author mrmx
  */
 public class SimpleLedgerAccountManager implements LedgerAccountManager {
-	private Map<String, LedgerAccount> accountMap;
+	// By canonical name
+	private final ConcurrentMap<String, LedgerAccount> accountMap;
+	// Sorted canonical names, for pagination
+	private final ConcurrentNavigableMap<String, Boolean> accountIndex;
+	private final SimpleLedger ledger;
 
+	/**
+	 * Creates an account manager for the ledger of the {@link LedgerFactory}.
+	 *
+	 * @deprecated use the account manager of a {@link SimpleLedger}
+	 */
+	@Deprecated
 	public SimpleLedgerAccountManager() {
-		accountMap = new HashMap<String, LedgerAccount>();
+		this(null);
+	}
+
+	/**
+	 * @param ledger the ledger owning the accounts, or {@code null} for the
+	 * one of the {@link LedgerFactory}
+	 */
+	public SimpleLedgerAccountManager(SimpleLedger ledger) {
+		this.ledger = ledger;
+		accountMap = new ConcurrentHashMap<String, LedgerAccount>();
+		accountIndex = new ConcurrentSkipListMap<String, Boolean>();
 	}
 
 
 	@Override
 	public LedgerAccount create(String name) {
-		return new SimpleLedgerAccount(name, LedgerFactory.getLedger().getInfo().getCurrencyCode());
+		if (this.ledger != null) {
+			return this.ledger.createAccount(name);
+		}
+		Ledger ledger = LedgerFactory.getLedger();
+		if (ledger instanceof SimpleLedger) {
+			return ((SimpleLedger) ledger).createAccount(name);
+		}
+		return new SimpleLedgerAccount(name, ledger.getInfo().getCurrencyCode());
 	}
 
 	@Override
 	public void addAccount(LedgerAccount account) {
-		accountMap.put(account.getName(), account);
+		String key = AccountNames.canonical(account.getName());
+		accountMap.put(key, account);
+		accountIndex.put(key, Boolean.TRUE);
+	}
+
+	@Override
+	public LedgerAccount addAccountIfAbsent(LedgerAccount account) {
+		String key = AccountNames.canonical(account.getName());
+		LedgerAccount existing = accountMap.putIfAbsent(key, account);
+		if (existing == null) {
+			accountIndex.put(key, Boolean.TRUE);
+		}
+		return existing;
 	}
 
 	@Override
 	public LedgerAccount getAccountByName(String name) throws AccountNotFoundException {
-		if (!accountMap.containsKey(name)) {
+		LedgerAccount account = accountMap.get(AccountNames.canonical(name));
+		if (account == null) {
 			throw new AccountNotFoundException(name);
 		}
-		return accountMap.get(name);
+		return account;
 	}
 
 	@Override
 	public Collection<LedgerAccount> getAccounts(int page, int pageSize) {
-		// TODO
-		return accountMap.values();
+		if (page < 1) {
+			throw new IllegalArgumentException("page must be positive");
+		}
+		checkPageSize(pageSize);
+		long skip = (long) (page - 1) * pageSize;
+		List<LedgerAccount> accounts = new ArrayList<LedgerAccount>(pageSize);
+		for (String name : accountIndex.keySet()) {
+			if (skip > 0) {
+				skip--;
+				continue;
+			}
+			accounts.add(accountMap.get(name));
+			if (accounts.size() == pageSize) {
+				break;
+			}
+		}
+		return accounts;
+	}
+
+	@Override
+	public LedgerAccountPage getAccounts(String cursor, int pageSize) {
+		checkPageSize(pageSize);
+		// The cursor is the name of the last account of the previous page, so new
+		// accounts never shift the following pages
+		Iterator<String> names = (cursor == null ? accountIndex.keySet()
+				: accountIndex.tailMap(AccountNames.canonical(cursor), false).keySet()).iterator();
+		List<LedgerAccount> accounts = new ArrayList<LedgerAccount>(pageSize);
+		LedgerAccount last = null;
+		while (accounts.size() < pageSize && names.hasNext()) {
+			last = accountMap.get(names.next());
+			accounts.add(last);
+		}
+		return new LedgerAccountPage(accounts, names.hasNext() ? last.getName() : null);
+	}
+
+	private static void checkPageSize(int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive");
+		}
 	}
 
 	@Override
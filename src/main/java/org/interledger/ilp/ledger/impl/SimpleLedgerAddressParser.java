@@ -4,62 +4,72 @@ import org.apache.commons.lang.StringUtils;
 
 /**
  * Simple local account address parser
- * 
+ * <p>
+ * Scans the address for the separator instead of splitting it, so parsing
+ * only allocates the parsed address. Instances are immutable and may be
+ * shared.
+ *
  * @author mrmx
  */
 public class SimpleLedgerAddressParser implements LedgerAddressParser {
     private final static String DEFAULT_LEDGER_HOST_ACCOUNT_SEPARATOR = "@";
-    
-    private String separator;
-    private String accountName;
-    private String ledgerName;
-    
+
+    private final static SimpleLedgerAddressParser DEFAULT = new SimpleLedgerAddressParser();
+
+    private final String separator;
+
     public SimpleLedgerAddressParser() {
         this(DEFAULT_LEDGER_HOST_ACCOUNT_SEPARATOR);
     }
 
     public SimpleLedgerAddressParser(String separator) {
-        if(separator == null) {
+        if(StringUtils.isEmpty(separator)) {
             separator = DEFAULT_LEDGER_HOST_ACCOUNT_SEPARATOR;
         }
         this.separator = separator;
     }
-    
+
+    /**
+     * @return a shared parser with the default separator
+     */
+    public static SimpleLedgerAddressParser getDefault() {
+        return DEFAULT;
+    }
+
     @Override
-    public void parse(String address) throws LedgerAddressParserException {
+    public LedgerAddress parse(String address) throws LedgerAddressParserException {
         if(StringUtils.isEmpty(address)) {
             throw new LedgerAddressParserException("empty address");
         }
-        if(!address.contains(separator)) {
+        int start = 0;
+        int end = address.length();
+        while(start < end && address.charAt(start) <= ' ') {
+            start++;
+        }
+        while(end > start && address.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int accountEnd = address.indexOf(separator, start);
+        if(accountEnd < 0 || accountEnd >= end) {
             throw new LedgerAddressParserException(address);
         }
-        try {
-            String parts[] = address.trim().split(separator);
-            accountName = parts[0];
-            if(StringUtils.isEmpty(accountName)) {
-                throw new IllegalArgumentException("empty account name");
-            }
-            ledgerName = parts[1];
-            if(StringUtils.isEmpty(ledgerName)) {
-                throw new IllegalArgumentException("empty ledger name");
-            }            
-        }catch(Exception ex) {
-            throw new LedgerAddressParserException(address,ex);
+        if(accountEnd == start) {
+            throw new LedgerAddressParserException(address, new IllegalArgumentException("empty account name"));
         }
-    }
-
-    @Override
-    public String getAccountName() {
-        return accountName;
-    }
-    
-    @Override
-    public String getLedgerName() {
-        return ledgerName;
+        int ledgerStart = accountEnd + separator.length();
+        // Anything after a further separator is ignored
+        int ledgerEnd = address.indexOf(separator, ledgerStart);
+        if(ledgerEnd < 0 || ledgerEnd > end) {
+            ledgerEnd = end;
+        }
+        if(ledgerEnd <= ledgerStart) {
+            throw new LedgerAddressParserException(address, new IllegalArgumentException("empty ledger name"));
+        }
+        return new LedgerAddress(address.substring(start, accountEnd), address.substring(ledgerStart, ledgerEnd));
     }
 
     public String getSeparator() {
         return separator;
     }
-    
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,67 @@
+package org.interledger.ilp.ledger.impl;
+
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Balances of the accounts as of the start of a snapshot, while it is being
+ * written.
+ * <p>
+ * The first one to read an account wins: either a transfer about to change it
+ * (which saves its balance before the change) or the snapshot writer. Since a
+ * transfer only changes an account after its balance has been saved, the
+ * saved balance is always the one the account had when the snapshot started.
+ *
+ * @author mrmx
+ */
+final class SnapshotEpoch {
+
+    private final int scale;
+    private final TransferHoldStore holds;
+    private final ConcurrentMap<String, Long> balances = new ConcurrentHashMap<String, Long>();
+
+    SnapshotEpoch(int scale, TransferHoldStore holds) {
+        this.scale = scale;
+        this.holds = holds;
+    }
+
+    /**
+     * Saves the balance of the account, unless already saved. Must be called
+     * before the account is changed.
+     */
+    void capture(LedgerAccount account) {
+        if (!balances.containsKey(account.getName())) {
+            balances.putIfAbsent(account.getName(), read(account));
+        }
+    }
+
+    /**
+     * @return the balance of the account when the snapshot started
+     */
+    long balanceOf(LedgerAccount account) {
+        Long balance = balances.get(account.getName());
+        if (balance == null) {
+            long current = read(account);
+            balance = balances.putIfAbsent(account.getName(), current);
+            if (balance == null) {
+                return current;
+            }
+        }
+        return balance;
+    }
+
+    // Held funds are only journaled once their transfer is executed, so they still count
+    private long read(LedgerAccount account) {
+        long balance;
+        if (account instanceof MinorUnitsLedgerAccount && ((MinorUnitsLedgerAccount) account).getScale() == scale) {
+            balance = ((MinorUnitsLedgerAccount) account).getBalanceInMinorUnits();
+        } else {
+            balance = MoneyUtils.toMinorUnits(account.getBalance(), scale);
+        }
+        return MoneyUtils.addExact(balance, holds.getHeldBalance(account.getName()));
+    }
+}
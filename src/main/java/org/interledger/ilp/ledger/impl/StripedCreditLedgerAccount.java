@@ -0,0 +1,68 @@
+package org.interledger.ilp.ledger.impl;
+
+import org.interledger.ilp.core.LedgerInfo;
+import org.interledger.ilp.ledger.StripedCounter;
+import org.interledger.ilp.ledger.account.LockFreeLedgerAccount;
+
+/**
+ * Thread-safe ledger account for hot, mostly credited accounts (eg: connector
+ * or settlement accounts).
+ * <p>
+ * Credits go to a {@link StripedCounter}, so concurrent credits land on different
+ * cells and never contend. Debits are serialized on the account: since
+ * credits can only raise the balance, a debit holding the account monitor
+ * can check and update it safely. Reading the balance sums all the cells.
+ * <p>
+ * Unlike the other minor units accounts, credits are not overflow-checked.
+ *
+ * @author mrmx
+ */
+public class StripedCreditLedgerAccount extends AbstractMinorUnitsLedgerAccount implements LockFreeLedgerAccount {
+
+    private final StripedCounter balance = new StripedCounter();
+
+    public StripedCreditLedgerAccount(String name, LedgerInfo info) {
+        this(name, info.getCurrencyCode(), info.getScale());
+    }
+
+    public StripedCreditLedgerAccount(String name, String currencyCode, int scale) {
+        super(name, currencyCode, scale);
+    }
+
+    /**
+     * Not atomic with respect to concurrent credits: only meant to be used
+     * while setting up the account.
+     */
+    @Override
+    public synchronized StripedCreditLedgerAccount setBalanceInMinorUnits(long balance) {
+        this.balance.reset();
+        this.balance.add(balance);
+        return this;
+    }
+
+    @Override
+    public long getBalanceInMinorUnits() {
+        return balance.sum();
+    }
+
+    @Override
+    public StripedCreditLedgerAccount creditMinorUnits(long amount) {
+        balance.add(amount);
+        return this;
+    }
+
+    @Override
+    public synchronized StripedCreditLedgerAccount debitMinorUnits(long amount) {
+        balance.add(-amount);
+        return this;
+    }
+
+    @Override
+    public synchronized boolean tryDebitMinorUnits(long amount) {
+        if (balance.sum() < amount) {
+            return false;
+        }
+        balance.add(-amount);
+        return true;
+    }
+}
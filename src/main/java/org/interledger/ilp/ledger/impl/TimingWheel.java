@@ -0,0 +1,236 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hierarchical timing wheel: {@value #LEVELS} wheels of {@value #SLOTS}
+ * slots, each slot of a wheel spanning a whole turn of the wheel below.
+ * <p>
+ * Scheduling and cancelling are O(1) and lock-free: timeouts are queued and
+ * only linked into the wheels by the thread calling {@link #advance}, which
+ * must be a single one. A timeout sits in the wheel matching how far its
+ * deadline is, and moves down a wheel each time the wheel below completes a
+ * turn, so advancing only visits the slots due. Deadlines beyond the last
+ * wheel wait in its farthest slot.
+ *
+ * @param <T> the scheduled items
+ * @author mrmx
+ */
+final class TimingWheel<T> {
+
+    static final int LEVELS = 4;
+    static final int SLOTS = 64;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickMillis;
+    private final Slot<T>[][] wheels;
+    private final ConcurrentLinkedQueue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<Timeout<T>>();
+    private final ConcurrentLinkedQueue<Timeout<T>> cancelled = new ConcurrentLinkedQueue<Timeout<T>>();
+    private final AtomicInteger size = new AtomicInteger();
+    private long currentTick;
+
+    /**
+     * @param tickMillis the resolution of the wheel
+     * @param nowMillis the current time
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.wheels = new Slot[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheels[level][slot] = new Slot<T>();
+            }
+        }
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Schedules an item. May be called from any thread.
+     *
+     * @param deadlineMillis the time from which the item expires
+     */
+    Timeout<T> schedule(T item, long deadlineMillis) {
+        // Rounded up, so an item never expires before its deadline
+        long deadlineTick = deadlineMillis / tickMillis + (deadlineMillis % tickMillis > 0 ? 1 : 0);
+        Timeout<T> timeout = new Timeout<T>(this, item, deadlineTick);
+        size.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return the number of items neither expired nor cancelled
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Moves the wheels up to the given time and collects the items expired
+     * meanwhile.
+     */
+    void advance(long nowMillis, List<T> expired) {
+        Timeout<T> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            place(timeout, expired);
+        }
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.slot != null) {
+                timeout.slot.remove(timeout);
+            }
+        }
+        long nowTick = nowMillis / tickMillis;
+        while (currentTick < nowTick) {
+            currentTick++;
+            // Higher wheels first, so what they hand down is handed down again if due
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    Slot<T> slot = wheels[level][(int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK];
+                    Timeout<T> cascaded = slot.clear();
+                    while (cascaded != null) {
+                        Timeout<T> next = cascaded.next;
+                        place(cascaded, expired);
+                        cascaded = next;
+                    }
+                }
+            }
+            Timeout<T> due = wheels[0][(int) currentTick & SLOT_MASK].clear();
+            while (due != null) {
+                Timeout<T> next = due.next;
+                place(due, expired);
+                due = next;
+            }
+        }
+    }
+
+    private void place(Timeout<T> timeout, List<T> expired) {
+        timeout.next = null;
+        timeout.prev = null;
+        timeout.slot = null;
+        if (timeout.state.get() != PENDING) {
+            return;
+        }
+        long delta = timeout.deadlineTick - currentTick;
+        if (delta <= 0) {
+            if (timeout.expire()) {
+                size.decrementAndGet();
+                expired.add(timeout.item);
+            }
+            return;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long tick = timeout.deadlineTick;
+        if (delta >= 1L << (SLOT_BITS * LEVELS)) {
+            // Too far: wait in the last slot before the current one of the top wheel
+            tick = currentTick + ((long) (SLOTS - 1) << (SLOT_BITS * level));
+        }
+        wheels[level][(int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK].add(timeout);
+    }
+
+    /**
+     * Handle of a scheduled item.
+     */
+    static final class Timeout<T> {
+
+        private final TimingWheel<T> wheel;
+        private final T item;
+        private final long deadlineTick;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // Only used by the advancing thread
+        private Slot<T> slot;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        Timeout(TimingWheel<T> wheel, T item, long deadlineTick) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+
+        T getItem() {
+            return item;
+        }
+
+        /**
+         * @return {@code false} if the item already expired or was cancelled
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.size.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private boolean expire() {
+            return state.compareAndSet(PENDING, EXPIRED);
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts of a slot.
+     */
+    private static final class Slot<T> {
+
+        private Timeout<T> head;
+
+        void add(Timeout<T> timeout) {
+            timeout.slot = this;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.slot = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        /**
+         * @return the first of the timeouts removed
+         */
+        Timeout<T> clear() {
+            Timeout<T> first = head;
+            head = null;
+            return first;
+        }
+    }
+}
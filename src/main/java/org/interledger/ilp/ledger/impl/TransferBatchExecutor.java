@@ -0,0 +1,333 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import javax.money.MonetaryAmount;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.LedgerAccountManager;
+import org.interledger.ilp.ledger.account.LockFreeLedgerAccount;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+import org.interledger.ilp.ledger.journal.LedgerJournal;
+
+/**
+ * Executes the transfers of {@link SimpleLedger#sendBatch}.
+ * <p>
+ * Accounts are resolved and amounts parsed once per batch. Then every account
+ * involved is locked and the net debit or credit of each one is checked and
+ * applied within a single critical section. Amounts are handled as minor units
+ * of the ledger scale.
+ *
+ * @author mrmx
+ */
+final class TransferBatchExecutor {
+
+    private final SimpleLedger ledger;
+    private final int scale;
+    private final String currencyCode;
+
+    TransferBatchExecutor(SimpleLedger ledger) {
+        this.ledger = ledger;
+        this.scale = ledger.getInfo().getScale();
+        this.currencyCode = ledger.getInfo().getCurrencyCode();
+    }
+
+    TransferBatchResult execute(List<LedgerTransfer> transfers, TransferBatchMode mode) {
+        int size = transfers.size();
+        boolean[] executed = new boolean[size];
+        RuntimeException[] failures = new RuntimeException[size];
+        Posting[] sources = new Posting[size];
+        Posting[] destinations = new Posting[size];
+        long[] amounts = new long[size];
+
+        // Resolve every account and parse every amount once
+        LedgerAccountManager accountManager = ledger.getLedgerAccountManager();
+        Map<String, Posting> postingsByName = new HashMap<String, Posting>();
+        Map<LedgerAccount, Posting> postings = new IdentityHashMap<LedgerAccount, Posting>();
+        boolean failed = false;
+        for (int i = 0; i < size; i++) {
+            LedgerTransfer transfer = transfers.get(i);
+            try {
+                if (transfer.getHeader() != null && transfer.getHeader().getCondition() != null) {
+                    throw new IllegalArgumentException("Conditional transfers can't be batched");
+                }
+                if (SimpleLedger.idOf(transfer) != null) {
+                    // Batches aren't deduplicated
+                    throw new IllegalArgumentException("Transfers with an id can't be batched");
+                }
+                Posting from = resolve(transfer.getFromAccount(), accountManager, postingsByName, postings);
+                Posting to = resolve(transfer.getToAccount(), accountManager, postingsByName, postings);
+                if (from == to) {
+                    throw new RuntimeException("accounts are the same");
+                }
+                amounts[i] = MoneyUtils.toMinorUnits(transfer.getAmount(), scale);
+                sources[i] = from;
+                destinations[i] = to;
+            } catch (RuntimeException ex) {
+                failures[i] = ex;
+                failed = true;
+            }
+        }
+        if (postings.isEmpty() || (failed && mode == TransferBatchMode.ALL_OR_NOTHING)) {
+            return new TransferBatchResult(executed, failures);
+        }
+
+        LedgerJournal journal = ledger.getJournal();
+        long journalPosition = 0;
+        if (journal != null) {
+            journal.checkWritable();
+        }
+        Lock gate = ledger.getCommitGate();
+        if (gate != null) {
+            gate.lock();
+        }
+        AccountLockStripes lockStripes = ledger.getLockStripes();
+        int[] stripes = lockStripes(lockStripes, postings.values());
+        try {
+            for (Posting posting : postings.values()) {
+                posting.balance = balanceOf(posting);
+            }
+            boolean valid = mode == TransferBatchMode.ALL_OR_NOTHING
+                    ? validateNet(sources, destinations, amounts, executed, failures)
+                    : validateEach(sources, destinations, amounts, executed, failures);
+            if (valid) {
+                SnapshotEpoch epoch = ledger.getSnapshotEpoch();
+                if (epoch != null) {
+                    for (Posting posting : postings.values()) {
+                        epoch.capture(posting.account);
+                    }
+                }
+                try {
+                    apply(postings.values());
+                } catch (RuntimeException ex) {
+                    for (int i = 0; i < size; i++) {
+                        if (executed[i]) {
+                            executed[i] = false;
+                            failures[i] = ex;
+                        }
+                    }
+                }
+                if (journal != null) {
+                    journalPosition = journal(journal, sources, destinations, amounts, executed);
+                }
+            }
+        } finally {
+            unlockStripes(lockStripes, stripes);
+            if (gate != null) {
+                gate.unlock();
+            }
+        }
+        if (journal != null) {
+            journal.awaitDurable(journalPosition);
+        }
+        ledger.notifyTransfersExecuted(transfers, executed);
+        return new TransferBatchResult(executed, failures);
+    }
+
+    private long journal(LedgerJournal journal, Posting[] sources, Posting[] destinations, long[] amounts,
+            boolean[] executed) {
+        long position = 0;
+        for (int i = 0; i < amounts.length; i++) {
+            if (executed[i]) {
+                position = journal.appendTransfer(
+                        sources[i].account.getName(), destinations[i].account.getName(), amounts[i]);
+            }
+        }
+        return position;
+    }
+
+    private Posting resolve(String accountName, LedgerAccountManager accountManager,
+            Map<String, Posting> postingsByName, Map<LedgerAccount, Posting> postings) {
+        Posting posting = postingsByName.get(accountName);
+        if (posting == null) {
+            LedgerAccount account = accountManager.getAccountByName(accountName);
+            posting = postings.get(account);
+            if (posting == null) {
+                posting = new Posting(account, account instanceof MinorUnitsLedgerAccount
+                        && ((MinorUnitsLedgerAccount) account).getScale() == scale);
+                postings.put(account, posting);
+            }
+            postingsByName.put(accountName, posting);
+        }
+        return posting;
+    }
+
+    // Net debits are checked against each source balance; nothing runs if one fails
+    private boolean validateNet(Posting[] sources, Posting[] destinations, long[] amounts,
+            boolean[] executed, RuntimeException[] failures) {
+        boolean valid = true;
+        for (int i = 0; i < amounts.length; i++) {
+            try {
+                sources[i].net = MoneyUtils.subtractExact(sources[i].net, amounts[i]);
+                destinations[i].net = MoneyUtils.addExact(destinations[i].net, amounts[i]);
+            } catch (ArithmeticException ex) {
+                failures[i] = ex;
+                valid = false;
+            }
+        }
+        for (int i = 0; i < amounts.length; i++) {
+            if (failures[i] == null && !sources[i].covers(0)) {
+                failures[i] = insufficientAmount(amounts[i]);
+                valid = false;
+            }
+        }
+        if (valid) {
+            for (int i = 0; i < amounts.length; i++) {
+                executed[i] = true;
+            }
+        }
+        return valid;
+    }
+
+    // Transfers are checked in order against the balances left by the previous ones
+    private boolean validateEach(Posting[] sources, Posting[] destinations, long[] amounts,
+            boolean[] executed, RuntimeException[] failures) {
+        boolean any = false;
+        for (int i = 0; i < amounts.length; i++) {
+            if (failures[i] != null) {
+                continue;
+            }
+            Posting from = sources[i];
+            Posting to = destinations[i];
+            try {
+                long fromNet = MoneyUtils.subtractExact(from.net, amounts[i]);
+                long toNet = MoneyUtils.addExact(to.net, amounts[i]);
+                MoneyUtils.addExact(to.balance, toNet);
+                if (!from.covers(amounts[i])) {
+                    failures[i] = insufficientAmount(amounts[i]);
+                    continue;
+                }
+                from.net = fromNet;
+                to.net = toNet;
+                executed[i] = true;
+                any = true;
+            } catch (ArithmeticException ex) {
+                failures[i] = ex;
+            }
+        }
+        return any;
+    }
+
+    // Debits go first so that a lock-free account drained meanwhile fails before anything is credited
+    private void apply(Iterable<Posting> postings) {
+        List<Posting> applied = new ArrayList<Posting>();
+        try {
+            for (Posting posting : postings) {
+                if (posting.net < 0) {
+                    debit(posting, -posting.net, true);
+                    applied.add(posting);
+                }
+            }
+            for (Posting posting : postings) {
+                if (posting.net > 0) {
+                    credit(posting, posting.net);
+                    applied.add(posting);
+                }
+            }
+        } catch (RuntimeException ex) {
+            for (int i = applied.size() - 1; i >= 0; i--) {
+                Posting posting = applied.get(i);
+                if (posting.net < 0) {
+                    credit(posting, -posting.net);
+                } else {
+                    debit(posting, posting.net, false);
+                }
+            }
+            throw ex;
+        }
+    }
+
+    private void debit(Posting posting, long amount, boolean checked) {
+        LedgerAccount account = posting.account;
+        if (checked && account instanceof LockFreeLedgerAccount) {
+            // May have been debited outside of the batch locks
+            LockFreeLedgerAccount lockFreeAccount = (LockFreeLedgerAccount) account;
+            long units = posting.isNative
+                    ? amount : MoneyUtils.toMinorUnits(toMonetaryAmount(amount), lockFreeAccount.getScale());
+            if (!lockFreeAccount.tryDebitMinorUnits(units)) {
+                throw insufficientAmount(amount);
+            }
+        } else if (posting.isNative) {
+            ((MinorUnitsLedgerAccount) account).debitMinorUnits(amount);
+        } else {
+            account.debit(toMonetaryAmount(amount));
+        }
+    }
+
+    private void credit(Posting posting, long amount) {
+        if (posting.isNative) {
+            ((MinorUnitsLedgerAccount) posting.account).creditMinorUnits(amount);
+        } else {
+            posting.account.credit(toMonetaryAmount(amount));
+        }
+    }
+
+    // Rounded down, so that a debit is never accepted against a fraction of a minor unit
+    private long balanceOf(Posting posting) {
+        if (posting.isNative) {
+            return ((MinorUnitsLedgerAccount) posting.account).getBalanceInMinorUnits();
+        }
+        BigDecimal balance = posting.account.getBalance().getNumber().numberValue(BigDecimal.class);
+        return balance.setScale(scale, RoundingMode.FLOOR).unscaledValue().longValue();
+    }
+
+    private static int[] lockStripes(AccountLockStripes lockStripes, Iterable<Posting> postings) {
+        if (lockStripes == null) {
+            return null;
+        }
+        List<String> accountNames = new ArrayList<String>();
+        for (Posting posting : postings) {
+            accountNames.add(posting.account.getName());
+        }
+        int[] stripes = lockStripes.stripesOf(accountNames);
+        lockStripes.lockAll(stripes);
+        return stripes;
+    }
+
+    private static void unlockStripes(AccountLockStripes lockStripes, int[] stripes) {
+        if (stripes != null) {
+            lockStripes.unlockAll(stripes);
+        }
+    }
+
+    private MonetaryAmount toMonetaryAmount(long amount) {
+        return MoneyUtils.toMonetaryAmount(amount, scale, currencyCode);
+    }
+
+    private InsufficientAmountException insufficientAmount(long amount) {
+        return new InsufficientAmountException(toMonetaryAmount(amount).toString());
+    }
+
+    /**
+     * An account involved in the batch and its pending net change.
+     */
+    private static final class Posting {
+
+        private final LedgerAccount account;
+        // Whether the account holds minor units of the ledger scale
+        private final boolean isNative;
+        private long balance;
+        private long net;
+
+        Posting(LedgerAccount account, boolean isNative) {
+            this.account = account;
+            this.isNative = isNative;
+        }
+
+        /**
+         * @return whether the balance, after the pending net change, covers
+         * the given amount
+         */
+        boolean covers(long amount) {
+            return MoneyUtils.subtractExact(MoneyUtils.addExact(balance, net), amount) >= 0;
+        }
+    }
+}
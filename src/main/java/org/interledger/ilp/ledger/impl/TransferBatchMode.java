@@ -0,0 +1,21 @@
+package org.interledger.ilp.ledger.impl;
+
+/**
+ * How {@link SimpleLedger#sendBatch} deals with transfers that can't be
+ * executed.
+ *
+ * @author mrmx
+ */
+public enum TransferBatchMode {
+
+    /**
+     * Balances are checked against the net debits and credits of the whole
+     * batch, and nothing is executed if any transfer fails.
+     */
+    ALL_OR_NOTHING,
+    /**
+     * Transfers are checked one after the other, in order, and only the ones
+     * that fail are skipped.
+     */
+    PER_TRANSFER
+}
@@ -0,0 +1,59 @@
+package org.interledger.ilp.ledger.impl;
+
+/**
+ * Outcome of {@link SimpleLedger#sendBatch}: one entry per transfer, in the
+ * order they were submitted.
+ *
+ * @author mrmx
+ */
+public class TransferBatchResult {
+
+    private final boolean[] executed;
+    private final RuntimeException[] failures;
+    private final int executedCount;
+
+    TransferBatchResult(boolean[] executed, RuntimeException[] failures) {
+        this.executed = executed;
+        this.failures = failures;
+        int count = 0;
+        for (boolean transferExecuted : executed) {
+            if (transferExecuted) {
+                count++;
+            }
+        }
+        this.executedCount = count;
+    }
+
+    public int size() {
+        return executed.length;
+    }
+
+    public boolean isExecuted(int index) {
+        return executed[index];
+    }
+
+    /**
+     * @return why the transfer failed, or {@code null} if it didn't fail by
+     * itself (it was executed, or skipped because another transfer of an
+     * {@link TransferBatchMode#ALL_OR_NOTHING} batch failed)
+     */
+    public RuntimeException getFailure(int index) {
+        return failures[index];
+    }
+
+    public int getExecutedCount() {
+        return executedCount;
+    }
+
+    public boolean isFullyExecuted() {
+        return executedCount == executed.length;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferBatchResult["
+                + "executed:" + executedCount
+                + " of:" + executed.length
+                + "]";
+    }
+}
@@ -0,0 +1,223 @@
+package org.interledger.ilp.ledger.impl;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.exceptions.LedgerTransferException;
+import org.interledger.ilp.ledger.account.AccountNames;
+
+/**
+ * The outcomes of the transfers recently sent to a ledger, by transfer id, so
+ * a transfer sent again (eg: retried after a timeout) isn't applied twice.
+ * <p>
+ * Ids are kept in a hash map, and also listed by generation: the ids added
+ * during the same slice of the retention period. Once a generation is older
+ * than the retention period, or when the index is full, its ids are removed.
+ * Every lookup is then a single hash map access, and the index never holds
+ * more than its maximum size, at the cost of forgetting ids earlier under a
+ * sustained load.
+ *
+ * @author mrmx
+ */
+final class TransferDedupIndex {
+
+    static final long DEFAULT_RETENTION_MILLIS = 10 * 60 * 1000;
+    static final int DEFAULT_MAXIMUM_SIZE = 1 << 20;
+    static final int GENERATIONS = 8;
+
+    private final SimpleLedger ledger;
+    private final long retentionMillis;
+    private final int maximumSize;
+    private final long generationMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicInteger size = new AtomicInteger();
+    // Oldest first, the current one last; only used while holding the lock of the index
+    private final Deque<Generation> generations = new ArrayDeque<Generation>(GENERATIONS + 1);
+    private volatile Generation current;
+
+    /**
+     * @param ledger the ledger whose clock ages the ids out
+     * @param retentionMillis how long ids are kept, at least, unless the
+     * index is full
+     * @param maximumSize the maximum number of ids kept
+     */
+    TransferDedupIndex(SimpleLedger ledger, long retentionMillis, int maximumSize) {
+        if (retentionMillis <= 0) {
+            throw new IllegalArgumentException("retention must be positive");
+        }
+        if (maximumSize < GENERATIONS) {
+            throw new IllegalArgumentException("maximumSize must be at least " + GENERATIONS);
+        }
+        this.ledger = ledger;
+        this.retentionMillis = retentionMillis;
+        this.maximumSize = maximumSize;
+        this.generationMillis = Math.max(1, retentionMillis / (GENERATIONS - 1));
+    }
+
+    long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    int getMaximumSize() {
+        return maximumSize;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Registers a transfer about to be sent, unless a transfer with the same
+     * id was already sent.
+     *
+     * @return {@code null} if the caller must send the transfer then
+     * {@link Entry#complete complete} the entry, otherwise the entry of the
+     * transfer sent first, maybe still in progress
+     * @throws LedgerTransferException if the id was used by another transfer
+     */
+    Entry register(Entry entry) {
+        String transferId = entry.transferId;
+        long now = ledger.getClock().currentTimeMillis();
+        Generation generation = current;
+        if (generation == null || now >= generation.endMillis || size.get() >= maximumSize) {
+            generation = rotate(now);
+        }
+        Entry existing = entries.putIfAbsent(transferId, entry);
+        if (existing != null) {
+            if (!existing.matches(entry)) {
+                throw new LedgerTransferException("Transfer id " + transferId + " already used by another transfer");
+            }
+            return existing;
+        }
+        size.incrementAndGet();
+        generation.entries.offer(entry);
+        // A generation is flagged before it's emptied: if it was evicted meanwhile,
+        // the entry may have been missed, so it moves on to the current one
+        while (generation.evicted) {
+            generation = current;
+            generation.entries.offer(entry);
+        }
+        return null;
+    }
+
+    Entry get(String transferId) {
+        return entries.get(transferId);
+    }
+
+    private synchronized Generation rotate(long now) {
+        Generation generation = current;
+        boolean full = size.get() >= maximumSize;
+        if (generation != null && now < generation.endMillis && !full) {
+            // Rotated by another thread
+            return generation;
+        }
+        if (generation == null || now >= generation.endMillis) {
+            generation = new Generation(now + generationMillis);
+            generations.addLast(generation);
+            current = generation;
+        }
+        while (generations.peekFirst().endMillis + retentionMillis <= now) {
+            evict(generations.pollFirst());
+        }
+        // When full, the oldest ids go first, even if still within the retention period
+        while (size.get() >= maximumSize && generations.size() > 1) {
+            evict(generations.pollFirst());
+        }
+        if (size.get() >= maximumSize) {
+            // The current generation holds every id
+            evict(generation, maximumSize / GENERATIONS);
+        }
+        return generation;
+    }
+
+    private void evict(Generation generation) {
+        generation.evicted = true;
+        evict(generation, Integer.MAX_VALUE);
+    }
+
+    private void evict(Generation generation, int count) {
+        Entry entry;
+        for (int i = 0; i < count && (entry = generation.entries.poll()) != null; i++) {
+            if (entries.remove(entry.transferId, entry)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The ids added until some time.
+     */
+    private static final class Generation {
+
+        private final long endMillis;
+        // May list an entry twice, see register
+        private final Queue<Entry> entries = new ConcurrentLinkedQueue<Entry>();
+        private volatile boolean evicted;
+
+        Generation(long endMillis) {
+            this.endMillis = endMillis;
+        }
+    }
+
+    /**
+     * A transfer sent and its outcome.
+     */
+    static final class Entry {
+
+        private final String transferId;
+        private final String from;
+        private final String to;
+        private final String amount;
+        private final SettableFuture<Void> outcome = SettableFuture.create();
+
+        Entry(String transferId, LedgerTransfer transfer) {
+            this.transferId = transferId;
+            // Accounts spelled in another case are the same accounts
+            this.from = canonical(transfer.getFromAccount());
+            this.to = canonical(transfer.getToAccount());
+            this.amount = transfer.getAmount();
+        }
+
+        boolean matches(Entry other) {
+            return equal(from, other.from) && equal(to, other.to) && equal(amount, other.amount);
+        }
+
+        /**
+         * @return completed once the transfer is sent, or with the reason it
+         * failed
+         */
+        ListenableFuture<Void> getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Records the outcome of the transfer. Only the first one counts: a
+         * transfer is sent once it's committed, so a later failure, eg: of an
+         * event handler, doesn't change it.
+         *
+         * @param failure the reason the transfer wasn't sent, or {@code null}
+         */
+        void complete(Throwable failure) {
+            if (failure == null) {
+                outcome.set(null);
+            } else {
+                outcome.setException(failure);
+            }
+        }
+
+        private static String canonical(String accountName) {
+            return accountName == null ? null : AccountNames.canonical(accountName);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
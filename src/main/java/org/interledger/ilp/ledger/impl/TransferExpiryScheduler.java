@@ -0,0 +1,112 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rejects the prepared transfers of a ledger once they expire.
+ * <p>
+ * Holds are put in a {@link TimingWheel} advanced to the time of the ledger
+ * clock by a daemon thread every tick. The thread is started with the first
+ * hold, and sleeps while there are none.
+ *
+ * @author mrmx
+ */
+final class TransferExpiryScheduler implements Runnable {
+
+    static final long DEFAULT_TICK_MILLIS = 10;
+
+    private static final Logger logger = Logger.getLogger(TransferExpiryScheduler.class.getName());
+
+    private final ConditionalTransferExecutor executor;
+    private final long tickMillis;
+    private volatile TimingWheel<TransferHold> wheel;
+    private final List<TransferHold> expired = new ArrayList<TransferHold>();
+    private volatile Thread thread;
+    private volatile boolean closed;
+
+    TransferExpiryScheduler(ConditionalTransferExecutor executor, long tickMillis) {
+        this.executor = executor;
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Schedules the expiry of a hold, unless it's cancelled before.
+     */
+    TimingWheel.Timeout<TransferHold> schedule(TransferHold hold) {
+        Thread current = thread;
+        if (current == null) {
+            current = start();
+        }
+        TimingWheel.Timeout<TransferHold> timeout = wheel.schedule(hold, hold.getExpirationMillis());
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+        return timeout;
+    }
+
+    /**
+     * @return the number of holds waiting to expire
+     */
+    int size() {
+        TimingWheel<TransferHold> current = wheel;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Stops the expiry thread. Holds scheduled afterwards never expire.
+     */
+    void close() {
+        closed = true;
+        Thread current = thread;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    // The wheel starts at the first hold, so the clock may be set until then
+    private synchronized Thread start() {
+        if (wheel == null) {
+            wheel = new TimingWheel<TransferHold>(tickMillis, executor.currentTimeMillis());
+        }
+        if (thread == null && !closed) {
+            Thread started = new Thread(this, "ledger-expiry");
+            started.setDaemon(true);
+            thread = started;
+            started.start();
+        }
+        return thread;
+    }
+
+    @Override
+    public void run() {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(wheel.getTickMillis());
+        while (!closed) {
+            if (wheel.size() == 0) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, tickNanos);
+            }
+            expireDue(executor.currentTimeMillis());
+        }
+    }
+
+    private void expireDue(long nowMillis) {
+        wheel.advance(nowMillis, expired);
+        try {
+            for (TransferHold hold : expired) {
+                try {
+                    executor.expire(hold);
+                } catch (RuntimeException ex) {
+                    logger.log(Level.SEVERE, "Can't expire transfer " + hold.getId(), ex);
+                }
+            }
+        } finally {
+            expired.clear();
+        }
+    }
+}
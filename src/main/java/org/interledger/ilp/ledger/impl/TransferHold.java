@@ -0,0 +1,78 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.nio.ByteBuffer;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.ledger.ILPTransfer;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+
+/**
+ * Funds of a conditional transfer held on its source account until the
+ * transfer is executed or rejected.
+ *
+ * @author mrmx
+ */
+final class TransferHold {
+
+    private final ILPTransfer ilpTransfer;
+    private final LedgerTransfer transfer;
+    private final LedgerAccount from;
+    private final LedgerAccount to;
+    private final long amount;
+    private final ByteBuffer conditionKey;
+    private volatile TimingWheel.Timeout<TransferHold> expiryTimeout;
+
+    /**
+     * @param amount the held amount, in minor units of the ledger scale
+     */
+    TransferHold(ILPTransfer ilpTransfer, LedgerTransfer transfer, LedgerAccount from, LedgerAccount to, long amount) {
+        this.ilpTransfer = ilpTransfer;
+        this.transfer = transfer;
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+        this.conditionKey = ByteBuffer.wrap(ilpTransfer.getCondition().getFingerprint().clone());
+    }
+
+    String getId() {
+        return ilpTransfer.getId();
+    }
+
+    ILPTransfer getILPTransfer() {
+        return ilpTransfer;
+    }
+
+    LedgerTransfer getTransfer() {
+        return transfer;
+    }
+
+    LedgerAccount getFrom() {
+        return from;
+    }
+
+    LedgerAccount getTo() {
+        return to;
+    }
+
+    long getAmount() {
+        return amount;
+    }
+
+    long getExpirationMillis() {
+        return ilpTransfer.getExpirationAt().getTime();
+    }
+
+    TimingWheel.Timeout<TransferHold> getExpiryTimeout() {
+        return expiryTimeout;
+    }
+
+    void setExpiryTimeout(TimingWheel.Timeout<TransferHold> expiryTimeout) {
+        this.expiryTimeout = expiryTimeout;
+    }
+
+    /**
+     * @return the fingerprint of the condition, as a map key
+     */
+    ByteBuffer getConditionKey() {
+        return conditionKey;
+    }
+}
@@ -0,0 +1,166 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of the {@link TransferHold}s of a ledger: by transfer id,
+ * by condition fingerprint and, as held balances, by source account.
+ * <p>
+ * Every lookup is a hash map access. A hold is claimed by removing it by id,
+ * which only one of the threads racing to execute or reject it can do.
+ *
+ * @author mrmx
+ */
+final class TransferHoldStore {
+
+    private static final TransferHold[] NONE = new TransferHold[0];
+
+    private final ConcurrentMap<String, TransferHold> holds = new ConcurrentHashMap<String, TransferHold>();
+    // Almost always a single hold per condition; arrays are replaced, never changed
+    private final ConcurrentMap<ByteBuffer, TransferHold[]> holdsByCondition
+            = new ConcurrentHashMap<ByteBuffer, TransferHold[]>();
+    private final ConcurrentMap<String, AtomicLong> heldBalances = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Registers a hold whose funds have just been taken from its source
+     * account.
+     *
+     * @return {@code false} if there's already a hold with the same id
+     */
+    boolean add(TransferHold hold) {
+        // Indexed and held before it's published: once it can be claimed, it can be unindexed and released
+        AtomicLong heldBalance = heldBalanceOf(hold.getFrom().getName());
+        heldBalance.addAndGet(hold.getAmount());
+        index(hold);
+        if (holds.putIfAbsent(hold.getId(), hold) != null) {
+            unindex(hold);
+            heldBalance.addAndGet(-hold.getAmount());
+            return false;
+        }
+        return true;
+    }
+
+    TransferHold get(String transferId) {
+        return holds.get(transferId);
+    }
+
+    /**
+     * @return the holds waiting for the condition with the given fingerprint
+     */
+    List<TransferHold> getByCondition(byte[] fingerprint) {
+        TransferHold[] byCondition = holdsByCondition.get(ByteBuffer.wrap(fingerprint));
+        return byCondition == null ? Collections.<TransferHold>emptyList() : Arrays.asList(byCondition);
+    }
+
+    /**
+     * Removes the hold so nobody else can execute or reject it. Its funds
+     * stay in the held balance until {@link #release} is called.
+     *
+     * @return whether the hold was claimed by the caller
+     */
+    boolean claim(TransferHold hold) {
+        if (!holds.remove(hold.getId(), hold)) {
+            return false;
+        }
+        unindex(hold);
+        return true;
+    }
+
+    /**
+     * Puts back a hold claimed but not completed.
+     */
+    void restore(TransferHold hold) {
+        index(hold);
+        holds.put(hold.getId(), hold);
+    }
+
+    /**
+     * Takes the funds of a claimed hold out of the held balance of its source
+     * account.
+     */
+    void release(TransferHold hold) {
+        heldBalanceOf(hold.getFrom().getName()).addAndGet(-hold.getAmount());
+    }
+
+    /**
+     * @return the funds held on the account, in minor units of the ledger
+     * scale
+     */
+    long getHeldBalance(String accountName) {
+        AtomicLong heldBalance = heldBalances.get(accountName);
+        return heldBalance == null ? 0 : heldBalance.get();
+    }
+
+    int size() {
+        return holds.size();
+    }
+
+    private AtomicLong heldBalanceOf(String accountName) {
+        AtomicLong heldBalance = heldBalances.get(accountName);
+        if (heldBalance == null) {
+            AtomicLong created = new AtomicLong();
+            heldBalance = heldBalances.putIfAbsent(accountName, created);
+            if (heldBalance == null) {
+                heldBalance = created;
+            }
+        }
+        return heldBalance;
+    }
+
+    private void index(TransferHold hold) {
+        ByteBuffer key = hold.getConditionKey();
+        while (true) {
+            TransferHold[] current = holdsByCondition.get(key);
+            if (current == null) {
+                if (holdsByCondition.putIfAbsent(key, new TransferHold[]{hold}) == null) {
+                    return;
+                }
+            } else {
+                TransferHold[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = hold;
+                if (holdsByCondition.replace(key, current, updated)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void unindex(TransferHold hold) {
+        ByteBuffer key = hold.getConditionKey();
+        while (true) {
+            TransferHold[] current = holdsByCondition.get(key);
+            if (current == null) {
+                return;
+            }
+            TransferHold[] updated = without(current, hold);
+            if (updated == current) {
+                return;
+            }
+            if (updated.length == 0
+                    ? holdsByCondition.remove(key, current) : holdsByCondition.replace(key, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    private static TransferHold[] without(TransferHold[] holds, TransferHold hold) {
+        for (int i = 0; i < holds.length; i++) {
+            if (holds[i] == hold) {
+                if (holds.length == 1) {
+                    return NONE;
+                }
+                TransferHold[] updated = new TransferHold[holds.length - 1];
+                System.arraycopy(holds, 0, updated, 0, i);
+                System.arraycopy(holds, i + 1, updated, i, holds.length - i - 1);
+                return updated;
+            }
+        }
+        return holds;
+    }
+}
@@ -0,0 +1,134 @@
+package org.interledger.ilp.ledger.journal;
+
+import com.google.common.base.Preconditions;
+import org.interledger.ilp.ledger.MoneyUtils;
+import org.interledger.ilp.ledger.account.AccountNotFoundException;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.LedgerAccountManager;
+import org.interledger.ilp.ledger.account.LedgerAccountPage;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A {@link LedgerAccountManager} that records every account added, with its
+ * balance at that time, in a {@link LedgerJournal}.
+ * <p>
+ * Accounts are journaled before they become visible, so no transfer involving
+ * an account can be journaled before the account itself. Adding an account
+ * returns once its record is durable.
+ * <p>
+ * The optional commit gate is held while an account is journaled and
+ * registered, so a snapshot never starts in between.
+ *
+ * @author mrmx
+ */
+public class JournalingLedgerAccountManager implements LedgerAccountManager {
+
+    private final LedgerAccountManager accountManager;
+    private final LedgerJournal journal;
+    private final Lock commitGate;
+
+    public JournalingLedgerAccountManager(LedgerAccountManager accountManager, LedgerJournal journal) {
+        this(accountManager, journal, null);
+    }
+
+    /**
+     * @param commitGate lock held while an account is added, or {@code null}
+     */
+    public JournalingLedgerAccountManager(LedgerAccountManager accountManager, LedgerJournal journal,
+            Lock commitGate) {
+        Preconditions.checkNotNull(accountManager);
+        Preconditions.checkNotNull(journal);
+        this.accountManager = accountManager;
+        this.journal = journal;
+        this.commitGate = commitGate;
+    }
+
+    public LedgerAccountManager getAccountManager() {
+        return accountManager;
+    }
+
+    @Override
+    public LedgerAccount create(String name) {
+        return accountManager.create(name);
+    }
+
+    @Override
+    public int getTotalAccounts() {
+        return accountManager.getTotalAccounts();
+    }
+
+    @Override
+    public void addAccount(LedgerAccount account) {
+        long position;
+        lockGate();
+        try {
+            // Adds are serialized so the journal order matches the registry one
+            synchronized (this) {
+                position = journal.appendAccountCreated(account.getName(), balanceOf(account));
+                accountManager.addAccount(account);
+            }
+        } finally {
+            unlockGate();
+        }
+        journal.awaitDurable(position);
+    }
+
+    @Override
+    public LedgerAccount addAccountIfAbsent(LedgerAccount account) {
+        long position;
+        lockGate();
+        try {
+            synchronized (this) {
+                try {
+                    return accountManager.getAccountByName(account.getName());
+                } catch (AccountNotFoundException ex) {
+                    // Not registered yet
+                }
+                position = journal.appendAccountCreated(account.getName(), balanceOf(account));
+                accountManager.addAccount(account);
+            }
+        } finally {
+            unlockGate();
+        }
+        journal.awaitDurable(position);
+        return null;
+    }
+
+    @Override
+    public LedgerAccount getAccountByName(String name) throws AccountNotFoundException {
+        return accountManager.getAccountByName(name);
+    }
+
+    @Override
+    public Collection<LedgerAccount> getAccounts(int page, int pageSize) {
+        return accountManager.getAccounts(page, pageSize);
+    }
+
+    @Override
+    public LedgerAccountPage getAccounts(String cursor, int pageSize) {
+        return accountManager.getAccounts(cursor, pageSize);
+    }
+
+    private void lockGate() {
+        if (commitGate != null) {
+            commitGate.lock();
+        }
+    }
+
+    private void unlockGate() {
+        if (commitGate != null) {
+            commitGate.unlock();
+        }
+    }
+
+    private long balanceOf(LedgerAccount account) {
+        if (account instanceof MinorUnitsLedgerAccount
+                && ((MinorUnitsLedgerAccount) account).getScale() == journal.getScale()) {
+            return ((MinorUnitsLedgerAccount) account).getBalanceInMinorUnits();
+        }
+        return MoneyUtils.toMinorUnits(account.getBalance(), journal.getScale());
+    }
+}
@@ -0,0 +1,518 @@
+package org.interledger.ilp.ledger.journal;
+
+import com.google.common.base.Preconditions;
+import org.interledger.ilp.core.LedgerInfo;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the account creations and transfers of a ledger, so
+ * its state survives a restart.
+ * <p>
+ * The file starts with a header (magic, version, currency and scale) followed
+ * by records:
+ * <pre>
+ * int length | byte type | payload | int CRC32 of type and payload
+ * </pre>
+ * Account names are written as an unsigned short length plus UTF-8 bytes, and
+ * amounts as longs of minor units. Opening a journal drops a torn record left
+ * at its end by a crash.
+ * <p>
+ * Appending only copies the record to a memory buffer. A committer thread
+ * writes and forces the buffer to disk at most {@code maxCommitDelay} after
+ * the first record appended to it, or earlier once half full, so concurrent
+ * appenders share a single fsync. Callers wait with
+ * {@link #awaitDurable(long)}, ideally after releasing their locks.
+ * <p>
+ * An I/O failure is fatal: every later append or wait throws a
+ * {@link LedgerJournalException}.
+ *
+ * @author mrmx
+ */
+public class LedgerJournal implements Closeable {
+
+    public static final long DEFAULT_MAX_COMMIT_DELAY_MICROS = 1000;
+
+    static final byte ACCOUNT_CREATED = 1;
+    static final byte TRANSFER = 2;
+
+    private static final int MAGIC = 0x494c504a; // "ILPJ"
+    private static final byte VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_NAME_LENGTH = 0xffff;
+    // Length and CRC of each record
+    private static final int RECORD_OVERHEAD = 4 + 4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final String currencyCode;
+    private final int scale;
+    private final long maxCommitDelayNanos;
+    private final FileChannel channel;
+    // Where the records start and where the valid ones ended when opened
+    private final long firstRecordPosition;
+    private final long replayEndPosition;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signaled to the committer when records are appended
+    private final Condition recordsAppended = lock.newCondition();
+    // Signaled to appenders and waiters when buffers are swapped or committed
+    private final Condition recordsCommitted = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+    private long firstPendingNanos;
+    private boolean commitRequested;
+    private long appendedPosition;
+    private volatile long durablePosition;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private final Thread committer;
+
+    private LedgerJournal(File file, String currencyCode, int scale, long maxCommitDelayNanos) throws IOException {
+        this.file = file;
+        this.currencyCode = currencyCode;
+        this.scale = scale;
+        this.maxCommitDelayNanos = maxCommitDelayNanos;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            if (channel.size() == 0) {
+                writeHeader();
+            }
+            this.firstRecordPosition = checkHeader();
+            this.replayEndPosition = readRecords(firstRecordPosition, null);
+            // Drop a record torn by a crash, new ones go right after the last valid one
+            channel.truncate(replayEndPosition);
+            channel.position(replayEndPosition);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        this.appendedPosition = replayEndPosition;
+        this.durablePosition = replayEndPosition;
+        this.committer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commitLoop();
+            }
+        }, "ledger-journal-" + file.getName());
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Opens or creates a journal committing within
+     * {@link #DEFAULT_MAX_COMMIT_DELAY_MICROS}.
+     *
+     * @see #open(File, LedgerInfo, long, TimeUnit)
+     */
+    public static LedgerJournal open(File file, LedgerInfo info) {
+        return open(file, info, DEFAULT_MAX_COMMIT_DELAY_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Opens or creates a journal.
+     *
+     * @param file the journal file
+     * @param info currency and scale of the ledger, must match the ones of an
+     * existing journal
+     * @param maxCommitDelay how long an appended record may wait before being
+     * forced to disk; 0 commits as soon as possible
+     * @param unit the unit of {@code maxCommitDelay}
+     * @return the journal, ready to be replayed and appended to
+     */
+    public static LedgerJournal open(File file, LedgerInfo info, long maxCommitDelay, TimeUnit unit) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkNotNull(info);
+        Preconditions.checkNotNull(unit);
+        if (maxCommitDelay < 0) {
+            throw new IllegalArgumentException("maxCommitDelay must not be negative");
+        }
+        try {
+            return new LedgerJournal(file, info.getCurrencyCode(), info.getScale(), unit.toNanos(maxCommitDelay));
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't open journal " + file, ex);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Replays the records found when the journal was opened.
+     */
+    public void replay(LedgerJournalListener listener) {
+        replay(listener, 0);
+    }
+
+    /**
+     * Replays the records found when the journal was opened, starting at a
+     * given position.
+     *
+     * @param position a position returned when appending, or 0 for the
+     * first record
+     */
+    public void replay(LedgerJournalListener listener, long position) {
+        Preconditions.checkNotNull(listener);
+        if (position < 0 || position > replayEndPosition) {
+            throw new LedgerJournalException("Position " + position + " is past the end of journal " + file);
+        }
+        try {
+            readRecords(Math.max(position, firstRecordPosition), listener);
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't replay journal " + file, ex);
+        }
+    }
+
+    /**
+     * @return the position following the record, to pass to
+     * {@link #awaitDurable(long)}
+     */
+    public long appendAccountCreated(String accountName, long balance) {
+        byte[] name = encode(accountName);
+        lock.lock();
+        try {
+            ByteBuffer buffer = reserve(1 + 2 + name.length + 8);
+            int start = buffer.position();
+            buffer.put(ACCOUNT_CREATED);
+            putName(buffer, name);
+            buffer.putLong(balance);
+            return endRecord(buffer, start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the position following the record, to pass to
+     * {@link #awaitDurable(long)}
+     */
+    public long appendTransfer(String fromAccount, String toAccount, long amount) {
+        byte[] from = encode(fromAccount);
+        byte[] to = encode(toAccount);
+        lock.lock();
+        try {
+            ByteBuffer buffer = reserve(1 + 2 + from.length + 2 + to.length + 8);
+            int start = buffer.position();
+            buffer.put(TRANSFER);
+            putName(buffer, from);
+            putName(buffer, to);
+            buffer.putLong(amount);
+            return endRecord(buffer, start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record up to the given position is on disk.
+     *
+     * @param position a position returned when appending
+     */
+    public void awaitDurable(long position) {
+        if (durablePosition >= position) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durablePosition < position) {
+                checkFailure();
+                recordsCommitted.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws LedgerJournalException if the journal can no longer be appended
+     * to
+     */
+    public void checkWritable() {
+        if (closed) {
+            throw new LedgerJournalException("Journal " + file + " closed");
+        }
+        checkFailure();
+    }
+
+    public long getDurablePosition() {
+        return durablePosition;
+    }
+
+    /**
+     * @return the position following the last record appended
+     */
+    public long getAppendedPosition() {
+        lock.lock();
+        try {
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Commits the appended records and closes the file.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            recordsAppended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't close journal " + file, ex);
+        }
+    }
+
+    // Called with the lock held: makes room for the record in the pending buffer
+    private ByteBuffer reserve(int size) {
+        checkWritable();
+        if (RECORD_OVERHEAD + size > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Record too large: " + size + " bytes");
+        }
+        while (pending.remaining() < RECORD_OVERHEAD + size) {
+            commitRequested = true;
+            recordsAppended.signal();
+            recordsCommitted.awaitUninterruptibly();
+            checkWritable();
+        }
+        if (pending.position() == 0) {
+            firstPendingNanos = System.nanoTime();
+            recordsAppended.signal();
+        }
+        ByteBuffer buffer = pending;
+        buffer.putInt(size);
+        return buffer;
+    }
+
+    private long endRecord(ByteBuffer buffer, int start) {
+        int length = buffer.position() - start;
+        crc.reset();
+        crc.update(buffer.array(), start, length);
+        buffer.putInt((int) crc.getValue());
+        appendedPosition += RECORD_OVERHEAD + length;
+        return appendedPosition;
+    }
+
+    private void commitLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchEnd;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    recordsAppended.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                long deadline = firstPendingNanos + maxCommitDelayNanos;
+                long left;
+                while (!closed && !commitRequested && pending.position() < BUFFER_SIZE / 2
+                        && (left = deadline - System.nanoTime()) > 0) {
+                    try {
+                        recordsAppended.awaitNanos(left);
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
+                batch = pending;
+                batchEnd = appendedPosition;
+                pending = spare;
+                spare = null;
+                commitRequested = false;
+                recordsCommitted.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException ex) {
+                error = ex;
+            }
+            batch.clear();
+
+            lock.lock();
+            try {
+                spare = batch;
+                if (error == null) {
+                    durablePosition = batchEnd;
+                } else {
+                    failure = error;
+                }
+                recordsCommitted.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    private void checkFailure() {
+        IOException ex = failure;
+        if (ex != null) {
+            throw new LedgerJournalException("Journal " + file + " failed", ex);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        byte[] code = encode(currencyCode);
+        ByteBuffer header = ByteBuffer.allocate(4 + 1 + 4 + 2 + code.length);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        header.putInt(scale);
+        putName(header, code);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+    }
+
+    // Returns the position of the first record
+    private long checkHeader() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a ledger journal");
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal version " + version);
+            }
+            int journalScale = in.readInt();
+            String journalCurrencyCode = readName(in);
+            if (journalScale != scale || !journalCurrencyCode.equals(currencyCode)) {
+                throw new IOException("Journal of " + journalCurrencyCode + " with scale " + journalScale
+                        + " can't be opened for " + currencyCode + " with scale " + scale);
+            }
+            return 4 + 1 + 4 + 2 + encode(journalCurrencyCode).length;
+        } catch (EOFException ex) {
+            throw new IOException("Truncated journal header", ex);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Reads the valid records, up to the end of the file or the first torn one. Returns where they end
+    private long readRecords(long start, LedgerJournalListener listener) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        input.getChannel().position(start);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        long position = start;
+        long end = listener == null ? Long.MAX_VALUE : replayEndPosition;
+        CRC32 recordCrc = new CRC32();
+        byte[] record = new byte[BUFFER_SIZE];
+        try {
+            while (position < end) {
+                int length;
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > BUFFER_SIZE - RECORD_OVERHEAD) {
+                        break;
+                    }
+                    in.readFully(record, 0, length);
+                    recordCrc.reset();
+                    recordCrc.update(record, 0, length);
+                    if (in.readInt() != (int) recordCrc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException ex) {
+                    break;
+                }
+                if (listener != null) {
+                    dispatch(ByteBuffer.wrap(record, 0, length), listener);
+                }
+                position += RECORD_OVERHEAD + length;
+            }
+        } finally {
+            in.close();
+        }
+        return position;
+    }
+
+    private void dispatch(ByteBuffer record, LedgerJournalListener listener) throws IOException {
+        byte type = record.get();
+        switch (type) {
+            case ACCOUNT_CREATED:
+                listener.onAccountCreated(getName(record), record.getLong());
+                break;
+            case TRANSFER:
+                listener.onTransfer(getName(record), getName(record), record.getLong());
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static byte[] encode(String name) {
+        byte[] bytes = name.getBytes(UTF8);
+        if (bytes.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Name too long: " + name);
+        }
+        return bytes;
+    }
+
+    private static void putName(ByteBuffer buffer, byte[] name) {
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+    }
+
+    private static String getName(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        String name = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+        buffer.position(buffer.position() + length);
+        return name;
+    }
+
+    private static String readName(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
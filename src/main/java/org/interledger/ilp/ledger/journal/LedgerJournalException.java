@@ -0,0 +1,32 @@
+package org.interledger.ilp.ledger.journal;
+
+/**
+ * Thrown when the journal can't be read or written.
+ *
+ * @author mrmx
+ */
+public class LedgerJournalException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs an instance of {@code LedgerJournalException} with the
+     * specified detail message.
+     *
+     * @param msg the detail message.
+     */
+    public LedgerJournalException(String msg) {
+        super(msg);
+    }
+
+    /**
+     * Constructs an instance of {@code LedgerJournalException} with the
+     * specified detail message and cause.
+     *
+     * @param msg the detail message.
+     * @param cause the cause.
+     */
+    public LedgerJournalException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
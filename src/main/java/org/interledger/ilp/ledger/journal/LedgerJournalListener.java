@@ -0,0 +1,17 @@
+package org.interledger.ilp.ledger.journal;
+
+/**
+ * Receives the records of a {@link LedgerJournal} being replayed, in the order
+ * they were appended.
+ * <p>
+ * Amounts are minor units of the journal scale. Transfers were checked before
+ * being journaled, so they must be applied without checking balances again.
+ *
+ * @author mrmx
+ */
+public interface LedgerJournalListener {
+
+    void onAccountCreated(String accountName, long balance);
+
+    void onTransfer(String fromAccount, String toAccount, long amount);
+}
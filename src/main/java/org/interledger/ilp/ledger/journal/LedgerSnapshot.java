@@ -0,0 +1,254 @@
+package org.interledger.ilp.ledger.journal;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.interledger.ilp.ledger.account.AccountNames;
+
+/**
+ * Balances of all the accounts of a ledger at a given position of its
+ * {@link LedgerJournal}, so a restart only replays the records after it.
+ * <p>
+ * The file is memory-mapped: accounts are accessed by index, in the order of
+ * their {@link AccountNames#canonical canonical name}, and looked up by
+ * binary search without being loaded. Names are case-insensitive, as in the
+ * ledger. Layout:
+ * <pre>
+ * header   int magic | byte version | int scale | long journal position | int count | currency
+ * balances count longs
+ * offsets  count ints, offset of each name from the start of the names
+ * names    unsigned short length plus UTF-8 bytes, sorted by canonical name
+ * trailer  int CRC32 of everything before
+ * </pre>
+ * Limited to files of 2GB.
+ *
+ * @author mrmx
+ */
+public class LedgerSnapshot {
+
+    private static final int MAGIC = 0x494c5053; // "ILPS"
+    private static final byte VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final String currencyCode;
+    private final int scale;
+    private final long journalPosition;
+    private final int size;
+    private final int balancesOffset;
+    private final int offsetsOffset;
+    private final int namesOffset;
+
+    private LedgerSnapshot(File file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.limit() < 4 + 1 + 4 + 8 + 4 + 2 + 4 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a ledger snapshot");
+        }
+        if (buffer.get(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.get(4));
+        }
+        int end = buffer.limit() - 4;
+        CRC32 crc = new CRC32();
+        ByteBuffer content = buffer.duplicate();
+        content.limit(end);
+        byte[] chunk = new byte[8192];
+        while (content.hasRemaining()) {
+            int length = Math.min(chunk.length, content.remaining());
+            content.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        if (buffer.getInt(end) != (int) crc.getValue()) {
+            throw new IOException("Corrupted snapshot");
+        }
+        this.scale = buffer.getInt(5);
+        this.journalPosition = buffer.getLong(9);
+        this.size = buffer.getInt(17);
+        int codeLength = buffer.getShort(21) & 0xffff;
+        this.currencyCode = decode(23, codeLength);
+        this.balancesOffset = 23 + codeLength;
+        this.offsetsOffset = balancesOffset + 8 * size;
+        this.namesOffset = offsetsOffset + 4 * size;
+    }
+
+    /**
+     * Maps an existing snapshot.
+     */
+    public static LedgerSnapshot open(File file) {
+        Preconditions.checkNotNull(file);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new LedgerSnapshot(file, buffer);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't open snapshot " + file, ex);
+        }
+    }
+
+    /**
+     * Writes a snapshot next to the file then renames it, so an existing
+     * snapshot is only replaced by a complete one.
+     *
+     * @param accountNames the account names, sorted by canonical name
+     * @param balances the balance of each account, in minor units
+     * @return the snapshot written
+     */
+    public static LedgerSnapshot write(File file, String currencyCode, int scale, long journalPosition,
+            List<String> accountNames, long[] balances) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkNotNull(currencyCode);
+        Preconditions.checkNotNull(accountNames);
+        int size = accountNames.size();
+        byte[][] names = new byte[size][];
+        long namesLength = 0;
+        for (int i = 0; i < size; i++) {
+            names[i] = accountNames.get(i).getBytes(UTF8);
+            if (names[i].length > 0xffff) {
+                throw new IllegalArgumentException("Account name too long: " + accountNames.get(i));
+            }
+            namesLength += 2 + names[i].length;
+        }
+        byte[] code = currencyCode.getBytes(UTF8);
+        long length = 4 + 1 + 4 + 8 + 4 + 2 + code.length + 12L * size + namesLength + 4;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Snapshot too large: " + length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putInt(scale);
+        buffer.putLong(journalPosition);
+        buffer.putInt(size);
+        buffer.putShort((short) code.length);
+        buffer.put(code);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(balances[i]);
+        }
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(offset);
+            offset += 2 + names[i].length;
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putShort((short) names[i].length);
+            buffer.put(names[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                channel.truncate(0);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            } finally {
+                raf.close();
+            }
+            // Atomic on POSIX file systems, which replace the target
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Can't rename " + tmp);
+            }
+        } catch (IOException ex) {
+            throw new LedgerJournalException("Can't write snapshot " + file, ex);
+        }
+        return open(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the position of the journal the snapshot was taken at: records
+     * from there on are not included
+     */
+    public long getJournalPosition() {
+        return journalPosition;
+    }
+
+    /**
+     * @return the number of accounts
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getAccountName(int index) {
+        checkIndex(index);
+        int offset = namesOffset + buffer.getInt(offsetsOffset + 4 * index);
+        return decode(offset + 2, buffer.getShort(offset) & 0xffff);
+    }
+
+    /**
+     * @return the balance, in minor units
+     */
+    public long getBalance(int index) {
+        checkIndex(index);
+        return buffer.getLong(balancesOffset + 8 * index);
+    }
+
+    /**
+     * @return the index of the account, whatever the case of its name, or a
+     * negative number if it isn't in the snapshot
+     */
+    public int indexOf(String accountName) {
+        String key = AccountNames.canonical(accountName);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = AccountNames.canonical(getAccountName(mid)).compareTo(key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,26 @@
+package org.interledger.ilp.ledger.metrics;
+
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.ledger.account.AccountNotFoundException;
+
+/**
+ * Why a ledger operation failed, as counted by {@link LedgerMetrics}.
+ *
+ * @author mrmx
+ */
+public enum FailureReason {
+
+    INSUFFICIENT_AMOUNT,
+    ACCOUNT_NOT_FOUND,
+    OTHER;
+
+    public static FailureReason of(Throwable failure) {
+        if (failure instanceof InsufficientAmountException) {
+            return INSUFFICIENT_AMOUNT;
+        }
+        if (failure instanceof AccountNotFoundException) {
+            return ACCOUNT_NOT_FOUND;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,36 @@
+package org.interledger.ilp.ledger.metrics;
+
+/**
+ * Counts and times the operations of a ledger.
+ * <p>
+ * The ledger calls {@link #start()} before an operation and passes what it
+ * returned to {@link #succeeded} or {@link #failed} once the operation is
+ * over, possibly on another thread. The {@link #noop() no-op} metrics don't
+ * even read the clock.
+ *
+ * @author mrmx
+ */
+public abstract class LedgerMetrics {
+
+    /**
+     * @return metrics recording nothing
+     */
+    public static LedgerMetrics noop() {
+        return NoopLedgerMetrics.INSTANCE;
+    }
+
+    /**
+     * @return the start of an operation, in nanoseconds
+     */
+    public abstract long start();
+
+    /**
+     * @param startNanos what {@link #start()} returned for the operation
+     */
+    public abstract void succeeded(LedgerOperation operation, long startNanos);
+
+    /**
+     * @param startNanos what {@link #start()} returned for the operation
+     */
+    public abstract void failed(LedgerOperation operation, long startNanos, Throwable failure);
+}
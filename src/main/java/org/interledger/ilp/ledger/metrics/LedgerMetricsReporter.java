@@ -0,0 +1,12 @@
+package org.interledger.ilp.ledger.metrics;
+
+/**
+ * Exports ledger metrics, eg: to a monitoring system.
+ *
+ * @author mrmx
+ * @see RecordingLedgerMetrics#reportEvery
+ */
+public interface LedgerMetricsReporter {
+
+    void report(LedgerMetricsSnapshot snapshot);
+}
@@ -0,0 +1,89 @@
+package org.interledger.ilp.ledger.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The counts and latencies of the operations of a ledger at some point.
+ *
+ * @author mrmx
+ */
+public final class LedgerMetricsSnapshot {
+
+    private final long timestamp;
+    private final Map<LedgerOperation, OperationSnapshot> operations;
+
+    LedgerMetricsSnapshot(long timestamp, Map<LedgerOperation, OperationSnapshot> operations) {
+        this.timestamp = timestamp;
+        this.operations = Collections.unmodifiableMap(operations);
+    }
+
+    /**
+     * @return when the snapshot was taken, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public OperationSnapshot get(LedgerOperation operation) {
+        return operations.get(operation);
+    }
+
+    public Map<LedgerOperation, OperationSnapshot> getOperations() {
+        return operations;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("LedgerMetrics[");
+        for (Map.Entry<LedgerOperation, OperationSnapshot> operation : operations.entrySet()) {
+            builder.append('\n').append(operation.getKey()).append(": ").append(operation.getValue());
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * The counts and latencies of one operation.
+     */
+    public static final class OperationSnapshot {
+
+        private final long succeeded;
+        private final Map<FailureReason, Long> failed;
+        private final LatencyHistogram.Snapshot latency;
+
+        OperationSnapshot(long succeeded, Map<FailureReason, Long> failed, LatencyHistogram.Snapshot latency) {
+            this.succeeded = succeeded;
+            this.failed = Collections.unmodifiableMap(failed);
+            this.latency = latency;
+        }
+
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        public long getFailed(FailureReason reason) {
+            Long count = failed.get(reason);
+            return count == null ? 0 : count;
+        }
+
+        public long getFailed() {
+            long total = 0;
+            for (Long count : failed.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @return the latencies in nanoseconds, failed operations included
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return "succeeded:" + succeeded + " failed:" + failed + " latency(ns) " + latency;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.interledger.ilp.ledger.metrics;
+
+/**
+ * The ledger operations measured by {@link LedgerMetrics}.
+ *
+ * @author mrmx
+ */
+public enum LedgerOperation {
+
+    /**
+     * An unconditional transfer sent, until executed.
+     */
+    SEND,
+    /**
+     * A batch of transfers sent.
+     */
+    SEND_BATCH,
+    /**
+     * A conditional transfer sent, until prepared.
+     */
+    PREPARE,
+    /**
+     * A prepared transfer rejected.
+     */
+    REJECT,
+    /**
+     * A fulfillment submitted, until its transfers are executed.
+     */
+    FULFILL,
+    /**
+     * Events dispatched to the registered handlers.
+     */
+    EVENT_DISPATCH
+}
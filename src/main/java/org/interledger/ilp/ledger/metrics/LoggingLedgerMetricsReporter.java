@@ -0,0 +1,31 @@
+package org.interledger.ilp.ledger.metrics;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs ledger metrics.
+ *
+ * @author mrmx
+ */
+public class LoggingLedgerMetricsReporter implements LedgerMetricsReporter {
+
+    private final Logger logger;
+    private final Level level;
+
+    public LoggingLedgerMetricsReporter() {
+        this(Logger.getLogger(LoggingLedgerMetricsReporter.class.getName()), Level.INFO);
+    }
+
+    public LoggingLedgerMetricsReporter(Logger logger, Level level) {
+        this.logger = logger;
+        this.level = level;
+    }
+
+    @Override
+    public void report(LedgerMetricsSnapshot snapshot) {
+        if (logger.isLoggable(level)) {
+            logger.log(level, snapshot.toString());
+        }
+    }
+}
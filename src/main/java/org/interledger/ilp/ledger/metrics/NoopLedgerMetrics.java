@@ -0,0 +1,27 @@
+package org.interledger.ilp.ledger.metrics;
+
+/**
+ * Metrics recording nothing.
+ *
+ * @author mrmx
+ */
+final class NoopLedgerMetrics extends LedgerMetrics {
+
+    static final NoopLedgerMetrics INSTANCE = new NoopLedgerMetrics();
+
+    private NoopLedgerMetrics() {
+    }
+
+    @Override
+    public long start() {
+        return 0;
+    }
+
+    @Override
+    public void succeeded(LedgerOperation operation, long startNanos) {
+    }
+
+    @Override
+    public void failed(LedgerOperation operation, long startNanos, Throwable failure) {
+    }
+}
@@ -0,0 +1,131 @@
+package org.interledger.ilp.ledger.metrics;
+
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.interledger.ilp.ledger.StripedCounter;
+
+/**
+ * Metrics counting the operations of a ledger, and the failed ones by
+ * reason, and recording their latencies.
+ * <p>
+ * Counters are {@link StripedCounter}s and latencies go to a
+ * {@link LatencyHistogram} per operation, so concurrent operations don't
+ * contend on them. Reporters get a {@link LedgerMetricsSnapshot} on demand or
+ * periodically.
+ *
+ * @author mrmx
+ */
+public class RecordingLedgerMetrics extends LedgerMetrics implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(RecordingLedgerMetrics.class.getName());
+
+    private static final LedgerOperation[] OPERATIONS = LedgerOperation.values();
+    private static final FailureReason[] REASONS = FailureReason.values();
+
+    private final StripedCounter[] succeeded = new StripedCounter[OPERATIONS.length];
+    // By operation, then reason
+    private final StripedCounter[][] failed = new StripedCounter[OPERATIONS.length][REASONS.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private ScheduledExecutorService reportingExecutor;
+
+    public RecordingLedgerMetrics() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            succeeded[i] = new StripedCounter();
+            for (int j = 0; j < REASONS.length; j++) {
+                failed[i][j] = new StripedCounter();
+            }
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public long start() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void succeeded(LedgerOperation operation, long startNanos) {
+        succeeded[operation.ordinal()].increment();
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void failed(LedgerOperation operation, long startNanos, Throwable failure) {
+        failed[operation.ordinal()][FailureReason.of(failure).ordinal()].increment();
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the counts and latencies so far
+     */
+    public LedgerMetricsSnapshot snapshot() {
+        Map<LedgerOperation, LedgerMetricsSnapshot.OperationSnapshot> operations
+                = new EnumMap<LedgerOperation, LedgerMetricsSnapshot.OperationSnapshot>(LedgerOperation.class);
+        for (LedgerOperation operation : OPERATIONS) {
+            int i = operation.ordinal();
+            Map<FailureReason, Long> failures = new EnumMap<FailureReason, Long>(FailureReason.class);
+            for (FailureReason reason : REASONS) {
+                failures.put(reason, failed[i][reason.ordinal()].sum());
+            }
+            operations.put(operation, new LedgerMetricsSnapshot.OperationSnapshot(
+                    succeeded[i].sum(), failures, latencies[i].snapshot()));
+        }
+        return new LedgerMetricsSnapshot(System.currentTimeMillis(), operations);
+    }
+
+    /**
+     * Sends a snapshot to the reporter now.
+     */
+    public void report(LedgerMetricsReporter reporter) {
+        reporter.report(snapshot());
+    }
+
+    /**
+     * Sends a snapshot to the reporter every period, from a daemon thread,
+     * until closed.
+     */
+    public synchronized void reportEvery(final LedgerMetricsReporter reporter, long period, TimeUnit unit) {
+        Preconditions.checkNotNull(reporter);
+        Preconditions.checkArgument(period > 0, "period must be positive");
+        if (reportingExecutor == null) {
+            reportingExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ledger-metrics-reporter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        reportingExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    report(reporter);
+                } catch (RuntimeException ex) {
+                    // Keep reporting: a failed report would cancel the next ones
+                    logger.log(Level.WARNING, "Can't report ledger metrics", ex);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the periodic reports.
+     */
+    @Override
+    public synchronized void close() {
+        if (reportingExecutor != null) {
+            reportingExecutor.shutdownNow();
+            reportingExecutor = null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.interledger.ilp.ledger.routing;
+
+import com.google.common.base.Preconditions;
+import org.interledger.ilp.core.Ledger;
+import org.interledger.ilp.core.LedgerTransfer;
+
+/**
+ * Routes ILP addresses to the ledgers of this process.
+ * <p>
+ * Lookups read the current {@link RoutingTable} without locking. Changes
+ * build a new table and swap it in at once, so a lookup sees either all of
+ * a change or none of it.
+ *
+ * @author mrmx
+ */
+public class LedgerRouter {
+
+    private volatile RoutingTable<Ledger> routingTable;
+
+    public LedgerRouter() {
+        this(RoutingTable.<Ledger>empty());
+    }
+
+    public LedgerRouter(RoutingTable<Ledger> routingTable) {
+        setRoutingTable(routingTable);
+    }
+
+    /**
+     * @return the ledger of the longest prefix of the address
+     * @throws NoRouteException if no prefix matches
+     */
+    public Ledger route(String address) throws NoRouteException {
+        Ledger ledger = routingTable.match(address);
+        if (ledger == null) {
+            throw new NoRouteException(address);
+        }
+        return ledger;
+    }
+
+    /**
+     * @return the ledger of the destination of the transfer
+     * @throws NoRouteException if no prefix matches
+     */
+    public Ledger route(LedgerTransfer transfer) throws NoRouteException {
+        String destination = transfer.getHeader().getDestinationAddress();
+        if (destination == null) {
+            throw new NoRouteException("no destination: " + transfer);
+        }
+        return route(destination);
+    }
+
+    public RoutingTable<Ledger> getRoutingTable() {
+        return routingTable;
+    }
+
+    /**
+     * Replaces all the routes at once.
+     */
+    public synchronized void setRoutingTable(RoutingTable<Ledger> routingTable) {
+        Preconditions.checkNotNull(routingTable);
+        this.routingTable = routingTable;
+    }
+
+    /**
+     * Routes a prefix to a ledger, replacing any previous route of the
+     * prefix.
+     */
+    public synchronized void addRoute(String prefix, Ledger ledger) {
+        routingTable = routingTable.toBuilder().add(prefix, ledger).build();
+    }
+
+    public synchronized void removeRoute(String prefix) {
+        routingTable = routingTable.toBuilder().remove(prefix).build();
+    }
+}
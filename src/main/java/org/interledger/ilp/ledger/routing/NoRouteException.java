@@ -0,0 +1,29 @@
+package org.interledger.ilp.ledger.routing;
+
+import org.interledger.ilp.core.exceptions.InterledgerException;
+
+/**
+ *
+ * @author mrmx
+ */
+public class NoRouteException extends InterledgerException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new instance of {@code NoRouteException} without detail
+     * message.
+     */
+    public NoRouteException() {
+    }
+
+    /**
+     * Constructs an instance of {@code NoRouteException} with the specified
+     * detail message.
+     *
+     * @param msg the detail message.
+     */
+    public NoRouteException(String msg) {
+        super(msg);
+    }
+}
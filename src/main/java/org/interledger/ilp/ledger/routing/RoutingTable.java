@@ -0,0 +1,204 @@
+package org.interledger.ilp.ledger.routing;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable table of routes from ILP address prefixes to targets.
+ * <p>
+ * Prefixes are matched on whole segments of the address: {@code g.us.bank1}
+ * (or {@code g.us.bank1.}) routes {@code g.us.bank1.alice} but not
+ * {@code g.us.bank10.alice}. The longest matching prefix wins, and the empty
+ * prefix routes every address. The prefixes are kept in a trie, so a
+ * lookup walks the address once whatever the size of the table.
+ *
+ * @param <T> the route targets
+ * @author mrmx
+ */
+public final class RoutingTable<T> {
+
+    static final char SEPARATOR = '.';
+
+    private static final RoutingTable<?> EMPTY = new RoutingTable<Object>(new TreeMap<String, Object>());
+
+    private final Map<String, T> routes;
+    private final Node<T> root;
+
+    private RoutingTable(TreeMap<String, T> routes) {
+        this.routes = Collections.unmodifiableMap(routes);
+        MutableNode<T> mutableRoot = new MutableNode<T>();
+        for (Map.Entry<String, T> route : routes.entrySet()) {
+            MutableNode<T> node = mutableRoot;
+            String prefix = route.getKey();
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            node.target = route.getValue();
+        }
+        this.root = mutableRoot.freeze();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> RoutingTable<T> empty() {
+        return (RoutingTable<T>) EMPTY;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<T>(new TreeMap<String, T>());
+    }
+
+    /**
+     * @return a builder starting with the routes of this table
+     */
+    public Builder<T> toBuilder() {
+        return new Builder<T>(new TreeMap<String, T>(routes));
+    }
+
+    /**
+     * @return the target of the longest prefix of the address, or
+     * {@code null} if none matches
+     */
+    public T match(String address) {
+        Preconditions.checkNotNull(address);
+        T target = root.target;
+        Node<T> node = root;
+        int length = address.length();
+        for (int i = 0; i < length; i++) {
+            char c = address.charAt(i);
+            if (c == SEPARATOR && node.target != null && i > 0) {
+                target = node.target;
+            }
+            node = node.child(c);
+            if (node == null) {
+                return target;
+            }
+        }
+        return node.target != null ? node.target : target;
+    }
+
+    /**
+     * @return the target of exactly this prefix, or {@code null}
+     */
+    public T get(String prefix) {
+        return routes.get(normalize(prefix));
+    }
+
+    /**
+     * @return the routes by prefix, in prefix order
+     */
+    public Map<String, T> getRoutes() {
+        return routes;
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingTable" + routes.keySet();
+    }
+
+    /**
+     * Strips the trailing separator of a prefix.
+     */
+    static String normalize(String prefix) {
+        Preconditions.checkNotNull(prefix);
+        int end = prefix.length();
+        if (end > 0 && prefix.charAt(end - 1) == SEPARATOR) {
+            end--;
+        }
+        for (int i = 0; i < end; i++) {
+            char c = prefix.charAt(i);
+            if (c <= ' ') {
+                throw new IllegalArgumentException("blank in prefix: " + prefix);
+            }
+            if (c == SEPARATOR && (i == 0 || prefix.charAt(i - 1) == SEPARATOR)) {
+                throw new IllegalArgumentException("empty segment in prefix: " + prefix);
+            }
+        }
+        return prefix.substring(0, end);
+    }
+
+    /**
+     * Collects routes for a new table. Not thread safe.
+     */
+    public static final class Builder<T> {
+
+        private final TreeMap<String, T> routes;
+
+        private Builder(TreeMap<String, T> routes) {
+            this.routes = routes;
+        }
+
+        /**
+         * Adds a route, replacing any other for the same prefix.
+         */
+        public Builder<T> add(String prefix, T target) {
+            Preconditions.checkNotNull(target);
+            routes.put(normalize(prefix), target);
+            return this;
+        }
+
+        public Builder<T> remove(String prefix) {
+            routes.remove(normalize(prefix));
+            return this;
+        }
+
+        public RoutingTable<T> build() {
+            return new RoutingTable<T>(new TreeMap<String, T>(routes));
+        }
+    }
+
+    /**
+     * A trie node, its children sorted by character.
+     */
+    private static final class Node<T> {
+
+        private final char[] keys;
+        private final Node<T>[] children;
+        private final T target;
+
+        Node(char[] keys, Node<T>[] children, T target) {
+            this.keys = keys;
+            this.children = children;
+            this.target = target;
+        }
+
+        Node<T> child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+    }
+
+    private static final class MutableNode<T> {
+
+        private final TreeMap<Character, MutableNode<T>> children = new TreeMap<Character, MutableNode<T>>();
+        private T target;
+
+        MutableNode<T> child(char c) {
+            MutableNode<T> child = children.get(c);
+            if (child == null) {
+                child = new MutableNode<T>();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<T> freeze() {
+            char[] keys = new char[children.size()];
+            Node<T>[] frozen = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode<T>> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                frozen[i] = child.getValue().freeze();
+                i++;
+            }
+            return new Node<T>(keys, frozen, target);
+        }
+    }
+}
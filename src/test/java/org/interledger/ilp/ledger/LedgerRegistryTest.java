@@ -0,0 +1,142 @@
+package org.interledger.ilp.ledger;
+
+import org.interledger.ilp.core.Ledger;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.impl.LedgerTransferBuilder;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.interledger.ilp.ledger.routing.NoRouteException;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * LedgerRegistry tests
+ *
+ * @author mrmx
+ */
+public class LedgerRegistryTest {
+
+    LedgerRegistry instance;
+
+    @Before
+    public void setUp() {
+        instance = new LedgerRegistry();
+    }
+
+    @After
+    public void tearDown() {
+        instance.close();
+    }
+
+    /**
+     * Accounts added through the deprecated factory belong to the ledger of
+     * the {@link LedgerFactory}.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testAccountManagerSingleton() {
+        System.out.println("accountManagerSingleton");
+        LedgerFactory.initialize(LedgerInfoFactory.from(Currencies.EURO), "default");
+        SimpleLedger ledger = (SimpleLedger) LedgerFactory.getLedger();
+        assertSame(ledger.getLedgerAccountManager(), LedgerAccountManagerFactory.getAccountManagerSingleton());
+        LedgerAccount alice = LedgerAccountManagerFactory.getAccountManagerSingleton().create("singleton-alice");
+        LedgerAccount bob = LedgerAccountManagerFactory.getAccountManagerSingleton().create("singleton-bob");
+        LedgerAccountManagerFactory.getAccountManagerSingleton().addAccount(alice.setBalance(10));
+        LedgerAccountManagerFactory.getAccountManagerSingleton().addAccount(bob);
+        LedgerFactory.getLedger().send(LedgerTransferBuilder.instance()
+                .from(alice)
+                .to(bob)
+                .amount(Money.of(3, ledger.getInfo().getCurrencyCode()))
+                .build());
+        assertEquals(Money.of(3, ledger.getInfo().getCurrencyCode()), bob.getBalance());
+    }
+
+    /**
+     * The deprecated factory needs the {@link LedgerFactory} initialized
+     * first.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testAccountManagerSingletonUninitialized() {
+        System.out.println("accountManagerSingleton uninitialized");
+        LedgerFactory.reset();
+        try {
+            LedgerAccountManagerFactory.getAccountManagerSingleton();
+            fail("Expected exception!");
+        } catch (RuntimeException ex) {
+            // Expected
+        }
+        LedgerFactory.initialize(LedgerInfoFactory.from(Currencies.EURO), "default");
+        assertSame(((SimpleLedger) LedgerFactory.getLedger()).getLedgerAccountManager(),
+                LedgerAccountManagerFactory.getAccountManagerSingleton());
+        LedgerFactory.reset();
+    }
+
+    /**
+     * Test of register method, of class LedgerRegistry.
+     */
+    @Test
+    public void testRegister() {
+        System.out.println("register");
+        SimpleLedger eur = instance.register(new SimpleLedger(Currencies.EURO, "eur"), "g.eu.eur");
+        SimpleLedger usd = instance.register(new SimpleLedger(Currencies.US_DOLLAR, "usd"), "g.us.usd");
+        assertSame(eur, instance.getLedger("eur"));
+        assertSame(usd, instance.getLedger("usd"));
+        assertEquals(2, instance.size());
+        Ledger routed = instance.getRouter().route("g.us.usd.alice");
+        assertSame(usd, routed);
+    }
+
+    /**
+     * Ledgers have their own accounts.
+     */
+    @Test
+    public void testAccounts() {
+        System.out.println("accounts");
+        SimpleLedger eur = instance.register(new SimpleLedger(Currencies.EURO, "eur"));
+        SimpleLedger usd = instance.register(new SimpleLedger(Currencies.US_DOLLAR, "usd"));
+        LedgerAccount alice = eur.getLedgerAccountManager().create("alice");
+        eur.getLedgerAccountManager().addAccount(alice);
+        assertEquals("EUR", alice.getCurrencyCode());
+        assertEquals("USD", usd.getLedgerAccountManager().create("alice").getCurrencyCode());
+        assertEquals(1, eur.getLedgerAccountManager().getTotalAccounts());
+        assertEquals(0, usd.getLedgerAccountManager().getTotalAccounts());
+    }
+
+    /**
+     * Test of register method, of class LedgerRegistry.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterTwice() {
+        System.out.println("register twice");
+        instance.register(new SimpleLedger(Currencies.EURO, "eur"));
+        instance.register(new SimpleLedger(Currencies.EURO, "eur"));
+    }
+
+    /**
+     * Test of remove method, of class LedgerRegistry.
+     */
+    @Test
+    public void testRemove() {
+        System.out.println("remove");
+        SimpleLedger eur = instance.register(new SimpleLedger(Currencies.EURO, "eur"), "g.eu.eur", "g.eu.euro");
+        assertSame(eur, instance.remove("eur"));
+        assertNull(instance.remove("eur"));
+        assertFalse(instance.contains("eur"));
+        assertEquals(0, instance.getRouter().getRoutingTable().size());
+        try {
+            instance.getRouter().route("g.eu.eur.alice");
+            fail("Expected exception!");
+        } catch (NoRouteException ex) {
+            // Expected
+        }
+        try {
+            instance.getLedger("eur");
+            fail("Expected exception!");
+        } catch (LedgerNotFoundException ex) {
+            // Expected
+        }
+    }
+}
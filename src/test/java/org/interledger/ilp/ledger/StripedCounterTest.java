@@ -0,0 +1,46 @@
+package org.interledger.ilp.ledger;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link StripedCounter}.
+ *
+ * @author mrmx
+ */
+public class StripedCounterTest {
+
+    /**
+     * Test of add method, of class StripedCounter.
+     */
+    @Test
+    public void testAdd() throws InterruptedException {
+        System.out.println("add");
+        final StripedCounter instance = new StripedCounter();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        instance.increment();
+                        instance.add(2);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8 * 10000 * 3, instance.sum());
+        instance.reset();
+        assertEquals(0, instance.sum());
+        instance.add(-5);
+        assertEquals(-5, instance.sum());
+    }
+}
@@ -0,0 +1,74 @@
+package org.interledger.ilp.ledger.clock;
+
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link LedgerClock} implementations.
+ *
+ * @author mrmx
+ */
+public class LedgerClockTest {
+
+    /**
+     * Test of advance method, of class FakeLedgerClock.
+     */
+    @Test
+    public void testFakeAdvance() {
+        System.out.println("fake advance");
+        FakeLedgerClock instance = new FakeLedgerClock(1000000);
+        assertEquals(1000000, instance.currentTimeMillis());
+        assertEquals(0, instance.nanoTime());
+        instance.advance(1500, TimeUnit.MICROSECONDS);
+        assertEquals(1000001, instance.currentTimeMillis());
+        assertEquals(1500000, instance.nanoTime());
+        instance.advance(2, TimeUnit.SECONDS);
+        assertEquals(1002001, instance.currentTimeMillis());
+    }
+
+    /**
+     * A fake clock doesn't go back.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFakeBackwards() {
+        System.out.println("fake backwards");
+        new FakeLedgerClock().advance(-1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A coarse clock follows the system time within its resolution, and
+     * stops once closed.
+     */
+    @Test
+    public void testCoarse() throws InterruptedException {
+        System.out.println("coarse");
+        CoarseLedgerClock instance = new CoarseLedgerClock(1, TimeUnit.MILLISECONDS);
+        try {
+            long before = System.currentTimeMillis();
+            long nanoBefore = instance.nanoTime();
+            Thread.sleep(50);
+            long now = instance.currentTimeMillis();
+            assertTrue(now >= before + 10);
+            assertTrue(now <= System.currentTimeMillis());
+            assertTrue(instance.nanoTime() > nanoBefore);
+        } finally {
+            instance.close();
+        }
+        Thread.sleep(20);
+        long frozen = instance.currentTimeMillis();
+        Thread.sleep(20);
+        assertEquals(frozen, instance.currentTimeMillis());
+    }
+
+    /**
+     * Test of system method, of class LedgerClock.
+     */
+    @Test
+    public void testSystem() {
+        System.out.println("system");
+        long before = System.currentTimeMillis();
+        long now = LedgerClock.system().currentTimeMillis();
+        assertTrue(now >= before && now <= System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,189 @@
+package org.interledger.ilp.ledger.events;
+
+import org.interledger.ilp.core.events.LedgerConnectedEvent;
+import org.interledger.ilp.core.events.LedgerDirectTransferEvent;
+import org.interledger.ilp.core.events.LedgerDisonnectedEvent;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerTransferExecutedEvent;
+import org.interledger.ilp.core.events.LedgerTransferPreparedEvent;
+import org.interledger.ilp.core.events.LedgerTransferRejectedEvent;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.events.AbstractRingBufferLedgerEventHandler.ProducerType;
+import org.interledger.ilp.ledger.events.AbstractRingBufferLedgerEventHandler.WaitStrategy;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link AbstractRingBufferLedgerEventHandler}.
+ *
+ * @author mrmx
+ */
+public class AbstractRingBufferLedgerEventHandlerTest {
+
+    private final SimpleLedger ledger = new SimpleLedger(Currencies.EURO, "test");
+
+    /**
+     * Events published by a single thread are handled in order, on the consumer thread.
+     */
+    @Test
+    public void testSingleProducer() {
+        System.out.println("single producer");
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            RecordingHandler handler = new RecordingHandler(8, ProducerType.SINGLE, waitStrategy);
+            List<LedgerEvent> events = new ArrayList<LedgerEvent>();
+            for (int i = 0; i < 1000; i++) {
+                LedgerEvent event = new LedgerTransferExecutedEvent(ledger, null, "alice", "bob", String.valueOf(i));
+                events.add(event);
+                handler.onLedgerEvent(event);
+            }
+            handler.close();
+            assertEquals(waitStrategy.toString(), events, handler.executed);
+            assertFalse(handler.threads.contains(Thread.currentThread()));
+            assertTrue(handler.batches > 0);
+            assertEquals(0, handler.getBacklog());
+        }
+    }
+
+    /**
+     * Events published concurrently are all handled, each thread's in order.
+     */
+    @Test
+    public void testMultiProducer() throws InterruptedException {
+        System.out.println("multi producer");
+        final int producers = 4;
+        final int eventsPerProducer = 5000;
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            final RecordingHandler handler = new RecordingHandler(64, ProducerType.MULTI, waitStrategy);
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<Thread>();
+            final Map<LedgerEvent, int[]> positions = new IdentityHashMap<LedgerEvent, int[]>();
+            for (int p = 0; p < producers; p++) {
+                final List<LedgerEvent> events = new ArrayList<LedgerEvent>();
+                for (int i = 0; i < eventsPerProducer; i++) {
+                    LedgerEvent event = new LedgerTransferExecutedEvent(ledger, null, "alice", "bob", "1");
+                    events.add(event);
+                    positions.put(event, new int[]{p, i});
+                }
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                        for (LedgerEvent event : events) {
+                            handler.onLedgerEvent(event);
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            handler.close();
+            assertEquals(waitStrategy.toString(), producers * eventsPerProducer, handler.executed.size());
+            int[] last = new int[producers];
+            for (LedgerEvent event : handler.executed) {
+                int[] position = positions.get(event);
+                assertEquals(last[position[0]]++, position[1]);
+            }
+        }
+    }
+
+    /**
+     * Each event type is routed to its own handler method.
+     */
+    @Test
+    public void testHandleEvent() {
+        System.out.println("handleEvent");
+        RecordingHandler handler = new RecordingHandler(16, ProducerType.MULTI, WaitStrategy.BLOCKING);
+        handler.onLedgerEvent(new LedgerConnectedEvent(ledger));
+        handler.onLedgerEvent(new LedgerTransferExecutedEvent(ledger, null, "alice", "bob", "1"));
+        handler.onLedgerEvent(new LedgerDisonnectedEvent(ledger));
+        handler.close();
+        assertEquals(3, handler.handled);
+        assertEquals(1, handler.executed.size());
+    }
+
+    /**
+     * Test of close method, of class AbstractRingBufferLedgerEventHandler.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testClose() {
+        System.out.println("close");
+        RecordingHandler handler = new RecordingHandler(16, ProducerType.SINGLE, WaitStrategy.YIELD);
+        handler.close();
+        assertTrue(handler.isClosed());
+        handler.onLedgerEvent(new LedgerConnectedEvent(ledger));
+    }
+
+    /**
+     * Only touched by the consumer thread, read once it has been closed.
+     */
+    static class RecordingHandler extends AbstractRingBufferLedgerEventHandler {
+
+        final List<LedgerEvent> executed = new ArrayList<LedgerEvent>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        int handled;
+        int batches;
+
+        RecordingHandler(int capacity, ProducerType producerType, WaitStrategy waitStrategy) {
+            super(capacity, producerType, waitStrategy);
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerConnectedEvent ledgerConnectedEvent) {
+            handled++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerDisonnectedEvent ledgerDisonnectedEvent) {
+            handled++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferPreparedEvent ledgerTransferPreparedEvent) {
+            handled++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferExecutedEvent ledgerTransferExecutedEvent) {
+            handled++;
+            executed.add(ledgerTransferExecutedEvent);
+            threads.add(Thread.currentThread());
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerDirectTransferEvent ledgerDirectTransferEvent) {
+            handled++;
+            return true;
+        }
+
+        @Override
+        protected boolean handleEvent(LedgerTransferRejectedEvent ledgerTransferRejectedEvent) {
+            handled++;
+            return true;
+        }
+
+        @Override
+        protected void onEndOfBatch() {
+            batches++;
+        }
+    }
+}
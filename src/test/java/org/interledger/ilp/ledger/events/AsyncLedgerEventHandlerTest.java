@@ -0,0 +1,249 @@
+package org.interledger.ilp.ledger.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerEventHandler;
+import org.interledger.ilp.core.events.LedgerTransferExecutedEvent;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.impl.BalanceEngine;
+import org.interledger.ilp.ledger.impl.ConcurrencyMode;
+import org.interledger.ilp.ledger.impl.LedgerTransferBuilder;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.javamoney.moneta.Money;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link AsyncLedgerEventHandler}.
+ *
+ * @author mrmx
+ */
+public class AsyncLedgerEventHandlerTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+
+    SimpleLedger ledger;
+
+    @Before
+    public void setUp() {
+        ledger = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test", BalanceEngine.FIXED_POINT,
+                ConcurrencyMode.STRIPED_LOCKS);
+    }
+
+    /**
+     * Test of onLedgerEvent method, of class AsyncLedgerEventHandler.
+     */
+    @Test
+    public void testOnLedgerEvent() {
+        System.out.println("onLedgerEvent");
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void onLedgerEvent(LedgerEvent ledgerEvent) {
+                threads.add(Thread.currentThread());
+                super.onLedgerEvent(ledgerEvent);
+            }
+        };
+        AsyncLedgerEventHandler<LedgerEvent> instance = new AsyncLedgerEventHandler<LedgerEvent>(handler, 4,
+                EventBackpressure.BLOCK);
+        List<LedgerEvent> events = events(100);
+        for (LedgerEvent event : events) {
+            instance.onLedgerEvent(event);
+        }
+        instance.close();
+        assertEquals(events, handler.events);
+        assertFalse(threads.contains(Thread.currentThread()));
+        assertEquals(0, instance.getDroppedCount());
+    }
+
+    /**
+     * Test of getDroppedCount method, of class AsyncLedgerEventHandler.
+     */
+    @Test
+    public void testDrop() throws InterruptedException {
+        System.out.println("drop");
+        BlockingHandler handler = new BlockingHandler();
+        AsyncLedgerEventHandler<LedgerEvent> instance = new AsyncLedgerEventHandler<LedgerEvent>(handler, 2,
+                EventBackpressure.DROP);
+        List<LedgerEvent> events = events(10);
+        instance.onLedgerEvent(events.get(0));
+        handler.awaitEntered();
+        instance.onLedgerEvents(events.subList(1, 10));
+        assertEquals(7, instance.getDroppedCount());
+        handler.release();
+        instance.close();
+        assertEquals(events.subList(0, 3), handler.events);
+    }
+
+    /**
+     * Test of getSpilledCount method, of class AsyncLedgerEventHandler.
+     */
+    @Test
+    public void testSpill() throws InterruptedException {
+        System.out.println("spill");
+        BlockingHandler handler = new BlockingHandler();
+        AsyncLedgerEventHandler<LedgerEvent> instance = new AsyncLedgerEventHandler<LedgerEvent>(handler, 2,
+                EventBackpressure.SPILL);
+        List<LedgerEvent> events = events(10);
+        instance.onLedgerEvent(events.get(0));
+        handler.awaitEntered();
+        instance.onLedgerEvents(events.subList(1, 10));
+        assertEquals(7, instance.getSpilledCount());
+        handler.release();
+        instance.close();
+        assertEquals(events, handler.events);
+        assertEquals(0, instance.getSpilledCount());
+        assertEquals(0, instance.getDroppedCount());
+    }
+
+    /**
+     * Test of close method, of class AsyncLedgerEventHandler.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testClose() {
+        System.out.println("close");
+        AsyncLedgerEventHandler<LedgerEvent> instance = new AsyncLedgerEventHandler<LedgerEvent>(new RecordingHandler());
+        instance.close();
+        assertTrue(instance.isClosed());
+        instance.onLedgerEvent(events(1).get(0));
+    }
+
+    /**
+     * Events published while closing are either rejected or handled.
+     */
+    @Test
+    public void testCloseWhilePublishing() throws InterruptedException {
+        System.out.println("close while publishing");
+        for (int round = 0; round < 20; round++) {
+            RecordingHandler handler = new RecordingHandler();
+            final AsyncLedgerEventHandler<LedgerEvent> instance = new AsyncLedgerEventHandler<LedgerEvent>(handler, 4,
+                    EventBackpressure.BLOCK);
+            final List<LedgerEvent> events = events(1000);
+            final AtomicInteger accepted = new AtomicInteger();
+            List<Thread> publishers = new ArrayList<Thread>();
+            for (int i = 0; i < 4; i++) {
+                publishers.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (LedgerEvent event : events) {
+                                instance.onLedgerEvent(event);
+                                accepted.incrementAndGet();
+                            }
+                        } catch (IllegalStateException ex) {
+                            // Closed
+                        }
+                    }
+                }));
+            }
+            for (Thread publisher : publishers) {
+                publisher.start();
+            }
+            instance.close();
+            for (Thread publisher : publishers) {
+                publisher.join();
+            }
+            assertEquals(accepted.get(), handler.events.size());
+        }
+    }
+
+    /**
+     * A failing handler doesn't stop the delivery of the next events.
+     */
+    @Test
+    public void testHandlerFailure() {
+        System.out.println("handler failure");
+        final List<LedgerEvent> published = events(2);
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void onLedgerEvent(LedgerEvent ledgerEvent) {
+                if (ledgerEvent == published.get(0)) {
+                    throw new RuntimeException("Expected failure");
+                }
+                super.onLedgerEvent(ledgerEvent);
+            }
+        };
+        AsyncLedgerEventHandler<LedgerEvent> instance = new AsyncLedgerEventHandler<LedgerEvent>(handler);
+        instance.onLedgerEvent(published.get(0));
+        instance.onLedgerEvent(published.get(1));
+        instance.close();
+        assertEquals(published.subList(1, 2), handler.events);
+    }
+
+    /**
+     * Test of registerAsyncEventHandler method, of class SimpleLedger.
+     */
+    @Test
+    public void testRegisterAsyncEventHandler() {
+        System.out.println("registerAsyncEventHandler");
+        RecordingHandler handler = new RecordingHandler();
+        AsyncLedgerEventHandler<LedgerEvent> instance = ledger.registerAsyncEventHandler(handler, 16,
+                EventBackpressure.BLOCK);
+        LedgerAccount alice = ledger.createAccount("async-alice").setBalance(10);
+        LedgerAccount bob = ledger.createAccount("async-bob");
+        ledger.getLedgerAccountManager().addAccount(alice);
+        ledger.getLedgerAccountManager().addAccount(bob);
+        ledger.sendBatch(Arrays.asList(
+                LedgerTransferBuilder.instance().from(alice).to(bob).amount(Money.of(1, CURRENCY.code())).build(),
+                LedgerTransferBuilder.instance().from(alice).to(bob).amount(Money.of(2, CURRENCY.code())).build()));
+        instance.close();
+        assertEquals(2, handler.events.size());
+        assertTrue(handler.events.get(0) instanceof LedgerTransferExecutedEvent);
+    }
+
+    private List<LedgerEvent> events(int count) {
+        List<LedgerEvent> events = new ArrayList<LedgerEvent>();
+        for (int i = 0; i < count; i++) {
+            events.add(new LedgerTransferExecutedEvent(ledger, null, "alice", "bob", String.valueOf(i)));
+        }
+        return events;
+    }
+
+    static class RecordingHandler implements LedgerEventHandler<LedgerEvent> {
+
+        final List<LedgerEvent> events = Collections.synchronizedList(new ArrayList<LedgerEvent>());
+
+        @Override
+        public void onLedgerEvent(LedgerEvent ledgerEvent) {
+            events.add(ledgerEvent);
+        }
+    }
+
+    /**
+     * Holds the consumer thread on the first event until released.
+     */
+    static class BlockingHandler extends RecordingHandler {
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void onLedgerEvent(LedgerEvent ledgerEvent) {
+            entered.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            super.onLedgerEvent(ledgerEvent);
+        }
+
+        void awaitEntered() throws InterruptedException {
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+}
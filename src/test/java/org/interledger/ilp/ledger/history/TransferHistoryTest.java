@@ -0,0 +1,153 @@
+package org.interledger.ilp.ledger.history;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.clock.FakeLedgerClock;
+import org.interledger.ilp.ledger.impl.LedgerTransferBuilder;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TransferHistory}.
+ *
+ * @author mrmx
+ */
+public class TransferHistoryTest {
+
+    static final long START = 1000000;
+    static final long RETENTION = 60000;
+
+    FakeLedgerClock clock;
+
+    @Before
+    public void setUp() {
+        clock = new FakeLedgerClock(START);
+    }
+
+    /**
+     * Test of getLastTransfers method, of class TransferHistory.
+     */
+    @Test
+    public void testGetLastTransfers() {
+        System.out.println("getLastTransfers");
+        TransferHistory instance = new TransferHistory(2, clock, RETENTION, 100000);
+        for (int i = 0; i < 10000; i++) {
+            instance.append(START + i, "alice", i % 2 == 0 ? "bob" : "carol", i);
+        }
+        List<TransferRecord> result = instance.getLastTransfers("bob", 3);
+        assertEquals(3, result.size());
+        assertEquals(9998, result.get(0).getAmountInMinorUnits());
+        assertEquals(9996, result.get(1).getAmountInMinorUnits());
+        assertEquals(9994, result.get(2).getAmountInMinorUnits());
+        assertEquals(new BigDecimal("99.98"), result.get(0).getAmount());
+        assertEquals("alice", result.get(0).getFromAccount());
+        assertEquals(START + 9998, result.get(0).getTimestamp());
+        assertEquals(10, instance.getLastTransfers("alice", 10).size());
+        assertTrue(instance.getLastTransfers("nobody", 10).isEmpty());
+    }
+
+    /**
+     * Accounts are case-insensitive, as in the ledger.
+     */
+    @Test
+    public void testAccountNameCase() {
+        System.out.println("accountNameCase");
+        TransferHistory instance = new TransferHistory(2, clock, RETENTION, 100000);
+        instance.append(START, "Alice", "bob", 1);
+        instance.append(START + 1, "alice", "BOB", 2);
+        instance.append(START + 2, "ALICE", "carol", 3);
+        List<TransferRecord> result = instance.getLastTransfers("aLiCe", 10);
+        assertEquals(3, result.size());
+        assertEquals(3, result.get(0).getAmountInMinorUnits());
+        assertEquals("Alice", result.get(0).getFromAccount());
+        assertEquals(2, instance.getTransfers("Bob", START, START + 10).size());
+        // Fills the first chunk
+        for (int i = 3; i < TransferHistory.CHUNK_SIZE; i++) {
+            instance.append(START + 3, "Alice", "bob", i);
+        }
+        // Releases the first chunk, and forgets alice and bob
+        clock.advance(RETENTION + 10, TimeUnit.MILLISECONDS);
+        instance.append(START + RETENTION + 10, "carol", "dave", 4);
+        assertTrue(instance.getLastTransfers("alice", 10).isEmpty());
+        instance.append(START + RETENTION + 11, "alice", "Bob", 5);
+        result = instance.getLastTransfers("ALICE", 10);
+        assertEquals(1, result.size());
+        assertEquals("alice", result.get(0).getFromAccount());
+        assertEquals("Bob", instance.getLastTransfers("bob", 1).get(0).getToAccount());
+    }
+
+    /**
+     * Test of getTransfers method, of class TransferHistory.
+     */
+    @Test
+    public void testGetTransfers() {
+        System.out.println("getTransfers");
+        TransferHistory instance = new TransferHistory(2, clock, RETENTION, 100000);
+        for (int i = 0; i < 10000; i++) {
+            instance.append(START + i / 10, "alice", i % 2 == 0 ? "bob" : "carol", i);
+        }
+        List<TransferRecord> result = instance.getTransfers(START + 100, START + 102);
+        assertEquals(20, result.size());
+        assertEquals(1000, result.get(0).getAmountInMinorUnits());
+        assertEquals(1019, result.get(19).getAmountInMinorUnits());
+        result = instance.getTransfers("carol", START + 100, START + 102);
+        assertEquals(10, result.size());
+        assertEquals(1001, result.get(0).getAmountInMinorUnits());
+        assertEquals(1019, result.get(9).getAmountInMinorUnits());
+        assertTrue(instance.getTransfers("carol", START + 2000, START + 3000).isEmpty());
+    }
+
+    /**
+     * Transfers out of the retention period, or beyond the maximum size, are
+     * dropped.
+     */
+    @Test
+    public void testRetention() {
+        System.out.println("retention");
+        int maximumSize = 10000;
+        TransferHistory instance = new TransferHistory(2, clock, RETENTION, maximumSize);
+        for (int i = 0; i < 50000; i++) {
+            instance.append(START, "alice" + i % 1000, "bob", 1);
+        }
+        instance.append(START, "dave", "bob", 1);
+        assertEquals(maximumSize, instance.size());
+        assertEquals(maximumSize, instance.getLastTransfers("bob", Integer.MAX_VALUE).size());
+        assertEquals(9, instance.getLastTransfers("alice0", Integer.MAX_VALUE).size());
+        instance.append(START + RETENTION + 1, "carol", "bob", 1);
+        assertEquals(1, instance.size());
+        assertTrue(instance.getLastTransfers("dave", 1).isEmpty());
+        assertEquals(1, instance.getLastTransfers("bob", Integer.MAX_VALUE).size());
+        assertEquals(START + RETENTION + 1, instance.getTransfers(START, Long.MAX_VALUE).get(0).getTimestamp());
+    }
+
+    /**
+     * Test of attachHistory method, of class SimpleLedger.
+     */
+    @Test
+    public void testAttachHistory() {
+        System.out.println("attachHistory");
+        SimpleLedger ledger = new SimpleLedger(Currencies.EURO, "test");
+        ledger.setClock(clock);
+        TransferHistory instance = ledger.attachHistory(1, TimeUnit.MINUTES, 1000);
+        LedgerAccount alice = ledger.createAccount("history-alice").setBalance(100);
+        LedgerAccount bob = ledger.createAccount("history-bob").setBalance(0);
+        ledger.getLedgerAccountManager().addAccount(alice);
+        ledger.getLedgerAccountManager().addAccount(bob);
+        ledger.send(LedgerTransferBuilder.instance()
+                .from(alice)
+                .to(bob)
+                .amount(Money.of(new BigDecimal("12.5"), Currencies.EURO.code()))
+                .build());
+        List<TransferRecord> result = instance.getLastTransfers("history-bob", 10);
+        assertEquals(1, result.size());
+        assertEquals(0, new BigDecimal("12.5").compareTo(result.get(0).getAmount()));
+        assertEquals(START, result.get(0).getTimestamp());
+        assertSame(instance, ledger.getHistory());
+    }
+}
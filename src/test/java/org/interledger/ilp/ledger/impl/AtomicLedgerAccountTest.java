@@ -0,0 +1,94 @@
+package org.interledger.ilp.ledger.impl;
+
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * AtomicLedgerAccount tests
+ *
+ * @author mrmx
+ */
+public class AtomicLedgerAccountTest {
+
+    static final String CURRENCY_CODE = "EUR";
+    AtomicLedgerAccount instance;
+
+    @Before
+    public void setUp() {
+        instance = new AtomicLedgerAccount("test", CURRENCY_CODE, 2);
+    }
+
+    /**
+     * Test of credit method, of class AtomicLedgerAccount.
+     */
+    @Test
+    public void testCredit() {
+        System.out.println("credit");
+        instance.credit(Money.of(10, CURRENCY_CODE));
+        instance.credit("0.25");
+        assertEquals(1025, instance.getBalanceInMinorUnits());
+        assertEquals(Money.of(10.25, CURRENCY_CODE), instance.getBalance());
+    }
+
+    /**
+     * Test of tryDebitMinorUnits method, of class AtomicLedgerAccount.
+     */
+    @Test
+    public void testTryDebit() {
+        System.out.println("tryDebit");
+        instance.setBalance(1);
+        assertTrue(instance.tryDebitMinorUnits(60));
+        assertFalse(instance.tryDebitMinorUnits(41));
+        assertEquals(40, instance.getBalanceInMinorUnits());
+        assertTrue(instance.tryDebitMinorUnits(40));
+        assertEquals(0, instance.getBalanceInMinorUnits());
+    }
+
+    /**
+     * Overflowing the balance is rejected and leaves it untouched.
+     */
+    @Test
+    public void testCreditOverflow() {
+        System.out.println("credit overflow");
+        instance.setBalanceInMinorUnits(Long.MAX_VALUE);
+        try {
+            instance.creditMinorUnits(1);
+            fail("Expected exception!");
+        } catch (ArithmeticException ex) {
+            assertEquals(Long.MAX_VALUE, instance.getBalanceInMinorUnits());
+        }
+    }
+
+    /**
+     * Concurrent debits never take the balance below zero.
+     */
+    @Test
+    public void testConcurrentTryDebit() throws Exception {
+        System.out.println("concurrent tryDebit");
+        final StripedCreditLedgerAccount hot = new StripedCreditLedgerAccount("hot", CURRENCY_CODE, 2);
+        instance.setBalanceInMinorUnits(100000);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50000; i++) {
+                        if (instance.tryDebitMinorUnits(3)) {
+                            hot.creditMinorUnits(3);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, instance.getBalanceInMinorUnits());
+        assertEquals(99999, hot.getBalanceInMinorUnits());
+        assertFalse(hot.tryDebitMinorUnits(100000));
+        assertTrue(hot.tryDebitMinorUnits(99999));
+    }
+}
@@ -0,0 +1,79 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * CachingLedgerAddressParser tests
+ *
+ * @author mrmx
+ */
+public class CachingLedgerAddressParserTest {
+
+    CountingParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new CountingParser();
+    }
+
+    /**
+     * Test of parse method, of class CachingLedgerAddressParser.
+     */
+    @Test
+    public void testParse() {
+        System.out.println("parse");
+        CachingLedgerAddressParser instance = new CachingLedgerAddressParser(parser);
+        LedgerAddress first = instance.parse("alice@ledger");
+        assertEquals("alice", first.getAccountName());
+        assertSame(first, instance.parse("alice@ledger"));
+        assertEquals(1, parser.count.get());
+        assertEquals("bob", instance.parse("bob@ledger").getAccountName());
+        assertEquals(2, parser.count.get());
+    }
+
+    /**
+     * The least recently used addresses are evicted.
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("eviction");
+        CachingLedgerAddressParser instance = new CachingLedgerAddressParser(parser, 1);
+        instance.parse("alice@ledger");
+        instance.parse("bob@ledger");
+        assertEquals(1, instance.size());
+        instance.parse("alice@ledger");
+        assertEquals(3, parser.count.get());
+    }
+
+    /**
+     * Malformed addresses fail every time.
+     */
+    @Test
+    public void testParseMalformed() {
+        System.out.println("parse malformed");
+        CachingLedgerAddressParser instance = new CachingLedgerAddressParser(parser);
+        for (int i = 0; i < 2; i++) {
+            try {
+                instance.parse("@ledger");
+                fail("Expected exception!");
+            } catch (LedgerAddressParserException ex) {
+                // Expected
+            }
+        }
+        assertEquals(0, instance.size());
+    }
+
+    static class CountingParser implements LedgerAddressParser {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public LedgerAddress parse(String address) {
+            count.incrementAndGet();
+            return SimpleLedgerAddressParser.getDefault().parse(address);
+        }
+    }
+}
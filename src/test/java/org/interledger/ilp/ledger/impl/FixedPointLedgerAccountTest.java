@@ -0,0 +1,142 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.math.BigDecimal;
+import javax.money.MonetaryAmount;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * FixedPointLedgerAccount tests
+ *
+ * @author mrmx
+ */
+public class FixedPointLedgerAccountTest {
+
+    static final String CURRENCY_CODE = "EUR";
+    FixedPointLedgerAccount instance;
+
+    @Before
+    public void setUp() {
+        instance = new FixedPointLedgerAccount("test", CURRENCY_CODE, 2);
+    }
+
+    /**
+     * Test of setBalance method, of class FixedPointLedgerAccount.
+     */
+    @Test
+    public void testSetBalance_Number() {
+        System.out.println("setBalance");
+        instance.setBalance(123f);
+        assertEquals(12300, instance.getBalanceInMinorUnits());
+        assertEquals(Money.of(123, CURRENCY_CODE), instance.getBalance());
+    }
+
+    /**
+     * Test of setBalance method, of class FixedPointLedgerAccount.
+     */
+    @Test
+    public void testSetBalance_MonetaryAmount() {
+        System.out.println("setBalance");
+        instance.setBalance(Money.of(new BigDecimal("1.5"), CURRENCY_CODE));
+        assertEquals(150, instance.getBalanceInMinorUnits());
+    }
+
+    /**
+     * Test of getBalance method, of class FixedPointLedgerAccount.
+     */
+    @Test
+    public void testGetBalance() {
+        System.out.println("getBalance");
+        MonetaryAmount result = instance.getBalance();
+        assertEquals(Money.of(0, CURRENCY_CODE), result);
+        assertSame(result, instance.getBalance());
+        instance.credit(1);
+        assertEquals(Money.of(1, CURRENCY_CODE), instance.getBalance());
+        assertEquals("1.00", instance.getBalanceAsString());
+    }
+
+    /**
+     * Test of credit method, of class FixedPointLedgerAccount.
+     */
+    @Test
+    public void testCredit_String() {
+        System.out.println("credit string");
+        instance.credit("1234567890123.45");
+        assertEquals(123456789012345L, instance.getBalanceInMinorUnits());
+        instance.credit("0.5");
+        assertEquals(123456789012395L, instance.getBalanceInMinorUnits());
+    }
+
+    /**
+     * Test of debit method, of class FixedPointLedgerAccount.
+     */
+    @Test
+    public void testDebit_String() {
+        System.out.println("debit string");
+        instance.setBalance(100);
+        instance.debit("50.10");
+        assertEquals(4990, instance.getBalanceInMinorUnits());
+        instance.debit("-0.10");
+        assertEquals(5000, instance.getBalanceInMinorUnits());
+    }
+
+    /**
+     * Test of debit method, of class FixedPointLedgerAccount.
+     */
+    @Test
+    public void testDebit_MonetaryAmount() {
+        System.out.println("debit");
+        instance.setBalance(100);
+        MonetaryAmount result = instance.debit(Money.of(25, CURRENCY_CODE)).getBalance();
+        assertEquals(Money.of(75, CURRENCY_CODE), result);
+    }
+
+    /**
+     * Amounts with more fraction digits than the scale are rejected.
+     */
+    @Test(expected = ArithmeticException.class)
+    public void testCreditExceedingScale() {
+        System.out.println("credit exceeding scale");
+        instance.credit("0.001");
+    }
+
+    /**
+     * Malformed amounts are rejected.
+     */
+    @Test(expected = NumberFormatException.class)
+    public void testCreditMalformed() {
+        System.out.println("credit malformed");
+        instance.credit("1.2.3");
+    }
+
+    /**
+     * Overflowing the balance is rejected and leaves it untouched.
+     */
+    @Test
+    public void testCreditOverflow() {
+        System.out.println("credit overflow");
+        instance.setBalanceInMinorUnits(Long.MAX_VALUE);
+        try {
+            instance.creditMinorUnits(1);
+            fail("Expected exception!");
+        } catch (ArithmeticException ex) {
+            assertEquals(Long.MAX_VALUE, instance.getBalanceInMinorUnits());
+        }
+    }
+
+    /**
+     * Test of equals method, of class FixedPointLedgerAccount.
+     */
+    @Test
+    public void testEquals() {
+        System.out.println("equals");
+        FixedPointLedgerAccount other = new FixedPointLedgerAccount("other", CURRENCY_CODE, 2);
+        assertNotEquals(instance, other);
+        assertNotEquals(instance, null);
+        assertEquals(instance, instance);
+        assertEquals(instance, new FixedPointLedgerAccount("TEST", CURRENCY_CODE, 2));
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import org.interledger.ilp.core.LedgerInfo;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.AccountNotFoundException;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+import org.javamoney.moneta.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link MappedLedgerAccountManager}.
+ *
+ * @author mrmx
+ */
+public class MappedLedgerAccountManagerTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+    static final LedgerInfo INFO = LedgerInfoFactory.from(CURRENCY);
+
+    File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("ledger", ".accounts");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Accounts and balances are there again once reopened.
+     */
+    @Test
+    public void testClose() {
+        System.out.println("close");
+        MappedLedgerAccountManager instance = MappedLedgerAccountManager.open(directory, INFO);
+        instance.addAccount(instance.create("alice").setBalance(new BigDecimal("12.34")));
+        instance.addAccount(instance.create("élodie").setBalance(1));
+        // Grows the index past its first capacity
+        for (int i = 0; i < 100; i++) {
+            instance.addAccount(instance.create("account" + i).setBalance(i));
+        }
+        instance.getAccountByName("alice").debit(2);
+        instance.close();
+
+        MappedLedgerAccountManager reopened = MappedLedgerAccountManager.open(directory, INFO);
+        assertEquals(102, reopened.getTotalAccounts());
+        assertEquals(1034, ((MinorUnitsLedgerAccount) reopened.getAccountByName("alice")).getBalanceInMinorUnits());
+        assertEquals("élodie", reopened.getAccountByName("élodie").getName());
+        assertEquals(9900, ((MinorUnitsLedgerAccount) reopened.getAccountByName("account99")).getBalanceInMinorUnits());
+        assertEquals("account0", reopened.getAccounts(1, 1).iterator().next().getName());
+        reopened.addAccount(reopened.create("bob").setBalance(5));
+        assertEquals(103, reopened.getTotalAccounts());
+        reopened.close();
+    }
+
+    /**
+     * Without a clean close, accounts are as of the last checkpoint.
+     */
+    @Test
+    public void testCheckpoint() {
+        System.out.println("checkpoint");
+        MappedLedgerAccountManager instance = MappedLedgerAccountManager.open(directory, INFO);
+        instance.addAccount(instance.create("alice").setBalance(10));
+        instance.addAccount(instance.create("bob").setBalance(20));
+        MinorUnitsLedgerAccount alice = (MinorUnitsLedgerAccount) instance.getAccountByName("alice");
+        alice.debitMinorUnits(100);
+        instance.checkpoint();
+        alice.debitMinorUnits(100);
+        instance.checkpoint();
+        // Lost by the crash
+        alice.debitMinorUnits(500);
+        alice.creditMinorUnits(1);
+        for (int i = 0; i < 100; i++) {
+            instance.addAccount(instance.create("account" + i).setBalance(i));
+        }
+        assertEquals(301, alice.getBalanceInMinorUnits());
+
+        // Opened again as if the process had died
+        MappedLedgerAccountManager recovered = MappedLedgerAccountManager.open(directory, INFO);
+        assertEquals(2, recovered.getTotalAccounts());
+        assertEquals(800, ((MinorUnitsLedgerAccount) recovered.getAccountByName("alice")).getBalanceInMinorUnits());
+        assertEquals(2000, ((MinorUnitsLedgerAccount) recovered.getAccountByName("bob")).getBalanceInMinorUnits());
+        try {
+            recovered.getAccountByName("account0");
+            fail("Expected exception!");
+        } catch (AccountNotFoundException ex) {
+            // Expected
+        }
+        recovered.addAccount(recovered.create("carol").setBalance(3));
+        recovered.getAccountByName("bob").credit(1);
+        recovered.close();
+
+        MappedLedgerAccountManager reopened = MappedLedgerAccountManager.open(directory, INFO);
+        assertEquals(3, reopened.getTotalAccounts());
+        assertEquals(2100, ((MinorUnitsLedgerAccount) reopened.getAccountByName("bob")).getBalanceInMinorUnits());
+        assertEquals(300, ((MinorUnitsLedgerAccount) reopened.getAccountByName("carol")).getBalanceInMinorUnits());
+        reopened.close();
+    }
+
+    /**
+     * Accounts of another currency are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpenOtherCurrency() {
+        System.out.println("openOtherCurrency");
+        MappedLedgerAccountManager.open(directory, INFO).close();
+        MappedLedgerAccountManager.open(directory, LedgerInfoFactory.from(Currencies.US_DOLLAR));
+    }
+
+    /**
+     * A ledger keeps its balances across restarts.
+     */
+    @Test
+    public void testSend() {
+        System.out.println("send");
+        SimpleLedger ledger = new SimpleLedger(INFO, "test", BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        MappedLedgerAccountManager instance = MappedLedgerAccountManager.open(directory, INFO);
+        ledger.setLedgerAccountManager(instance);
+        instance.addAccount(ledger.createAccount("alice").setBalance(100));
+        instance.addAccount(ledger.createAccount("bob"));
+        LedgerAccount alice = instance.getAccountByName("alice");
+        LedgerAccount bob = instance.getAccountByName("bob");
+        ledger.send(transfer(alice, bob, "10.25"));
+        instance.checkpoint();
+        ledger.send(transfer(bob, alice, "0.25"));
+        instance.close();
+
+        SimpleLedger restarted = new SimpleLedger(INFO, "test", BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        MappedLedgerAccountManager reopened = MappedLedgerAccountManager.open(directory, INFO);
+        restarted.setLedgerAccountManager(reopened);
+        assertEquals(0, new BigDecimal("90").compareTo(balance(restarted, "alice")));
+        assertEquals(0, new BigDecimal("10").compareTo(balance(restarted, "bob")));
+        reopened.close();
+    }
+
+    private BigDecimal balance(SimpleLedger ledger, String accountName) {
+        return ledger.getLedgerAccountManager().getAccountByName(accountName)
+                .getBalance().getNumber().numberValue(BigDecimal.class);
+    }
+
+    private LedgerTransfer transfer(LedgerAccount from, LedgerAccount to, String amount) {
+        return LedgerTransferBuilder.instance()
+                .from(from)
+                .to(to)
+                .amount(Money.of(new BigDecimal(amount), CURRENCY.code()))
+                .build();
+    }
+}
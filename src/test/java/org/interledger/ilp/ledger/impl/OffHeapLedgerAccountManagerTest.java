@@ -0,0 +1,155 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.AccountNotFoundException;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.LedgerAccountPage;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OffHeapLedgerAccountManager}.
+ *
+ * @author mrmx
+ */
+public class OffHeapLedgerAccountManagerTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+
+    OffHeapLedgerAccountManager instance;
+
+    @Before
+    public void setUp() {
+        instance = new OffHeapLedgerAccountManager(LedgerInfoFactory.from(CURRENCY));
+    }
+
+    /**
+     * Test of addAccount method, of class OffHeapLedgerAccountManager.
+     */
+    @Test
+    public void testAddAccount() {
+        System.out.println("addAccount");
+        instance.addAccount(instance.create("alice").setBalance(new BigDecimal("12.34")));
+        instance.addAccount(new SimpleLedgerAccount("bob", CURRENCY.code()).setBalance(5));
+        instance.addAccount(instance.create("élodie").setBalance(1));
+        assertEquals(3, instance.getTotalAccounts());
+        MinorUnitsLedgerAccount alice = (MinorUnitsLedgerAccount) instance.getAccountByName("alice");
+        assertEquals(1234, alice.getBalanceInMinorUnits());
+        assertEquals("EUR", alice.getCurrencyCode());
+        assertEquals(0, new BigDecimal("5").compareTo((BigDecimal) instance.getAccountByName("bob").getBalanceAsNumber()));
+        assertEquals("élodie", instance.getAccountByName("élodie").getName());
+        // Replaces the balance
+        instance.addAccount(instance.create("alice").setBalance(1));
+        assertEquals(100, alice.getBalanceInMinorUnits());
+        assertEquals(3, instance.getTotalAccounts());
+        assertNotNull(instance.addAccountIfAbsent(instance.create("bob")));
+        assertNull(instance.addAccountIfAbsent(instance.create("carol")));
+        assertEquals(4, instance.getTotalAccounts());
+        try {
+            instance.getAccountByName("ALICE");
+            fail("Expected exception!");
+        } catch (AccountNotFoundException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * Views of the same account share its balance.
+     */
+    @Test
+    public void testViews() {
+        System.out.println("views");
+        instance.addAccount(instance.create("alice").setBalance(10));
+        LedgerAccount first = instance.getAccountByName("alice");
+        LedgerAccount second = instance.getAccountByName("alice");
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        first.credit(5);
+        second.debit(Money.of(3, CURRENCY.code()));
+        assertEquals(0, new BigDecimal("12").compareTo((BigDecimal) first.getBalanceAsNumber()));
+        assertEquals(Money.of(12, CURRENCY.code()), second.getBalance());
+        try {
+            ((MinorUnitsLedgerAccount) first).creditMinorUnits(Long.MAX_VALUE);
+            fail("Expected exception!");
+        } catch (ArithmeticException ex) {
+            assertEquals(1200, ((MinorUnitsLedgerAccount) second).getBalanceInMinorUnits());
+        }
+    }
+
+    /**
+     * Accounts are found while the index grows.
+     */
+    @Test
+    public void testManyAccounts() {
+        System.out.println("many accounts");
+        int count = 200000;
+        for (int i = 0; i < count; i++) {
+            instance.addAccount(instance.create("account-" + i).setBalance(i));
+        }
+        assertEquals(count, instance.getTotalAccounts());
+        for (int i = 0; i < count; i += 997) {
+            MinorUnitsLedgerAccount account = (MinorUnitsLedgerAccount) instance.getAccountByName("account-" + i);
+            assertEquals(i * 100L, account.getBalanceInMinorUnits());
+        }
+    }
+
+    /**
+     * Test of getAccounts method, of class OffHeapLedgerAccountManager.
+     */
+    @Test
+    public void testGetAccounts() {
+        System.out.println("getAccounts");
+        for (int i = 99; i >= 0; i--) {
+            instance.addAccount(instance.create(String.format("account-%03d", i)));
+        }
+        Collection<LedgerAccount> page = instance.getAccounts(2, 30);
+        assertEquals(30, page.size());
+        assertEquals("account-030", page.iterator().next().getName());
+        assertTrue(instance.getAccounts(5, 30).isEmpty());
+        List<String> names = new ArrayList<String>();
+        LedgerAccountPage cursorPage = instance.getAccounts(null, 30);
+        while (true) {
+            for (LedgerAccount account : cursorPage.getAccounts()) {
+                names.add(account.getName());
+            }
+            if (!cursorPage.hasNext()) {
+                break;
+            }
+            // Accounts added meanwhile are listed in order
+            instance.addAccount(instance.create("account-" + names.size() + "b"));
+            cursorPage = instance.getAccounts(cursorPage.getNextCursor(), 30);
+        }
+        assertEquals(103, names.size());
+        for (int i = 1; i < names.size(); i++) {
+            assertTrue(names.get(i - 1).compareTo(names.get(i)) < 0);
+        }
+    }
+
+    /**
+     * Test of send method, of class SimpleLedger, with off-heap accounts.
+     */
+    @Test
+    public void testSend() {
+        System.out.println("send");
+        SimpleLedger ledger = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test", BalanceEngine.FIXED_POINT,
+                ConcurrencyMode.STRIPED_LOCKS);
+        ledger.setLedgerAccountManager(instance);
+        instance.addAccount(ledger.createAccount("alice").setBalance(100));
+        instance.addAccount(ledger.createAccount("bob").setBalance(0));
+        ledger.send(LedgerTransferBuilder.instance()
+                .from("alice")
+                .to("bob")
+                .amount(Money.of(new BigDecimal("10.25"), CURRENCY.code()))
+                .build());
+        assertEquals(0, new BigDecimal("89.75").compareTo((BigDecimal) instance.getAccountByName("alice").getBalanceAsNumber()));
+        assertEquals(0, new BigDecimal("10.25").compareTo((BigDecimal) instance.getAccountByName("bob").getBalanceAsNumber()));
+    }
+}
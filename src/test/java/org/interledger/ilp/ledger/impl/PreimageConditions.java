@@ -0,0 +1,88 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.interledger.cryptoconditions.Condition;
+import org.interledger.cryptoconditions.Fulfillment;
+
+/**
+ * Preimage-style conditions for tests: the fingerprint of a condition is the
+ * SHA-256 of the preimage of its fulfillment.
+ *
+ * @author mrmx
+ */
+final class PreimageConditions {
+
+    private PreimageConditions() {
+    }
+
+    static Condition condition(String preimage) {
+        return fulfillment(preimage).generateCondition();
+    }
+
+    static Fulfillment fulfillment(String preimage) {
+        final byte[] payload = preimage.getBytes(Charset.forName("UTF-8"));
+        final Condition condition = proxy(Condition.class, new Answer() {
+            @Override
+            Object answer(String method, Object[] args) {
+                if (method.equals("getFingerprint")) {
+                    return sha256(payload);
+                }
+                if (method.equals("getMaxFulfillmentLength")) {
+                    return payload.length;
+                }
+                return null;
+            }
+        });
+        return proxy(Fulfillment.class, new Answer() {
+            @Override
+            Object answer(String method, Object[] args) {
+                if (method.equals("getPayload")) {
+                    return payload.clone();
+                }
+                if (method.equals("generateCondition")) {
+                    return condition;
+                }
+                if (method.equals("validate")) {
+                    return Boolean.TRUE;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static <T> T proxy(final Class<T> type, final Answer answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                if (method.getName().equals("toString")) {
+                    return type.getSimpleName();
+                }
+                return answer.answer(method.getName(), args);
+            }
+        }));
+    }
+
+    private abstract static class Answer {
+
+        abstract Object answer(String method, Object[] args);
+    }
+}
@@ -1,12 +1,18 @@
 package org.interledger.ilp.ledger.impl;
 
 import java.util.Collection;
-import org.interledger.ilp.ledger.LedgerAccountManagerFactory;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.account.AccountNotFoundException;
 import org.interledger.ilp.ledger.account.LedgerAccount;
 import org.interledger.ilp.ledger.account.LedgerAccountManager;
+import org.interledger.ilp.ledger.account.LedgerAccountPage;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -20,8 +26,7 @@ public class SimpleLedgerAccountManagerTest {
     
     @Before
     public void setUp() {
-//        instance = new SimpleLedgerAccountManager(LedgerInfoFactory.from(Currencies.EURO));
-    	instance = LedgerAccountManagerFactory.getAccountManagerSingleton();
+        instance = new SimpleLedger(Currencies.EURO, "test").getLedgerAccountManager();
     }
     
     /**
@@ -74,6 +79,29 @@ public class SimpleLedgerAccountManagerTest {
         assertEquals(bob, result);
     }
     
+    /**
+     * Test of addAccountIfAbsent method, of class SimpleLedgerAccountManager.
+     */
+    @Test
+    public void testAddAccountIfAbsent() {
+        System.out.println("addAccountIfAbsent");
+        LedgerAccountManager manager = new SimpleLedgerAccountManager();
+        LedgerAccount alice = new SimpleLedgerAccount("alice", "EUR");
+        assertNull(manager.addAccountIfAbsent(alice));
+        assertSame(alice, manager.addAccountIfAbsent(new SimpleLedgerAccount("alice", "EUR")));
+        assertSame(alice, manager.getAccountByName("alice"));
+        assertEquals(1, manager.getTotalAccounts());
+    }
+
+    /**
+     * Test of getAccountByName method, of class SimpleLedgerAccountManager.
+     */
+    @Test(expected = AccountNotFoundException.class)
+    public void testGetAccountByNameNotFound() {
+        System.out.println("getAccountByName not found");
+        new SimpleLedgerAccountManager().getAccountByName("nobody");
+    }
+
     /**
      * Test of getAccounts method, of class SimpleLedgerAccountManager.
      */
@@ -85,7 +113,80 @@ public class SimpleLedgerAccountManagerTest {
         instance.addAccount(instance.create("alice"));
         assertEquals(2,instance.getTotalAccounts());                
         Collection<LedgerAccount> result = instance.getAccounts(1, 1);
-        assertEquals(2, result.size());
+        assertEquals(1, result.size());
+    }
+
+    /**
+     * Test of getAccounts method, of class SimpleLedgerAccountManager.
+     */
+    @Test
+    public void testGetAccountsPaged() {
+        System.out.println("getAccounts paged");
+        LedgerAccountManager manager = new SimpleLedgerAccountManager();
+        for (String name : new String[]{"dave", "alice", "carol", "bob", "erin"}) {
+            manager.addAccount(new SimpleLedgerAccount(name, "EUR"));
+        }
+        assertEquals("alice,bob", names(manager.getAccounts(1, 2)));
+        assertEquals("erin", names(manager.getAccounts(3, 2)));
+        assertEquals("", names(manager.getAccounts(4, 2)));
+    }
+
+    /**
+     * Test of getAccounts method with cursors, of class SimpleLedgerAccountManager.
+     */
+    @Test
+    public void testGetAccountsCursor() {
+        System.out.println("getAccounts cursor");
+        LedgerAccountManager manager = new SimpleLedgerAccountManager();
+        for (String name : new String[]{"dave", "alice", "carol", "bob", "erin"}) {
+            manager.addAccount(new SimpleLedgerAccount(name, "EUR"));
+        }
+        LedgerAccountPage page = manager.getAccounts(null, 2);
+        assertEquals("alice,bob", names(page.getAccounts()));
+        assertTrue(page.hasNext());
+        // Accounts added meanwhile don't shift the next pages
+        manager.addAccount(new SimpleLedgerAccount("aaron", "EUR"));
+        manager.addAccount(new SimpleLedgerAccount("bobby", "EUR"));
+        page = manager.getAccounts(page.getNextCursor(), 2);
+        assertEquals("bobby,carol", names(page.getAccounts()));
+        page = manager.getAccounts(page.getNextCursor(), 2);
+        assertEquals("dave,erin", names(page.getAccounts()));
+        assertFalse(page.hasNext());
+    }
+
+    /**
+     * Names are case-insensitive, as account equality.
+     */
+    @Test
+    public void testGetAccountByNameIgnoringCase() {
+        System.out.println("getAccountByName ignoring case");
+        LedgerAccountManager manager = new SimpleLedgerAccountManager();
+        LedgerAccount alice = new SimpleLedgerAccount("Alice", "EUR");
+        manager.addAccount(alice);
+        assertSame(alice, manager.getAccountByName("alice"));
+        assertSame(alice, manager.getAccountByName("ALICE"));
+        assertSame(alice, manager.addAccountIfAbsent(new SimpleLedgerAccount("aLiCe", "EUR")));
+        LedgerAccount replaced = new SimpleLedgerAccount("alice", "EUR");
+        manager.addAccount(replaced);
+        assertSame(replaced, manager.getAccountByName("Alice"));
+        assertEquals(1, manager.getTotalAccounts());
+        manager.addAccount(new SimpleLedgerAccount("Bob", "EUR"));
+        manager.addAccount(new SimpleLedgerAccount("carol", "EUR"));
+        assertEquals("alice,Bob,carol", names(manager.getAccounts(1, 3)));
+        LedgerAccountPage page = manager.getAccounts(null, 2);
+        assertEquals("Bob", page.getNextCursor());
+        assertEquals("carol", names(manager.getAccounts("BOB", 2).getAccounts()));
+    }
+
+    private static String names(Collection<LedgerAccount> accounts) {
+        StringBuilder names = new StringBuilder();
+        for (LedgerAccount account : accounts) {
+            if (names.length() > 0) {
+                names.append(',');
+            }
+            names.append(account.getName());
+        }
+        return names.toString();
     }
     
 }
@@ -153,6 +153,9 @@ public class SimpleLedgerAccountTest {
         assertNotEquals(instance, other);
         assertNotEquals(instance, null);
         assertEquals(instance, instance);
+        SimpleLedgerAccount sameName = new SimpleLedgerAccount(instance.getName().toUpperCase(), CURRENCY_CODE);
+        assertEquals(instance, sameName);
+        assertEquals(instance.hashCode(), sameName.hashCode());
     }
 
 }
@@ -27,9 +27,32 @@ public class SimpleLedgerAddressParserTest {
     public void testParse() {
         System.out.println("parse");
         String address = "alice@ledger";
-        instance.parse(address);
-        assertEquals("Account", "alice", instance.getAccountName());
-        assertEquals("Ledger", "ledger", instance.getLedgerName());
+        LedgerAddress result = instance.parse(address);
+        assertEquals("Account", "alice", result.getAccountName());
+        assertEquals("Ledger", "ledger", result.getLedgerName());
+    }
+
+    /**
+     * Test of parse method, of class SimpleLedgerAddressParser.
+     */
+    @Test
+    public void testParseTrimmed() {
+        System.out.println("parse trimmed");
+        LedgerAddress result = instance.parse(" alice@ledger\n");
+        assertEquals("Account", "alice", result.getAccountName());
+        assertEquals("Ledger", "ledger", result.getLedgerName());
+        result = new SimpleLedgerAddressParser("::").parse("bob::other::ignored");
+        assertEquals("Account", "bob", result.getAccountName());
+        assertEquals("Ledger", "other", result.getLedgerName());
+    }
+
+    /**
+     * Test of parse method, of class SimpleLedgerAddressParser.
+     */
+    @Test(expected = LedgerAddressParserException.class)
+    public void testParseSeparatorInTrailingSpace() {
+        System.out.println("parse separator in trailing space");
+        instance.parse("account @ ");
     }
 
     /**
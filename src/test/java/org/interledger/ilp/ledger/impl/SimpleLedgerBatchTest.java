@@ -0,0 +1,175 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.AccountNotFoundException;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.events.BatchLedgerEventHandler;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests of {@link SimpleLedger#sendBatch}.
+ *
+ * @author mrmx
+ */
+public class SimpleLedgerBatchTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+
+    /**
+     * Balances are checked against net amounts in all-or-nothing batches.
+     */
+    @Test
+    public void testSendBatchNetted() {
+        System.out.println("sendBatch netted");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        LedgerAccount alice = add(ledger, "batch-net-alice", 10);
+        LedgerAccount bob = add(ledger, "batch-net-bob", 0);
+        LedgerAccount carol = add(ledger, "batch-net-carol", 0);
+        TransferBatchResult result = ledger.sendBatch(Arrays.asList(
+                transfer(bob, carol, 10),
+                transfer(alice, bob, 10)));
+        assertTrue(result.isFullyExecuted());
+        assertEquals(0, alice.getBalanceAsNumber().intValue());
+        assertEquals(0, bob.getBalanceAsNumber().intValue());
+        assertEquals(10, carol.getBalanceAsNumber().intValue());
+    }
+
+    /**
+     * Nothing is executed when a transfer of an all-or-nothing batch fails.
+     */
+    @Test
+    public void testSendBatchAllOrNothing() {
+        System.out.println("sendBatch all or nothing");
+        SimpleLedger ledger = ledger(BalanceEngine.MONEY, ConcurrencyMode.STRIPED_LOCKS);
+        LedgerAccount alice = add(ledger, "batch-all-alice", 10);
+        LedgerAccount bob = add(ledger, "batch-all-bob", 5);
+        TransferBatchResult result = ledger.sendBatch(Arrays.asList(
+                transfer(alice, bob, 10),
+                transfer(bob, alice, 20)));
+        assertEquals(0, result.getExecutedCount());
+        assertNull(result.getFailure(0));
+        assertTrue(result.getFailure(1) instanceof InsufficientAmountException);
+        assertEquals(10, alice.getBalanceAsNumber().intValue());
+        assertEquals(5, bob.getBalanceAsNumber().intValue());
+
+        result = ledger.sendBatch(Arrays.asList(
+                transfer(alice, bob, 1),
+                LedgerTransferBuilder.instance()
+                        .from(alice)
+                        .to("batch-all-nobody")
+                        .amount(Money.of(1, CURRENCY.code()))
+                        .build()));
+        assertEquals(0, result.getExecutedCount());
+        assertTrue(result.getFailure(1) instanceof AccountNotFoundException);
+        assertEquals(10, alice.getBalanceAsNumber().intValue());
+    }
+
+    /**
+     * Transfers built with an id aren't batched: a batch sent again would
+     * apply them twice.
+     */
+    @Test
+    public void testSendBatchWithId() {
+        System.out.println("sendBatch with id");
+        SimpleLedger ledger = ledger(BalanceEngine.MONEY, ConcurrencyMode.STRIPED_LOCKS);
+        LedgerAccount alice = add(ledger, "batch-id-alice", 10);
+        LedgerAccount bob = add(ledger, "batch-id-bob", 5);
+        List<LedgerTransfer> batch = Arrays.asList(
+                transfer(alice, bob, 1),
+                LedgerTransferBuilder.instance()
+                        .id("batch-id-1")
+                        .from(alice)
+                        .to(bob)
+                        .amount(Money.of(2, CURRENCY.code()))
+                        .build());
+        for (int i = 0; i < 2; i++) {
+            TransferBatchResult result = ledger.sendBatch(batch);
+            assertEquals(0, result.getExecutedCount());
+            assertTrue(result.getFailure(1) instanceof IllegalArgumentException);
+        }
+        assertEquals(10, alice.getBalanceAsNumber().intValue());
+        assertEquals(5, bob.getBalanceAsNumber().intValue());
+
+        ledger.send(batch.get(1));
+        assertEquals(8, alice.getBalanceAsNumber().intValue());
+        assertEquals(7, bob.getBalanceAsNumber().intValue());
+    }
+
+    /**
+     * Transfers of a per-transfer batch are checked in order and failing ones
+     * are skipped.
+     */
+    @Test
+    public void testSendBatchPerTransfer() {
+        System.out.println("sendBatch per transfer");
+        SimpleLedger ledger = ledger(BalanceEngine.ATOMIC, ConcurrencyMode.LOCK_FREE);
+        LedgerAccount alice = add(ledger, "batch-each-alice", 10);
+        LedgerAccount bob = add(ledger, "batch-each-bob", 0);
+        TransferBatchResult result = ledger.sendBatch(Arrays.asList(
+                transfer(bob, alice, 5),
+                transfer(alice, bob, 8),
+                transfer(alice, bob, 8),
+                transfer(bob, alice, 5)), TransferBatchMode.PER_TRANSFER);
+        assertFalse(result.isExecuted(0));
+        assertTrue(result.getFailure(0) instanceof InsufficientAmountException);
+        assertTrue(result.isExecuted(1));
+        assertFalse(result.isExecuted(2));
+        assertTrue(result.isExecuted(3));
+        assertEquals(2, result.getExecutedCount());
+        assertEquals(7, alice.getBalanceAsNumber().intValue());
+        assertEquals(3, bob.getBalanceAsNumber().intValue());
+    }
+
+    /**
+     * Batch handlers receive all the executed transfers at once.
+     */
+    @Test
+    public void testSendBatchEvents() {
+        System.out.println("sendBatch events");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.UNSYNCHRONIZED);
+        final List<List<LedgerEvent>> batches = new ArrayList<List<LedgerEvent>>();
+        ledger.registerEventHandler(new BatchLedgerEventHandler<LedgerEvent>() {
+            @Override
+            public void onLedgerEvents(List<LedgerEvent> ledgerEvents) {
+                batches.add(ledgerEvents);
+            }
+
+            @Override
+            public void onLedgerEvent(LedgerEvent ledgerEvent) {
+                fail("Expected a batch");
+            }
+        });
+        LedgerAccount alice = add(ledger, "batch-events-alice", 10);
+        LedgerAccount bob = add(ledger, "batch-events-bob", 0);
+        ledger.sendBatch(Arrays.asList(transfer(alice, bob, 1), transfer(alice, bob, 2)));
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+    }
+
+    private SimpleLedger ledger(BalanceEngine engine, ConcurrencyMode mode) {
+        return new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test", engine, mode);
+    }
+
+    private LedgerAccount add(SimpleLedger ledger, String name, int balance) {
+        LedgerAccount account = ledger.createAccount(name).setBalance(balance);
+        ledger.getLedgerAccountManager().addAccount(account);
+        return account;
+    }
+
+    private LedgerTransfer transfer(LedgerAccount from, LedgerAccount to, int amount) {
+        return LedgerTransferBuilder.instance()
+                .from(from)
+                .to(to)
+                .amount(Money.of(amount, CURRENCY.code()))
+                .build();
+    }
+}
@@ -0,0 +1,158 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.interledger.ilp.core.LedgerInfo;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Stress tests of {@link SimpleLedger#send} under contention.
+ *
+ * @author mrmx
+ */
+public class SimpleLedgerConcurrencyTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+    static final int ACCOUNTS = 16;
+    static final int THREADS = 8;
+    static final int TRANSFERS_PER_THREAD = 5000;
+    static final int INITIAL_BALANCE = 1000;
+
+    /**
+     * Balances are conserved with striped locks and Money balances.
+     */
+    @Test
+    public void testStripedLocksMoney() throws Exception {
+        System.out.println("striped locks money");
+        stress(BalanceEngine.MONEY, ConcurrencyMode.STRIPED_LOCKS, "striped-money-");
+    }
+
+    /**
+     * Balances are conserved with striped locks and fixed point balances.
+     */
+    @Test
+    public void testStripedLocksFixedPoint() throws Exception {
+        System.out.println("striped locks fixed point");
+        stress(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS, "striped-fixed-");
+    }
+
+    /**
+     * Balances are conserved in lock-free mode.
+     */
+    @Test
+    public void testLockFree() throws Exception {
+        System.out.println("lock free");
+        stress(BalanceEngine.ATOMIC, ConcurrencyMode.LOCK_FREE, "lockfree-");
+    }
+
+    /**
+     * Balances are conserved in lock-free mode when the hottest account uses
+     * striped credits, and when lock-free accounts are mixed with locked ones.
+     */
+    @Test
+    public void testLockFreeMixedAccounts() throws Exception {
+        System.out.println("lock free mixed accounts");
+        final LedgerInfo info = LedgerInfoFactory.from(CURRENCY);
+        stress(BalanceEngine.ATOMIC, ConcurrencyMode.LOCK_FREE, "lockfree-mixed-", new AccountSetup() {
+            @Override
+            public LedgerAccount create(SimpleLedger ledger, String name, int index) {
+                if (index == 0) {
+                    return new StripedCreditLedgerAccount(name, info);
+                }
+                if (index % 4 == 1) {
+                    return new FixedPointLedgerAccount(name, info);
+                }
+                return ledger.createAccount(name);
+            }
+        });
+    }
+
+    /**
+     * Balances are conserved by single-writer shards, with fixed point and
+     * Money balances.
+     */
+    @Test
+    public void testSharded() throws Exception {
+        System.out.println("sharded");
+        stress(BalanceEngine.FIXED_POINT, ConcurrencyMode.SHARDED, "sharded-fixed-");
+        stress(BalanceEngine.MONEY, ConcurrencyMode.SHARDED, "sharded-money-");
+    }
+
+    protected void stress(BalanceEngine engine, ConcurrencyMode mode, final String prefix) throws Exception {
+        stress(engine, mode, prefix, new AccountSetup() {
+            @Override
+            public LedgerAccount create(SimpleLedger ledger, String name, int index) {
+                return ledger.createAccount(name);
+            }
+        });
+    }
+
+    protected void stress(BalanceEngine engine, ConcurrencyMode mode, final String prefix, AccountSetup setup)
+            throws Exception {
+        final SimpleLedger ledger = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test", engine, mode);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            LedgerAccount account = setup.create(ledger, prefix + i, i).setBalance(INITIAL_BALANCE);
+            ledger.getLedgerAccountManager().addAccount(account);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                        for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                            int from = random.nextInt(ACCOUNTS);
+                            int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                            try {
+                                ledger.send(LedgerTransferBuilder.instance()
+                                        .from(prefix + from)
+                                        .to(prefix + to)
+                                        .amount(Money.of(1 + random.nextInt(50), CURRENCY.code()))
+                                        .build());
+                            } catch (InsufficientAmountException ex) {
+                                // Expected under contention
+                            }
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            LedgerAccount account = ledger.getLedgerAccountManager().getAccountByName(prefix + i);
+            assertFalse(account.getBalance().isNegative());
+            total = total.add(new BigDecimal(account.getBalanceAsString()));
+        }
+        assertEquals(0, total.compareTo(BigDecimal.valueOf(ACCOUNTS * INITIAL_BALANCE)));
+        ledger.close();
+    }
+
+    interface AccountSetup {
+
+        LedgerAccount create(SimpleLedger ledger, String name, int index);
+    }
+}
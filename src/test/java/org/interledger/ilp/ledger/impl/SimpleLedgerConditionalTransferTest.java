@@ -0,0 +1,591 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.LedgerTransferRejectedReason;
+import org.interledger.ilp.core.LedgerTransferStatus;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerEventHandler;
+import org.interledger.ilp.core.events.LedgerTransferExecutedEvent;
+import org.interledger.ilp.core.events.LedgerTransferPreparedEvent;
+import org.interledger.ilp.core.events.LedgerTransferRejectedEvent;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.core.exceptions.LedgerTransferException;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.ILPTransfer;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.clock.FakeLedgerClock;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests of the conditional transfers of {@link SimpleLedger}.
+ *
+ * @author mrmx
+ */
+public class SimpleLedgerConditionalTransferTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+
+    /**
+     * A prepared transfer holds its amount until fulfilled.
+     */
+    @Test
+    public void testFulfillCondition() {
+        System.out.println("fulfillCondition");
+        for (BalanceEngine engine : BalanceEngine.values()) {
+            String prefix = "hold-fulfill-" + engine + "-";
+            SimpleLedger ledger = ledger(engine, ConcurrencyMode.STRIPED_LOCKS);
+            RecordingHandler handler = new RecordingHandler();
+            ledger.registerEventHandler(handler);
+            LedgerAccount alice = add(ledger, prefix + "alice", 100);
+            LedgerAccount bob = add(ledger, prefix + "bob", 0);
+            LedgerTransfer transfer = conditional(alice, bob, "10.50", "preimage");
+            ledger.send(transfer);
+            assertEquals(0, new BigDecimal("89.50").compareTo(balance(alice)));
+            assertEquals(0, new BigDecimal("10.50").compareTo(heldBalance(ledger, alice)));
+            assertEquals(0, BigDecimal.ZERO.compareTo(balance(bob)));
+            ILPTransfer ilpTransfer = ledger.getPreparedTransfer(ConditionalTransferExecutor.idOf(transfer));
+            assertEquals(LedgerTransferStatus.PREPARED, ilpTransfer.getStatus());
+
+            ledger.fulfillCondition(PreimageConditions.fulfillment("preimage"));
+            assertEquals(0, new BigDecimal("89.50").compareTo(balance(alice)));
+            assertEquals(0, BigDecimal.ZERO.compareTo(heldBalance(ledger, alice)));
+            assertEquals(0, new BigDecimal("10.50").compareTo(balance(bob)));
+            assertEquals(LedgerTransferStatus.EXECUTED, ilpTransfer.getStatus());
+            assertNull(ledger.getPreparedTransfer(ConditionalTransferExecutor.idOf(transfer)));
+            assertEquals(2, handler.events.size());
+            assertTrue(handler.events.get(0) instanceof LedgerTransferPreparedEvent);
+            assertTrue(handler.events.get(1) instanceof LedgerTransferExecutedEvent);
+        }
+    }
+
+    /**
+     * A rejected transfer gives its amount back, and can't be completed
+     * again.
+     */
+    @Test
+    public void testRejectTransfer() {
+        System.out.println("rejectTransfer");
+        SimpleLedger ledger = ledger(BalanceEngine.ATOMIC, ConcurrencyMode.LOCK_FREE);
+        RecordingHandler handler = new RecordingHandler();
+        ledger.registerEventHandler(handler);
+        LedgerAccount alice = add(ledger, "hold-reject-alice", 100);
+        LedgerAccount bob = add(ledger, "hold-reject-bob", 0);
+        LedgerTransfer transfer = conditional(alice, bob, "30", "preimage");
+        ledger.send(transfer);
+        ledger.rejectTransfer(transfer, LedgerTransferRejectedReason.REJECTED_BY_RECEIVER);
+        assertEquals(0, new BigDecimal("100").compareTo(balance(alice)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(heldBalance(ledger, alice)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance(bob)));
+        LedgerTransferRejectedEvent rejected = (LedgerTransferRejectedEvent) handler.events.get(1);
+        assertEquals(LedgerTransferRejectedReason.REJECTED_BY_RECEIVER, rejected.getReason());
+        try {
+            ledger.fulfillCondition(PreimageConditions.fulfillment("preimage"));
+            fail("Expected exception!");
+        } catch (LedgerTransferException ex) {
+            assertEquals(0, BigDecimal.ZERO.compareTo(balance(bob)));
+        }
+    }
+
+    /**
+     * A fulfillment of another condition leaves the transfer prepared.
+     */
+    @Test
+    public void testFulfillConditionMismatch() {
+        System.out.println("fulfillCondition mismatch");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        LedgerAccount alice = add(ledger, "hold-mismatch-alice", 100);
+        LedgerAccount bob = add(ledger, "hold-mismatch-bob", 0);
+        LedgerTransfer transfer = conditional(alice, bob, "10", "preimage");
+        ledger.send(transfer);
+        String transferId = ConditionalTransferExecutor.idOf(transfer);
+        try {
+            ledger.fulfillCondition(transferId, PreimageConditions.fulfillment("other"));
+            fail("Expected exception!");
+        } catch (LedgerTransferException ex) {
+            assertNotNull(ledger.getPreparedTransfer(transferId));
+        }
+        ledger.fulfillCondition(transferId, PreimageConditions.fulfillment("preimage"));
+        assertEquals(0, new BigDecimal("10").compareTo(balance(bob)));
+    }
+
+    /**
+     * Holds are checked against the balance left by the previous ones, and
+     * transfer ids are unique.
+     */
+    @Test
+    public void testPrepareRejected() {
+        System.out.println("prepare rejected");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        LedgerAccount alice = add(ledger, "hold-prepare-alice", 100);
+        LedgerAccount bob = add(ledger, "hold-prepare-bob", 0);
+        ledger.send(conditional(alice, bob, "60", "first"));
+        try {
+            ledger.send(conditional(alice, bob, "60", "second"));
+            fail("Expected exception!");
+        } catch (InsufficientAmountException ex) {
+            assertEquals(0, new BigDecimal("40").compareTo(balance(alice)));
+        }
+        LedgerTransfer transfer = LedgerTransferBuilder.instance()
+                .id("hold-prepare-duplicate")
+                .from(alice)
+                .to(bob)
+                .amount(Money.of(1, CURRENCY.code()))
+                .with(PreimageConditions.condition("third"))
+                .with(new Date(System.currentTimeMillis() + 60000))
+                .build();
+        ledger.send(transfer);
+        // Sent again, it's prepared once
+        ledger.send(transfer);
+        assertEquals(0, new BigDecimal("39").compareTo(balance(alice)));
+        assertEquals(0, new BigDecimal("61").compareTo(heldBalance(ledger, alice)));
+    }
+
+    /**
+     * Transfers sharing a condition are executed by the same fulfillment.
+     */
+    @Test
+    public void testFulfillSharedCondition() {
+        System.out.println("fulfillCondition shared");
+        SimpleLedger ledger = ledger(BalanceEngine.MONEY, ConcurrencyMode.STRIPED_LOCKS);
+        LedgerAccount alice = add(ledger, "hold-shared-alice", 100);
+        LedgerAccount bob = add(ledger, "hold-shared-bob", 0);
+        LedgerAccount carol = add(ledger, "hold-shared-carol", 0);
+        ledger.send(conditional(alice, bob, "10", "shared"));
+        ledger.send(conditional(alice, carol, "20", "shared"));
+        LedgerTransfer other = conditional(alice, carol, "5", "other");
+        ledger.send(other);
+        ledger.fulfillCondition(PreimageConditions.fulfillment("shared"));
+        assertEquals(0, new BigDecimal("10").compareTo(balance(bob)));
+        assertEquals(0, new BigDecimal("20").compareTo(balance(carol)));
+        assertEquals(0, new BigDecimal("5").compareTo(heldBalance(ledger, alice)));
+        assertNotNull(ledger.getPreparedTransfer(ConditionalTransferExecutor.idOf(other)));
+    }
+
+    /**
+     * Each transfer is either executed or rejected when both race.
+     */
+    @Test
+    public void testFulfillRejectRace() throws InterruptedException {
+        System.out.println("fulfill reject race");
+        final SimpleLedger ledger = ledger(BalanceEngine.ATOMIC, ConcurrencyMode.LOCK_FREE);
+        LedgerAccount alice = add(ledger, "hold-race-alice", 1000);
+        LedgerAccount bob = add(ledger, "hold-race-bob", 0);
+        final List<String> transferIds = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            LedgerTransfer transfer = conditional(alice, bob, "1", "race-" + i);
+            ledger.send(transfer);
+            transferIds.add(ConditionalTransferExecutor.idOf(transfer));
+        }
+        final AtomicInteger executed = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        Thread fulfiller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < transferIds.size(); i++) {
+                    try {
+                        ledger.fulfillCondition(transferIds.get(i), PreimageConditions.fulfillment("race-" + i));
+                        executed.incrementAndGet();
+                    } catch (LedgerTransferException ex) {
+                        // Rejected first
+                    }
+                }
+            }
+        });
+        Thread rejecter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (String transferId : transferIds) {
+                    try {
+                        ledger.rejectTransfer(transferId, LedgerTransferRejectedReason.REJECTED_BY_RECEIVER);
+                        rejected.incrementAndGet();
+                    } catch (LedgerTransferException ex) {
+                        // Executed first
+                    }
+                }
+            }
+        });
+        fulfiller.start();
+        rejecter.start();
+        fulfiller.join();
+        rejecter.join();
+        assertEquals(1000, executed.get() + rejected.get());
+        assertEquals(executed.get(), balance(bob).intValue());
+        assertEquals(1000 - executed.get(), balance(alice).intValue());
+        assertEquals(0, BigDecimal.ZERO.compareTo(heldBalance(ledger, alice)));
+    }
+
+    /**
+     * A transfer rejected as soon as it's prepared leaves neither a hold
+     * behind, nor a negative held balance meanwhile.
+     */
+    @Test
+    public void testPrepareRejectRace() throws InterruptedException {
+        System.out.println("prepare reject race");
+        final SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        final LedgerAccount alice = add(ledger, "prepare-race-alice", 3000);
+        LedgerAccount bob = add(ledger, "prepare-race-bob", 0);
+        // Other holds of the condition make indexing the racing ones slower
+        List<String> waiting = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            LedgerTransfer transfer = conditional(alice, bob, "1", "prepare-race");
+            ledger.send(transfer);
+            waiting.add(ConditionalTransferExecutor.idOf(transfer));
+        }
+        final List<LedgerTransfer> transfers = new ArrayList<LedgerTransfer>();
+        for (int i = 0; i < 2000; i++) {
+            transfers.add(conditional(alice, bob, "1", "prepare-race"));
+        }
+        final AtomicInteger rejected = new AtomicInteger();
+        final AtomicBoolean negative = new AtomicBoolean();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread rejecter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (LedgerTransfer transfer : transfers) {
+                    String transferId = ConditionalTransferExecutor.idOf(transfer);
+                    while (ledger.getPreparedTransfer(transferId) == null) {
+                        // Rejected as soon as it's visible
+                    }
+                    ledger.rejectTransfer(transferId, LedgerTransferRejectedReason.REJECTED_BY_RECEIVER);
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+        Thread observer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    if (heldBalance(ledger, alice).compareTo(new BigDecimal("1000")) < 0) {
+                        negative.set(true);
+                    }
+                }
+            }
+        });
+        rejecter.start();
+        observer.start();
+        for (int i = 0; i < transfers.size(); i++) {
+            ledger.send(transfers.get(i));
+            // The rejecter waits for the next one
+            while (rejected.get() <= i) {
+                Thread.yield();
+            }
+        }
+        rejecter.join();
+        done.set(true);
+        observer.join();
+        assertFalse("Held balance went below the waiting holds", negative.get());
+        for (String transferId : waiting) {
+            ledger.rejectTransfer(transferId, LedgerTransferRejectedReason.REJECTED_BY_RECEIVER);
+        }
+        assertEquals(0, new BigDecimal("3000").compareTo(balance(alice)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(heldBalance(ledger, alice)));
+        try {
+            ledger.fulfillCondition(PreimageConditions.fulfillment("prepare-race"));
+            fail("Expected exception!");
+        } catch (LedgerTransferException ex) {
+            // No claimed hold left in the index of the condition
+            assertEquals("No transfer prepared for the fulfillment", ex.getMessage());
+        }
+        ledger.close();
+    }
+
+    /**
+     * A prepared transfer is rejected once expired, and can't be fulfilled
+     * afterwards.
+     */
+    @Test
+    public void testExpiry() throws InterruptedException {
+        System.out.println("expiry");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        // On a tick, so the expiry is due exactly at the deadline
+        FakeLedgerClock clock = new FakeLedgerClock(System.currentTimeMillis() / 1000 * 1000);
+        ledger.setClock(clock);
+        RecordingHandler handler = new RecordingHandler();
+        ledger.registerEventHandler(handler);
+        LedgerAccount alice = add(ledger, "hold-expiry-alice", 100);
+        LedgerAccount bob = add(ledger, "hold-expiry-bob", 0);
+        long start = clock.currentTimeMillis();
+        LedgerTransfer expiring = LedgerTransferBuilder.instance()
+                .from(alice)
+                .to(bob)
+                .amount(Money.of(10, CURRENCY.code()))
+                .with(PreimageConditions.condition("expiring"))
+                .with(new Date(start + 1000))
+                .build();
+        ledger.send(expiring);
+        LedgerTransfer fulfilled = conditional(alice, bob, "20", "fulfilled");
+        ledger.send(fulfilled);
+        ledger.fulfillCondition(PreimageConditions.fulfillment("fulfilled"));
+        clock.advance(999, TimeUnit.MILLISECONDS);
+        Thread.sleep(5 * TransferExpiryScheduler.DEFAULT_TICK_MILLIS);
+        assertNotNull(ledger.getPreparedTransfer(ConditionalTransferExecutor.idOf(expiring)));
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        long waitStart = System.currentTimeMillis();
+        while (ledger.getPreparedTransfer(ConditionalTransferExecutor.idOf(expiring)) != null) {
+            assertTrue("Not expired", System.currentTimeMillis() - waitStart < 5000);
+            Thread.sleep(5);
+        }
+        assertEquals(0, new BigDecimal("80").compareTo(balance(alice)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(heldBalance(ledger, alice)));
+        LedgerTransferRejectedEvent rejected = (LedgerTransferRejectedEvent) handler.events.get(3);
+        assertEquals(LedgerTransferRejectedReason.TIMED_OUT, rejected.getReason());
+        try {
+            ledger.fulfillCondition(PreimageConditions.fulfillment("expiring"));
+            fail("Expected exception!");
+        } catch (LedgerTransferException ex) {
+            assertEquals(0, new BigDecimal("20").compareTo(balance(bob)));
+        }
+        try {
+            ledger.send(LedgerTransferBuilder.instance()
+                    .from(alice)
+                    .to(bob)
+                    .amount(Money.of(10, CURRENCY.code()))
+                    .with(PreimageConditions.condition("expired"))
+                    .with(new Date(clock.currentTimeMillis()))
+                    .build());
+            fail("Expected exception!");
+        } catch (LedgerTransferException ex) {
+            assertEquals(0, new BigDecimal("80").compareTo(balance(alice)));
+        }
+        ledger.close();
+    }
+
+    /**
+     * Status changes are timed by the ledger's clock, including at epoch 0.
+     */
+    @Test
+    public void testStatusTimes() {
+        System.out.println("status times");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        FakeLedgerClock clock = new FakeLedgerClock(0);
+        ledger.setClock(clock);
+        LedgerAccount alice = add(ledger, "status-times-alice", 100);
+        LedgerAccount bob = add(ledger, "status-times-bob", 0);
+        LedgerTransfer transfer = LedgerTransferBuilder.instance()
+                .from(alice)
+                .to(bob)
+                .amount(Money.of(10, CURRENCY.code()))
+                .with(PreimageConditions.condition("status-times"))
+                .with(new Date(60000))
+                .build();
+        ledger.send(transfer);
+        ILPTransfer prepared = ledger.getPreparedTransfer(ConditionalTransferExecutor.idOf(transfer));
+        assertEquals(new Date(0), prepared.getProposedAt());
+        assertEquals(new Date(0), prepared.getPreparedAt());
+        assertNull(prepared.getExecutedAt());
+        clock.advance(5, TimeUnit.SECONDS);
+        ledger.fulfillCondition(PreimageConditions.fulfillment("status-times"));
+        assertEquals(new Date(5000), prepared.getExecutedAt());
+        assertNull(prepared.getRejectedAt());
+        ledger.close();
+    }
+
+    /**
+     * Expiries credit their source account from the scheduler thread, so an
+     * unsynchronized ledger locks its accounts once transfers are prepared.
+     */
+    @Test
+    public void testExpiryWhileSending() throws InterruptedException {
+        System.out.println("expiry while sending");
+        SimpleLedger ledger = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test");
+        FakeLedgerClock clock = new FakeLedgerClock(System.currentTimeMillis() / 1000 * 1000);
+        ledger.setClock(clock);
+        LedgerAccount alice = add(ledger, "expiry-send-alice", 10000);
+        LedgerAccount carol = add(ledger, "expiry-send-carol", 0);
+        LedgerAccount bob = add(ledger, "expiry-send-bob", 0);
+        List<String> transferIds = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            LedgerTransfer transfer = LedgerTransferBuilder.instance()
+                    .from(alice)
+                    .to(bob)
+                    .amount(Money.of(1, CURRENCY.code()))
+                    .with(PreimageConditions.condition("expiry-send-" + i))
+                    .with(new Date(clock.currentTimeMillis() + 1000))
+                    .build();
+            ledger.send(transfer);
+            transferIds.add(ConditionalTransferExecutor.idOf(transfer));
+        }
+        clock.advance(1000, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 5000; i++) {
+            ledger.send(LedgerTransferBuilder.instance().from(alice).to(carol)
+                    .amount(Money.of(1, CURRENCY.code())).build());
+            ledger.send(LedgerTransferBuilder.instance().from(carol).to(alice)
+                    .amount(Money.of(1, CURRENCY.code())).build());
+        }
+        long waitStart = System.currentTimeMillis();
+        for (String transferId : transferIds) {
+            while (ledger.getPreparedTransfer(transferId) != null) {
+                assertTrue("Not expired", System.currentTimeMillis() - waitStart < 5000);
+                Thread.sleep(5);
+            }
+        }
+        assertEquals(0, new BigDecimal("10000").compareTo(balance(alice)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance(carol)));
+        ledger.close();
+    }
+
+    /**
+     * Fulfillments credit their destination from the committer thread,
+     * while the caller keeps sending on an unsynchronized ledger.
+     */
+    @Test
+    public void testFulfillWhileSending() throws Exception {
+        System.out.println("fulfill while sending");
+        SimpleLedger ledger = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test");
+        LedgerAccount alice = add(ledger, "fulfill-send-alice", 5000);
+        LedgerAccount bob = add(ledger, "fulfill-send-bob", 10);
+        LedgerAccount carol = add(ledger, "fulfill-send-carol", 0);
+        for (int i = 0; i < 5000; i++) {
+            ledger.send(conditional(alice, bob, "1", "fulfill-send-" + i));
+        }
+        List<Future<Void>> fulfilled = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 5000; i++) {
+            fulfilled.add(ledger.fulfillConditionAsync(PreimageConditions.fulfillment("fulfill-send-" + i)));
+            ledger.send(LedgerTransferBuilder.instance().from(bob).to(carol)
+                    .amount(Money.of(1, CURRENCY.code())).build());
+            ledger.send(LedgerTransferBuilder.instance().from(carol).to(bob)
+                    .amount(Money.of(1, CURRENCY.code())).build());
+        }
+        for (Future<Void> future : fulfilled) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(0, new BigDecimal("5010").compareTo(balance(bob)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance(carol)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance(alice)));
+        ledger.close();
+    }
+
+    /**
+     * The commit thread of the fulfillments starts with the first one and
+     * stops once the ledger is closed.
+     */
+    @Test
+    public void testFulfillmentCommitterStops() throws InterruptedException {
+        System.out.println("fulfillment committer stops");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        LedgerAccount alice = add(ledger, "committer-alice", 10);
+        LedgerAccount bob = add(ledger, "committer-bob", 0);
+        ConditionalTransferExecutor executor = ledger.getConditionalExecutor();
+        assertFalse(executor.isFulfillmentCommitterRunning());
+        ledger.send(conditional(alice, bob, "1", "committer"));
+        ledger.fulfillCondition(PreimageConditions.fulfillment("committer"));
+        assertTrue(executor.isFulfillmentCommitterRunning());
+        assertEquals(0, BigDecimal.ONE.compareTo(balance(bob)));
+        ledger.close();
+        for (int i = 0; i < 500 && executor.isFulfillmentCommitterRunning(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(executor.isFulfillmentCommitterRunning());
+    }
+
+    /**
+     * Fulfillments submitted together are verified in parallel and committed
+     * in the order they were submitted.
+     */
+    @Test
+    public void testFulfillConditionAsync() throws Exception {
+        System.out.println("fulfillConditionAsync");
+        SimpleLedger ledger = ledger(BalanceEngine.ATOMIC, ConcurrencyMode.LOCK_FREE);
+        final List<LedgerEvent> executed = new ArrayList<LedgerEvent>();
+        ledger.registerEventHandler(new LedgerEventHandler<LedgerEvent>() {
+            @Override
+            public void onLedgerEvent(LedgerEvent event) {
+                if (event instanceof LedgerTransferExecutedEvent) {
+                    synchronized (executed) {
+                        executed.add(event);
+                    }
+                }
+            }
+        });
+        LedgerAccount alice = add(ledger, "hold-async-alice", 1000);
+        LedgerAccount bob = add(ledger, "hold-async-bob", 0);
+        int transfers = 500;
+        for (int i = 0; i < transfers; i++) {
+            ledger.send(conditional(alice, bob, "1", "async-" + i));
+        }
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int i = 0; i < transfers; i++) {
+            results.add(ledger.fulfillConditionAsync(PreimageConditions.fulfillment("async-" + i)));
+        }
+        // Committed after the first one
+        Future<Void> again = ledger.fulfillConditionAsync(PreimageConditions.fulfillment("async-0"));
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        try {
+            again.get();
+            fail("Expected exception!");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof LedgerTransferException);
+        }
+        ledger.close();
+        assertEquals(transfers, balance(bob).intValue());
+        assertEquals(0, BigDecimal.ZERO.compareTo(heldBalance(ledger, alice)));
+        assertEquals(transfers, executed.size());
+    }
+
+    /**
+     * Conditional transfers can't be batched.
+     */
+    @Test
+    public void testSendBatchConditional() {
+        System.out.println("sendBatch conditional");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT, ConcurrencyMode.STRIPED_LOCKS);
+        LedgerAccount alice = add(ledger, "hold-batch-alice", 100);
+        LedgerAccount bob = add(ledger, "hold-batch-bob", 0);
+        TransferBatchResult result = ledger.sendBatch(Arrays.asList(conditional(alice, bob, "1", "batch")));
+        assertTrue(result.getFailure(0) instanceof IllegalArgumentException);
+        assertEquals(0, new BigDecimal("100").compareTo(balance(alice)));
+    }
+
+    private SimpleLedger ledger(BalanceEngine engine, ConcurrencyMode mode) {
+        return new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test", engine, mode);
+    }
+
+    private LedgerAccount add(SimpleLedger ledger, String name, int balance) {
+        LedgerAccount account = ledger.createAccount(name).setBalance(balance);
+        ledger.getLedgerAccountManager().addAccount(account);
+        return account;
+    }
+
+    private LedgerTransfer conditional(LedgerAccount from, LedgerAccount to, String amount, String preimage) {
+        return LedgerTransferBuilder.instance()
+                .from(from)
+                .to(to)
+                .amount(Money.of(new BigDecimal(amount), CURRENCY.code()))
+                .with(PreimageConditions.condition(preimage))
+                .with(new Date(System.currentTimeMillis() + 60000))
+                .build();
+    }
+
+    private BigDecimal balance(LedgerAccount account) {
+        return account.getBalance().getNumber().numberValue(BigDecimal.class);
+    }
+
+    private BigDecimal heldBalance(SimpleLedger ledger, LedgerAccount account) {
+        return ledger.getHeldBalance(account.getName()).getNumber().numberValue(BigDecimal.class);
+    }
+
+    static class RecordingHandler implements LedgerEventHandler<LedgerEvent> {
+
+        final List<LedgerEvent> events = new ArrayList<LedgerEvent>();
+
+        @Override
+        public void onLedgerEvent(LedgerEvent event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.journal.LedgerJournal;
+import org.interledger.ilp.ledger.journal.LedgerSnapshot;
+import org.javamoney.moneta.Money;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link SimpleLedger#attachJournal} and {@link SimpleLedger#takeSnapshot}.
+ *
+ * @author mrmx
+ */
+public class SimpleLedgerJournalTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+
+    File file;
+    File snapshotFile;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("ledger", ".journal");
+        file.delete();
+        snapshotFile = File.createTempFile("ledger", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        snapshotFile.delete();
+    }
+
+    /**
+     * Accounts and balances are rebuilt from the journal.
+     */
+    @Test
+    public void testAttachJournal() {
+        System.out.println("attachJournal");
+        for (BalanceEngine engine : BalanceEngine.values()) {
+            file.delete();
+            String prefix = "journal-" + engine + "-";
+            SimpleLedger ledger = ledger(engine);
+            LedgerJournal journal = LedgerJournal.open(file, ledger.getInfo());
+            ledger.attachJournal(journal);
+            LedgerAccount alice = ledger.createAccount(prefix + "alice").setBalance(100);
+            LedgerAccount bob = ledger.createAccount(prefix + "bob");
+            LedgerAccount carol = ledger.createAccount(prefix + "carol");
+            ledger.getLedgerAccountManager().addAccount(alice);
+            ledger.getLedgerAccountManager().addAccount(bob);
+            ledger.getLedgerAccountManager().addAccountIfAbsent(carol);
+            ledger.send(transfer(alice, bob, "10.25"));
+            ledger.sendBatch(Arrays.asList(transfer(bob, carol, "5"), transfer(alice, carol, "1")));
+            journal.close();
+
+            SimpleLedger restarted = ledger(engine);
+            journal = LedgerJournal.open(file, restarted.getInfo());
+            restarted.attachJournal(journal);
+            journal.close();
+            assertEquals(0, new BigDecimal("88.75").compareTo(balance(restarted, prefix + "alice")));
+            assertEquals(0, new BigDecimal("5.25").compareTo(balance(restarted, prefix + "bob")));
+            assertEquals(0, new BigDecimal("6").compareTo(balance(restarted, prefix + "carol")));
+        }
+    }
+
+    /**
+     * Restarting from a snapshot only replays the journal tail.
+     */
+    @Test
+    public void testTakeSnapshot() {
+        System.out.println("takeSnapshot");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT);
+        LedgerJournal journal = LedgerJournal.open(file, ledger.getInfo());
+        ledger.attachJournal(journal);
+        LedgerAccount alice = ledger.createAccount("snapshot-alice").setBalance(100);
+        LedgerAccount bob = ledger.createAccount("snapshot-bob");
+        ledger.getLedgerAccountManager().addAccount(alice);
+        ledger.getLedgerAccountManager().addAccount(bob);
+        ledger.send(transfer(alice, bob, "10"));
+        LedgerSnapshot snapshot = ledger.takeSnapshot(snapshotFile);
+        assertTrue(snapshot.size() >= 2);
+        assertEquals(9000, snapshot.getBalance(snapshot.indexOf("snapshot-alice")));
+        assertEquals(journal.getAppendedPosition(), snapshot.getJournalPosition());
+        ledger.send(transfer(alice, bob, "1"));
+        LedgerAccount carol = ledger.createAccount("snapshot-carol").setBalance(3);
+        ledger.getLedgerAccountManager().addAccount(carol);
+        journal.close();
+
+        SimpleLedger restarted = ledger(BalanceEngine.FIXED_POINT);
+        journal = LedgerJournal.open(file, restarted.getInfo());
+        restarted.attachJournal(journal, LedgerSnapshot.open(snapshotFile));
+        journal.close();
+        assertEquals(0, new BigDecimal("89").compareTo(balance(restarted, "snapshot-alice")));
+        assertEquals(0, new BigDecimal("11").compareTo(balance(restarted, "snapshot-bob")));
+        assertEquals(0, new BigDecimal("3").compareTo(balance(restarted, "snapshot-carol")));
+    }
+
+    /**
+     * Accounts of a snapshot are found whatever the case of their name.
+     */
+    @Test
+    public void testTakeSnapshotMixedCase() {
+        System.out.println("takeSnapshot mixed case");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT);
+        LedgerJournal journal = LedgerJournal.open(file, ledger.getInfo());
+        ledger.attachJournal(journal);
+        String[] names = {"Snapshot-case-Bob", "snapshot-case-alice", "SNAPSHOT-CASE-DAVE", "snapshot-case-carol"};
+        for (int i = 0; i < names.length; i++) {
+            ledger.getLedgerAccountManager().addAccount(ledger.createAccount(names[i]).setBalance(i + 1));
+        }
+        LedgerSnapshot snapshot = ledger.takeSnapshot(snapshotFile);
+        journal.close();
+        for (int i = 0; i < names.length; i++) {
+            int index = snapshot.indexOf(names[i]);
+            assertTrue(names[i], index >= 0);
+            assertEquals(names[i], snapshot.getAccountName(index));
+            assertEquals(100 * (i + 1), snapshot.getBalance(index));
+            assertEquals(index, snapshot.indexOf(names[i].toLowerCase()));
+            assertEquals(index, snapshot.indexOf(names[i].toUpperCase()));
+        }
+    }
+
+    /**
+     * Records journaled in another order than their transfers were applied,
+     * as lock-free transfers may be, are replayed to the same balances.
+     */
+    @Test
+    public void testReplayReordered() {
+        System.out.println("replay reordered");
+        for (BalanceEngine engine : BalanceEngine.values()) {
+            file.delete();
+            String prefix = "reordered-" + engine + "-";
+            SimpleLedger ledger = ledger(engine);
+            LedgerJournal journal = LedgerJournal.open(file, ledger.getInfo());
+            journal.appendAccountCreated(prefix + "alice", 0);
+            journal.appendAccountCreated(prefix + "bob", 1000);
+            journal.appendAccountCreated(prefix + "carol", 0);
+            // Applied bob to alice first, journaled the other way round
+            journal.appendTransfer(prefix + "alice", prefix + "carol", 1000);
+            journal.appendTransfer(prefix + "bob", prefix + "alice", 1000);
+            journal.close();
+
+            journal = LedgerJournal.open(file, ledger.getInfo());
+            ledger.attachJournal(journal);
+            journal.close();
+            assertEquals(engine.toString(), 0, BigDecimal.ZERO.compareTo(balance(ledger, prefix + "alice")));
+            assertEquals(engine.toString(), 0, BigDecimal.ZERO.compareTo(balance(ledger, prefix + "bob")));
+            assertEquals(engine.toString(), 0, BigDecimal.TEN.compareTo(balance(ledger, prefix + "carol")));
+        }
+    }
+
+    /**
+     * A snapshot taken while transfers are running, plus the journal tail,
+     * gives back the final balances.
+     */
+    @Test
+    public void testTakeSnapshotConcurrently() throws InterruptedException {
+        System.out.println("takeSnapshot concurrently");
+        for (ConcurrencyMode mode : new ConcurrencyMode[]{ConcurrencyMode.STRIPED_LOCKS, ConcurrencyMode.LOCK_FREE}) {
+            file.delete();
+            final String prefix = "snapshot-" + mode + "-";
+            final SimpleLedger ledger = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test",
+                    BalanceEngine.ATOMIC, mode);
+            LedgerJournal journal = LedgerJournal.open(file, ledger.getInfo(), 0, TimeUnit.MILLISECONDS);
+            ledger.attachJournal(journal);
+            final int accounts = 8;
+            for (int i = 0; i < accounts; i++) {
+                ledger.getLedgerAccountManager().addAccount(ledger.createAccount(prefix + i).setBalance(1000));
+            }
+            final AtomicBoolean running = new AtomicBoolean(true);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                final int seed = t;
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Random random = new Random(seed);
+                        while (running.get()) {
+                            int from = random.nextInt(accounts);
+                            int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+                            try {
+                                ledger.send(LedgerTransferBuilder.instance()
+                                        .from(prefix + from)
+                                        .to(prefix + to)
+                                        .amount(Money.of(random.nextInt(50) + 1, CURRENCY.code()))
+                                        .build());
+                            } catch (InsufficientAmountException ex) {
+                                // Expected now and then
+                            }
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            Thread.sleep(50);
+            ledger.takeSnapshot(snapshotFile);
+            Thread.sleep(50);
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            journal.close();
+
+            SimpleLedger restarted = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test",
+                    BalanceEngine.ATOMIC, mode);
+            journal = LedgerJournal.open(file, restarted.getInfo());
+            restarted.attachJournal(journal, LedgerSnapshot.open(snapshotFile));
+            journal.close();
+            BigDecimal total = BigDecimal.ZERO;
+            for (int i = 0; i < accounts; i++) {
+                BigDecimal expected = ledger.getLedgerAccountManager().getAccountByName(prefix + i)
+                        .getBalance().getNumber().numberValue(BigDecimal.class);
+                BigDecimal actual = balance(restarted, prefix + i);
+                assertEquals(mode + " " + i, 0, expected.compareTo(actual));
+                total = total.add(actual);
+            }
+            assertEquals(0, new BigDecimal(accounts * 1000).compareTo(total));
+        }
+    }
+
+    /**
+     * Conditional transfers are journaled once executed; the ones still
+     * prepared are dropped by a restart, and a snapshot counts their held
+     * amount as still on the source account.
+     */
+    @Test
+    public void testConditionalTransfers() {
+        System.out.println("conditional transfers");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT);
+        LedgerJournal journal = LedgerJournal.open(file, ledger.getInfo());
+        ledger.attachJournal(journal);
+        LedgerAccount alice = ledger.createAccount("journal-hold-alice").setBalance(100);
+        LedgerAccount bob = ledger.createAccount("journal-hold-bob");
+        ledger.getLedgerAccountManager().addAccount(alice);
+        ledger.getLedgerAccountManager().addAccount(bob);
+        ledger.send(conditional(alice, bob, "10", "executed"));
+        ledger.send(conditional(alice, bob, "20", "pending"));
+        ledger.fulfillCondition(PreimageConditions.fulfillment("executed"));
+        LedgerSnapshot snapshot = ledger.takeSnapshot(snapshotFile);
+        assertEquals(9000, snapshot.getBalance(snapshot.indexOf("journal-hold-alice")));
+        journal.close();
+
+        for (LedgerSnapshot restartSnapshot : new LedgerSnapshot[]{null, snapshot}) {
+            SimpleLedger restarted = ledger(BalanceEngine.FIXED_POINT);
+            journal = LedgerJournal.open(file, restarted.getInfo());
+            restarted.attachJournal(journal, restartSnapshot);
+            journal.close();
+            assertEquals(0, new BigDecimal("90").compareTo(balance(restarted, "journal-hold-alice")));
+            assertEquals(0, new BigDecimal("10").compareTo(balance(restarted, "journal-hold-bob")));
+        }
+    }
+
+    /**
+     * A journal of another currency is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAttachJournalCurrencyMismatch() {
+        System.out.println("attachJournal currency mismatch");
+        LedgerJournal journal = LedgerJournal.open(file, LedgerInfoFactory.getUSD());
+        try {
+            ledger(BalanceEngine.MONEY).attachJournal(journal);
+        } finally {
+            journal.close();
+        }
+    }
+
+    private SimpleLedger ledger(BalanceEngine engine) {
+        return new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test", engine, ConcurrencyMode.STRIPED_LOCKS);
+    }
+
+    private LedgerTransfer conditional(LedgerAccount from, LedgerAccount to, String amount, String preimage) {
+        return LedgerTransferBuilder.instance()
+                .from(from)
+                .to(to)
+                .amount(Money.of(new BigDecimal(amount), CURRENCY.code()))
+                .with(PreimageConditions.condition(preimage))
+                .with(new Date(System.currentTimeMillis() + 60000))
+                .build();
+    }
+
+    private BigDecimal balance(SimpleLedger ledger, String accountName) {
+        return ledger.getLedgerAccountManager().getAccountByName(accountName)
+                .getBalance().getNumber().numberValue(BigDecimal.class);
+    }
+
+    private LedgerTransfer transfer(LedgerAccount from, LedgerAccount to, String amount) {
+        return LedgerTransferBuilder.instance()
+                .from(from)
+                .to(to)
+                .amount(Money.of(new BigDecimal(amount), CURRENCY.code()))
+                .build();
+    }
+}
@@ -0,0 +1,191 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.events.LedgerEvent;
+import org.interledger.ilp.core.events.LedgerEventHandler;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.account.MinorUnitsLedgerAccount;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests of {@link ConcurrencyMode#SHARDED} ledgers.
+ *
+ * @author mrmx
+ */
+public class SimpleLedgerShardedTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+    static final int SHARDS = 2;
+
+    /**
+     * Transfers within a shard and across shards are executed, and their
+     * events notified.
+     */
+    @Test
+    public void testSend() {
+        System.out.println("send");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT);
+        final List<LedgerEvent> events = Collections.synchronizedList(new ArrayList<LedgerEvent>());
+        ledger.registerEventHandler(new LedgerEventHandler<LedgerEvent>() {
+            @Override
+            public void onLedgerEvent(LedgerEvent event) {
+                events.add(event);
+            }
+        });
+        String[] names = names(ledger, "sharded-send-");
+        LedgerAccount alice = add(ledger, names[0], 100);
+        LedgerAccount bob = add(ledger, names[1], 0);
+        LedgerAccount carol = add(ledger, names[2], 0);
+        ledger.send(transfer(alice, bob, 30));
+        ledger.send(transfer(alice, carol, 20));
+        assertEquals(50, alice.getBalanceAsNumber().intValue());
+        assertEquals(30, bob.getBalanceAsNumber().intValue());
+        assertEquals(20, carol.getBalanceAsNumber().intValue());
+        assertEquals(2, events.size());
+        try {
+            ledger.send(transfer(bob, alice, 31));
+            fail("Expected exception!");
+        } catch (InsufficientAmountException ex) {
+            // Expected
+        }
+        assertEquals(30, bob.getBalanceAsNumber().intValue());
+        ledger.close();
+    }
+
+    /**
+     * Test of sendAsync method, of class SimpleLedger.
+     */
+    @Test
+    public void testSendAsync() throws Exception {
+        System.out.println("sendAsync");
+        SimpleLedger ledger = ledger(BalanceEngine.MONEY);
+        String[] names = names(ledger, "sharded-async-");
+        LedgerAccount alice = add(ledger, names[0], 100);
+        LedgerAccount carol = add(ledger, names[2], 100);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 100; i++) {
+            results.add(ledger.sendAsync(transfer(alice, carol, 1)));
+            results.add(ledger.sendAsync(transfer(carol, alice, 1)));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        assertEquals(100, alice.getBalanceAsNumber().intValue());
+        assertEquals(100, carol.getBalanceAsNumber().intValue());
+        try {
+            ledger.sendAsync(transfer(alice, alice, 1)).get();
+            fail("Expected exception!");
+        } catch (ExecutionException ex) {
+            assertEquals("accounts are the same", ex.getCause().getMessage());
+        }
+        ledger.close();
+        try {
+            ledger.sendAsync(transfer(alice, carol, 1)).get();
+            fail("Expected exception!");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * A credit overflowing in another shard is given back to the source.
+     */
+    @Test
+    public void testRefund() throws Exception {
+        System.out.println("refund");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT);
+        String[] names = names(ledger, "sharded-refund-");
+        LedgerAccount alice = add(ledger, names[0], 100);
+        LedgerAccount carol = add(ledger, names[2], 0);
+        ((MinorUnitsLedgerAccount) carol).creditMinorUnits(Long.MAX_VALUE);
+        try {
+            ledger.sendAsync(transfer(alice, carol, 10)).get();
+            fail("Expected exception!");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof ArithmeticException);
+        }
+        assertEquals(100, alice.getBalanceAsNumber().intValue());
+        ledger.close();
+    }
+
+    /**
+     * Transfers that would bypass the shards are refused.
+     */
+    @Test
+    public void testUnsupported() {
+        System.out.println("unsupported");
+        SimpleLedger ledger = ledger(BalanceEngine.FIXED_POINT);
+        String[] names = names(ledger, "sharded-unsupported-");
+        LedgerAccount alice = add(ledger, names[0], 100);
+        LedgerAccount bob = add(ledger, names[1], 0);
+        try {
+            ledger.sendBatch(Arrays.asList(transfer(alice, bob, 1)));
+            fail("Expected exception!");
+        } catch (UnsupportedOperationException ex) {
+            // Expected
+        }
+        try {
+            ledger.send(LedgerTransferBuilder.instance()
+                    .from(alice)
+                    .to(bob)
+                    .amount(Money.of(1, CURRENCY.code()))
+                    .with(PreimageConditions.condition("unsupported"))
+                    .with(new Date(System.currentTimeMillis() + 60000))
+                    .build());
+            fail("Expected exception!");
+        } catch (UnsupportedOperationException ex) {
+            // Expected
+        }
+        ledger.close();
+    }
+
+    private SimpleLedger ledger(BalanceEngine engine) {
+        return new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test", engine, ConcurrencyMode.SHARDED, SHARDS);
+    }
+
+    /**
+     * @return two names in one shard, then one in the other
+     */
+    private String[] names(SimpleLedger ledger, String prefix) {
+        ShardedTransferExecutor shards = new ShardedTransferExecutor(ledger, SHARDS);
+        String[] names = new String[3];
+        for (int i = 0; names[1] == null || names[2] == null; i++) {
+            String name = prefix + i;
+            int shard = shards.shardOf(name);
+            if (shard == 0 && names[0] == null) {
+                names[0] = name;
+            } else if (shard == 0 && names[1] == null) {
+                names[1] = name;
+            } else if (shard == 1) {
+                names[2] = name;
+            }
+        }
+        return names;
+    }
+
+    private LedgerAccount add(SimpleLedger ledger, String name, int balance) {
+        LedgerAccount account = ledger.createAccount(name).setBalance(balance);
+        ledger.getLedgerAccountManager().addAccount(account);
+        return account;
+    }
+
+    private LedgerTransfer transfer(LedgerAccount from, LedgerAccount to, int amount) {
+        return LedgerTransferBuilder.instance()
+                .from(from)
+                .to(to)
+                .amount(Money.of(amount, CURRENCY.code()))
+                .build();
+    }
+}
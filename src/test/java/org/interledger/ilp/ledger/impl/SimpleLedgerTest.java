@@ -1,12 +1,22 @@
 package org.interledger.ilp.ledger.impl;
 
+import java.math.BigDecimal;
+import java.util.Date;
 import org.interledger.cryptoconditions.Fulfillment;
 import org.interledger.ilp.core.LedgerInfo;
 import org.interledger.ilp.core.LedgerTransfer;
 import org.interledger.ilp.core.LedgerTransferRejectedReason;
+import org.interledger.ilp.core.events.LedgerEvent;
 import org.interledger.ilp.core.events.LedgerEventHandler;
+import org.interledger.ilp.core.exceptions.InsufficientAmountException;
 import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.account.AccountNotFoundException;
 import org.interledger.ilp.ledger.account.LedgerAccount;
+import org.interledger.ilp.ledger.metrics.FailureReason;
+import org.interledger.ilp.ledger.metrics.LedgerMetricsSnapshot;
+import org.interledger.ilp.ledger.metrics.LedgerOperation;
+import org.interledger.ilp.ledger.metrics.RecordingLedgerMetrics;
 import org.javamoney.moneta.Money;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -58,29 +68,215 @@ public class SimpleLedgerTest {
         assertEquals(110, instance.getLedgerAccountManager().getAccountByName("bob").getBalanceAsNumber().intValue());
     }
 
+    /**
+     * Test of send method, of class SimpleLedger, using fixed point balances.
+     */
+    @Test
+    public void testSendFixedPoint() {
+        System.out.println("send fixed point");
+        instance = new SimpleLedger(LedgerInfoFactory.from(CURRENCY), "test", BalanceEngine.FIXED_POINT);
+        FixedPointLedgerAccount alice = (FixedPointLedgerAccount) instance.createAccount("alice").setBalance(100);
+        FixedPointLedgerAccount bob = (FixedPointLedgerAccount) instance.createAccount("bob").setBalance(100);
+        instance.getLedgerAccountManager().addAccount(alice);
+        instance.getLedgerAccountManager().addAccount(bob);
+        LedgerTransfer transfer = LedgerTransferBuilder.instance()
+                .from(alice)
+                .destination("bob@test")
+                .amount(Money.of(new BigDecimal("10.25"), CURRENCY.code()))
+                .build();
+        instance.send(transfer);
+        assertEquals(8975, alice.getBalanceInMinorUnits());
+        assertEquals(11025, bob.getBalanceInMinorUnits());
+        try {
+            instance.send(LedgerTransferBuilder.instance()
+                    .from(alice)
+                    .destination("bob@test")
+                    .amount(Money.of(90, CURRENCY.code()))
+                    .build());
+            fail("Expected exception!");
+        } catch (InsufficientAmountException ex) {
+            assertEquals(8975, alice.getBalanceInMinorUnits());
+        }
+    }
+
     /**
      * Test of rejectTransfer method, of class SimpleLedger.
      */
-    @Ignore
     @Test
     public void testRejectTransfer() {
         System.out.println("rejectTransfer");
-        LedgerTransfer transfer = null;
-        LedgerTransferRejectedReason reason = null;
-        instance.rejectTransfer(transfer, reason);
-        fail("The test case is a prototype.");
+        LedgerAccount alice = new SimpleLedgerAccount("alice", CURRENCY.code()).setBalance(100);
+        LedgerAccount bob = new SimpleLedgerAccount("bob", CURRENCY.code()).setBalance(100);
+        instance.getLedgerAccountManager().addAccount(alice);
+        instance.getLedgerAccountManager().addAccount(bob);
+        LedgerTransfer transfer = conditionalTransfer(alice, "preimage");
+        instance.send(transfer);
+        assertEquals(90, alice.getBalanceAsNumber().intValue());
+        instance.rejectTransfer(transfer, LedgerTransferRejectedReason.TIMED_OUT);
+        assertEquals(100, alice.getBalanceAsNumber().intValue());
+        assertEquals(100, bob.getBalanceAsNumber().intValue());
     }
 
     /**
      * Test of fulfillCondition method, of class SimpleLedger.
      */
-    @Ignore
     @Test
     public void testFulfillCondition() {
         System.out.println("fulfillCondition");
-        Fulfillment fulfillment = null;
+        LedgerAccount alice = new SimpleLedgerAccount("alice", CURRENCY.code()).setBalance(100);
+        LedgerAccount bob = new SimpleLedgerAccount("bob", CURRENCY.code()).setBalance(100);
+        instance.getLedgerAccountManager().addAccount(alice);
+        instance.getLedgerAccountManager().addAccount(bob);
+        instance.send(conditionalTransfer(alice, "preimage"));
+        assertEquals(100, bob.getBalanceAsNumber().intValue());
+        Fulfillment fulfillment = PreimageConditions.fulfillment("preimage");
         instance.fulfillCondition(fulfillment);
-        fail("The test case is a prototype.");
+        assertEquals(90, alice.getBalanceAsNumber().intValue());
+        assertEquals(110, bob.getBalanceAsNumber().intValue());
+    }
+
+    /**
+     * A transfer sent again with the same id is applied once.
+     */
+    @Test
+    public void testSendTwice() {
+        System.out.println("send twice");
+        LedgerAccount alice = new SimpleLedgerAccount("alice", CURRENCY.code()).setBalance(100);
+        LedgerAccount bob = new SimpleLedgerAccount("bob", CURRENCY.code()).setBalance(100);
+        instance.getLedgerAccountManager().addAccount(alice);
+        instance.getLedgerAccountManager().addAccount(bob);
+        LedgerTransfer transfer = LedgerTransferBuilder.instance()
+                .id("twice")
+                .from(alice)
+                .destination("bob@test")
+                .amount(Money.of(10, CURRENCY.code()))
+                .build();
+        instance.send(transfer);
+        instance.send(transfer);
+        assertEquals(90, alice.getBalanceAsNumber().intValue());
+        assertEquals(110, bob.getBalanceAsNumber().intValue());
+        LedgerTransfer tooLarge = LedgerTransferBuilder.instance()
+                .id("too large")
+                .from(alice)
+                .destination("bob@test")
+                .amount(Money.of(1000, CURRENCY.code()))
+                .build();
+        for (int i = 0; i < 2; i++) {
+            try {
+                instance.send(tooLarge);
+                fail("Expected exception!");
+            } catch (InsufficientAmountException ex) {
+                // Expected, the second time too
+            }
+        }
+        alice.setBalance(2000);
+        try {
+            instance.send(tooLarge);
+            fail("Expected exception!");
+        } catch (InsufficientAmountException ex) {
+            // Still the outcome of the first one
+        }
+        assertEquals(2000, alice.getBalanceAsNumber().intValue());
+    }
+
+    /**
+     * A transfer sent again after a failure past its commit, even an Error,
+     * gets its success and isn't applied twice.
+     */
+    @Test(timeout = 10000)
+    public void testSendTwiceAfterHandlerFailure() {
+        System.out.println("send twice after handler failure");
+        LedgerAccount alice = new SimpleLedgerAccount("alice", CURRENCY.code()).setBalance(100);
+        LedgerAccount bob = new SimpleLedgerAccount("bob", CURRENCY.code()).setBalance(100);
+        instance.getLedgerAccountManager().addAccount(alice);
+        instance.getLedgerAccountManager().addAccount(bob);
+        final Throwable[] failures = {new AssertionError("handler"), new IllegalStateException("handler")};
+        final int[] events = {0};
+        instance.registerEventHandler(new LedgerEventHandler<LedgerEvent>() {
+            @Override
+            public void onLedgerEvent(LedgerEvent event) {
+                Throwable failure = failures[events[0]++];
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw (RuntimeException) failure;
+            }
+        });
+        for (int i = 0; i < failures.length; i++) {
+            LedgerTransfer transfer = LedgerTransferBuilder.instance()
+                    .id("failure" + i)
+                    .from(alice)
+                    .destination("bob@test")
+                    .amount(Money.of(10, CURRENCY.code()))
+                    .build();
+            Throwable thrown = null;
+            try {
+                instance.send(transfer);
+            } catch (Throwable ex) {
+                thrown = ex;
+            }
+            assertSame(failures[i], thrown);
+            // Committed before the handler failed
+            instance.send(transfer);
+        }
+        assertEquals(2, events[0]);
+        assertEquals(80, alice.getBalanceAsNumber().intValue());
+        assertEquals(120, bob.getBalanceAsNumber().intValue());
+    }
+
+    /**
+     * Test of setMetrics method, of class SimpleLedger.
+     */
+    @Test
+    public void testMetrics() throws InterruptedException {
+        System.out.println("metrics");
+        RecordingLedgerMetrics metrics = new RecordingLedgerMetrics();
+        instance.setMetrics(metrics);
+        LedgerAccount alice = new SimpleLedgerAccount("alice", CURRENCY.code()).setBalance(100);
+        LedgerAccount bob = new SimpleLedgerAccount("bob", CURRENCY.code()).setBalance(100);
+        instance.getLedgerAccountManager().addAccount(alice);
+        instance.getLedgerAccountManager().addAccount(bob);
+        instance.send(LedgerTransferBuilder.instance()
+                .from(alice)
+                .destination("bob@test")
+                .amount(Money.of(10, CURRENCY.code()))
+                .build());
+        try {
+            instance.send(LedgerTransferBuilder.instance()
+                    .from(alice)
+                    .destination("bob@test")
+                    .amount(Money.of(1000, CURRENCY.code()))
+                    .build());
+            fail("Expected exception!");
+        } catch (InsufficientAmountException ex) {
+            // Expected
+        }
+        try {
+            instance.send(LedgerTransferBuilder.instance()
+                    .from(alice)
+                    .destination("nobody@test")
+                    .amount(Money.of(10, CURRENCY.code()))
+                    .build());
+            fail("Expected exception!");
+        } catch (AccountNotFoundException ex) {
+            // Expected
+        }
+        instance.send(conditionalTransfer(alice, "metrics"));
+        instance.fulfillCondition(PreimageConditions.fulfillment("metrics"));
+        LedgerMetricsSnapshot snapshot = metrics.snapshot();
+        LedgerMetricsSnapshot.OperationSnapshot send = snapshot.get(LedgerOperation.SEND);
+        assertEquals(1, send.getSucceeded());
+        assertEquals(1, send.getFailed(FailureReason.INSUFFICIENT_AMOUNT));
+        assertEquals(1, send.getFailed(FailureReason.ACCOUNT_NOT_FOUND));
+        assertEquals(3, send.getLatency().getCount());
+        assertEquals(1, snapshot.get(LedgerOperation.PREPARE).getSucceeded());
+        // Recorded by the commit thread once the fulfillment is completed
+        for (int i = 0; i < 100 && metrics.snapshot().get(LedgerOperation.FULFILL).getSucceeded() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, metrics.snapshot().get(LedgerOperation.FULFILL).getSucceeded());
+        assertEquals(0, snapshot.get(LedgerOperation.REJECT).getSucceeded());
+        assertTrue(snapshot.get(LedgerOperation.EVENT_DISPATCH).getSucceeded() >= 1);
     }
 
     /**
@@ -95,4 +291,14 @@ public class SimpleLedgerTest {
         fail("The test case is a prototype.");
     }
 
+    private LedgerTransfer conditionalTransfer(LedgerAccount from, String preimage) {
+        return LedgerTransferBuilder.instance()
+                .from(from)
+                .destination("bob@test")
+                .amount(Money.of(10, CURRENCY.code()))
+                .with(PreimageConditions.condition(preimage))
+                .with(new Date(System.currentTimeMillis() + 60000))
+                .build();
+    }
+
 }
@@ -0,0 +1,104 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TimingWheel}.
+ *
+ * @author mrmx
+ */
+public class TimingWheelTest {
+
+    static final long TICK = 10;
+    static final long START = 1000000;
+
+    /**
+     * Test of advance method, of class TimingWheel.
+     */
+    @Test
+    public void testAdvance() {
+        System.out.println("advance");
+        TimingWheel<String> instance = new TimingWheel<String>(TICK, START);
+        instance.schedule("a", START + 25);
+        instance.schedule("b", START + 30);
+        instance.schedule("c", START + 1000);
+        assertEquals(3, instance.size());
+        List<String> expired = new ArrayList<String>();
+        instance.advance(START + 20, expired);
+        assertTrue(expired.isEmpty());
+        instance.advance(START + 30, expired);
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains("a"));
+        assertTrue(expired.contains("b"));
+        expired.clear();
+        instance.advance(START + 999, expired);
+        assertTrue(expired.isEmpty());
+        instance.advance(START + 1000, expired);
+        assertEquals("c", expired.get(0));
+        assertEquals(0, instance.size());
+    }
+
+    /**
+     * Items never expire before their deadline, nor more than a tick after,
+     * whichever wheel they start in.
+     */
+    @Test
+    public void testDeadlines() {
+        System.out.println("deadlines");
+        TimingWheel<Long> instance = new TimingWheel<Long>(TICK, START);
+        Random random = new Random(42);
+        int items = 2000;
+        long horizon = TICK * (1L << 25);
+        for (int i = 0; i < items; i++) {
+            long deadline = START + (long) (random.nextDouble() * random.nextDouble() * horizon);
+            instance.schedule(deadline, deadline);
+        }
+        // Also beyond the last wheel
+        instance.schedule(START + 2 * horizon, START + 2 * horizon);
+        List<Long> expired = new ArrayList<Long>();
+        int count = 0;
+        long now = START;
+        long step = TICK * 7;
+        while (count < items + 1) {
+            now += step;
+            instance.advance(now, expired);
+            for (Long deadline : expired) {
+                assertTrue(deadline <= now);
+                assertTrue(deadline > now - step - TICK);
+            }
+            count += expired.size();
+            expired.clear();
+            if (now > START + horizon / 64) {
+                step = TICK * 4099;
+            }
+        }
+        assertEquals(0, instance.size());
+    }
+
+    /**
+     * Test of cancel method, of class TimingWheel.Timeout.
+     */
+    @Test
+    public void testCancel() {
+        System.out.println("cancel");
+        TimingWheel<String> instance = new TimingWheel<String>(TICK, START);
+        TimingWheel.Timeout<String> early = instance.schedule("early", START + 50);
+        TimingWheel.Timeout<String> placed = instance.schedule("placed", START + 5000);
+        instance.schedule("kept", START + 5000);
+        List<String> expired = new ArrayList<String>();
+        instance.advance(START + 10, expired);
+        assertTrue(early.cancel());
+        assertFalse(early.cancel());
+        assertTrue(placed.cancel());
+        assertEquals(1, instance.size());
+        instance.advance(START + 10000, expired);
+        assertEquals(1, expired.size());
+        assertEquals("kept", expired.get(0));
+        assertTrue(early.isCancelled());
+        assertFalse(placed.isExpired());
+    }
+}
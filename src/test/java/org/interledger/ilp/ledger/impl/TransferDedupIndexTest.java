@@ -0,0 +1,124 @@
+package org.interledger.ilp.ledger.impl;
+
+import java.util.concurrent.TimeUnit;
+import org.interledger.ilp.core.LedgerTransfer;
+import org.interledger.ilp.core.exceptions.LedgerTransferException;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.clock.FakeLedgerClock;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TransferDedupIndex}.
+ *
+ * @author mrmx
+ */
+public class TransferDedupIndexTest {
+
+    static final Currencies CURRENCY = Currencies.EURO;
+    static final long RETENTION = 70000;
+
+    SimpleLedger ledger;
+    FakeLedgerClock clock;
+
+    @Before
+    public void setUp() {
+        ledger = new SimpleLedger(CURRENCY, "test");
+        clock = new FakeLedgerClock(1000000);
+        ledger.setClock(clock);
+    }
+
+    /**
+     * Test of register method, of class TransferDedupIndex.
+     */
+    @Test
+    public void testRegister() {
+        System.out.println("register");
+        TransferDedupIndex instance = new TransferDedupIndex(ledger, RETENTION, 1000);
+        TransferDedupIndex.Entry first = entry("t1", 10);
+        assertNull(instance.register(first));
+        assertSame(first, instance.register(entry("t1", 10)));
+        assertNull(instance.register(entry("t2", 10)));
+        assertEquals(2, instance.size());
+        try {
+            instance.register(entry("t1", 20));
+            fail("Expected exception!");
+        } catch (LedgerTransferException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * A transfer sent again with its accounts in another case is the same
+     * transfer.
+     */
+    @Test
+    public void testRegisterAccountNameCase() {
+        System.out.println("register account name case");
+        TransferDedupIndex instance = new TransferDedupIndex(ledger, RETENTION, 1000);
+        TransferDedupIndex.Entry first = entry("t1", "alice", "bob", 10);
+        assertNull(instance.register(first));
+        assertSame(first, instance.register(entry("t1", "Alice", "BOB", 10)));
+        try {
+            instance.register(entry("t1", "Alice", "carol", 10));
+            fail("Expected exception!");
+        } catch (LedgerTransferException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * Ids are kept for the retention period, then forgotten.
+     */
+    @Test
+    public void testRetention() {
+        System.out.println("retention");
+        TransferDedupIndex instance = new TransferDedupIndex(ledger, RETENTION, 1000);
+        TransferDedupIndex.Entry first = entry("t1", 10);
+        instance.register(first);
+        clock.advance(RETENTION - 1, TimeUnit.MILLISECONDS);
+        assertSame(first, instance.register(entry("t1", 10)));
+        clock.advance(RETENTION / 2, TimeUnit.MILLISECONDS);
+        instance.register(entry("t2", 10));
+        clock.advance(2 * RETENTION, TimeUnit.MILLISECONDS);
+        instance.register(entry("t3", 10));
+        assertNull(instance.get("t1"));
+        assertEquals(1, instance.size());
+        assertNull(instance.register(entry("t1", 10)));
+    }
+
+    /**
+     * The oldest ids are forgotten once the index is full.
+     */
+    @Test
+    public void testMaximumSize() {
+        System.out.println("maximumSize");
+        int maximumSize = 64;
+        TransferDedupIndex instance = new TransferDedupIndex(ledger, RETENTION, maximumSize);
+        for (int i = 0; i < 10000; i++) {
+            instance.register(entry("t" + i, 10));
+            assertTrue(instance.size() <= maximumSize);
+            if (i % 100 == 0) {
+                clock.advance(RETENTION / 10, TimeUnit.MILLISECONDS);
+            }
+        }
+        assertNotNull(instance.get("t9999"));
+        assertNull(instance.get("t0"));
+    }
+
+    private TransferDedupIndex.Entry entry(String id, int amount) {
+        return entry(id, "alice", "bob", amount);
+    }
+
+    private TransferDedupIndex.Entry entry(String id, String from, String to, int amount) {
+        LedgerTransfer transfer = LedgerTransferBuilder.instance()
+                .id(id)
+                .from(from)
+                .to(to)
+                .amount(Money.of(amount, CURRENCY.code()))
+                .build();
+        return new TransferDedupIndex.Entry(id, transfer);
+    }
+}
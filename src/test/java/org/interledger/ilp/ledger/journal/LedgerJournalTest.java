@@ -0,0 +1,164 @@
+package org.interledger.ilp.ledger.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link LedgerJournal}.
+ *
+ * @author mrmx
+ */
+public class LedgerJournalTest {
+
+    File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("ledger", ".journal");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Test of replay method, of class LedgerJournal.
+     */
+    @Test
+    public void testReplay() {
+        System.out.println("replay");
+        LedgerJournal instance = LedgerJournal.open(file, LedgerInfoFactory.getEUR());
+        instance.appendAccountCreated("alice", 10000);
+        instance.appendAccountCreated("bob", 0);
+        long position = instance.appendTransfer("alice", "bob", 2550);
+        instance.awaitDurable(position);
+        assertTrue(instance.getDurablePosition() >= position);
+        instance.close();
+
+        instance = LedgerJournal.open(file, LedgerInfoFactory.getEUR());
+        RecordingListener listener = new RecordingListener();
+        instance.replay(listener);
+        instance.close();
+        assertEquals(3, listener.records.size());
+        assertEquals("account alice 10000", listener.records.get(0));
+        assertEquals("account bob 0", listener.records.get(1));
+        assertEquals("transfer alice bob 2550", listener.records.get(2));
+    }
+
+    /**
+     * A record torn by a crash is dropped, and the journal goes on after the
+     * last valid one.
+     */
+    @Test
+    public void testTornRecord() throws IOException {
+        System.out.println("torn record");
+        LedgerJournal instance = LedgerJournal.open(file, LedgerInfoFactory.getEUR());
+        instance.appendAccountCreated("alice", 100);
+        instance.close();
+        long validLength = file.length();
+        instance = LedgerJournal.open(file, LedgerInfoFactory.getEUR());
+        instance.appendAccountCreated("bob", 200);
+        instance.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(file.length() - 3);
+        } finally {
+            raf.close();
+        }
+
+        instance = LedgerJournal.open(file, LedgerInfoFactory.getEUR());
+        assertEquals(validLength, file.length());
+        instance.awaitDurable(instance.appendAccountCreated("carol", 300));
+        instance.close();
+
+        instance = LedgerJournal.open(file, LedgerInfoFactory.getEUR());
+        RecordingListener listener = new RecordingListener();
+        instance.replay(listener);
+        instance.close();
+        assertEquals(2, listener.records.size());
+        assertEquals("account alice 100", listener.records.get(0));
+        assertEquals("account carol 300", listener.records.get(1));
+    }
+
+    /**
+     * A journal can't be opened for another currency.
+     */
+    @Test(expected = LedgerJournalException.class)
+    public void testCurrencyMismatch() {
+        System.out.println("currency mismatch");
+        LedgerJournal.open(file, LedgerInfoFactory.getEUR()).close();
+        LedgerJournal.open(file, LedgerInfoFactory.getUSD());
+    }
+
+    /**
+     * Concurrent appenders all get their records committed.
+     */
+    @Test
+    public void testGroupCommit() throws InterruptedException {
+        System.out.println("group commit");
+        final LedgerJournal instance = LedgerJournal.open(file, LedgerInfoFactory.getEUR(), 2, TimeUnit.MILLISECONDS);
+        final int threads = 4;
+        final int transfers = 250;
+        List<Thread> appenders = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread appender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < transfers; i++) {
+                        instance.awaitDurable(instance.appendTransfer("alice", "bob", 1));
+                    }
+                }
+            });
+            appender.start();
+            appenders.add(appender);
+        }
+        for (Thread appender : appenders) {
+            appender.join();
+        }
+        instance.close();
+
+        LedgerJournal reopened = LedgerJournal.open(file, LedgerInfoFactory.getEUR());
+        RecordingListener listener = new RecordingListener();
+        reopened.replay(listener);
+        reopened.close();
+        assertEquals(threads * transfers, listener.records.size());
+    }
+
+    /**
+     * Test of close method, of class LedgerJournal.
+     */
+    @Test(expected = LedgerJournalException.class)
+    public void testClose() {
+        System.out.println("close");
+        LedgerJournal instance = LedgerJournal.open(file, LedgerInfoFactory.getEUR());
+        instance.close();
+        instance.appendAccountCreated("alice", 0);
+    }
+
+    static class RecordingListener implements LedgerJournalListener {
+
+        final List<String> records = new ArrayList<String>();
+
+        @Override
+        public void onAccountCreated(String accountName, long balance) {
+            records.add("account " + accountName + " " + balance);
+        }
+
+        @Override
+        public void onTransfer(String fromAccount, String toAccount, long amount) {
+            records.add("transfer " + fromAccount + " " + toAccount + " " + amount);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.interledger.ilp.ledger.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link LedgerSnapshot}.
+ *
+ * @author mrmx
+ */
+public class LedgerSnapshotTest {
+
+    File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("ledger", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Test of write method, of class LedgerSnapshot.
+     */
+    @Test
+    public void testWrite() {
+        System.out.println("write");
+        LedgerSnapshot.write(file, "EUR", 2, 1234,
+                Arrays.asList("alice", "bob", "carolé"), new long[]{100, -5, Long.MAX_VALUE});
+        LedgerSnapshot instance = LedgerSnapshot.open(file);
+        assertEquals("EUR", instance.getCurrencyCode());
+        assertEquals(2, instance.getScale());
+        assertEquals(1234, instance.getJournalPosition());
+        assertEquals(3, instance.size());
+        assertEquals("alice", instance.getAccountName(0));
+        assertEquals("carolé", instance.getAccountName(2));
+        assertEquals(100, instance.getBalance(0));
+        assertEquals(-5, instance.getBalance(1));
+        assertEquals(Long.MAX_VALUE, instance.getBalance(2));
+    }
+
+    /**
+     * Test of indexOf method, of class LedgerSnapshot.
+     */
+    @Test
+    public void testIndexOf() {
+        System.out.println("indexOf");
+        LedgerSnapshot instance = LedgerSnapshot.write(file, "EUR", 2, 0,
+                Arrays.asList("alice", "bob", "carol"), new long[]{1, 2, 3});
+        assertEquals(0, instance.indexOf("alice"));
+        assertEquals(1, instance.indexOf("bob"));
+        assertEquals(2, instance.indexOf("carol"));
+        assertTrue(instance.indexOf("barbara") < 0);
+        assertTrue(instance.indexOf("zoe") < 0);
+    }
+
+    /**
+     * Names are sorted and looked up by canonical name, whatever their case.
+     */
+    @Test
+    public void testIndexOfMixedCase() {
+        System.out.println("indexOf mixed case");
+        LedgerSnapshot instance = LedgerSnapshot.write(file, "EUR", 2, 0,
+                Arrays.asList("alice", "Bob", "carol", "Dave", "erin"), new long[]{1, 2, 3, 4, 5});
+        assertEquals(1, instance.indexOf("Bob"));
+        assertEquals(1, instance.indexOf("bob"));
+        assertEquals(3, instance.indexOf("Dave"));
+        assertEquals(3, instance.indexOf("DAVE"));
+        assertEquals(0, instance.indexOf("Alice"));
+        assertEquals(4, instance.indexOf("erin"));
+        assertEquals("Dave", instance.getAccountName(3));
+        assertTrue(instance.indexOf("Barbara") < 0);
+    }
+
+    /**
+     * An empty ledger gives an empty snapshot.
+     */
+    @Test
+    public void testEmpty() {
+        System.out.println("empty");
+        LedgerSnapshot instance = LedgerSnapshot.write(file, "USD", 2, 42, Arrays.<String>asList(), new long[0]);
+        assertEquals(0, instance.size());
+        assertEquals(42, instance.getJournalPosition());
+        assertTrue(instance.indexOf("alice") < 0);
+    }
+
+    /**
+     * A corrupted snapshot is rejected.
+     */
+    @Test(expected = LedgerJournalException.class)
+    public void testCorrupted() throws IOException {
+        System.out.println("corrupted");
+        LedgerSnapshot.write(file, "EUR", 2, 0, Arrays.asList("alice"), new long[]{1});
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(30);
+            raf.write(0x7f);
+        } finally {
+            raf.close();
+        }
+        LedgerSnapshot.open(file);
+    }
+}
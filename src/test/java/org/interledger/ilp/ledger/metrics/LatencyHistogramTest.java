@@ -0,0 +1,73 @@
+package org.interledger.ilp.ledger.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ *
+ * @author mrmx
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Test of indexOf method, of class LatencyHistogram.
+     */
+    @Test
+    public void testIndexOf() {
+        System.out.println("indexOf");
+        int previous = -1;
+        for (long value = 0; value < 1000000; value += 1 + value / 100) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(index >= previous);
+            assertTrue(value <= LatencyHistogram.highestValueOf(index));
+            if (index > 0) {
+                assertTrue(value > LatencyHistogram.highestValueOf(index - 1));
+            }
+            previous = index;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE));
+    }
+
+    /**
+     * Test of snapshot method, of class LatencyHistogram.
+     */
+    @Test
+    public void testSnapshot() {
+        System.out.println("snapshot");
+        LatencyHistogram instance = new LatencyHistogram();
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.exp(random.nextDouble() * 20));
+            instance.record(values[i]);
+        }
+        Arrays.sort(values);
+        LatencyHistogram.Snapshot snapshot = instance.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = snapshot.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + actual + " vs " + expected,
+                    Math.abs(actual - expected) <= Math.max(1, expected * 0.016));
+        }
+    }
+
+    /**
+     * Values beyond the largest bucket are counted in it.
+     */
+    @Test
+    public void testOutOfRange() {
+        System.out.println("out of range");
+        LatencyHistogram instance = new LatencyHistogram();
+        instance.record(-5);
+        instance.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = instance.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertTrue(snapshot.getValueAtPercentile(100) >= LatencyHistogram.MAX_VALUE / 2);
+    }
+}
@@ -0,0 +1,48 @@
+package org.interledger.ilp.ledger.routing;
+
+import org.interledger.ilp.core.Ledger;
+import org.interledger.ilp.ledger.Currencies;
+import org.interledger.ilp.ledger.LedgerInfoFactory;
+import org.interledger.ilp.ledger.impl.LedgerTransferBuilder;
+import org.interledger.ilp.ledger.impl.SimpleLedger;
+import org.javamoney.moneta.Money;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * LedgerRouter tests
+ *
+ * @author mrmx
+ */
+public class LedgerRouterTest {
+
+    /**
+     * Test of route method, of class LedgerRouter.
+     */
+    @Test
+    public void testRoute() {
+        System.out.println("route");
+        Ledger bank1 = new SimpleLedger(LedgerInfoFactory.getEUR(), "bank1");
+        Ledger bank2 = new SimpleLedger(LedgerInfoFactory.getEUR(), "bank2");
+        LedgerRouter instance = new LedgerRouter();
+        instance.addRoute("g.eu.bank1.", bank1);
+        instance.addRoute("g.eu.bank2.", bank2);
+        assertSame(bank1, instance.route("g.eu.bank1.alice"));
+        assertSame(bank2, instance.route("g.eu.bank2.bob"));
+        assertSame(bank2, instance.route(LedgerTransferBuilder.instance()
+                .from("alice")
+                .to("bob")
+                .destination("g.eu.bank2.bob")
+                .amount(Money.of(1, Currencies.EURO.code()))
+                .build()));
+        RoutingTable<Ledger> before = instance.getRoutingTable();
+        instance.removeRoute("g.eu.bank2");
+        assertSame(bank2, before.match("g.eu.bank2.bob"));
+        try {
+            instance.route("g.eu.bank2.bob");
+            fail("Expected exception!");
+        } catch (NoRouteException ex) {
+            // Expected
+        }
+    }
+}
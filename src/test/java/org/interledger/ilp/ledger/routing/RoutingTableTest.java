@@ -0,0 +1,76 @@
+package org.interledger.ilp.ledger.routing;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * RoutingTable tests
+ *
+ * @author mrmx
+ */
+public class RoutingTableTest {
+
+    /**
+     * Test of match method, of class RoutingTable.
+     */
+    @Test
+    public void testMatch() {
+        System.out.println("match");
+        RoutingTable<String> instance = RoutingTable.<String>builder()
+                .add("g.us.", "us")
+                .add("g.us.bank1", "bank1")
+                .add("g.us.bank1.branch2.", "branch2")
+                .add("g.eu.bank1", "eu")
+                .build();
+        assertEquals("bank1", instance.match("g.us.bank1.alice"));
+        assertEquals("bank1", instance.match("g.us.bank1"));
+        assertEquals("branch2", instance.match("g.us.bank1.branch2.bob"));
+        assertEquals("bank1", instance.match("g.us.bank1.branch20.bob"));
+        assertEquals("us", instance.match("g.us.bank10.alice"));
+        assertEquals("eu", instance.match("g.eu.bank1.carol"));
+        assertNull(instance.match("g.eu.bank2.carol"));
+        assertNull(instance.match("g.usa.bank1.alice"));
+        assertNull(instance.match("g"));
+        assertNull(instance.match(""));
+        assertEquals(4, instance.size());
+    }
+
+    /**
+     * The empty prefix routes everything.
+     */
+    @Test
+    public void testDefaultRoute() {
+        System.out.println("default route");
+        RoutingTable<String> instance = RoutingTable.<String>builder()
+                .add("", "default")
+                .add("g.us", "us")
+                .build();
+        assertEquals("default", instance.match("g.eu.alice"));
+        assertEquals("default", instance.match(""));
+        assertEquals("us", instance.match("g.us.alice"));
+    }
+
+    /**
+     * Test of toBuilder method, of class RoutingTable.
+     */
+    @Test
+    public void testToBuilder() {
+        System.out.println("toBuilder");
+        RoutingTable<String> first = RoutingTable.<String>builder().add("g.us", "us").build();
+        RoutingTable<String> second = first.toBuilder().add("g.us.", "us2").add("g.eu", "eu").build();
+        assertEquals("us", first.match("g.us.alice"));
+        assertNull(first.match("g.eu.alice"));
+        assertEquals("us2", second.match("g.us.alice"));
+        assertEquals("us2", second.get("g.us."));
+        assertNull(second.toBuilder().remove("g.us").build().match("g.us.alice"));
+    }
+
+    /**
+     * Test of add method, of class RoutingTable.Builder.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddEmptySegment() {
+        System.out.println("add empty segment");
+        RoutingTable.<String>builder().add("g..us", "us");
+    }
+}